@@ -0,0 +1,57 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Map;
+
+import org.junit.Test;
+import org.syncany.cli.CommandLineClient;
+import org.syncany.tests.util.TestCliUtil;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.util.TestFileUtil;
+
+public class CompactCommandTest {
+	@Test
+	public void testCompactCommand() throws Exception {
+		Map<String, String> connectionSettings = TestConfigUtil.createTestLocalConnectionSettings();
+		Map<String, String> clientA = TestCliUtil.createLocalTestEnvAndInit("A", connectionSettings);
+
+		TestFileUtil.createRandomFile(new File(clientA.get("localdir") + "/file1"), 20 * 1024);
+
+		new CommandLineClient(new String[] {
+				"--localdir", clientA.get("localdir"),
+				"up",
+		}).start();
+
+		String[] cliOut = TestCliUtil.runAndCaptureOutput(new CommandLineClient(new String[] {
+				"--localdir", clientA.get("localdir"),
+				"compact",
+				"--batch-size=100"
+		}));
+
+		assertEquals("Different number of output lines expected.\n" + String.join("\n", cliOut), 2, cliOut.length);
+		assertEquals("Removed 0 file histories, 0 file contents and 0 chunks.", cliOut[0]);
+		assertTrue(cliOut[1], cliOut[1].startsWith("Database size "));
+
+		TestCliUtil.deleteTestLocalConfigAndData(clientA);
+	}
+}
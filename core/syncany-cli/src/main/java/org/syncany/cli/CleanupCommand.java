@@ -137,6 +137,10 @@ public class CleanupCommand extends Command {
 				out.println(concreteOperationResult.getMergedDatabaseFilesCount() + " database files merged.");
 			}
 
+			if (concreteOperationResult.getSnapshotDatabaseVersionCount() > 0) {
+				out.println("Snapshot of " + concreteOperationResult.getSnapshotDatabaseVersionCount() + " database versions written.");
+			}
+
 			if (concreteOperationResult.getRemovedMultiChunksCount() > 0) {
 				out.printf("%d multichunk(s) deleted on remote storage (freed %.2f MB)\n",
 						concreteOperationResult.getRemovedMultiChunksCount(),
@@ -0,0 +1,93 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.cli;
+
+import static java.util.Arrays.asList;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+import org.syncany.operations.OperationResult;
+import org.syncany.operations.compact.CompactOperation;
+import org.syncany.operations.compact.CompactOperationOptions;
+import org.syncany.operations.compact.CompactOperationResult;
+
+public class CompactCommand extends Command {
+	@Override
+	public CommandScope getRequiredCommandScope() {
+		return CommandScope.INITIALIZED_LOCALDIR;
+	}
+
+	@Override
+	public boolean canExecuteInDaemonScope() {
+		return true;
+	}
+
+	@Override
+	public int execute(String[] operationArgs) throws Exception {
+		CompactOperationOptions operationOptions = parseOptions(operationArgs);
+		CompactOperationResult operationResult = new CompactOperation(config, operationOptions).execute();
+
+		printResults(operationResult);
+
+		return 0;
+	}
+
+	@Override
+	public CompactOperationOptions parseOptions(String[] operationArgs) throws Exception {
+		CompactOperationOptions operationOptions = new CompactOperationOptions();
+
+		OptionParser parser = new OptionParser();
+		parser.allowsUnrecognizedOptions();
+
+		OptionSpec<Integer> optionBatchSize = parser.acceptsAll(asList("b", "batch-size")).withRequiredArg().ofType(Integer.class);
+		OptionSpec<Void> optionNoDefragment = parser.acceptsAll(asList("D", "no-defrag"));
+
+		OptionSet options = parser.parse(operationArgs);
+
+		// -b, --batch-size=..
+		if (options.has(optionBatchSize)) {
+			int batchSize = options.valueOf(optionBatchSize);
+
+			if (batchSize <= 0) {
+				throw new Exception("Invalid value for --batch-size=" + batchSize + "; must be > 0");
+			}
+
+			operationOptions.setBatchSize(batchSize);
+		}
+
+		// -D, --no-defrag
+		operationOptions.setDefragment(!options.has(optionNoDefragment));
+
+		return operationOptions;
+	}
+
+	@Override
+	public void printResults(OperationResult operationResult) {
+		CompactOperationResult concreteOperationResult = (CompactOperationResult) operationResult;
+
+		out.printf("Removed %d file histories, %d file contents and %d chunks.\n", concreteOperationResult.getRemovedFileHistoriesCount(),
+				concreteOperationResult.getRemovedFileContentsCount(), concreteOperationResult.getRemovedChunksCount());
+
+		out.printf("Database size %.2f MB -> %.2f MB (reclaimed %.2f MB) in %.1f sec.\n",
+				(double) concreteOperationResult.getDatabaseSizeBefore() / 1024 / 1024,
+				(double) concreteOperationResult.getDatabaseSizeAfter() / 1024 / 1024,
+				(double) concreteOperationResult.getReclaimedSize() / 1024 / 1024,
+				(double) concreteOperationResult.getDuration() / 1000);
+	}
+}
@@ -68,6 +68,7 @@ public class DownCommand extends Command {
 
 		OptionSpec<String> optionConflictStrategy = parser.acceptsAll(asList("C", "conflict-strategy")).withRequiredArg();
 		OptionSpec<Void> optionNoApply = parser.acceptsAll(asList("A", "no-apply"));
+		OptionSpec<Void> optionLocalChunks = parser.acceptsAll(asList("L", "local-chunks"));
 
 		OptionSet options = parser.parse(operationArguments);
 
@@ -82,6 +83,11 @@ public class DownCommand extends Command {
 			operationOptions.setApplyChanges(false);
 		}
 
+		// --local-chunks
+		if (options.has(optionLocalChunks)) {
+			operationOptions.setLocalChunks(true);
+		}
+
 		return operationOptions;
 	}
 
@@ -30,6 +30,7 @@ import org.syncany.config.to.RepoTOFactory;
 import org.syncany.crypto.CipherSpec;
 import org.syncany.crypto.CipherSpecs;
 import org.syncany.crypto.CipherUtil;
+import org.syncany.database.dao.DatabaseSerializer;
 import org.syncany.operations.OperationResult;
 import org.syncany.operations.init.GenlinkOperationOptions;
 import org.syncany.operations.init.InitOperation;
@@ -97,6 +98,8 @@ public class InitCommand extends AbstractInitCommand {
 		OptionSpec<Void> optionShortUrl = parser.acceptsAll(asList("s", "short"));
 		OptionSpec<Void> optionHeadlessMode = parser.acceptsAll(asList("l", "headless"));
 		OptionSpec<String> optionPassword = parser.acceptsAll(asList("password")).withRequiredArg();
+		OptionSpec<String> optionDatabaseFormat = parser.acceptsAll(asList("database-format")).withRequiredArg();
+		OptionSpec<Void> optionConvergent = parser.acceptsAll(asList("convergent"));
 
 		OptionSet options = parser.parse(operationArguments);
 
@@ -134,6 +137,22 @@ public class InitCommand extends AbstractInitCommand {
 		ConfigTO configTO = createConfigTO(transferSettings);
 		RepoTO repoTO = repoTOFactory.createRepoTO();
 
+		// Database format: --database-format=<xml|binary>
+		if (options.has(optionDatabaseFormat)) {
+			String databaseFormat = options.valueOf(optionDatabaseFormat);
+
+			if (DatabaseSerializer.getInstance(databaseFormat, null) == null) {
+				throw new IllegalArgumentException("Invalid database format: " + databaseFormat);
+			}
+
+			repoTO.setDatabaseFormat(databaseFormat);
+		}
+
+		// Convergent multichunks: --convergent
+		if (options.has(optionConvergent)) {
+			repoTO.setConvergent(true);
+		}
+
 		operationOptions.setLocalDir(localDir);
 		operationOptions.setConfigTO(configTO);
 		operationOptions.setRepoTO(repoTO);
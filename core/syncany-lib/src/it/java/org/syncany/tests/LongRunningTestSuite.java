@@ -20,6 +20,7 @@ package org.syncany.tests;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
+import org.syncany.tests.integration.crypto.SegmentedCipherPerformanceTest;
 import org.syncany.tests.integration.scenarios.longrunning.LongRunningLargeFileScenarioTest;
 import org.syncany.tests.integration.scenarios.longrunning.LongRunningLotsOfSmallFilesScenarioTest;
 import org.syncany.tests.integration.scenarios.longrunning.LongRunningNewAndDeleteScenarioTest;
@@ -28,7 +29,8 @@ import org.syncany.tests.integration.scenarios.longrunning.LongRunningNewAndDele
 @SuiteClasses({
 		LongRunningLargeFileScenarioTest.class,
 		LongRunningLotsOfSmallFilesScenarioTest.class,
-		LongRunningNewAndDeleteScenarioTest.class
+		LongRunningNewAndDeleteScenarioTest.class,
+		SegmentedCipherPerformanceTest.class
 })
 public class LongRunningTestSuite {
 	// This class executes all tests
@@ -0,0 +1,115 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+import org.syncany.crypto.CipherSpec;
+import org.syncany.crypto.CipherSpecs;
+import org.syncany.crypto.MultiCipherOutputStream;
+import org.syncany.crypto.SegmentCipher;
+import org.syncany.crypto.SegmentedCipherOutputStream;
+
+/**
+ * Measures the throughput of the segmented encryption with 1 to N worker
+ * threads (N = number of processors, at least 2), and verifies that the output
+ * does not depend on the number of threads. The results are only logged, since
+ * they depend on the machine.
+ */
+public class SegmentedCipherPerformanceTest {
+	private static final Logger logger = Logger.getLogger(SegmentedCipherPerformanceTest.class.getSimpleName());
+
+	private static final int PLAINTEXT_SIZE = 32 * 1024 * 1024;
+	private static final int ROUNDS = 3;
+
+	@Test
+	public void testSegmentedEncryptionScaling() throws Exception {
+		List<CipherSpec> cipherSpecs = Arrays.asList(new CipherSpec[] {
+			CipherSpecs.getCipherSpec(CipherSpecs.AES_128_GCM),
+			CipherSpecs.getCipherSpec(CipherSpecs.TWOFISH_128_GCM)
+		});
+
+		SegmentCipher segmentCipher = new SegmentCipher(cipherSpecs,
+			Arrays.asList(createRandomArray(16, 1), createRandomArray(16, 2)),
+			Arrays.asList(createRandomArray(16, 3), createRandomArray(16, 4)));
+
+		byte[] plaintext = createRandomArray(PLAINTEXT_SIZE, 5);
+		byte[] singleThreadedCiphertext = null;
+
+		int maxThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+		for (int threads = 1; threads <= maxThreads; threads++) {
+			ExecutorService segmentExecutor = (threads > 1) ? Executors.newFixedThreadPool(threads) : null;
+
+			try {
+				long bestTime = Long.MAX_VALUE;
+				byte[] ciphertext = null;
+
+				for (int round = 0; round < ROUNDS; round++) {
+					long startTime = System.nanoTime();
+					ciphertext = encrypt(plaintext, segmentCipher, segmentExecutor, 2 * threads);
+					bestTime = Math.min(bestTime, System.nanoTime() - startTime);
+				}
+
+				if (singleThreadedCiphertext == null) {
+					singleThreadedCiphertext = ciphertext;
+				}
+				else {
+					assertArrayEquals("Output with " + threads + " threads differs from single-threaded output", singleThreadedCiphertext, ciphertext);
+				}
+
+				double throughput = (PLAINTEXT_SIZE / 1024.0 / 1024.0) / (bestTime / 1000000000.0);
+				logger.log(Level.INFO, String.format("Segmented encryption with %d thread(s): %.1f MB/s (best of %d)", threads, throughput, ROUNDS));
+			}
+			finally {
+				if (segmentExecutor != null) {
+					segmentExecutor.shutdown();
+				}
+			}
+		}
+	}
+
+	private byte[] encrypt(byte[] plaintext, SegmentCipher segmentCipher, ExecutorService segmentExecutor, int maxPendingSegments) throws Exception {
+		ByteArrayOutputStream ciphertextOutputStream = new ByteArrayOutputStream(PLAINTEXT_SIZE + PLAINTEXT_SIZE / 100);
+		OutputStream segmentedOutputStream = new SegmentedCipherOutputStream(ciphertextOutputStream, segmentCipher,
+			MultiCipherOutputStream.DEFAULT_SEGMENT_SIZE, segmentExecutor, maxPendingSegments);
+
+		segmentedOutputStream.write(plaintext);
+		segmentedOutputStream.close();
+
+		return ciphertextOutputStream.toByteArray();
+	}
+
+	private byte[] createRandomArray(int size, long seed) {
+		byte[] randomArray = new byte[size];
+		new Random(seed).nextBytes(randomArray);
+
+		return randomArray;
+	}
+}
@@ -20,6 +20,7 @@ package org.syncany.tests.integration.database;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 
@@ -406,4 +407,44 @@ public class MemoryDatabaseCacheTest {
 		assertNull(database.getFileHistory(idFile1));		
 	}
 
+	@Test
+	public void testEstimatedSize() throws IOException {
+		MemoryDatabase database = new MemoryDatabase();
+		assertEquals(0, database.getEstimatedSize());
+
+		// Round 1: Add file history & version
+		DatabaseVersion databaseVersion1 = TestDatabaseUtil.createDatabaseVersion();
+
+		FileHistoryId idFile1 = FileHistoryId.parseFileId("1111111111111111");
+		PartialFileHistory fileHistory1 = new PartialFileHistory(idFile1);
+
+		fileHistory1.addFileVersion(TestDatabaseUtil.createFileVersion("file.jpg"));
+		databaseVersion1.addFileHistory(fileHistory1);
+		databaseVersion1.addChunk(new ChunkEntry(new ChunkChecksum(new byte[] { 1, 2, 3, 4, 5, 7, 8, 9, 0 }), 12));
+
+		database.addDatabaseVersion(databaseVersion1);
+
+		long estimatedSizeRound1 = database.getEstimatedSize();
+		assertTrue(estimatedSizeRound1 > 0);
+
+		// Round 2: Add another version of the same file
+		DatabaseVersion databaseVersion2 = TestDatabaseUtil.createDatabaseVersion(databaseVersion1);
+
+		PartialFileHistory fileHistory1b = new PartialFileHistory(idFile1);
+		fileHistory1b.addFileVersion(TestDatabaseUtil.createFileVersion("file.jpg", fileHistory1.getLastVersion()));
+		databaseVersion2.addFileHistory(fileHistory1b);
+
+		database.addDatabaseVersion(databaseVersion2);
+
+		long estimatedSizeRound2 = database.getEstimatedSize();
+		assertTrue(estimatedSizeRound2 > estimatedSizeRound1);
+
+		// Round 3: Remove second database version again
+		database.removeDatabaseVersion(databaseVersion2);
+		assertEquals(estimatedSizeRound1, database.getEstimatedSize());
+
+		// Round 4: Remove first database version
+		database.removeDatabaseVersion(databaseVersion1);
+		assertEquals(0, database.getEstimatedSize());
+	}
 }
@@ -17,6 +17,7 @@
  */
 package org.syncany.tests.integration.database.dao;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -27,6 +28,7 @@ import java.util.List;
 
 import org.junit.Test;
 import org.syncany.config.Config;
+import org.syncany.database.SqlDatabase;
 import org.syncany.database.dao.ApplicationSqlDao;
 import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
 import org.syncany.tests.util.TestConfigUtil;
@@ -109,4 +111,72 @@ public class ApplicationDaoTest {
 		databaseConnection.close();
 		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
 	}
+
+	@Test
+	public void testSetWriteDelay() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		String writeDelayQuery = "SELECT property_value FROM information_schema.system_properties WHERE property_name='hsqldb.write_delay_millis'";
+
+		// Run & Test
+		ApplicationSqlDao applicationDao = new ApplicationSqlDao(databaseConnection);
+		assertEquals("0", TestSqlUtil.runSqlSelect(writeDelayQuery, databaseConnection));
+
+		applicationDao.setWriteDelay(5000);
+		assertEquals("5000", TestSqlUtil.runSqlSelect(writeDelayQuery, databaseConnection));
+
+		applicationDao.setWriteDelay(0);
+		assertEquals("0", TestSqlUtil.runSqlSelect(writeDelayQuery, databaseConnection));
+
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	@Test
+	public void testWriteDelayResetOnNewConnection() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		String writeDelayQuery = "SELECT property_value FROM information_schema.system_properties WHERE property_name='hsqldb.write_delay_millis'";
+
+		// Run
+		new ApplicationSqlDao(databaseConnection).setWriteDelay(5000);
+		Connection otherDatabaseConnection = testConfig.createDatabaseConnection();
+
+		// Test
+		assertEquals("0", TestSqlUtil.runSqlSelect(writeDelayQuery, otherDatabaseConnection));
+
+		// Tear down
+		otherDatabaseConnection.close();
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	@Test
+	public void testWriteDelayKeptOnNewConnectionDuringGroupCommit() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		SqlDatabase database = new SqlDatabase(testConfig);
+
+		String writeDelayQuery = "SELECT property_value FROM information_schema.system_properties WHERE property_name='hsqldb.write_delay_millis'";
+
+		// Run
+		database.beginGroupCommit();
+		Connection otherDatabaseConnection = testConfig.createDatabaseConnection();
+
+		// Test
+		assertEquals(Integer.toString(SqlDatabase.GROUP_COMMIT_WRITE_DELAY), TestSqlUtil.runSqlSelect(writeDelayQuery, otherDatabaseConnection));
+
+		database.endGroupCommit();
+		assertEquals("0", TestSqlUtil.runSqlSelect(writeDelayQuery, otherDatabaseConnection));
+
+		// Tear down
+		otherDatabaseConnection.close();
+		database.shutdown();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
 }
@@ -0,0 +1,318 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.database.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.chunk.CipherTransformer;
+import org.syncany.chunk.GzipTransformer;
+import org.syncany.chunk.Transformer;
+import org.syncany.config.Logging;
+import org.syncany.crypto.CipherSpecs;
+import org.syncany.crypto.CipherUtil;
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.FileContent;
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.MemoryDatabase;
+import org.syncany.database.MultiChunkEntry;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.database.VectorClock;
+import org.syncany.database.dao.DatabaseBinarySerializer;
+import org.syncany.database.dao.DatabaseSerializer;
+import org.syncany.database.dao.DatabaseSerializer.DatabaseReadType;
+import org.syncany.database.dao.DatabaseXmlSerializer;
+import org.syncany.tests.util.TestAssertUtil;
+import org.syncany.tests.util.TestFileUtil;
+
+public class BinaryDatabaseDaoTest {
+	private File tempDir;
+
+	static {
+		Logging.init();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+	}
+
+	@After
+	public void tearDown() {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testWriteAndReadFullDatabase() throws IOException {
+		MemoryDatabase writtenDatabase = createDatabase(3);
+		File databaseFile = new File(tempDir, "db-binary");
+
+		new DatabaseBinarySerializer().save(writtenDatabase.getDatabaseVersions(), databaseFile);
+
+		MemoryDatabase readDatabase = new MemoryDatabase();
+		new DatabaseBinarySerializer().load(readDatabase, databaseFile, null, null, DatabaseReadType.FULL);
+
+		TestAssertUtil.assertDatabaseEquals(writtenDatabase, readDatabase);
+	}
+
+	@Test
+	public void testWriteAndReadWithTransformer() throws IOException {
+		MemoryDatabase writtenDatabase = createDatabase(3);
+		File databaseFile = new File(tempDir, "db-binary-gzip");
+
+		new DatabaseBinarySerializer(new GzipTransformer()).save(writtenDatabase.getDatabaseVersions(), databaseFile);
+
+		MemoryDatabase readDatabase = new MemoryDatabase();
+		new DatabaseBinarySerializer(new GzipTransformer()).load(readDatabase, databaseFile, null, null, DatabaseReadType.FULL);
+
+		TestAssertUtil.assertDatabaseEquals(writtenDatabase, readDatabase);
+	}
+
+	@Test
+	public void testWriteAndReadWithCipherTransformer() throws Exception {
+		Transformer transformer = new GzipTransformer();
+		transformer.setNextTransformer(new CipherTransformer(CipherSpecs.getDefaultCipherSpecs(), CipherUtil.createMasterKey("some password")));
+
+		MemoryDatabase writtenDatabase = createDatabase(3);
+		File databaseFile = new File(tempDir, "db-binary-cipher");
+
+		new DatabaseBinarySerializer(transformer).save(writtenDatabase.getDatabaseVersions(), databaseFile);
+
+		MemoryDatabase readDatabase = new MemoryDatabase();
+		new DatabaseBinarySerializer(transformer).load(readDatabase, databaseFile, null, null, DatabaseReadType.FULL);
+
+		TestAssertUtil.assertDatabaseEquals(writtenDatabase, readDatabase);
+
+		MemoryDatabase readHeadersDatabase = new MemoryDatabase();
+		new DatabaseBinarySerializer(transformer).load(readHeadersDatabase, databaseFile, null, null, DatabaseReadType.HEADER_ONLY);
+
+		assertEquals(3, readHeadersDatabase.getDatabaseVersions().size());
+	}
+
+	@Test
+	public void testReadPartialRange() throws IOException {
+		MemoryDatabase writtenDatabase = createDatabase(10);
+		List<DatabaseVersion> writtenDatabaseVersions = writtenDatabase.getDatabaseVersions();
+		File databaseFile = new File(tempDir, "db-binary-range");
+
+		new DatabaseBinarySerializer(new GzipTransformer()).save(writtenDatabaseVersions, databaseFile);
+
+		// Read (someclient3) to (someclient6)
+		VectorClock fromVersion = writtenDatabaseVersions.get(2).getVectorClock();
+		VectorClock toVersion = writtenDatabaseVersions.get(5).getVectorClock();
+
+		MemoryDatabase readDatabase = new MemoryDatabase();
+		new DatabaseBinarySerializer(new GzipTransformer()).load(readDatabase, databaseFile, fromVersion, toVersion, DatabaseReadType.FULL);
+
+		assertEquals(4, readDatabase.getDatabaseVersions().size());
+
+		for (int i = 0; i < 4; i++) {
+			TestAssertUtil.assertDatabaseVersionEquals(writtenDatabaseVersions.get(i + 2), readDatabase.getDatabaseVersions().get(i));
+		}
+	}
+
+	@Test
+	public void testReadHeadersOnly() throws IOException {
+		MemoryDatabase writtenDatabase = createDatabase(5);
+		File databaseFile = new File(tempDir, "db-binary-headers");
+
+		new DatabaseBinarySerializer().save(writtenDatabase.getDatabaseVersions(), databaseFile);
+
+		MemoryDatabase readDatabase = new MemoryDatabase();
+		new DatabaseBinarySerializer().load(readDatabase, databaseFile, null, null, DatabaseReadType.HEADER_ONLY);
+
+		assertEquals(5, readDatabase.getDatabaseVersions().size());
+
+		for (int i = 0; i < 5; i++) {
+			DatabaseVersion readDatabaseVersion = readDatabase.getDatabaseVersions().get(i);
+
+			assertEquals(writtenDatabase.getDatabaseVersions().get(i).getHeader(), readDatabaseVersion.getHeader());
+			assertEquals(0, readDatabaseVersion.getChunks().size());
+			assertEquals(0, readDatabaseVersion.getFileHistories().size());
+		}
+	}
+
+	@Test
+	public void testReadHeadersOnlyDoesNotReadPayloads() throws IOException {
+		MemoryDatabase writtenDatabase = createDatabase(5);
+		File databaseFile = new File(tempDir, "db-binary-headers-truncated");
+
+		new DatabaseBinarySerializer(new GzipTransformer()).save(writtenDatabase.getDatabaseVersions(), databaseFile);
+
+		// Corrupt payload section by cutting off the end of the file
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(databaseFile, "rw")) {
+			randomAccessFile.setLength(randomAccessFile.length() - 100);
+		}
+
+		// Headers can still be read
+		MemoryDatabase readDatabase = new MemoryDatabase();
+		new DatabaseBinarySerializer(new GzipTransformer()).load(readDatabase, databaseFile, null, null, DatabaseReadType.HEADER_ONLY);
+
+		assertEquals(5, readDatabase.getDatabaseVersions().size());
+
+		// Full read fails
+		try {
+			new DatabaseBinarySerializer(new GzipTransformer()).load(new MemoryDatabase(), databaseFile, null, null, DatabaseReadType.FULL);
+			fail("Reading truncated payloads should fail.");
+		}
+		catch (IOException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testReadXmlAndBinaryWithAnySerializer() throws IOException {
+		MemoryDatabase writtenDatabase = createDatabase(2);
+
+		File xmlDatabaseFile = new File(tempDir, "db-xml");
+		File binaryDatabaseFile = new File(tempDir, "db-binary");
+
+		new DatabaseXmlSerializer().save(writtenDatabase.getDatabaseVersions(), xmlDatabaseFile);
+		new DatabaseBinarySerializer().save(writtenDatabase.getDatabaseVersions(), binaryDatabaseFile);
+
+		for (DatabaseSerializer readSerializer : new DatabaseSerializer[] { new DatabaseXmlSerializer(), new DatabaseBinarySerializer() }) {
+			for (File databaseFile : new File[] { xmlDatabaseFile, binaryDatabaseFile }) {
+				MemoryDatabase readDatabase = new MemoryDatabase();
+				readSerializer.load(readDatabase, databaseFile, null, null, DatabaseReadType.FULL);
+
+				TestAssertUtil.assertDatabaseEquals(writtenDatabase, readDatabase);
+			}
+		}
+
+		assertTrue("Binary file should be smaller than XML file.", binaryDatabaseFile.length() < xmlDatabaseFile.length());
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadUnsupportedFormatVersion() throws IOException {
+		File databaseFile = new File(tempDir, "db-binary-future");
+		new DatabaseBinarySerializer().save(createDatabase(1).getDatabaseVersions(), databaseFile);
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(databaseFile, "rw")) {
+			randomAccessFile.seek(4); // after magic bytes
+			randomAccessFile.write(99);
+		}
+
+		new DatabaseBinarySerializer().load(new MemoryDatabase(), databaseFile, null, null, DatabaseReadType.FULL);
+	}
+
+	@Test
+	public void testGetInstance() {
+		assertTrue(DatabaseSerializer.getInstance("xml", null) instanceof DatabaseXmlSerializer);
+		assertTrue(DatabaseSerializer.getInstance("binary", null) instanceof DatabaseBinarySerializer);
+		assertEquals(null, DatabaseSerializer.getInstance("invalid", null));
+	}
+
+	private MemoryDatabase createDatabase(int databaseVersionCount) {
+		MemoryDatabase database = new MemoryDatabase();
+		DatabaseVersion previousDatabaseVersion = null;
+
+		for (int i = 0; i < databaseVersionCount; i++) {
+			DatabaseVersion databaseVersion = createDatabaseVersion(previousDatabaseVersion, i);
+
+			database.addDatabaseVersion(databaseVersion);
+			previousDatabaseVersion = databaseVersion;
+		}
+
+		return database;
+	}
+
+	private DatabaseVersion createDatabaseVersion(DatabaseVersion basedOnDatabaseVersion, int index) {
+		VectorClock vectorClock = (basedOnDatabaseVersion != null) ? basedOnDatabaseVersion.getVectorClock().clone() : new VectorClock();
+		vectorClock.incrementClock("someclient");
+
+		DatabaseVersion databaseVersion = new DatabaseVersion();
+
+		databaseVersion.setClient("someclient");
+		databaseVersion.setTimestamp(new Date(1400000000000L + index));
+		databaseVersion.setVectorClock(vectorClock);
+
+		// Chunks, multichunk and file content
+		ChunkEntry chunkA = new ChunkEntry(new ChunkChecksum(TestFileUtil.createRandomArray(20)), 512 * 1024);
+		ChunkEntry chunkB = new ChunkEntry(new ChunkChecksum(TestFileUtil.createRandomArray(20)), 17);
+
+		databaseVersion.addChunk(chunkA);
+		databaseVersion.addChunk(chunkB);
+
+		MultiChunkEntry multiChunk = new MultiChunkEntry(new MultiChunkId(TestFileUtil.createRandomArray(32)), 4 * 1024 * 1024);
+		multiChunk.addChunk(chunkA.getChecksum());
+		multiChunk.addChunk(chunkB.getChecksum());
+
+		databaseVersion.addMultiChunk(multiChunk);
+
+		FileContent fileContent = new FileContent();
+		fileContent.setChecksum(new FileChecksum(TestFileUtil.createRandomArray(20)));
+		fileContent.setSize(512L * 1024 + 17);
+		fileContent.addChunk(chunkA.getChecksum());
+		fileContent.addChunk(chunkB.getChecksum());
+
+		databaseVersion.addFileContent(fileContent);
+
+		// File with all optional fields
+		PartialFileHistory fileHistory = new PartialFileHistory(FileHistoryId.secureRandomFileId());
+
+		FileVersion fileVersion = new FileVersion();
+		fileVersion.setVersion(1L);
+		fileVersion.setType(FileType.FILE);
+		fileVersion.setStatus(FileStatus.NEW);
+		fileVersion.setPath("folder/file " + index + " äöü \u0001.jpg");
+		fileVersion.setSize(fileContent.getSize());
+		fileVersion.setLastModified(new Date(-1000L * index)); // before 1970!
+		fileVersion.setUpdated(new Date(1400000000000L));
+		fileVersion.setChecksum(fileContent.getChecksum());
+		fileVersion.setDosAttributes("rha-");
+		fileVersion.setPosixPermissions("rw-r--r--");
+
+		fileHistory.addFileVersion(fileVersion);
+		databaseVersion.addFileHistory(fileHistory);
+
+		// Symlink with minimal fields
+		PartialFileHistory symlinkHistory = new PartialFileHistory(FileHistoryId.secureRandomFileId());
+
+		FileVersion symlinkVersion = new FileVersion();
+		symlinkVersion.setVersion(1L);
+		symlinkVersion.setType(FileType.SYMLINK);
+		symlinkVersion.setStatus(FileStatus.DELETED);
+		symlinkVersion.setPath("folder/link" + index);
+		symlinkVersion.setSize(0L);
+		symlinkVersion.setLastModified(new Date(1400000000000L));
+		symlinkVersion.setLinkTarget("/some/target");
+
+		symlinkHistory.addFileVersion(symlinkVersion);
+		databaseVersion.addFileHistory(symlinkHistory);
+
+		return databaseVersion;
+	}
+}
@@ -20,14 +20,17 @@ package org.syncany.tests.integration.database.dao;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.sql.Connection;
+import java.util.Arrays;
 import java.util.Map;
 
 import org.junit.Test;
 import org.syncany.config.Config;
 import org.syncany.database.ChunkEntry;
 import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.ChunkIndex;
 import org.syncany.database.dao.ChunkSqlDao;
 import org.syncany.tests.util.TestConfigUtil;
 import org.syncany.tests.util.TestDatabaseUtil;
@@ -65,6 +68,78 @@ public class ChunkDaoTest {
 		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
 	}
 	
+	@Test
+	public void testGetChunkAfterWriteChunks() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		// Run
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set3.sql");
+		
+		ChunkIndex chunkIndex = new ChunkIndex();
+		ChunkSqlDao chunkDao = new ChunkSqlDao(databaseConnection, chunkIndex);
+		
+		ChunkChecksum newChunkChecksum = ChunkChecksum.parseChunkChecksum("beefbeefbeefbeefbeefbeefbeefbeefbeefbeef");
+		ChunkEntry chunkBeforeWrite = chunkDao.getChunk(newChunkChecksum); // Loads index
+		int chunkIndexSizeBeforeWrite = chunkIndex.size();
+		
+		chunkDao.writeChunks(databaseConnection, 0, Arrays.asList(new ChunkEntry(newChunkChecksum, 1234)));
+		databaseConnection.commit();
+		
+		ChunkEntry chunkAfterWrite = chunkDao.getChunk(newChunkChecksum);
+		
+		// Test
+		assertNull(chunkBeforeWrite);
+		assertNotNull(chunkAfterWrite);
+		assertEquals(1234, chunkAfterWrite.getSize());
+		
+		assertTrue(chunkIndex.isLoaded()); // Not reloaded
+		assertEquals(chunkIndexSizeBeforeWrite + 1, chunkIndex.size());
+		
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+	
+	@Test
+	public void testRemoveUnreferencedChunksUpdatesIndex() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		// Run
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set3.sql");
+		
+		ChunkIndex chunkIndex = new ChunkIndex();
+		ChunkSqlDao chunkDao = new ChunkSqlDao(databaseConnection, chunkIndex);
+		
+		ChunkChecksum referencedChunkChecksum = ChunkChecksum.parseChunkChecksum("615fba8c2281d5bee891eb092a252d235c237457");
+		ChunkChecksum unreferencedChunkChecksum = ChunkChecksum.parseChunkChecksum("beefbeefbeefbeefbeefbeefbeefbeefbeefbeef");
+		
+		chunkDao.writeChunks(databaseConnection, 0, Arrays.asList(new ChunkEntry(unreferencedChunkChecksum, 1234)));
+		databaseConnection.commit();
+		
+		ChunkEntry unreferencedChunkBeforeRemove = chunkDao.getChunk(unreferencedChunkChecksum); // Loads index		
+		
+		chunkDao.removeUnreferencedChunks();
+		databaseConnection.commit();
+		
+		ChunkEntry unreferencedChunkAfterRemove = chunkDao.getChunk(unreferencedChunkChecksum);
+		ChunkEntry referencedChunkAfterRemove = chunkDao.getChunk(referencedChunkChecksum);
+		
+		// Test
+		assertNotNull(unreferencedChunkBeforeRemove);
+		assertNull(unreferencedChunkAfterRemove);
+		assertNotNull(referencedChunkAfterRemove);
+		
+		assertTrue(chunkIndex.isLoaded()); // Not reloaded
+		
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+	
 	@Test
 	public void testGetChunksForDatabaseVersion() throws Exception {
 		// Setup
@@ -350,6 +350,85 @@ public class DatabaseVersionDaoTest {
 		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
 	}
 
+	@Test
+	public void testPersistLargeDatabaseVersion() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		// Run
+		ChunkSqlDao chunkDao = new ChunkSqlDao(databaseConnection);
+		MultiChunkSqlDao multiChunkDao = new MultiChunkSqlDao(databaseConnection);
+		FileVersionSqlDao fileVersionDao = new FileVersionSqlDao(databaseConnection);
+		FileHistorySqlDao fileHistoryDao = new FileHistorySqlDao(databaseConnection, fileVersionDao);
+		FileContentSqlDao fileContentDao = new FileContentSqlDao(databaseConnection);
+		DatabaseVersionSqlDao databaseVersionDao = new DatabaseVersionSqlDao(databaseConnection, chunkDao, fileContentDao, fileVersionDao,
+				fileHistoryDao, multiChunkDao);
+
+		// a. Create database version with more rows than fit in a single batch
+		int fileCount = 6000;
+
+		DatabaseVersion newDatabaseVersion = new DatabaseVersion();
+		DatabaseVersionHeader newDatabaseVersionHeader = new DatabaseVersionHeader();
+
+		newDatabaseVersionHeader.setClient("A");
+		newDatabaseVersionHeader.setDate(new Date(1489977288000L));
+		newDatabaseVersionHeader.setVectorClock(TestDatabaseUtil.createVectorClock("A1"));
+
+		newDatabaseVersion.setHeader(newDatabaseVersionHeader);
+
+		MultiChunkEntry newMultiChunkEntry = new MultiChunkEntry(MultiChunkId.parseMultiChunkId("1234567890987654321234567876543456555555"), 10);
+		newDatabaseVersion.addMultiChunk(newMultiChunkEntry);
+
+		for (int i = 0; i < fileCount; i++) {
+			String checksumStr = String.format("%040x", i);
+
+			ChunkEntry newChunkEntry = new ChunkEntry(ChunkChecksum.parseChunkChecksum(checksumStr), 1);
+			newDatabaseVersion.addChunk(newChunkEntry);
+			newMultiChunkEntry.addChunk(newChunkEntry.getChecksum());
+
+			FileContent newFileContent = new FileContent();
+			newFileContent.setChecksum(FileChecksum.parseFileChecksum(checksumStr));
+			newFileContent.setSize(1L);
+			newFileContent.addChunk(newChunkEntry.getChecksum());
+			newDatabaseVersion.addFileContent(newFileContent);
+
+			FileVersion newFileVersion = new FileVersion();
+			newFileVersion.setVersion(1L);
+			newFileVersion.setPath("file" + i);
+			newFileVersion.setChecksum(newFileContent.getChecksum());
+			newFileVersion.setStatus(FileStatus.NEW);
+			newFileVersion.setLastModified(new Date());
+			newFileVersion.setUpdated(new Date());
+			newFileVersion.setSize(1L);
+			newFileVersion.setType(FileType.FILE);
+
+			PartialFileHistory newFileHistory = new PartialFileHistory(FileHistoryId.secureRandomFileId());
+			newFileHistory.addFileVersion(newFileVersion);
+			newDatabaseVersion.addFileHistory(newFileHistory);
+		}
+
+		// b. Persist database version
+		databaseVersionDao.writeDatabaseVersion(newDatabaseVersion);
+		databaseConnection.commit();
+
+		// Test
+		assertEquals("" + fileCount, TestSqlUtil.runSqlSelect("select count(*) from chunk", databaseConnection));
+		assertEquals("" + fileCount, TestSqlUtil.runSqlSelect("select count(*) from multichunk_chunk", databaseConnection));
+		assertEquals("" + fileCount, TestSqlUtil.runSqlSelect("select count(*) from filecontent", databaseConnection));
+		assertEquals("" + fileCount, TestSqlUtil.runSqlSelect("select count(*) from filecontent_chunk", databaseConnection));
+		assertEquals("" + fileCount, TestSqlUtil.runSqlSelect("select count(*) from filehistory", databaseConnection));
+		assertEquals("" + fileCount, TestSqlUtil.runSqlSelect("select count(*) from fileversion", databaseConnection));
+
+		FileContent lastFileContent = fileContentDao.getFileContent(FileChecksum.parseFileChecksum(String.format("%040x", fileCount - 1)), true);
+		assertNotNull(lastFileContent);
+		assertEquals(1, lastFileContent.getChunks().size());
+
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
 	@Test
 	public void testGetLocalDatabaseBranch1() throws Exception {
 		// Setup
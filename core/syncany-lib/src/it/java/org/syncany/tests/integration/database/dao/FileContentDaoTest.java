@@ -22,10 +22,14 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
 import java.sql.Connection;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Test;
 import org.syncany.config.Config;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.ChunkPosition;
 import org.syncany.database.FileContent;
 import org.syncany.database.FileContent.FileChecksum;
 import org.syncany.database.dao.FileContentSqlDao;
@@ -149,4 +153,44 @@ public class FileContentDaoTest {
 		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
 	}
 
+	@Test
+	public void testGetChunkPositions() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		// Run
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set3.sql");
+
+		FileContentSqlDao fileContentDao = new FileContentSqlDao(databaseConnection);
+
+		Map<ChunkChecksum, List<ChunkPosition>> chunkPositions = fileContentDao.getChunkPositions(Arrays.asList(new ChunkChecksum[] {
+				ChunkChecksum.parseChunkChecksum("7666fd3b860c9d7588d9ca1807eebdf8cfaa8be3"), // Current version of 'new.txt'
+				ChunkChecksum.parseChunkChecksum("eba69a8e359ce3258520138a50ed9860127ab6e0"), // Current version of conflicted copy
+				ChunkChecksum.parseChunkChecksum("24a39e00d6156804e27f7c0987d00903da8e6682"), // Previous version of 'new.txt'
+				ChunkChecksum.parseChunkChecksum("ab85720d3f31bd08ca1cd25dcd8a490e5f00783b"), // Deleted file
+				ChunkChecksum.parseChunkChecksum("beefbeefbeefbeefbeefbeefbeefbeefbeefbeef") // Non-existing chunk
+		}));
+
+		// Test
+		assertEquals(2, chunkPositions.size());
+
+		List<ChunkPosition> chunkPositions1 = chunkPositions.get(ChunkChecksum.parseChunkChecksum("7666fd3b860c9d7588d9ca1807eebdf8cfaa8be3"));
+		assertNotNull(chunkPositions1);
+		assertEquals(1, chunkPositions1.size());
+		assertEquals("new.txt", chunkPositions1.get(0).getPath());
+		assertEquals(2029, chunkPositions1.get(0).getFileSize());
+		assertEquals(0, chunkPositions1.get(0).getOffset());
+		assertEquals(2029, chunkPositions1.get(0).getSize());
+
+		List<ChunkPosition> chunkPositions2 = chunkPositions.get(ChunkChecksum.parseChunkChecksum("eba69a8e359ce3258520138a50ed9860127ab6e0"));
+		assertNotNull(chunkPositions2);
+		assertEquals(1, chunkPositions2.size());
+		assertEquals("new (pheckel's conflicted copy, 17 Jan 14, 5-47 PM).txt", chunkPositions2.get(0).getPath());
+		assertEquals(512, chunkPositions2.get(0).getSize());
+
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
 }
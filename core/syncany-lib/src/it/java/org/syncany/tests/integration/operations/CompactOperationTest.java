@@ -0,0 +1,143 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.operations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+import org.junit.Test;
+import org.syncany.database.DatabaseConnectionFactory;
+import org.syncany.operations.compact.CompactOperationOptions;
+import org.syncany.operations.compact.CompactOperationResult;
+import org.syncany.plugins.local.LocalTransferSettings;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.util.TestSqlUtil;
+
+public class CompactOperationTest {
+	@Test
+	public void testCompactRemovesUnreferencedEntitiesInBatches() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		clientA.createNewFile("file1.jpg");
+		clientA.createNewFile("file2.jpg");
+		clientA.upWithForceChecksum();
+
+		Connection databaseConnectionA = DatabaseConnectionFactory.createConnection(clientA.getDatabaseFile(), false);
+		String chunkCountBefore = TestSqlUtil.runSqlSelect("select count(*) from chunk", databaseConnectionA);
+		String fileContentCountBefore = TestSqlUtil.runSqlSelect("select count(*) from filecontent", databaseConnectionA);
+
+		// Add unreferenced file contents and chunks (referenced only by the unreferenced file contents)
+		insertUnreferencedFileContentsAndChunks(databaseConnectionA, 5, 7);
+
+		// Run
+		CompactOperationOptions options = new CompactOperationOptions();
+		options.setBatchSize(2);
+
+		CompactOperationResult compactResult = clientA.compact(options);
+
+		// Test
+		assertEquals(0, compactResult.getRemovedFileHistoriesCount());
+		assertEquals(5, compactResult.getRemovedFileContentsCount());
+		assertEquals(7, compactResult.getRemovedChunksCount());
+		assertTrue(compactResult.getDatabaseSizeBefore() > 0);
+		assertTrue(compactResult.getDatabaseSizeAfter() > 0);
+		assertTrue(compactResult.getDuration() >= 0);
+
+		assertEquals(chunkCountBefore, TestSqlUtil.runSqlSelect("select count(*) from chunk", databaseConnectionA));
+		assertEquals(fileContentCountBefore, TestSqlUtil.runSqlSelect("select count(*) from filecontent", databaseConnectionA));
+		assertEquals("0", TestSqlUtil.runSqlSelect("select count(*) from filecontent_chunk where filecontent_checksum like 'ffff%'", databaseConnectionA));
+
+		// Compacting does not change anything that is visible to the user
+		assertFalse(clientA.status().getChangeSet().hasChanges());
+
+		clientA.createNewFile("file3.jpg");
+		clientA.upWithForceChecksum();
+
+		clientB.down();
+		assertEquals(3, clientB.getLocalFiles().size());
+
+		// A second run has nothing to remove
+		CompactOperationResult secondCompactResult = clientA.compact(options);
+
+		assertEquals(0, secondCompactResult.getRemovedFileContentsCount());
+		assertEquals(0, secondCompactResult.getRemovedChunksCount());
+
+		// Tear down
+		databaseConnectionA.close();
+
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testCompactReclaimsSpace() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+
+		clientA.createNewFile("file1.jpg");
+		clientA.upWithForceChecksum();
+
+		Connection databaseConnectionA = DatabaseConnectionFactory.createConnection(clientA.getDatabaseFile(), false);
+		insertUnreferencedFileContentsAndChunks(databaseConnectionA, 0, 20000);
+
+		// Run
+		CompactOperationResult compactResult = clientA.compact();
+
+		// Test
+		assertEquals(20000, compactResult.getRemovedChunksCount());
+		assertTrue(compactResult.getReclaimedSize() > 0);
+		assertEquals(compactResult.getDatabaseSizeBefore() - compactResult.getDatabaseSizeAfter(), compactResult.getReclaimedSize());
+
+		// Tear down
+		databaseConnectionA.close();
+		clientA.deleteTestData();
+	}
+
+	private void insertUnreferencedFileContentsAndChunks(Connection databaseConnection, int fileContentCount, int chunkCount) throws Exception {
+		String databaseVersionId = TestSqlUtil.runSqlSelect("select min(id) from databaseversion", databaseConnection);
+
+		try (PreparedStatement chunkStatement = databaseConnection.prepareStatement("insert into chunk values (?, ?, 1)")) {
+			for (int i = 0; i < chunkCount; i++) {
+				chunkStatement.setString(1, String.format("ffff%036x", i));
+				chunkStatement.setInt(2, Integer.parseInt(databaseVersionId));
+				chunkStatement.addBatch();
+			}
+
+			chunkStatement.executeBatch();
+		}
+
+		for (int i = 0; i < fileContentCount; i++) {
+			String fileContentChecksum = String.format("ffff%036x", i);
+			String chunkChecksum = String.format("ffff%036x", i % chunkCount);
+
+			TestSqlUtil.runSql("insert into filecontent values ('" + fileContentChecksum + "', " + databaseVersionId + ", 1)", databaseConnection);
+			TestSqlUtil.runSql("insert into filecontent_chunk values ('" + fileContentChecksum + "', '" + chunkChecksum + "', 0)", databaseConnection);
+		}
+
+		databaseConnection.commit();
+	}
+}
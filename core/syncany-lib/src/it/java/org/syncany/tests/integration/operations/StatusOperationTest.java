@@ -18,6 +18,7 @@
 package org.syncany.tests.integration.operations;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.util.List;
@@ -31,6 +32,9 @@ import org.syncany.operations.up.UpOperation;
 import org.syncany.operations.up.UpOperationOptions;
 import org.syncany.tests.util.TestFileUtil;
 import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.util.FileUtil;
+
+import com.google.common.collect.Sets;
 
 public class StatusOperationTest {
 
@@ -161,4 +165,115 @@ public class StatusOperationTest {
 		// Cleanup 
 		TestConfigUtil.deleteTestLocalConfigAndData(config);
 	}
+
+	@Test
+	public void testStatusOperationWithWideFileTree() throws Exception {
+		// Setup
+		Config config = TestConfigUtil.createTestLocalConfig();
+
+		// Create 5 folders (2 files each), with 4 sub-folders each (3 files each)
+		for (int i = 0; i < 5; i++) {
+			File folder = new File(config.getLocalDir(), "folder" + i);
+			folder.mkdir();
+
+			TestFileUtil.createRandomFilesInDirectory(folder, 100, 2);
+
+			for (int j = 0; j < 4; j++) {
+				File subFolder = new File(folder, "subfolder" + j);
+				subFolder.mkdir();
+
+				TestFileUtil.createRandomFilesInDirectory(subFolder, 100, 3);
+			}
+		}
+
+		int expectedFileCount = 5 + 5 * 2 + 5 * 4 + 5 * 4 * 3;
+
+		// Run 'status', this SHOULD list all files and folders (walked in parallel)
+		ChangeSet changeSet = (new StatusOperation(config).execute()).getChangeSet();
+		assertEquals(expectedFileCount, changeSet.getNewFiles().size());
+		assertEquals(0, changeSet.getChangedFiles().size());
+		assertEquals(0, changeSet.getDeletedFiles().size());
+
+		// Run 'up', then change a file and delete a folder
+		new UpOperation(config).execute();
+		Thread.sleep(2000);
+
+		File changedFile = new File(config.getLocalDir(), "folder3/subfolder2").listFiles()[0];
+		TestFileUtil.changeRandomPartOfBinaryFile(changedFile);
+		TestFileUtil.deleteDirectory(new File(config.getLocalDir(), "folder1/subfolder0"));
+
+		// Run 'status', this SHOULD list the changed file and the deleted folder and its files
+		changeSet = (new StatusOperation(config).execute()).getChangeSet();
+		assertEquals(0, changeSet.getNewFiles().size());
+		assertEquals(Sets.newHashSet("folder3/subfolder2/" + changedFile.getName()), changeSet.getChangedFiles());
+		assertEquals(1 + 3, changeSet.getDeletedFiles().size());
+		assertEquals(expectedFileCount - 1 - 4, changeSet.getUnchangedFiles().size());
+
+		// Cleanup
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+	}
+
+	@Test
+	public void testStatusLimitedToPaths() throws Exception {
+		// Setup
+		Config config = TestConfigUtil.createTestLocalConfig();
+
+		File folderA = new File(config.getLocalDir(), "folderA");
+		File folderB = new File(config.getLocalDir(), "folderB");
+
+		folderA.mkdir();
+		folderB.mkdir();
+
+		File fileA1 = TestFileUtil.createRandomFileInDirectory(folderA, 40);
+		File fileB1 = TestFileUtil.createRandomFileInDirectory(folderB, 40);
+
+		new UpOperation(config).execute();
+
+		// Change both files, create a new file in folder A
+		Thread.sleep(2000);
+
+		TestFileUtil.changeRandomPartOfBinaryFile(fileA1);
+		TestFileUtil.changeRandomPartOfBinaryFile(fileB1);
+		File fileA2 = TestFileUtil.createRandomFileInDirectory(folderA, 40);
+
+		// Run 'status' for folder A (and a redundant sub-path), this SHOULD NOT list file B1
+		StatusOperationOptions statusOptions = new StatusOperationOptions();
+		statusOptions.setPaths(Sets.newHashSet("folderA", "folderA/" + fileA1.getName()));
+
+		ChangeSet changeSet = (new StatusOperation(config, statusOptions).execute()).getChangeSet();
+		assertEquals(Sets.newHashSet("folderA/" + fileA2.getName()), changeSet.getNewFiles());
+		assertEquals(Sets.newHashSet("folderA/" + fileA1.getName()), changeSet.getChangedFiles());
+		assertEquals(0, changeSet.getDeletedFiles().size());
+		assertTrue(changeSet.getUnchangedFiles().contains("folderA"));
+
+		// Delete file B1; a status for folder A SHOULD NOT list it, a status for file B1 SHOULD
+		TestFileUtil.deleteFile(fileB1);
+
+		changeSet = (new StatusOperation(config, statusOptions).execute()).getChangeSet();
+		assertEquals(0, changeSet.getDeletedFiles().size());
+
+		statusOptions.setPaths(Sets.newHashSet("folderB/" + fileB1.getName()));
+
+		changeSet = (new StatusOperation(config, statusOptions).execute()).getChangeSet();
+		assertEquals(Sets.newHashSet("folderB/" + fileB1.getName()), changeSet.getDeletedFiles());
+		assertEquals(0, changeSet.getNewFiles().size());
+		assertEquals(0, changeSet.getChangedFiles().size());
+
+		// Run 'status' for the app dir, this SHOULD NOT list anything
+		statusOptions.setPaths(Sets.newHashSet(FileUtil.getRelativeDatabasePath(config.getLocalDir(), config.getDatabaseDir())));
+
+		changeSet = (new StatusOperation(config, statusOptions).execute()).getChangeSet();
+		assertEquals(0, changeSet.getNewFiles().size());
+
+		// Run 'status' for the root folder, this SHOULD list everything
+		statusOptions.setPaths(Sets.newHashSet(""));
+
+		changeSet = (new StatusOperation(config, statusOptions).execute()).getChangeSet();
+		assertEquals(1, changeSet.getNewFiles().size());
+		assertEquals(1, changeSet.getChangedFiles().size());
+		assertEquals(1, changeSet.getDeletedFiles().size());
+
+		// Cleanup
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+	}
 }
@@ -0,0 +1,207 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.plugins.unreliable_local;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.plugins.Plugins;
+import org.syncany.plugins.local.LocalTransferSettings;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.RemoteTransaction;
+import org.syncany.plugins.transfer.TransferManagerFactory;
+import org.syncany.plugins.transfer.TransferPlugin;
+import org.syncany.plugins.transfer.features.PathAware;
+import org.syncany.plugins.transfer.features.TransactionAware;
+import org.syncany.plugins.transfer.features.TransactionAwareFeatureTransferManager;
+import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.transfer.files.TempRemoteFile;
+import org.syncany.plugins.transfer.files.TransactionRemoteFile;
+import org.syncany.plugins.unreliable_local.UnreliableLocalTransferSettings;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.util.TestFileUtil;
+
+/**
+ * Tests two clients uploading the same convergent multichunk at the same time:
+ * Neither the second upload, nor the rollback of an interrupted upload may
+ * delete or overwrite the multichunk uploaded by the other client. A rollback
+ * must, however, delete multichunks that were written by the rolled back transaction.
+ */
+public class ConvergentUploadRaceTest {
+	@Test
+	public void testConvergentUploadOfExistingMultiChunk() throws Exception {
+		// Setup
+		LocalTransferSettings connection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+
+		Config configA = TestConfigUtil.createTestLocalConfig("A", connection);
+		Config configB = TestConfigUtil.createTestLocalConfig("B", connection);
+
+		TransactionAwareFeatureTransferManager transferManagerA = createTransferManager(configA);
+		TransactionAwareFeatureTransferManager transferManagerB = createTransferManager(configB);
+
+		MultichunkRemoteFile remoteMultiChunkFile = new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId());
+		File localMultiChunkFileA = TestFileUtil.createRandomFileInDirectory(configA.getCacheDir(), 10 * 1024);
+		File localMultiChunkFileB = TestFileUtil.createRandomFileInDirectory(configB.getCacheDir(), 10 * 1024);
+
+		// Both clients upload the same multichunk; B's final move runs into A's file
+		RemoteTransaction remoteTransactionA = new RemoteTransaction(configA, transferManagerA);
+		remoteTransactionA.upload(localMultiChunkFileA, remoteMultiChunkFile, true);
+
+		RemoteTransaction remoteTransactionB = new RemoteTransaction(configB, transferManagerB);
+		remoteTransactionB.upload(localMultiChunkFileB, remoteMultiChunkFile, true);
+
+		remoteTransactionA.commit();
+		remoteTransactionB.commit(); // Must not fail
+
+		// A's multichunk is kept, and no temporary or transaction files are left over
+		File repoMultiChunkFile = new File(connection.getPath(), "multichunks/" + remoteMultiChunkFile.getName());
+
+		assertArrayEquals(Files.readAllBytes(localMultiChunkFileA.toPath()), Files.readAllBytes(repoMultiChunkFile.toPath()));
+		assertEquals(0, transferManagerA.list(TempRemoteFile.class).size());
+		assertEquals(0, transferManagerA.list(TransactionRemoteFile.class).size());
+
+		// Tear down
+		TestConfigUtil.deleteTestLocalConfigAndData(configA);
+		TestConfigUtil.deleteTestLocalConfigAndData(configB);
+	}
+
+	@Test
+	public void testRollbackOfInterruptedConvergentUpload() throws Exception {
+		// Setup: B fails to upload the multichunk to the temporary location
+		UnreliableLocalTransferSettings connectionB = TestConfigUtil.createTestUnreliableLocalConnection(
+				Arrays.asList(new String[] {
+						// List of failing operations (regex)
+						// Format: abs=<count> rel=<count> op=<connect|init|upload|...> <operation description>
+
+						".+upload.+multichunk"
+				}));
+
+		LocalTransferSettings connectionA = Plugins.get("local", TransferPlugin.class).createEmptySettings();
+		connectionA.setPath(connectionB.getPath());
+
+		Config configA = TestConfigUtil.createTestLocalConfig("A", connectionA);
+		Config configB = TestConfigUtil.createTestLocalConfig("B", connectionB);
+
+		TransactionAwareFeatureTransferManager transferManagerA = createTransferManager(configA);
+		TransactionAwareFeatureTransferManager transferManagerB = createTransferManager(configB);
+
+		MultichunkRemoteFile remoteMultiChunkFile = new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId());
+		File localMultiChunkFile = TestFileUtil.createRandomFileInDirectory(configA.getCacheDir(), 10 * 1024);
+
+		// A uploads the multichunk successfully
+		RemoteTransaction remoteTransactionA = new RemoteTransaction(configA, transferManagerA);
+		remoteTransactionA.upload(localMultiChunkFile, remoteMultiChunkFile, true);
+		remoteTransactionA.commit();
+
+		// B's upload of the same multichunk is interrupted, leaving its transaction behind
+		RemoteTransaction remoteTransactionB = new RemoteTransaction(configB, transferManagerB);
+		remoteTransactionB.upload(localMultiChunkFile, remoteMultiChunkFile, true);
+
+		boolean commitFailed = false;
+
+		try {
+			remoteTransactionB.commit();
+		}
+		catch (StorageException e) {
+			commitFailed = true;
+		}
+
+		assertTrue(commitFailed);
+		assertEquals(1, transferManagerA.list(TransactionRemoteFile.class).size());
+
+		// B rolls back its transaction; this must NOT delete A's multichunk
+		transferManagerB.cleanTransactions();
+
+		assertEquals(0, transferManagerA.list(TransactionRemoteFile.class).size());
+		assertTrue(transferManagerA.list(MultichunkRemoteFile.class).containsKey(remoteMultiChunkFile.getName()));
+		assertFalse(transferManagerA.list(TempRemoteFile.class).size() > 0);
+
+		// Tear down
+		TestConfigUtil.deleteTestLocalConfigAndData(configA);
+		TestConfigUtil.deleteTestLocalConfigAndData(configB);
+	}
+
+	@Test
+	public void testRollbackDeletesConvergentUploadWrittenByTransaction() throws Exception {
+		// Setup: Moving the database file to its final location fails (after the multichunk was moved)
+		UnreliableLocalTransferSettings connection = TestConfigUtil.createTestUnreliableLocalConnection(
+				Arrays.asList(new String[] {
+						// List of failing operations (regex)
+						// Format: abs=<count> rel=<count> op=<connect|init|upload|...> <operation description>
+
+						".+move.+database"
+				}));
+
+		Config config = TestConfigUtil.createTestLocalConfig("A", connection);
+		TransactionAwareFeatureTransferManager transferManager = createTransferManager(config);
+
+		MultichunkRemoteFile remoteMultiChunkFile = new MultichunkRemoteFile(MultiChunkId.secureRandomMultiChunkId());
+		DatabaseRemoteFile remoteDatabaseFile = new DatabaseRemoteFile("A", 1);
+
+		File localMultiChunkFile = TestFileUtil.createRandomFileInDirectory(config.getCacheDir(), 10 * 1024);
+		File localDatabaseFile = TestFileUtil.createRandomFileInDirectory(config.getCacheDir(), 1024);
+
+		// The convergent multichunk reaches its final location, the database file does not
+		RemoteTransaction remoteTransaction = new RemoteTransaction(config, transferManager);
+		remoteTransaction.upload(localMultiChunkFile, remoteMultiChunkFile, true);
+		remoteTransaction.upload(localDatabaseFile, remoteDatabaseFile);
+
+		boolean commitFailed = false;
+
+		try {
+			remoteTransaction.commit();
+		}
+		catch (StorageException e) {
+			commitFailed = true;
+		}
+
+		File repoMultiChunkFile = new File(connection.getPath(), "multichunks/" + remoteMultiChunkFile.getName());
+
+		assertTrue(commitFailed);
+		assertTrue(repoMultiChunkFile.exists());
+		assertEquals(1, transferManager.list(TransactionRemoteFile.class).size());
+
+		// Rolling back the transaction must delete the multichunk written by it
+		transferManager.cleanTransactions();
+
+		assertEquals(0, transferManager.list(TransactionRemoteFile.class).size());
+		assertFalse(repoMultiChunkFile.exists());
+		assertEquals(0, transferManager.list(TempRemoteFile.class).size());
+
+		// Tear down
+		TestConfigUtil.deleteTestLocalConfigAndData(config);
+	}
+
+	private TransactionAwareFeatureTransferManager createTransferManager(Config config) throws StorageException {
+		return TransferManagerFactory
+				.build(config)
+				.withFeature(PathAware.class)
+				.withFeature(TransactionAware.class)
+				.as(TransactionAware.class);
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.scenarios;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
+
+import org.junit.Test;
+import org.syncany.plugins.transfer.TransferSettings;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class ConcurrentApplyChangesScenarioTest {
+	@Test
+	public void testManyNewChangedAndDeletedFilesInManyFolders() throws Exception {
+		// Setup 
+		TransferSettings testConnection = TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		// Run 
+
+		// A: Many new files in nested folders (created concurrently at B)
+		for (int folder = 1; folder <= 5; folder++) {
+			clientA.createNewFolder("folder" + folder);
+			clientA.createNewFolder("folder" + folder + "/sub");
+
+			for (int file = 1; file <= 20; file++) {
+				clientA.createNewFile("folder" + folder + "/file" + file, 5 * 1024);
+				clientA.createNewFile("folder" + folder + "/sub/file" + file, 5 * 1024);
+			}
+		}
+
+		clientA.upWithForceChecksum();
+		clientB.down();
+
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// A: Change, delete and rename files, and replace a folder with a file of the same name
+		for (int file = 1; file <= 20; file++) {
+			clientA.changeFile("folder1/file" + file);
+			clientA.deleteFile("folder2/sub/file" + file);
+		}
+
+		clientA.deleteFile("folder2/sub");
+		clientA.createNewFile("folder2/sub", 5 * 1024);
+
+		clientA.moveFile("folder3/file1", "folder4/file1-moved");
+		clientA.createNewFile("folder3/file1", 10 * 1024);
+
+		clientA.upWithForceChecksum();
+		clientB.down();
+
+		assertTrue(clientB.getLocalFile("folder2/sub").isFile());
+		assertTrue(clientB.getLocalFile("folder4/file1-moved").exists());
+		assertFalse(clientB.getLocalFile("folder2/sub/file1").exists());
+
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.scenarios;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.syncany.config.LocalEventBus;
+import org.syncany.operations.daemon.messages.DownDownloadFileSyncExternalEvent;
+import org.syncany.operations.down.DownOperationResult;
+import org.syncany.plugins.transfer.RemoteTransaction;
+import org.syncany.plugins.transfer.TransferManagerFactory;
+import org.syncany.plugins.transfer.TransferSettings;
+import org.syncany.plugins.transfer.features.PathAware;
+import org.syncany.plugins.transfer.features.TransactionAware;
+import org.syncany.plugins.transfer.features.TransactionAwareFeatureTransferManager;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.transfer.files.TempRemoteFile;
+import org.syncany.plugins.transfer.files.TransactionRemoteFile;
+import org.syncany.plugins.transfer.to.ActionTO;
+import org.syncany.plugins.transfer.to.ActionTO.ActionType;
+import org.syncany.plugins.transfer.to.TransactionTO;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+import com.google.common.eventbus.Subscribe;
+
+public class ConcurrentMultiChunkDownloadScenarioTest {
+	private List<Integer> downloadEventNumbers = Collections.synchronizedList(new ArrayList<Integer>());
+
+	@Test
+	public void testConcurrentMultiChunkDownload() throws Exception {
+		// Setup 
+		TransferSettings testConnection = TestConfigUtil.createTestLocalConnection();		
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		clientB.getConfig().setDownloadThreads(3);
+		LocalEventBus.getInstance().register(this);
+
+		// Run 
+		for (int i = 1; i <= 4; i++) {
+			clientA.createNewFile("A-file" + i, 5 * 1024 * 1024);
+		}
+		
+		clientA.up();
+		
+		DownOperationResult downOperationResult = clientB.down();
+		int downloadedMultiChunkCount = downOperationResult.getDownloadedMultiChunks().size();
+
+		assertTrue("More than one multichunk should have been downloaded.", downloadedMultiChunkCount > 1);
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Progress events must be strictly ordered, even though multichunks are downloaded concurrently
+		assertEquals(downloadedMultiChunkCount, downloadEventNumbers.size());
+
+		for (int i = 0; i < downloadEventNumbers.size(); i++) {
+			assertEquals(i + 1, (int) downloadEventNumbers.get(i));
+		}
+		
+		// Tear down
+		LocalEventBus.getInstance().unregister(this);
+
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}	
+
+	@Test
+	public void testConcurrentMultiChunkDownloadWhileMultiChunkIsBeingDeleted() throws Exception {
+		// Setup 
+		TransferSettings testConnection = TestConfigUtil.createTestLocalConnection();		
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		clientB.getConfig().setDownloadThreads(3);
+
+		for (int i = 1; i <= 4; i++) {
+			clientA.createNewFile("A-file" + i, 5 * 1024 * 1024);
+		}
+		
+		clientA.up();
+
+		// Another client (C) is in the middle of deleting a multichunk (e.g. in cleanup),
+		// i.e. the multichunk has been moved to its temporary location
+		TransactionAwareFeatureTransferManager transferManager = TransferManagerFactory
+				.build(clientA.getConfig())
+				.withFeature(PathAware.class)
+				.withFeature(TransactionAware.class)
+				.as(TransactionAware.class);
+
+		MultichunkRemoteFile deletedMultiChunkFile = transferManager.list(MultichunkRemoteFile.class).values().iterator().next();
+
+		ActionTO deleteAction = new ActionTO();
+		deleteAction.setType(ActionType.DELETE);
+		deleteAction.setRemoteLocation(deletedMultiChunkFile);
+		deleteAction.setRemoteTempLocation(new TempRemoteFile(deletedMultiChunkFile));
+
+		TransactionTO transactionTO = new TransactionTO("C");
+		transactionTO.addAction(deleteAction);
+
+		RemoteTransaction remoteTransaction = new RemoteTransaction(clientA.getConfig(), transferManager, transactionTO);
+		File localTransactionFile = clientA.getConfig().getCache().createTempFile("transaction");
+
+		remoteTransaction.writeToFile(clientA.getConfig().getTransformer(), localTransactionFile);
+		transferManager.upload(localTransactionFile, new TransactionRemoteFile(remoteTransaction));
+		transferManager.move(deletedMultiChunkFile, deleteAction.getTempRemoteFile());
+
+		// Run: Download workers must fall back to the temporary file
+		clientB.down();
+
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}	
+
+	@Subscribe
+	public void onDownloadFileEvent(DownDownloadFileSyncExternalEvent downloadFileEvent) {
+		if ("multichunk".equals(downloadFileEvent.getFileDescription())) {
+			downloadEventNumbers.add(downloadFileEvent.getCurrentFileIndex());
+		}
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.scenarios;
+
+import static org.junit.Assert.assertEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertFileEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
+
+import java.io.File;
+import java.io.FilenameFilter;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.FileVersion;
+import org.syncany.database.SqlDatabase;
+import org.syncany.operations.down.DownOperationOptions;
+import org.syncany.operations.down.DownOperationResult;
+import org.syncany.plugins.transfer.TransferSettings;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class LocalChunksSyncDownScenarioTest {
+	@Test
+	public void testCopiedFileIsAssembledFromLocalChunks() throws Exception {
+		// Setup 
+		TransferSettings testConnection = TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+		TestClient clientC = new TestClient("C", testConnection);
+
+		DownOperationOptions localChunksDownOptions = new DownOperationOptions();
+		localChunksDownOptions.setLocalChunks(true);
+
+		// Run 
+		clientA.createNewFile("A-file.jpg", 500 * 1024);
+		clientA.up();
+
+		clientB.down();
+		clientC.down();
+
+		clientB.getConfig().getCache().clear(0);
+		clientC.getConfig().getCache().clear(0);
+
+		clientA.copyFile("A-file.jpg", "A-file-copy.jpg");
+		clientA.createNewFile("A-new-file.jpg", 50 * 1024);
+		clientA.up();
+
+		// B finds the chunks of the copy locally, and only downloads the new file's multichunk
+		DownOperationResult downResultB = clientB.down(localChunksDownOptions);
+		assertEquals(1, downResultB.getDownloadedMultiChunks().size());
+
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+		assertEquals(0, listLocalChunkFiles(clientB).length);
+
+		// C (regular down) downloads the copy's multichunk again
+		DownOperationResult downResultC = clientC.down();
+		assertEquals(2, downResultC.getDownloadedMultiChunks().size());
+
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientC.getLocalFilesExcludeLockedAndNoRead());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+		clientC.deleteTestData();
+	}
+
+	@Test
+	public void testChangedLocalFileIsNotUsed() throws Exception {
+		// Setup 
+		TransferSettings testConnection = TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		DownOperationOptions localChunksDownOptions = new DownOperationOptions();
+		localChunksDownOptions.setLocalChunks(true);
+
+		// Run 
+		clientA.createNewFile("A-file.jpg", 500 * 1024);
+		clientA.up();
+
+		clientB.down();
+		clientB.getConfig().getCache().clear(0);
+
+		clientA.copyFile("A-file.jpg", "A-file-copy.jpg");
+		clientA.up();
+
+		// B changes its file without uploading the change; the changed chunks must be downloaded
+		clientB.changeFile("A-file.jpg");
+
+		DownOperationResult downResultB = clientB.down(localChunksDownOptions);
+		assertEquals(1, downResultB.getDownloadedMultiChunks().size());
+
+		assertFileEquals(clientA.getLocalFile("A-file-copy.jpg"), clientB.getLocalFile("A-file-copy.jpg"));
+		assertEquals(0, listLocalChunkFiles(clientB).length);
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testLocalChunksWithMultiChunkPrefetching() throws Exception {
+		// Setup 
+		TransferSettings testConnection = TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		// A budget of one byte forces one window per file; chunks are located window by window
+		DownOperationOptions localChunksTinyBudgetDownOptions = new DownOperationOptions();
+		localChunksTinyBudgetDownOptions.setLocalChunks(true);
+		localChunksTinyBudgetDownOptions.setMultiChunkCacheBudget(1);
+
+		// Run 
+		for (int i = 0; i < 3; i++) {
+			clientA.createNewFile("A-file" + i + ".jpg", 200 * 1024);
+			clientA.up();
+		}
+
+		clientB.down();
+		clientB.getConfig().getCache().clear(0);
+
+		for (int i = 0; i < 3; i++) {
+			clientA.copyFile("A-file" + i + ".jpg", "A-file" + i + "-copy.jpg");
+		}
+
+		clientA.createNewFile("A-new-file.jpg", 50 * 1024);
+		clientA.up();
+
+		DownOperationResult downResultB = clientB.down(localChunksTinyBudgetDownOptions);
+		assertEquals(1, downResultB.getDownloadedMultiChunks().size());
+
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+		assertEquals(0, listLocalChunkFiles(clientB).length);
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testLeftoverLocalChunkFilesAreNotUsed() throws Exception {
+		// Setup 
+		TransferSettings testConnection = TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+		TestClient clientC = new TestClient("C", testConnection);
+
+		DownOperationOptions localChunksDownOptions = new DownOperationOptions();
+		localChunksDownOptions.setLocalChunks(true);
+
+		// Run 
+		clientA.createNewFile("A-file.jpg", 500 * 1024);
+		clientA.up();
+
+		clientB.down();
+		clientC.down();
+
+		clientB.getConfig().getCache().clear(0);
+		clientC.getConfig().getCache().clear(0);
+
+		clientA.copyFile("A-file.jpg", "A-file-copy.jpg");
+		clientA.up();
+
+		// Leftovers of an interrupted operation, with the wrong contents
+		createCorruptLocalChunkFiles(clientB, "A-file.jpg");
+		createCorruptLocalChunkFiles(clientC, "A-file.jpg");
+
+		// B (regular down) must not use them at all
+		clientB.down();
+		assertFileEquals(clientA.getLocalFile("A-file-copy.jpg"), clientB.getLocalFile("A-file-copy.jpg"));
+
+		// C (local chunks) must locate the chunks again
+		DownOperationResult downResultC = clientC.down(localChunksDownOptions);
+		assertEquals(0, downResultC.getDownloadedMultiChunks().size());
+
+		assertFileEquals(clientA.getLocalFile("A-file-copy.jpg"), clientC.getLocalFile("A-file-copy.jpg"));
+		assertEquals(0, listLocalChunkFiles(clientC).length);
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+		clientC.deleteTestData();
+	}
+
+	private void createCorruptLocalChunkFiles(TestClient client, String path) throws Exception {
+		SqlDatabase localDatabase = client.loadLocalDatabase();
+		FileVersion fileVersion = localDatabase.getCurrentFileTree().get(path);
+
+		for (ChunkChecksum chunkChecksum : localDatabase.getFileContent(fileVersion.getChecksum(), true).getChunks()) {
+			FileUtils.writeStringToFile(client.getConfig().getCache().getLocalChunkFile(chunkChecksum), "not the chunk");
+		}
+	}
+
+	private File[] listLocalChunkFiles(TestClient client) {
+		File[] localChunkFiles = client.getConfig().getCacheDir().listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith("chunk-") && name.endsWith("-local");
+			}
+		});
+
+		return (localChunkFiles != null) ? localChunkFiles : new File[0];
+	}
+}
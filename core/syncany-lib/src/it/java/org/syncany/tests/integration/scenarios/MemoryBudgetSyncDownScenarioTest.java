@@ -0,0 +1,74 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.scenarios;
+
+import static org.junit.Assert.assertTrue;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
+
+import org.junit.Test;
+import org.syncany.operations.down.DownOperationOptions;
+import org.syncany.operations.down.DownOperationResult;
+import org.syncany.plugins.transfer.TransferSettings;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class MemoryBudgetSyncDownScenarioTest {
+	@Test
+	public void testSyncDownWithTinyDatabaseMemoryBudget() throws Exception {
+		// Setup 
+		TransferSettings testConnection = TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+		TestClient clientC = new TestClient("C", testConnection);
+
+		// A budget of one byte forces one memory database per loaded range
+		DownOperationOptions tinyBudgetDownOptions = new DownOperationOptions();
+		tinyBudgetDownOptions.setDatabaseMemoryBudget(1);
+
+		// Run 
+		for (int i = 0; i < 5; i++) {
+			clientA.createNewFile("A-file" + i + ".jpg");
+			clientA.up();
+		}
+
+		clientB.down();
+		clientB.createNewFile("B-file");
+		clientB.moveFile("A-file1.jpg", "B-file1.jpg");
+		clientB.up();
+
+		clientA.down();
+		clientA.deleteFile("A-file2.jpg");
+		clientA.up();
+
+		DownOperationResult downResult = clientC.down(tinyBudgetDownOptions);
+		assertTrue(downResult.getPeakHeapUsage() > 0);
+
+		clientA.down();
+		clientB.down();
+
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientC.getLocalFilesExcludeLockedAndNoRead());
+		assertFileListEquals(clientB.getLocalFilesExcludeLockedAndNoRead(), clientC.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientC.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+		clientC.deleteTestData();
+	}
+}
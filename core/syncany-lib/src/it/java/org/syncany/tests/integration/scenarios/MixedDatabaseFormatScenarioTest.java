@@ -0,0 +1,90 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.scenarios;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.syncany.database.dao.DatabaseBinarySerializer;
+import org.syncany.plugins.local.LocalTransferSettings;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class MixedDatabaseFormatScenarioTest {
+	@Test
+	public void testBinaryAndXmlDatabaseFilesInSameRepo() throws Exception {
+		// Setup 
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		clientA.getConfig().setDatabaseSerializer(new DatabaseBinarySerializer(clientA.getConfig().getTransformer()));
+
+		// Run 
+		clientA.createNewFile("A-file1.jpg");
+		clientA.createNewFolder("A-folder");
+		clientA.createNewFile("A-folder/A-file2");
+		clientA.up();
+
+		assertDatabaseFileFormat(testConnection, "database-A-0000000001", true);
+
+		clientB.down();
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+
+		clientB.createNewFile("B-file3");
+		clientB.moveFile("A-folder/A-file2", "B-file2");
+		clientB.up();
+
+		assertDatabaseFileFormat(testConnection, "database-B-0000000001", false);
+
+		clientA.down();
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+
+		clientA.deleteFile("B-file2");
+		clientA.up();
+
+		assertDatabaseFileFormat(testConnection, "database-A-0000000002", true);
+
+		clientB.down();
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	private void assertDatabaseFileFormat(LocalTransferSettings testConnection, String databaseFileName, boolean expectBinary) throws Exception {
+		File databaseFile = new File(testConnection.getPath() + "/databases/" + databaseFileName);
+
+		try (InputStream databaseInputStream = new FileInputStream(databaseFile)) {
+			byte[] firstBytes = new byte[4];
+			IOUtils.readFully(databaseInputStream, firstBytes);
+
+			byte[] expectedFirstBytes = (expectBinary) ? new byte[] { 'S', 'Y', 'D', 'B' } : new byte[] { '<', '?', 'x', 'm' };
+			assertArrayEquals("Unexpected format of " + databaseFileName, expectedFirstBytes, firstBytes);
+		}
+	}
+}
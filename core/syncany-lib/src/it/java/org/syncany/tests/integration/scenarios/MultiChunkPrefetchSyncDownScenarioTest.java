@@ -0,0 +1,80 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.scenarios;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
+
+import org.junit.Test;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.operations.down.DownOperationOptions;
+import org.syncany.operations.down.DownOperationResult;
+import org.syncany.plugins.transfer.TransferSettings;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class MultiChunkPrefetchSyncDownScenarioTest {
+	@Test
+	public void testSyncDownWithTinyMultiChunkCacheBudget() throws Exception {
+		// Setup 
+		TransferSettings testConnection = TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+		TestClient clientC = new TestClient("C", testConnection);
+
+		// A budget of one byte forces one window per file that needs new multichunks
+		DownOperationOptions tinyBudgetDownOptions = new DownOperationOptions();
+		tinyBudgetDownOptions.setMultiChunkCacheBudget(1);
+
+		// Run 
+		for (int i = 0; i < 5; i++) {
+			clientA.createNewFile("A-file" + i + ".jpg", 200 * 1024);
+			clientA.up();
+		}
+
+		clientA.createNewFolder("folder");
+		clientA.createNewFile("folder/A-file-in-folder", 100 * 1024);
+		clientA.copyFile("A-file0.jpg", "folder/A-file0-copy.jpg");
+		clientA.up();
+
+		DownOperationResult downResultB = clientB.down(tinyBudgetDownOptions);
+		assertTrue(downResultB.getDownloadedMultiChunks().size() > 1);
+
+		// Released multichunks are removed from the cache
+		for (MultiChunkId multiChunkId : downResultB.getDownloadedMultiChunks()) {
+			assertFalse(clientB.getConfig().getCache().getDecryptedMultiChunkFile(multiChunkId).exists());
+		}
+
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Regular down of the same changes downloads the same multichunks
+		DownOperationResult downResultC = clientC.down();
+		assertEquals(downResultC.getDownloadedMultiChunks(), downResultB.getDownloadedMultiChunks());
+
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientC.getLocalFilesExcludeLockedAndNoRead());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+		clientC.deleteTestData();
+	}
+}
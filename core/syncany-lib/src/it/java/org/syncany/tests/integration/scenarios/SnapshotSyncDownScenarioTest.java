@@ -0,0 +1,112 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.scenarios;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseTablesEqual;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.syncany.operations.cleanup.CleanupOperationOptions;
+import org.syncany.operations.cleanup.CleanupOperationResult;
+import org.syncany.operations.down.DownOperationResult;
+import org.syncany.plugins.local.LocalTransferSettings;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class SnapshotSyncDownScenarioTest {
+	@Test
+	public void testSyncDownFromSnapshotAndDelta() throws Exception {
+		// Setup 
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+		TestClient clientC = new TestClient("C", testConnection);
+
+		CleanupOperationOptions cleanupOptionsWithSnapshot = new CleanupOperationOptions();
+		cleanupOptionsWithSnapshot.setForce(true);
+		cleanupOptionsWithSnapshot.setMinSnapshotDatabaseVersions(5);
+
+		// Run 
+		for (int i = 0; i < 6; i++) {
+			clientA.createNewFile("A-file" + i + ".jpg");
+			clientA.up();
+		}
+
+		clientB.down();
+		clientB.createNewFile("B-file");
+		clientB.moveFile("A-file1.jpg", "B-file1.jpg");
+		clientB.up();
+
+		clientA.down();
+		clientA.deleteFile("A-file2.jpg");
+		clientA.up();
+
+		CleanupOperationResult cleanupResult = clientA.cleanup(cleanupOptionsWithSnapshot);
+		assertEquals(8, cleanupResult.getSnapshotDatabaseVersionCount());
+		assertTrue(new File(testConnection.getPath(), "databases/snapshot-0000000001-0000000008").exists());
+
+		// B has to reload its database after the cleanup, and uses the snapshot
+		DownOperationResult downResultB = clientB.down();
+		assertEquals("snapshot-0000000001-0000000008", downResultB.getAppliedSnapshot());
+		assertTrue(downResultB.getDownloadedUnknownDatabases().isEmpty());
+
+		clientB.createNewFile("B-file-after-snapshot");
+		clientB.up();
+
+		// C only downloads the snapshot and the delta written after the snapshot
+		DownOperationResult downResultC = clientC.down();
+		assertEquals("snapshot-0000000001-0000000008", downResultC.getAppliedSnapshot());
+		assertEquals(1, downResultC.getDownloadedUnknownDatabases().size());
+
+		clientC.createNewFile("C-file");
+		clientC.up();
+
+		DownOperationResult downResultA = clientA.down();
+		assertNull(downResultA.getAppliedSnapshot());
+
+		clientB.down();
+
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+		assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientC.getLocalFilesExcludeLockedAndNoRead());
+		assertTrue(clientC.getLocalFile("B-file-after-snapshot").exists());
+
+		// Database versions are collapsed in the snapshot, but the contents must be identical
+		String[][] compareTablesAndIgnoreColumns = new String[][] {
+				new String[] { "chunk", "DATABASEVERSION_ID" },
+				new String[] { "filecontent", "DATABASEVERSION_ID" },
+				new String[] { "filecontent_chunk" },
+				new String[] { "filehistory", "DATABASEVERSION_ID" },
+				new String[] { "fileversion", "DATABASEVERSION_ID" },
+				new String[] { "multichunk", "DATABASEVERSION_ID" },
+				new String[] { "multichunk_chunk" }
+		};
+
+		assertSqlDatabaseTablesEqual(clientA.getDatabaseFile(), clientC.getDatabaseFile(), compareTablesAndIgnoreColumns);
+		assertSqlDatabaseTablesEqual(clientA.getDatabaseFile(), clientB.getDatabaseFile(), compareTablesAndIgnoreColumns);
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+		clientC.deleteTestData();
+	}
+}
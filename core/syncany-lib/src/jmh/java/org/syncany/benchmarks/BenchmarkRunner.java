@@ -0,0 +1,111 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.benchmarks;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks in this package with the GC profiler, and prints a summary
+ * with the throughput in MB/s and the allocation rate for each benchmark and
+ * buffer size (in addition to the regular JMH output).
+ *
+ * <p>Usage: <code>gradle :syncany-lib:benchmark [-Pbenchmarks=regex1,regex2]</code>. Without
+ * arguments, all benchmarks are run. Otherwise, only the benchmarks matching the
+ * given regular expressions are run, e.g. <code>CipherSpec</code>.
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class BenchmarkRunner {
+	private static final String BUFFER_SIZE_PARAM = "bufferSize";
+	private static final String ALLOCATION_RATE_RESULT = "\u00b7gc.alloc.rate";
+	private static final String ALLOCATION_RATE_NORM_RESULT = "\u00b7gc.alloc.rate.norm";
+
+	public static void main(String[] args) throws Exception {
+		ChainedOptionsBuilder optionsBuilder = new OptionsBuilder().addProfiler(GCProfiler.class);
+
+		if (args.length == 0) {
+			optionsBuilder.include(BenchmarkRunner.class.getPackage().getName() + ".*");
+		}
+		else {
+			for (String includeRegex : args) {
+				optionsBuilder.include(includeRegex);
+			}
+		}
+
+		Collection<RunResult> runResults = new Runner(optionsBuilder.build()).run();
+		printSummary(runResults);
+	}
+
+	private static void printSummary(Collection<RunResult> runResults) {
+		System.out.println();
+		System.out.println("Summary:");
+		System.out.println(String.format("%-70s %14s %14s %14s", "Benchmark", "Throughput", "Alloc. rate", "Alloc./op"));
+
+		for (RunResult runResult : runResults) {
+			BenchmarkParams benchmarkParams = runResult.getParams();
+			Result<?> primaryResult = runResult.getPrimaryResult();
+			Map<String, Result> secondaryResults = runResult.getSecondaryResults();
+
+			String benchmarkName = getBenchmarkName(benchmarkParams);
+			String throughput = getThroughput(benchmarkParams, primaryResult);
+			String allocationRate = (secondaryResults.containsKey(ALLOCATION_RATE_RESULT))
+					? String.format("%.1f MB/s", secondaryResults.get(ALLOCATION_RATE_RESULT).getScore()) : "-";
+			String allocationPerOperation = (secondaryResults.containsKey(ALLOCATION_RATE_NORM_RESULT))
+					? String.format("%.0f B", secondaryResults.get(ALLOCATION_RATE_NORM_RESULT).getScore()) : "-";
+
+			System.out.println(String.format("%-70s %14s %14s %14s", benchmarkName, throughput, allocationRate, allocationPerOperation));
+		}
+	}
+
+	private static String getBenchmarkName(BenchmarkParams benchmarkParams) {
+		String benchmarkName = benchmarkParams.getBenchmark().replace(BenchmarkRunner.class.getPackage().getName() + ".", "");
+		StringBuilder paramsStr = new StringBuilder();
+
+		for (String paramKey : benchmarkParams.getParamsKeys()) {
+			paramsStr.append(paramsStr.length() == 0 ? " (" : ", ");
+			paramsStr.append(paramKey).append("=").append(benchmarkParams.getParam(paramKey));
+		}
+
+		return (paramsStr.length() > 0) ? benchmarkName + paramsStr + ")" : benchmarkName;
+	}
+
+	/**
+	 * Returns the throughput in MB/s for benchmarks that process one buffer per operation,
+	 * and the regular JMH score for all other benchmarks.
+	 */
+	private static String getThroughput(BenchmarkParams benchmarkParams, Result<?> primaryResult) {
+		String bufferSizeStr = benchmarkParams.getParam(BUFFER_SIZE_PARAM);
+
+		if (bufferSizeStr != null && primaryResult.getScoreUnit().equals("ops/s")) {
+			double megabytesPerSecond = primaryResult.getScore() * Integer.parseInt(bufferSizeStr) / 1024.0 / 1024.0;
+			return String.format("%.1f MB/s", megabytesPerSecond);
+		}
+		else {
+			return String.format("%.1f %s", primaryResult.getScore(), primaryResult.getScoreUnit());
+		}
+	}
+}
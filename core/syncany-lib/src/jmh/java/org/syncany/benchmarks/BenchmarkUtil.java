@@ -0,0 +1,139 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.syncany.crypto.CipherParams;
+import org.syncany.crypto.CipherSpec;
+import org.syncany.crypto.CipherSpecs;
+import org.syncany.crypto.SaltedSecretKey;
+
+/**
+ * Helper methods shared by the benchmarks, mainly to create deterministic
+ * input data and keys without running the (slow) master key derivation.
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class BenchmarkUtil {
+	private static final long RANDOM_SEED = 0x53796e63L;
+	private static final int DICTIONARY_WORD_COUNT = 256;
+
+	/**
+	 * Creates a master key from random bytes with the size and salt size
+	 * of a real master key.
+	 */
+	public static SaltedSecretKey createMasterKey() {
+		Random random = new Random(RANDOM_SEED);
+
+		byte[] masterKeyBytes = new byte[CipherParams.MASTER_KEY_SIZE / 8];
+		byte[] masterKeySalt = new byte[CipherParams.MASTER_KEY_SALT_SIZE / 8];
+
+		random.nextBytes(masterKeyBytes);
+		random.nextBytes(masterKeySalt);
+
+		return new SaltedSecretKey(new SecretKeySpec(masterKeyBytes, "RAW"), masterKeySalt);
+	}
+
+	/**
+	 * Creates incompressible (random) data of the given size.
+	 */
+	public static byte[] createRandomData(int size) {
+		byte[] data = new byte[size];
+		new Random(RANDOM_SEED).nextBytes(data);
+
+		return data;
+	}
+
+	/**
+	 * Creates data of the given size that compresses roughly like text, i.e.
+	 * random words from a small dictionary of random words.
+	 */
+	public static byte[] createCompressibleData(int size) {
+		Random random = new Random(RANDOM_SEED);
+		List<byte[]> dictionary = new ArrayList<byte[]>();
+
+		for (int i = 0; i < DICTIONARY_WORD_COUNT; i++) {
+			byte[] word = new byte[2 + random.nextInt(10)];
+
+			for (int j = 0; j < word.length; j++) {
+				word[j] = (byte) ('a' + random.nextInt(26));
+			}
+
+			dictionary.add(word);
+		}
+
+		byte[] data = new byte[size];
+		int position = 0;
+
+		while (position < size) {
+			byte[] word = dictionary.get(random.nextInt(DICTIONARY_WORD_COUNT));
+			int length = Math.min(word.length, size - position);
+
+			System.arraycopy(word, 0, data, position, length);
+			position += length;
+
+			if (position < size) {
+				data[position++] = ' ';
+			}
+		}
+
+		return data;
+	}
+
+	/**
+	 * Parses a comma-separated list of cipher spec IDs, e.g. "1,2".
+	 */
+	public static List<CipherSpec> getCipherSpecs(String cipherSpecIdsStr) {
+		List<CipherSpec> cipherSpecs = new ArrayList<CipherSpec>();
+
+		for (String cipherSpecIdStr : cipherSpecIdsStr.split(",")) {
+			CipherSpec cipherSpec = CipherSpecs.getCipherSpec(Integer.parseInt(cipherSpecIdStr));
+
+			if (cipherSpec == null) {
+				throw new IllegalArgumentException("Cannot find cipher spec with ID " + cipherSpecIdStr);
+			}
+
+			cipherSpecs.add(cipherSpec);
+		}
+
+		return cipherSpecs;
+	}
+
+	/**
+	 * Reads the given input stream until the end using the given buffer,
+	 * and returns the number of bytes read.
+	 */
+	public static long readFully(InputStream inputStream, byte[] buffer) throws IOException {
+		long totalRead = 0;
+		int read = -1;
+
+		while (-1 != (read = inputStream.read(buffer))) {
+			totalRead += read;
+		}
+
+		inputStream.close();
+		return totalRead;
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.syncany.crypto.CipherSession;
+import org.syncany.crypto.CipherSpec;
+import org.syncany.crypto.CipherSpecs;
+import org.syncany.crypto.CipherUtil;
+import org.syncany.crypto.MultiCipherOutputStream;
+import org.syncany.crypto.SaltedSecretKey;
+
+/**
+ * Measures the cost of getting read and write keys from a {@link CipherSession}, both
+ * when the key is cached (hit) and when it has to be derived from the master key (miss),
+ * as well as the cost of a single key derivation.
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CipherSessionBenchmark {
+	private static final int READ_CACHE_SIZE = 20;
+
+	private SaltedSecretKey masterKey;
+	private CipherSpec cipherSpec;
+
+	private CipherSession reusingCipherSession;
+	private CipherSession nonReusingCipherSession;
+	private byte[] cachedSalt;
+
+	@Setup
+	public void setup() throws Exception {
+		masterKey = BenchmarkUtil.createMasterKey();
+		cipherSpec = CipherSpecs.getCipherSpec(CipherSpecs.AES_128_GCM);
+
+		reusingCipherSession = new CipherSession(masterKey, READ_CACHE_SIZE, Integer.MAX_VALUE);
+		nonReusingCipherSession = new CipherSession(masterKey, READ_CACHE_SIZE, 1);
+
+		cachedSalt = reusingCipherSession.getWriteSecretKey(cipherSpec).getSalt();
+	}
+
+	@Benchmark
+	public SecretKey writeKeyCacheHit() throws Exception {
+		return reusingCipherSession.getWriteSecretKey(cipherSpec);
+	}
+
+	@Benchmark
+	public SecretKey writeKeyCacheMiss() throws Exception {
+		return nonReusingCipherSession.getWriteSecretKey(cipherSpec);
+	}
+
+	@Benchmark
+	public SecretKey readKeyCacheHit() throws Exception {
+		return reusingCipherSession.getReadSecretKey(cipherSpec, cachedSalt);
+	}
+
+	@Benchmark
+	public SecretKey readKeyCacheMiss() throws Exception {
+		byte[] randomSalt = CipherUtil.createRandomArray(MultiCipherOutputStream.SALT_SIZE);
+		return reusingCipherSession.getReadSecretKey(cipherSpec, randomSalt);
+	}
+
+	@Benchmark
+	public SecretKey deriveKey() throws Exception {
+		return CipherUtil.createDerivedKey(masterKey, cachedSalt, cipherSpec);
+	}
+}
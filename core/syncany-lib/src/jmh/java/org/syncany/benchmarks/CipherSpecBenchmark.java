@@ -0,0 +1,102 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.syncany.crypto.CipherSession;
+import org.syncany.crypto.CipherSpec;
+import org.syncany.crypto.MultiCipherInputStream;
+import org.syncany.crypto.MultiCipherOutputStream;
+
+/**
+ * Measures the encryption and decryption throughput of the {@link MultiCipherOutputStream}
+ * and {@link MultiCipherInputStream} for each cipher spec and for the cipher spec cascades
+ * offered during 'init', for different buffer sizes.
+ *
+ * <p>One operation encrypts/decrypts one buffer, so the throughput in MB/s is the
+ * score multiplied by the buffer size (see {@link BenchmarkRunner}).
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CipherSpecBenchmark {
+	@Param({ "1", "2", "3", "4", "1,2", "3,4" })
+	public String cipherSpecIds;
+
+	@Param({ "4096", "65536", "1048576" })
+	public int bufferSize;
+
+	private List<CipherSpec> cipherSpecs;
+	private CipherSession cipherSession;
+
+	private byte[] plaintext;
+	private byte[] ciphertext;
+	private byte[] readBuffer;
+
+	@Setup
+	public void setup() throws Exception {
+		cipherSpecs = BenchmarkUtil.getCipherSpecs(cipherSpecIds);
+		cipherSession = new CipherSession(BenchmarkUtil.createMasterKey());
+
+		plaintext = BenchmarkUtil.createRandomData(bufferSize);
+		readBuffer = new byte[8192];
+
+		ByteArrayOutputStream ciphertextOutputStream = new ByteArrayOutputStream();
+		OutputStream cipherOutputStream = new MultiCipherOutputStream(ciphertextOutputStream, cipherSpecs, cipherSession);
+
+		cipherOutputStream.write(plaintext);
+		cipherOutputStream.close();
+
+		ciphertext = ciphertextOutputStream.toByteArray();
+	}
+
+	@Benchmark
+	public void encrypt() throws Exception {
+		OutputStream cipherOutputStream = new MultiCipherOutputStream(NullOutputStream.NULL_OUTPUT_STREAM, cipherSpecs, cipherSession);
+
+		cipherOutputStream.write(plaintext);
+		cipherOutputStream.close();
+	}
+
+	@Benchmark
+	public long decrypt() throws Exception {
+		return BenchmarkUtil.readFully(new MultiCipherInputStream(new ByteArrayInputStream(ciphertext), cipherSession), readBuffer);
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.syncany.crypto.CipherParams;
+import org.syncany.crypto.CipherUtil;
+
+/**
+ * Measures the time it takes to derive the master key from a password, i.e.
+ * {@link CipherParams#MASTER_KEY_DERIVATION_ROUNDS} rounds of
+ * {@link CipherParams#MASTER_KEY_DERIVATION_FUNCTION}. This is what users wait
+ * for during 'init' and 'connect'.
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MasterKeyBenchmark {
+	private byte[] salt;
+
+	@Setup
+	public void setup() {
+		salt = BenchmarkUtil.createRandomData(CipherParams.MASTER_KEY_SALT_SIZE / 8);
+	}
+
+	@Benchmark
+	public SecretKey createMasterKey() throws Exception {
+		return CipherUtil.createMasterKey("some password", salt);
+	}
+}
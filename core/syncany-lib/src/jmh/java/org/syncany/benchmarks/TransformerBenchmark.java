@@ -0,0 +1,160 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.syncany.chunk.CipherTransformer;
+import org.syncany.chunk.GzipTransformer;
+import org.syncany.chunk.Transformer;
+import org.syncany.crypto.CipherSpec;
+import org.syncany.crypto.CipherSpecs;
+import org.syncany.crypto.MultiCipherOutputStream;
+import org.syncany.crypto.SaltedSecretKey;
+import org.syncany.util.ChannelUtil;
+
+/**
+ * Measures the throughput of the {@link Transformer} chains used for multichunks
+ * and database files: Gzip alone, the {@link CipherTransformer} alone (regular and
+ * segmented format), and Gzip followed by the cipher transformer (the default chain
+ * of an encrypted repository). Each chain is measured through the stream API and
+ * through the channel API of the {@link Transformer}.
+ *
+ * <p>The input data is compressible, roughly like text. One operation transforms
+ * one buffer, so the throughput in MB/s is the score multiplied by the buffer size
+ * (see {@link BenchmarkRunner}).
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformerBenchmark {
+	@Param({ "gzip", "cipher", "cipher-segmented", "gzip-cipher", "gzip-cipher-segmented" })
+	public String transformerChain;
+
+	@Param({ "4096", "65536", "1048576" })
+	public int bufferSize;
+
+	private Transformer transformer;
+
+	private byte[] plaintext;
+	private byte[] transformedData;
+	private byte[] readBuffer;
+	private ByteBuffer readByteBuffer;
+
+	@Setup
+	public void setup() throws Exception {
+		transformer = createTransformerChain(transformerChain);
+
+		plaintext = BenchmarkUtil.createCompressibleData(bufferSize);
+		readBuffer = new byte[8192];
+		readByteBuffer = ByteBuffer.allocate(8192);
+
+		ByteArrayOutputStream transformedOutputStream = new ByteArrayOutputStream();
+		OutputStream transformerOutputStream = transformer.createOutputStream(transformedOutputStream);
+
+		transformerOutputStream.write(plaintext);
+		transformerOutputStream.close();
+
+		transformedData = transformedOutputStream.toByteArray();
+	}
+
+	@Benchmark
+	public void transformOutput() throws Exception {
+		OutputStream transformerOutputStream = transformer.createOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+
+		transformerOutputStream.write(plaintext);
+		transformerOutputStream.close();
+	}
+
+	@Benchmark
+	public long transformInput() throws Exception {
+		return BenchmarkUtil.readFully(transformer.createInputStream(new ByteArrayInputStream(transformedData)), readBuffer);
+	}
+
+	@Benchmark
+	public void transformOutputChannel() throws Exception {
+		WritableByteChannel transformerChannel = transformer.createWritableChannel(ChannelUtil.newChannel(NullOutputStream.NULL_OUTPUT_STREAM));
+
+		transformerChannel.write(ByteBuffer.wrap(plaintext));
+		transformerChannel.close();
+	}
+
+	@Benchmark
+	public long transformInputChannel() throws Exception {
+		ReadableByteChannel transformerChannel = transformer.createReadableChannel(ChannelUtil.newChannel(new ByteArrayInputStream(transformedData)));
+		long totalRead = 0;
+		int read;
+
+		while ((read = transformerChannel.read(readByteBuffer)) >= 0) {
+			totalRead += read;
+			readByteBuffer.clear();
+		}
+
+		transformerChannel.close();
+		return totalRead;
+	}
+
+	private Transformer createTransformerChain(String transformerChain) {
+		List<CipherSpec> cipherSpecs = CipherSpecs.getDefaultCipherSpecs();
+		SaltedSecretKey masterKey = BenchmarkUtil.createMasterKey();
+
+		switch (transformerChain) {
+		case "gzip":
+			return new GzipTransformer();
+
+		case "cipher":
+			return new CipherTransformer(cipherSpecs, masterKey);
+
+		case "cipher-segmented":
+			return new CipherTransformer(cipherSpecs, masterKey, MultiCipherOutputStream.DEFAULT_SEGMENT_SIZE);
+
+		case "gzip-cipher":
+			return new GzipTransformer(new CipherTransformer(cipherSpecs, masterKey));
+
+		case "gzip-cipher-segmented":
+			return new GzipTransformer(new CipherTransformer(cipherSpecs, masterKey, MultiCipherOutputStream.DEFAULT_SEGMENT_SIZE));
+
+		default:
+			throw new IllegalArgumentException("Unknown transformer chain: " + transformerChain);
+		}
+	}
+}
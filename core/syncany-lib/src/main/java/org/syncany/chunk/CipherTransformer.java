@@ -20,18 +20,27 @@ package org.syncany.chunk;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import javax.crypto.spec.SecretKeySpec;
 
 import org.syncany.crypto.CipherSession;
 import org.syncany.crypto.CipherSpec;
 import org.syncany.crypto.CipherSpecs;
+import org.syncany.crypto.ConvergentCipherSession;
 import org.syncany.crypto.MultiCipherInputStream;
 import org.syncany.crypto.MultiCipherOutputStream;
+import org.syncany.crypto.MultiCipherReadableChannel;
+import org.syncany.crypto.MultiCipherWritableChannel;
 import org.syncany.crypto.SaltedSecretKey;
+import org.syncany.util.ByteBufferPool;
 import org.syncany.util.StringUtil;
 
 /**
@@ -43,6 +52,20 @@ import org.syncany.util.StringUtil;
  * key. It can be instantiated using a property list (from a config file) or
  * by passing the dependencies to the constructor.
  * 
+ * <p>If a segment size is set (optional setting {@link #PROPERTY_SEGMENT_SIZE}), 
+ * the output is written in the segmented stream format, which allows decrypting
+ * parts of a file without decrypting the whole file. Input streams are always
+ * read in the format they were written in.
+ * 
+ * <p>Segments are encrypted concurrently by a pool of worker threads owned by 
+ * this transformer (setting {@link #PROPERTY_SEGMENT_THREADS}, default: number
+ * of processors). The output does not depend on the number of threads. 
+ * 
+ * <p>For the regular (non-segmented) format, the channels created by this transformer
+ * encrypt and decrypt the data using {@link MultiCipherWritableChannel} and 
+ * {@link MultiCipherReadableChannel}, which pass the data through the ciphers in 
+ * pooled buffers instead of nested cipher streams.
+ * 
  * @author Philipp C. Heckel (philipp.heckel@gmail.com)
  */
 public class CipherTransformer extends Transformer {
@@ -50,24 +73,59 @@ public class CipherTransformer extends Transformer {
 	public static final String PROPERTY_CIPHER_SPECS = "cipherspecs";
 	public static final String PROPERTY_MASTER_KEY = "masterkey";
 	public static final String PROPERTY_MASTER_KEY_SALT = "mastersalt";
+	public static final String PROPERTY_SEGMENT_SIZE = "segmentsize";
+	public static final String PROPERTY_SEGMENT_THREADS = "segmentthreads";
+	
+	private static final int MAX_PENDING_SEGMENTS_PER_THREAD = 2;
+	
+	private static final int CHANNEL_BUFFER_SIZE = 64 * 1024;
+	private static final int CHANNEL_MAX_POOLED_BUFFERS = 16;
+	
+	/**
+	 * Buffer pool shared by the channels of all cipher transformers. Heap buffers are
+	 * used deliberately: Both the JCE and the BouncyCastle ciphers operate on arrays, and
+	 * would have to copy the data of direct buffers to temporary arrays.
+	 */
+	private static final ByteBufferPool channelBufferPool = new ByteBufferPool(CHANNEL_BUFFER_SIZE, CHANNEL_MAX_POOLED_BUFFERS, false);
 	
 	private List<CipherSpec> cipherSpecs;
+	private SaltedSecretKey masterKey;
 	private CipherSession cipherSession;
+	private int segmentSize;
+	private int segmentThreads;
+	private ExecutorService segmentExecutor;
 	
 	public CipherTransformer() {
 		this.cipherSpecs = new ArrayList<CipherSpec>();
+		this.masterKey = null;
 		this.cipherSession = null;
+		this.segmentSize = 0;
+		this.segmentThreads = Runtime.getRuntime().availableProcessors();
+		this.segmentExecutor = null;
 	}
 	
     public CipherTransformer(List<CipherSpec> cipherSpecs, SaltedSecretKey masterKey) {
+    	this(cipherSpecs, masterKey, 0);
+    }    
+    
+    public CipherTransformer(List<CipherSpec> cipherSpecs, SaltedSecretKey masterKey, int segmentSize) {
+    	this(cipherSpecs, masterKey, segmentSize, Runtime.getRuntime().availableProcessors());
+    }    
+    
+    public CipherTransformer(List<CipherSpec> cipherSpecs, SaltedSecretKey masterKey, int segmentSize, int segmentThreads) {
     	this.cipherSpecs = cipherSpecs;
+    	this.masterKey = masterKey;
     	this.cipherSession = new CipherSession(masterKey);
+    	this.segmentSize = segmentSize;
+    	this.segmentThreads = segmentThreads;
+    	this.segmentExecutor = null;
     }    
     
     /**
      * Initializes the cipher transformer using a settings map. Required settings
      * are: {@link #PROPERTY_CIPHER_SPECS}, {@link #PROPERTY_MASTER_KEY} and 
-     * {@link #PROPERTY_MASTER_KEY_SALT}.
+     * {@link #PROPERTY_MASTER_KEY_SALT}. The settings {@link #PROPERTY_SEGMENT_SIZE} and
+     * {@link #PROPERTY_SEGMENT_THREADS} are optional.
      */
     @Override
     public void init(Map<String, String> settings) throws Exception {
@@ -81,6 +139,8 @@ public class CipherTransformer extends Transformer {
     	
     	initCipherSpecs(cipherSpecsListStr);
     	initCipherSession(masterKeyStr, masterKeySaltStr);    	
+    	initSegmentSize(settings.get(PROPERTY_SEGMENT_SIZE));
+    	initSegmentThreads(settings.get(PROPERTY_SEGMENT_THREADS));
     }
     
     private void initCipherSpecs(String cipherSpecListStr) throws Exception {
@@ -102,18 +162,84 @@ public class CipherTransformer extends Transformer {
 		byte[] masterKeySalt = StringUtil.fromHex(masterKeySaltStr);
 		byte[] masterKeyBytes = StringUtil.fromHex(masterKeyStr);
 		
-		SaltedSecretKey masterKey = new SaltedSecretKey(new SecretKeySpec(masterKeyBytes, "RAW"), masterKeySalt);		
+		masterKey = new SaltedSecretKey(new SecretKeySpec(masterKeyBytes, "RAW"), masterKeySalt);		
 		cipherSession = new CipherSession(masterKey);
 	}
 
+	private void initSegmentSize(String segmentSizeStr) throws Exception {
+		if (segmentSizeStr != null) {
+			segmentSize = Integer.parseInt(segmentSizeStr);
+			
+			if (segmentSize < 0 || segmentSize > MultiCipherOutputStream.MAX_SEGMENT_SIZE) {
+				throw new Exception("Invalid segment size '" + segmentSizeStr + "', must be between 0 and " + MultiCipherOutputStream.MAX_SEGMENT_SIZE);
+			}
+		}
+	}
+
+	private void initSegmentThreads(String segmentThreadsStr) throws Exception {
+		if (segmentThreadsStr != null) {
+			segmentThreads = Integer.parseInt(segmentThreadsStr);
+			
+			if (segmentThreads < 1) {
+				throw new Exception("Invalid segment thread count '" + segmentThreadsStr + "', must be at least 1");
+			}
+		}
+	}
+
 	@Override
 	public OutputStream createOutputStream(OutputStream out) throws IOException {
 		if (cipherSession == null) {
 			throw new RuntimeException("Cipher session is not initialized. Call init() before!");
 		}
 		
-    	return new MultiCipherOutputStream(out, cipherSpecs, cipherSession);    	
+		return createOutputStream(out, cipherSession);
     }
+	
+	/**
+	 * Creates an output stream that encrypts the data with keys and IVs derived 
+	 * from the given content ID (using a {@link ConvergentCipherSession}), so that 
+	 * the same content ID always yields the same ciphertext. 
+	 */
+	@Override
+	public OutputStream createConvergentOutputStream(OutputStream out, byte[] contentId) throws IOException {
+		if (cipherSession == null) {
+			throw new RuntimeException("Cipher session is not initialized. Call init() before!");
+		}
+		
+		return createOutputStream(out, new ConvergentCipherSession(masterKey, contentId));
+	}
+	
+	private OutputStream createOutputStream(OutputStream out, CipherSession cipherSession) throws IOException {
+		if (segmentSize > 0 && segmentThreads > 1) {
+			return new MultiCipherOutputStream(out, cipherSpecs, cipherSession, segmentSize, getSegmentExecutor(), segmentThreads * MAX_PENDING_SEGMENTS_PER_THREAD);
+		}
+		else {
+			return new MultiCipherOutputStream(out, cipherSpecs, cipherSession, segmentSize);
+		}
+	}
+	
+	/**
+	 * Returns the worker pool used to encrypt segments, and creates it on first use. 
+	 * The pool is shared by all output streams of this transformer. Its threads are 
+	 * daemon threads, so the pool does not need to be shut down.
+	 */
+	private synchronized ExecutorService getSegmentExecutor() {
+		if (segmentExecutor == null) {
+			segmentExecutor = Executors.newFixedThreadPool(segmentThreads, new ThreadFactory() {
+				private int threadCount = 0;
+				
+				@Override
+				public synchronized Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "SegmentCipher-" + (++threadCount));
+					thread.setDaemon(true);
+					
+					return thread;
+				}
+			});
+		}
+		
+		return segmentExecutor;
+	}
 
     @Override
     public InputStream createInputStream(InputStream in) throws IOException {
@@ -124,6 +250,29 @@ public class CipherTransformer extends Transformer {
     	return new MultiCipherInputStream(in, cipherSession);    	
     }    
 
+	@Override
+	public WritableByteChannel createWritableChannel(WritableByteChannel out) throws IOException {
+		if (cipherSession == null) {
+			throw new RuntimeException("Cipher session is not initialized. Call init() before!");
+		}
+		
+		if (segmentSize > 0) {
+			return super.createWritableChannel(out);
+		}
+		else {
+			return new MultiCipherWritableChannel(out, cipherSpecs, cipherSession, channelBufferPool);
+		}
+	}
+
+	@Override
+	public ReadableByteChannel createReadableChannel(ReadableByteChannel in) throws IOException {
+		if (cipherSession == null) {
+			throw new RuntimeException("Cipher session is not initialized. Call init() before!");
+		}
+		
+		return new MultiCipherReadableChannel(in, cipherSession, channelBufferPool);
+	}
+
     @Override
     public String toString() {
         return (nextTransformer == null) ? "Cipher" : "Cipher-"+nextTransformer;
@@ -18,10 +18,22 @@
 package org.syncany.chunk;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.io.IOUtils;
 import org.syncany.chunk.Chunker.ChunkEnumeration;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 
@@ -36,6 +48,13 @@ import org.syncany.database.MultiChunkEntry.MultiChunkId;
  * <p>This class does not maintain a chunk index itself. Instead, it calls a listener to
  * lookup a chunk, and skips further chunk processing if the chunk already exists. 
  * 
+ * <p>If a convergence key is set, multichunks are <i>convergent</i>: Instead of using the 
+ * random identifier of the listener, a multichunk is first written untransformed, and then
+ * identified by a keyed hash (HMAC) of its contents. The multichunk is then transformed using
+ * {@link Transformer#createConvergentOutputStream(OutputStream, byte[]) createConvergentOutputStream()},
+ * so that identical multichunks get the same identifier and the same transformed data on 
+ * all clients of a repository. 
+ * 
  * <p>For a detailed description of the algorithm, please refer to chapter 5.3 of the thesis:
  * <i>"Minimizing remote storage usage and synchronization time using deduplication and
  * multichunking: Syncany as an example"</i>
@@ -44,18 +63,34 @@ import org.syncany.database.MultiChunkEntry.MultiChunkId;
  * @author Philipp C. Heckel (philipp.heckel@gmail.com)
  */
 public class Deduper {	
+	private static final Logger logger = Logger.getLogger(Deduper.class.getSimpleName());
+	private static final String CONVERGENT_ID_HMAC_ALGORITHM = "HmacSHA256";
+	
 	private Chunker chunker;
 	private MultiChunker multiChunker;
 	private Transformer transformer;
 	private long maxTotalSize;
 	private long maxNumberOfFiles;
+	private byte[] convergenceKey;
 
 	public Deduper(Chunker chunker, MultiChunker multiChunker, Transformer transformer, long maxTotalSize, long maxNumberOfFiles) {
+		this(chunker, multiChunker, transformer, maxTotalSize, maxNumberOfFiles, null);
+	}
+
+	/**
+	 * Creates a new deduper. If the given convergence key is not <code>null</code>, multichunks 
+	 * are convergent, i.e. their identifiers are derived from their contents using this key
+	 * (see {@link Deduper}). 
+	 */
+	public Deduper(Chunker chunker, MultiChunker multiChunker, Transformer transformer, long maxTotalSize, long maxNumberOfFiles,
+			byte[] convergenceKey) {
+		
 		this.chunker = chunker;
 		this.multiChunker = multiChunker;
 		this.transformer = transformer;
 		this.maxTotalSize = maxTotalSize;
 		this.maxNumberOfFiles = maxNumberOfFiles;
+		this.convergenceKey = convergenceKey;
 	}
 	
 	/**
@@ -106,8 +141,7 @@ public class Deduper {
 						// - Check if multichunk full
 						if (multiChunk != null && multiChunk.isFull()) {
 							totalMultiChunkSize += multiChunk.getSize();
-							multiChunk.close();
-							listener.onMultiChunkClose(multiChunk);
+							closeMultiChunk(multiChunk, listener);
 
 							multiChunk = null;
 						}
@@ -117,8 +151,7 @@ public class Deduper {
 							MultiChunkId newMultiChunkId = listener.createNewMultiChunkId(chunk);
 							File multiChunkFile = listener.getMultiChunkFile(newMultiChunkId);
 							
-							multiChunk = multiChunker.createMultiChunk(newMultiChunkId, 
-								transformer.createOutputStream(new FileOutputStream(multiChunkFile)));
+							multiChunk = multiChunker.createMultiChunk(newMultiChunkId, createMultiChunkOutputStream(multiChunkFile));
 
 							listener.onMultiChunkOpen(multiChunk);
 						}
@@ -149,8 +182,7 @@ public class Deduper {
 			// Check if we have reached the transaction limit
 			if (multiChunk != null) {
 				if (totalMultiChunkSize + multiChunk.getSize() >= maxTotalSize || totalNumFiles >= maxNumberOfFiles) {
-					multiChunk.close();
-					listener.onMultiChunkClose(multiChunk);
+					closeMultiChunk(multiChunk, listener);
 					return;
 				}
 			}
@@ -162,8 +194,7 @@ public class Deduper {
 		// Close and add last multichunk
 		if (multiChunk != null) {
 			// Data
-			multiChunk.close();
-			listener.onMultiChunkClose(multiChunk);
+			closeMultiChunk(multiChunk, listener);
 
 			multiChunk = null;
 		}
@@ -172,4 +203,69 @@ public class Deduper {
 
 		return;
 	}	
+	
+	private OutputStream createMultiChunkOutputStream(File multiChunkFile) throws IOException {
+		if (convergenceKey != null) {
+			// Written untransformed, transformed when closed (see convergeMultiChunk())
+			return new FileOutputStream(multiChunkFile);
+		}
+		else {
+			return Channels.newOutputStream(transformer.createWritableChannel(new FileOutputStream(multiChunkFile).getChannel()));
+		}
+	}
+	
+	private void closeMultiChunk(MultiChunk multiChunk, DeduperListener listener) throws IOException {
+		multiChunk.close();
+		
+		if (convergenceKey != null) {
+			convergeMultiChunk(multiChunk, listener);
+		}
+		
+		listener.onMultiChunkClose(multiChunk);
+	}
+
+	/**
+	 * Derives the identifier of a convergent multichunk from its (untransformed) contents,
+	 * and writes the transformed multichunk to the file of the new identifier. The untransformed
+	 * multichunk file is deleted afterwards.
+	 */
+	private void convergeMultiChunk(MultiChunk multiChunk, DeduperListener listener) throws IOException {
+		File untransformedMultiChunkFile = listener.getMultiChunkFile(multiChunk.getId());
+		
+		byte[] contentId = createContentId(untransformedMultiChunkFile, multiChunk.getId().getBytes().length);
+		MultiChunkId convergentMultiChunkId = new MultiChunkId(contentId);		
+		File convergentMultiChunkFile = listener.getMultiChunkFile(convergentMultiChunkId);
+		
+		logger.log(Level.FINE, "- Convergent multichunk: {0} -> {1}", new Object[] { multiChunk.getId(), convergentMultiChunkId });
+		
+		try (InputStream untransformedInputStream = new FileInputStream(untransformedMultiChunkFile);
+				OutputStream transformedOutputStream = transformer.createConvergentOutputStream(new FileOutputStream(convergentMultiChunkFile), contentId)) {
+			
+			IOUtils.copy(untransformedInputStream, transformedOutputStream);
+		}
+		finally {
+			untransformedMultiChunkFile.delete();
+		}
+		
+		multiChunk.setId(convergentMultiChunkId);
+	}
+
+	private byte[] createContentId(File untransformedMultiChunkFile, int contentIdLength) throws IOException {
+		try (InputStream untransformedInputStream = new FileInputStream(untransformedMultiChunkFile)) {
+			Mac contentIdHmac = Mac.getInstance(CONVERGENT_ID_HMAC_ALGORITHM);
+			contentIdHmac.init(new SecretKeySpec(convergenceKey, CONVERGENT_ID_HMAC_ALGORITHM));
+
+			byte[] buffer = new byte[8192];
+			int read;
+			
+			while ((read = untransformedInputStream.read(buffer)) != -1) {
+				contentIdHmac.update(buffer, 0, read);
+			}
+			
+			return Arrays.copyOf(contentIdHmac.doFinal(), contentIdLength);
+		}
+		catch (GeneralSecurityException e) {
+			throw new IOException("Cannot create convergent multichunk ID.", e);
+		}
+	}
 }
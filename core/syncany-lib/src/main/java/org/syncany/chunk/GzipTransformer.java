@@ -20,11 +20,16 @@ package org.syncany.chunk;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Map;
 import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
+import org.syncany.util.ChannelUtil;
+
 /**
  * Implements a {@link Transformer} that transforms the input/output stream
  * using the Gzip compression algorithm.
@@ -63,6 +68,16 @@ public class GzipTransformer extends Transformer {
         }
     }
 
+    @Override
+    public OutputStream createConvergentOutputStream(OutputStream out, byte[] contentId) throws IOException {
+        if (nextTransformer == null) {
+            return new GZIPOutputStreamEx(out, level);
+        }
+        else {
+            return new GZIPOutputStreamEx(nextTransformer.createConvergentOutputStream(out, contentId), level);
+        }
+    }
+
     @Override
     public InputStream createInputStream(InputStream in) throws IOException {
         if (nextTransformer == null) {
@@ -73,6 +88,37 @@ public class GzipTransformer extends Transformer {
         }
     }
     
+    /**
+     * Creates a compressing channel. Since the {@link Deflater} only operates on byte arrays,
+     * the compression itself is stream-based. However, if a next transformer exists, the compressed
+     * data is passed on to its channel (and not to its stream).
+     */
+    @Override
+    public WritableByteChannel createWritableChannel(WritableByteChannel out) throws IOException {
+        if (nextTransformer == null) {
+            return ChannelUtil.newChannel(new GZIPOutputStreamEx(Channels.newOutputStream(out), level));
+        }
+        else {
+            return ChannelUtil.newChannel(new GZIPOutputStreamEx(Channels.newOutputStream(nextTransformer.createWritableChannel(out)), level));
+        }
+    }
+
+    /**
+     * Creates a decompressing channel. If a next transformer exists, the compressed
+     * data is read from its channel (and not from its stream).
+     * 
+     * @see #createWritableChannel(WritableByteChannel)
+     */
+    @Override
+    public ReadableByteChannel createReadableChannel(ReadableByteChannel in) throws IOException {
+        if (nextTransformer == null) {
+            return ChannelUtil.newChannel(new GZIPInputStream(Channels.newInputStream(in)));
+        }
+        else {
+            return ChannelUtil.newChannel(new GZIPInputStream(Channels.newInputStream(nextTransformer.createReadableChannel(in))));
+        }
+    }
+    
     public static class GZIPOutputStreamEx extends GZIPOutputStream {
         /**
          * Level is 1-9 -- 1 being best speed, and 9 being best compression
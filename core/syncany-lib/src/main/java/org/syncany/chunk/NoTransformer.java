@@ -20,6 +20,8 @@ package org.syncany.chunk;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Map;
 
 /**
@@ -58,6 +60,26 @@ public class NoTransformer extends Transformer {
         }
     }
 
+    @Override
+    public WritableByteChannel createWritableChannel(WritableByteChannel out) throws IOException {
+        if (nextTransformer == null) {
+            return out;
+        }
+        else {
+            return nextTransformer.createWritableChannel(out);
+        }
+    }
+
+    @Override
+    public ReadableByteChannel createReadableChannel(ReadableByteChannel in) throws IOException {
+        if (nextTransformer == null) {
+            return in;
+        }
+        else {
+            return nextTransformer.createReadableChannel(in);
+        }
+    }
+
     @Override
     public String toString() {
         return (nextTransformer == null) ? "None" : "None-"+nextTransformer;
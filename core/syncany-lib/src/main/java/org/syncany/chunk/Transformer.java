@@ -20,10 +20,14 @@ package org.syncany.chunk;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.syncany.util.ChannelUtil;
 import org.syncany.util.StringUtil;
 
 /**
@@ -34,6 +38,12 @@ import org.syncany.util.StringUtil;
  * <p>Transformers can be chained in order to allow multiple consecutive output-/input stream
  * transformers to be applied to a stream.
  *
+ * <p>Besides streams, a transformer can transform {@link WritableByteChannel}s and {@link ReadableByteChannel}s
+ * (see {@link #createWritableChannel(WritableByteChannel) createWritableChannel()} and 
+ * {@link #createReadableChannel(ReadableByteChannel) createReadableChannel()}). The transformed data is
+ * identical for both variants. By default, the channels are adapters around the streams; implementations 
+ * may override them to process buffers directly.
+ *
  * <p>A transformer can be instantiated using its implementation-specific constructor, or by calling
  * its default constructor and initializing it using the {@link #init(Map) init()} method. Depending
  * on the implementation, varying settings must be passed.
@@ -81,6 +91,25 @@ public abstract class Transformer {
 	 */
 	public abstract OutputStream createOutputStream(OutputStream out) throws IOException;
 
+	/**
+	 * Creates a stream-transforming {@link OutputStream} for content identified by the given
+	 * content ID (e.g. a convergent multichunk). Transformers that randomize their output (e.g.
+	 * by using random salts or IVs) derive these values from the content ID instead, so that
+	 * the same content ID always produces the same output. The output can be read using 
+	 * {@link #createInputStream(InputStream)}, just like the output of {@link #createOutputStream(OutputStream)}.
+	 *
+	 * <p>The default implementation returns {@link #createOutputStream(OutputStream)}, which is
+	 * correct for transformers whose output only depends on their input. 
+	 *
+	 * @param out Original output stream which is transformed by this transformer
+	 * @param contentId Identifier of the content written to the stream; must uniquely identify the content 
+	 * @return Returns a transformed output stream
+	 * @throws IOException If an exception occurs when instantiating or writing to the stream
+	 */
+	public OutputStream createConvergentOutputStream(OutputStream out, byte[] contentId) throws IOException {
+		return createOutputStream(out);
+	}
+
 	/**
 	 * Creates a strea-transforming {@link InputStream}. Depending on the implementation, the
 	 * bytes read from the input stream are uncompressed, decrypted, etc.
@@ -91,6 +120,36 @@ public abstract class Transformer {
 	 */
 	public abstract InputStream createInputStream(InputStream in) throws IOException;
 
+	/**
+	 * Creates a channel-transforming {@link WritableByteChannel}. The bytes written to the channel
+	 * are transformed exactly as the bytes written to the stream returned by {@link #createOutputStream(OutputStream)}.
+	 *
+	 * <p>The default implementation wraps the output stream of this transformer. Implementations can
+	 * override this method to avoid the intermediate stream buffers.
+	 *
+	 * @param out Original channel which is transformed by this transformer
+	 * @return Returns a transformed channel
+	 * @throws IOException If an exception occurs when instantiating or writing to the channel
+	 */
+	public WritableByteChannel createWritableChannel(WritableByteChannel out) throws IOException {
+		return ChannelUtil.newChannel(createOutputStream(Channels.newOutputStream(out)));
+	}
+
+	/**
+	 * Creates a channel-transforming {@link ReadableByteChannel}. The bytes read from the channel
+	 * are transformed exactly as the bytes read from the stream returned by {@link #createInputStream(InputStream)}.
+	 *
+	 * <p>The default implementation wraps the input stream of this transformer. Implementations can
+	 * override this method to avoid the intermediate stream buffers.
+	 *
+	 * @param in Original channel which is transformed by this transformer
+	 * @return Returns a transformed channel
+	 * @throws IOException If an exception occurs when instantiating or reading from the channel
+	 */
+	public ReadableByteChannel createReadableChannel(ReadableByteChannel in) throws IOException {
+		return ChannelUtil.newChannel(createInputStream(Channels.newInputStream(in)));
+	}
+
 	/**
 	 * An implementation of a transformer must override this method to identify the 
 	 * type of transformer and/or its settings.
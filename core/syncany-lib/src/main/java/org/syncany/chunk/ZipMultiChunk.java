@@ -36,6 +36,13 @@ import org.syncany.util.StringUtil;
  * @author Philipp C. Heckel (philipp.heckel@gmail.com)
  */
 public class ZipMultiChunk extends MultiChunk {
+	/**
+	 * Timestamp of all zip entries. The entries carry no meaningful timestamp, and a
+	 * fixed one makes the multichunk output depend only on the chunks written to it
+	 * (required for convergent multichunks).
+	 */
+	private static final long ZIP_ENTRY_TIME = 0L;
+	
     private ZipOutputStream zipOut;
     private ZipInputStream zipIn;
     private ZipFile zipFile;
@@ -68,6 +75,7 @@ public class ZipMultiChunk extends MultiChunk {
        
         ZipEntry entry = new ZipEntry(StringUtil.toHex(chunk.getChecksum()));
         entry.setSize(chunk.getSize());
+        entry.setTime(ZIP_ENTRY_TIME);
 
         zipOut.putNextEntry(entry);
         zipOut.write(chunk.getContent(), 0, chunk.getSize());
@@ -31,9 +31,14 @@ import org.syncany.config.to.ConfigTO;
 import org.syncany.config.to.RepoTO;
 import org.syncany.config.to.RepoTO.MultiChunkerTO;
 import org.syncany.config.to.RepoTO.TransformerTO;
+import org.syncany.crypto.CipherUtil;
 import org.syncany.crypto.SaltedSecretKey;
+import org.syncany.database.ChunkIndex;
+import org.syncany.database.DatabaseBackend;
 import org.syncany.database.DatabaseConnectionFactory;
 import org.syncany.database.VectorClock;
+import org.syncany.database.dao.DatabaseSerializer;
+import org.syncany.operations.Downloader;
 import org.syncany.plugins.Plugins;
 import org.syncany.plugins.transfer.TransferPlugin;
 import org.syncany.plugins.transfer.TransferSettings;
@@ -76,7 +81,11 @@ public class Config {
 	public static final String FILE_TRANSACTION_DATABASE_PATTERN = "transaction-database.%010d.xml";
 	public static final String FILE_TRANSACTION_LIST = "transaction-list.txt";
 
+	private static final String CONVERGENCE_KEY_ALGORITHM = "HmacSHA256";
+	private static final int CONVERGENCE_KEY_SIZE = 256;
+
 	private byte[] repoId;
+	private byte[] convergenceKey;
 	private String machineName;
 	private String displayName;
 	private File localDir;
@@ -89,11 +98,15 @@ public class Config {
 	private SaltedSecretKey masterKey;
 
 	private Cache cache;
+	private ChunkIndex chunkIndex;
+	private DatabaseBackend databaseBackend;
+	private int downloadThreads;
 	private TransferPlugin plugin;
 	private TransferSettings transferSettings;
 	private Chunker chunker;
 	private MultiChunker multiChunker;
 	private Transformer transformer;
+	private DatabaseSerializer databaseSerializer;
 	private IgnoredFiles ignoredFiles;
 
 	static {
@@ -110,6 +123,9 @@ public class Config {
 		initMasterKey(configTO);
 		initDirectories(aLocalDir);
 		initCache(configTO);
+		initChunkIndex();
+		initDatabaseBackend(configTO);
+		initDownloadThreads(configTO);
 		initIgnoredFile();
 		initRepo(repoTO);
 		initConnection(configTO);
@@ -141,6 +157,28 @@ public class Config {
 		}
 	}
 
+	private void initChunkIndex() {
+		chunkIndex = new ChunkIndex(); // loaded lazily
+	}
+
+	private void initDatabaseBackend(ConfigTO configTO) throws ConfigException {
+		String databaseBackendType = (configTO.getDatabaseBackend() != null) ? configTO.getDatabaseBackend() : DatabaseBackend.DEFAULT_TYPE;
+		databaseBackend = DatabaseBackend.getInstance(databaseBackendType);
+
+		if (databaseBackend == null) {
+			throw new ConfigException("Invalid database backend: " + databaseBackendType);
+		}
+	}
+
+	private void initDownloadThreads(ConfigTO configTO) {
+		if (configTO.getDownloadThreads() != null && configTO.getDownloadThreads() > 0) {
+			downloadThreads = configTO.getDownloadThreads();
+		}
+		else {
+			downloadThreads = Downloader.DEFAULT_DOWNLOAD_THREADS;
+		}
+	}
+
 	private void initIgnoredFile() throws ConfigException {
 		File ignoreFile = new File(localDir, FILE_IGNORE);
 		ignoredFiles = new IgnoredFiles(ignoreFile);
@@ -149,9 +187,11 @@ public class Config {
 	private void initRepo(RepoTO repoTO) throws ConfigException {
 		try {
 			initRepoId(repoTO);
+			initConvergenceKey(repoTO);
 			initChunker(repoTO);
 			initMultiChunker(repoTO);
 			initTransformers(repoTO);
+			initDatabaseSerializer(repoTO);
 		}
 		catch (Exception e) {
 			throw new ConfigException("Unable to initialize repository information from config.", e);
@@ -162,6 +202,13 @@ public class Config {
 		repoId = repoTO.getRepoId();
 	}
 
+	private void initConvergenceKey(RepoTO repoTO) throws Exception {
+		if (repoTO.isConvergent()) {
+			byte[] inputKeyMaterial = (masterKey != null) ? masterKey.getEncoded() : repoId;
+			convergenceKey = CipherUtil.createDerivedKey(inputKeyMaterial, repoId, CONVERGENCE_KEY_ALGORITHM, CONVERGENCE_KEY_SIZE).getEncoded();
+		}
+	}
+
 	private void initChunker(RepoTO repoTO) throws Exception {
 		// TODO [feature request] make chunking options configurable, something like described in #29
 		// See: https://github.com/syncany/syncany/issues/29#issuecomment-43425647
@@ -219,6 +266,15 @@ public class Config {
 		}
 	}
 
+	private void initDatabaseSerializer(RepoTO repoTO) throws ConfigException {
+		String databaseFormat = (repoTO.getDatabaseFormat() != null) ? repoTO.getDatabaseFormat() : DatabaseSerializer.DEFAULT_FORMAT;
+		databaseSerializer = DatabaseSerializer.getInstance(databaseFormat, transformer);
+
+		if (databaseSerializer == null) {
+			throw new ConfigException("Invalid database format: " + databaseFormat);
+		}
+	}
+
 	private void initConnection(ConfigTO configTO) throws ConfigException {
 		if (configTO.getTransferSettings() != null) {
 			plugin = Plugins.get(configTO.getTransferSettings().getType(), TransferPlugin.class);
@@ -237,11 +293,31 @@ public class Config {
 	}
 
 	public java.sql.Connection createDatabaseConnection() {
-		return DatabaseConnectionFactory.createConnection(getDatabaseFile(), false);
+		return DatabaseConnectionFactory.createConnection(getDatabaseFile(), databaseBackend, false);
 	}
 
 	public java.sql.Connection createDatabaseConnection(boolean readOnly) {
-		return DatabaseConnectionFactory.createConnection(getDatabaseFile(), readOnly);
+		return DatabaseConnectionFactory.createConnection(getDatabaseFile(), databaseBackend, readOnly);
+	}
+
+	public DatabaseBackend getDatabaseBackend() {
+		return databaseBackend;
+	}
+
+	public DatabaseSerializer getDatabaseSerializer() {
+		return databaseSerializer;
+	}
+
+	public void setDatabaseSerializer(DatabaseSerializer databaseSerializer) {
+		this.databaseSerializer = databaseSerializer;
+	}
+
+	public int getDownloadThreads() {
+		return downloadThreads;
+	}
+
+	public void setDownloadThreads(int downloadThreads) {
+		this.downloadThreads = downloadThreads;
 	}
 
 	public File getCacheDir() {
@@ -288,6 +364,24 @@ public class Config {
 		return repoId;
 	}
 
+	/**
+	 * Returns whether the repository uses convergent multichunks, i.e. whether
+	 * multichunk IDs and keys are derived from the multichunk contents.
+	 */
+	public boolean isConvergent() {
+		return convergenceKey != null;
+	}
+
+	/**
+	 * Returns the repository-wide secret used to derive convergent multichunk
+	 * IDs, or <code>null</code> if the repository does not use convergent
+	 * multichunks. The key is derived from the master key (or, for unencrypted
+	 * repositories, from the repository ID), so it is the same on all clients.
+	 */
+	public byte[] getConvergenceKey() {
+		return convergenceKey;
+	}
+
 	public Chunker getChunker() {
 		return chunker;
 	}
@@ -296,6 +390,10 @@ public class Config {
 		return cache;
 	}
 
+	public ChunkIndex getChunkIndex() {
+		return chunkIndex;
+	}
+
 	public IgnoredFiles getIgnoredFiles() {
 		return ignoredFiles;
 	}
@@ -47,6 +47,7 @@ public class UserConfig {
 	// Daemon-specific config
 	public static final String DAEMON_FILE = "daemon.xml";
 	public static final String DAEMON_EXAMPLE_FILE = "daemon-example.xml";
+	public static final String DAEMON_PORT_FILE = "daemon-port.xml";
 	public static final String DEFAULT_FOLDER = "Syncany";
 	public static final String USER_ADMIN = "admin";
 	public static final String USER_CLI = "CLI";
@@ -63,6 +63,12 @@ public class ConfigTO {
 	@Element(name = "cacheKeepBytes", required = false)
 	private Long cacheKeepBytes;
 
+	@Element(name = "databaseBackend", required = false)
+	private String databaseBackend;
+
+	@Element(name = "downloadThreads", required = false)
+	private Integer downloadThreads;
+
 	public static ConfigTO load(File file) throws ConfigException {
 		try {
 			Registry registry = new Registry();
@@ -144,4 +150,20 @@ public class ConfigTO {
 		this.cacheKeepBytes = cacheKeepBytes;
 	}
 
+	public String getDatabaseBackend() {
+		return databaseBackend;
+	}
+
+	public void setDatabaseBackend(String databaseBackend) {
+		this.databaseBackend = databaseBackend;
+	}
+
+	public Integer getDownloadThreads() {
+		return downloadThreads;
+	}
+
+	public void setDownloadThreads(Integer downloadThreads) {
+		this.downloadThreads = downloadThreads;
+	}
+
 }
@@ -44,6 +44,9 @@ public class DaemonConfigTO {
 	@Element(name = "webServer", required = false)
 	private WebServerTO webServer = new WebServerTO();
 
+	@Element(name = "keyAgent", required = false)
+	private KeyAgentTO keyAgent = new KeyAgentTO();
+
 	@ElementList(name = "folders", entry = "folder", required = true)
 	private ArrayList<FolderTO> folders = new ArrayList<FolderTO>();
 
@@ -94,6 +97,14 @@ public class DaemonConfigTO {
 		this.webServer = webServer;
 	}
 
+	public KeyAgentTO getKeyAgent() {
+		return keyAgent;
+	}
+
+	public void setKeyAgent(KeyAgentTO keyAgent) {
+		this.keyAgent = keyAgent;
+	}
+
 	public PortTO getPortTO() {
 		return portTO;
 	}
@@ -65,6 +65,12 @@ public class RepoTO {
 	@ElementList(name = "transformers", required = false, entry = "transformer")
 	private ArrayList<TransformerTO> transformers;
 
+	@Element(name = "databaseformat", required = false)
+	private String databaseFormat;
+
+	@Element(name = "convergent", required = false)
+	private Boolean convergent;
+
 	public byte[] getRepoId() {
 		return repoId;
 	}
@@ -136,6 +142,26 @@ public class RepoTO {
 		this.transformers = (transformers != null) ? new ArrayList<TransformerTO>(transformers) : null;
 	}
 
+	public String getDatabaseFormat() {
+		return databaseFormat;
+	}
+
+	public void setDatabaseFormat(String databaseFormat) {
+		this.databaseFormat = databaseFormat;
+	}
+
+	/**
+	 * Returns whether multichunk IDs and keys are derived from the multichunk
+	 * contents (convergent mode), instead of being chosen randomly. 
+	 */
+	public boolean isConvergent() {
+		return convergent != null && convergent;
+	}
+
+	public void setConvergent(boolean convergent) {
+		this.convergent = (convergent) ? true : null;
+	}
+
 	/**
 	 * Configuration object for the deduplication chunker. As of
 	 * today, this is a key/value based configuration.
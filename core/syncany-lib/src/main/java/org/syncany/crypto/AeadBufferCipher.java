@@ -0,0 +1,125 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.crypto;
+
+import java.nio.ByteBuffer;
+
+import javax.crypto.ShortBufferException;
+
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.modes.AEADBlockCipher;
+
+/**
+ * Buffer cipher backed by a BouncyCastle lightweight {@link AEADBlockCipher}.
+ * 
+ * <p>The lightweight API only operates on byte arrays. If both buffers are backed by
+ * an accessible array (heap buffers), the data is processed in place. Otherwise, the
+ * data is copied to and from a scratch array that is re-used across calls.
+ * 
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class AeadBufferCipher extends BufferCipher {
+	private AEADBlockCipher cipher;
+	
+	private byte[] inputScratch;
+	private byte[] outputScratch;
+	
+	public AeadBufferCipher(AEADBlockCipher cipher) {
+		this.cipher = cipher;
+		
+		this.inputScratch = new byte[0];
+		this.outputScratch = new byte[0];
+	}
+
+	@Override
+	public int getOutputSize(int inputLength) {
+		return cipher.getOutputSize(inputLength);
+	}
+
+	@Override
+	public void update(ByteBuffer input, ByteBuffer output) throws ShortBufferException, CipherException {
+		int inputLength = input.remaining();
+		int maxOutputLength = cipher.getUpdateOutputSize(inputLength);
+		
+		if (output.remaining() < maxOutputLength) {
+			throw new ShortBufferException("Output buffer too small: " + output.remaining() + " bytes, but " + maxOutputLength + " bytes needed.");
+		}
+		
+		try {
+			if (input.hasArray() && output.hasArray()) {
+				int outputLength = cipher.processBytes(input.array(), input.arrayOffset() + input.position(), inputLength, output.array(), output.arrayOffset() + output.position());
+
+				input.position(input.position() + inputLength);
+				output.position(output.position() + outputLength);
+			}
+			else {
+				byte[] inputBytes = getInputScratch(inputLength);
+				byte[] outputBytes = getOutputScratch(maxOutputLength);
+				
+				input.get(inputBytes, 0, inputLength);
+				
+				int outputLength = cipher.processBytes(inputBytes, 0, inputLength, outputBytes, 0);
+				output.put(outputBytes, 0, outputLength);
+			}
+		}
+		catch (RuntimeException e) {
+			throw new CipherException(e);
+		}
+	}
+
+	@Override
+	public void doFinal(ByteBuffer output) throws ShortBufferException, CipherException {
+		int maxOutputLength = cipher.getOutputSize(0);
+		
+		if (output.remaining() < maxOutputLength) {
+			throw new ShortBufferException("Output buffer too small: " + output.remaining() + " bytes, but " + maxOutputLength + " bytes needed.");
+		}
+		
+		try {
+			if (output.hasArray()) {
+				int outputLength = cipher.doFinal(output.array(), output.arrayOffset() + output.position());
+				output.position(output.position() + outputLength);
+			}
+			else {
+				byte[] outputBytes = getOutputScratch(maxOutputLength);
+
+				int outputLength = cipher.doFinal(outputBytes, 0);
+				output.put(outputBytes, 0, outputLength);
+			}
+		}
+		catch (InvalidCipherTextException | RuntimeException e) {
+			throw new CipherException(e);
+		}
+	}
+	
+	private byte[] getInputScratch(int length) {
+		if (inputScratch.length < length) {
+			inputScratch = new byte[length];
+		}
+		
+		return inputScratch;
+	}
+	
+	private byte[] getOutputScratch(int length) {
+		if (outputScratch.length < length) {
+			outputScratch = new byte[length];
+		}
+		
+		return outputScratch;
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.crypto;
+
+import java.nio.ByteBuffer;
+
+import javax.crypto.ShortBufferException;
+
+/**
+ * A buffer cipher encrypts or decrypts data from one {@link ByteBuffer} into
+ * another, without an intermediate stream. It is the buffer-based counterpart of the 
+ * cipher streams created by a {@link CipherSpec}, and produces exactly the same output
+ * as these streams.
+ * 
+ * <p>Unlike the streams, a buffer cipher does not buffer any output itself. The caller
+ * passes the output buffer and is responsible for making it large enough. If it is too 
+ * small, a {@link ShortBufferException} is thrown, the input is not consumed, and the call 
+ * must be repeated with a larger output buffer (see {@link #getOutputSize(int)}).
+ * 
+ * <p>Buffer ciphers are created using {@link CipherSpec#newBufferCipher(boolean, byte[], byte[])},
+ * and are used by the {@link MultiCipherWritableChannel} and {@link MultiCipherReadableChannel}.
+ * 
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public abstract class BufferCipher {
+	/**
+	 * Returns the maximum number of bytes the next {@link #update(ByteBuffer, ByteBuffer) update()} 
+	 * (or {@link #doFinal(ByteBuffer) doFinal()}) might write for the given input length, 
+	 * including any data buffered internally by the cipher.
+	 */
+	public abstract int getOutputSize(int inputLength);
+
+	/**
+	 * Processes all remaining bytes of the input buffer and writes the result to the
+	 * output buffer. The positions of both buffers are advanced accordingly. 
+	 * 
+	 * @throws ShortBufferException If the output buffer is too small; no input is consumed in this case
+	 * @throws CipherException If the data cannot be processed
+	 */
+	public abstract void update(ByteBuffer input, ByteBuffer output) throws ShortBufferException, CipherException;
+
+	/**
+	 * Finishes the encryption or decryption, and writes the remaining output (e.g. the 
+	 * authentication tag) to the output buffer. When decrypting, this method verifies 
+	 * the authentication tag.
+	 * 
+	 * @throws ShortBufferException If the output buffer is too small
+	 * @throws CipherException If the data cannot be processed, or if the authentication fails
+	 */
+	public abstract void doFinal(ByteBuffer output) throws ShortBufferException, CipherException;
+}
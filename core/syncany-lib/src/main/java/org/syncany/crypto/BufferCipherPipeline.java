@@ -0,0 +1,176 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.crypto;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import javax.crypto.ShortBufferException;
+
+import org.syncany.util.ByteBufferPool;
+
+/**
+ * A buffer cipher pipeline passes data through a cascade of {@link BufferCipher}s, 
+ * and hands the result to a {@link BufferSink}. Each cipher stage writes into its own
+ * pooled buffer, which is directly used as the input of the next stage, i.e. data is not
+ * copied between the stages.
+ * 
+ * <p>Input is processed in chunks of at most the size of the stage buffers (minus some
+ * headroom for the cipher overhead). If a cipher produces more output than fits into its
+ * stage buffer (e.g. the JCE's AES/GCM, which releases the entire plaintext on the final
+ * call when decrypting), a temporary buffer of the required size is allocated. 
+ * 
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+class BufferCipherPipeline {
+	/**
+	 * Headroom per stage buffer for the output a cipher may add to its input,
+	 * e.g. a buffered partial block or an authentication tag.
+	 */
+	private static final int BUFFER_HEADROOM = 1024;
+	
+	private final List<BufferCipher> ciphers;
+	private final BufferSink sink;
+	private final ByteBufferPool bufferPool;
+	private final ByteBuffer[] buffers;
+	private final int maxChunkSize;
+
+	/**
+	 * Creates a new pipeline. The data is processed by the given ciphers in 
+	 * the order of the list, i.e. the first cipher receives the input.
+	 */
+	public BufferCipherPipeline(List<BufferCipher> ciphers, BufferSink sink, ByteBufferPool bufferPool) {
+		this.ciphers = ciphers;
+		this.sink = sink;
+		this.bufferPool = bufferPool;
+		this.buffers = new ByteBuffer[ciphers.size()];
+		this.maxChunkSize = bufferPool.getBufferSize() - BUFFER_HEADROOM;
+
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = bufferPool.acquire();
+		}
+	}
+
+	/**
+	 * Processes all remaining bytes of the given buffer. 
+	 */
+	public void update(ByteBuffer input) throws IOException {
+		process(0, input);
+	}
+	
+	/**
+	 * Finishes all ciphers (in order), and passes their final output through 
+	 * the remaining stages of the pipeline. 
+	 */
+	public void doFinal() throws IOException {
+		for (int stage = 0; stage < ciphers.size(); stage++) {
+			ByteBuffer output = finish(stage);
+			
+			output.flip();
+			process(stage + 1, output);
+		}
+	}
+
+	/**
+	 * Returns the stage buffers to the pool. The pipeline must 
+	 * not be used after this method was called.
+	 */
+	public void release() {
+		for (int i = 0; i < buffers.length; i++) {
+			bufferPool.release(buffers[i]);
+			buffers[i] = null;
+		}
+	}
+	
+	private void process(int stage, ByteBuffer input) throws IOException {
+		if (stage == ciphers.size()) {
+			sink.write(input);
+			return;
+		}
+		
+		int inputLimit = input.limit();
+		
+		while (input.hasRemaining()) {
+			input.limit(Math.min(inputLimit, input.position() + maxChunkSize));
+			ByteBuffer output = update(stage, input);
+			input.limit(inputLimit);
+			
+			output.flip();
+			
+			if (output.hasRemaining()) {
+				process(stage + 1, output);
+			}
+		}
+	}
+	
+	private ByteBuffer update(int stage, ByteBuffer input) throws IOException {
+		BufferCipher cipher = ciphers.get(stage);
+		ByteBuffer output = buffers[stage];
+		
+		output.clear();
+		
+		try {
+			try {
+				cipher.update(input, output);
+			}
+			catch (ShortBufferException e) {
+				output = ByteBuffer.allocate(cipher.getOutputSize(input.remaining()));
+				cipher.update(input, output);
+			}
+			
+			return output;
+		}
+		catch (ShortBufferException | CipherException e) {
+			throw new IOException("Cannot process data with cipher stage " + stage, e);
+		}
+	}
+	
+	private ByteBuffer finish(int stage) throws IOException {
+		BufferCipher cipher = ciphers.get(stage);
+		ByteBuffer output = buffers[stage];
+		
+		output.clear();
+		
+		try {
+			try {
+				cipher.doFinal(output);
+			}
+			catch (ShortBufferException e) {
+				output = ByteBuffer.allocate(cipher.getOutputSize(0));
+				cipher.doFinal(output);
+			}
+			
+			return output;
+		}
+		catch (ShortBufferException | CipherException e) {
+			throw new IOException("Cannot finish cipher stage " + stage, e);
+		}
+	}
+	
+	/**
+	 * The sink receives the output of the last stage of a {@link BufferCipherPipeline}.
+	 */
+	interface BufferSink {
+		/**
+		 * Consumes all remaining bytes of the given buffer. The buffer is owned by 
+		 * the pipeline and must not be used after this method returns.
+		 */
+		public void write(ByteBuffer buffer) throws IOException;
+	}
+}
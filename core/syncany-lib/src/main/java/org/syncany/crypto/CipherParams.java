@@ -106,6 +106,9 @@ public abstract class CipherParams {
     /**
      * Hash function used in the HKDF key derivation algorithm for deriving
      * keys from a master key.
+     * 
+     * <p>This instance is only a prototype and must not be used directly, because
+     * digests are not thread-safe. The {@link CipherUtil} uses thread-confined copies.
      * 
 	 * <p><b>Warning:</b> Changing this constant may lead to unrecoverable ciphertext data
 	 * Do not change this constant unless you know what you are doing! 
@@ -21,9 +21,11 @@ import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -49,9 +51,18 @@ import org.syncany.util.StringUtil;
  *
  *   <li>Keys used by {@link MultiCipherInputStream} (when reading files) are
  *       cached in order to minimize the amount of keys that have to be created when
- *       files are processed.
+ *       files are processed. The least recently used key is evicted when the cache
+ *       is full.
  * </ul>
  *
+ * <p>A cipher session may be used by multiple threads at the same time (e.g. when
+ * multichunks or database files are encrypted or decrypted concurrently). The read 
+ * cache is split into independently locked stripes (selected by the hash of the cipher
+ * spec and salt), each of which is an LRU cache with an equal share of the cache size. 
+ * Small caches have only one stripe, i.e. they are exact LRU caches. Write keys are
+ * locked per cipher spec. Hits and misses of both caches are counted, see 
+ * {@link #getReadCacheHitCount()} and the related methods.
+ *
  * @author Philipp C. Heckel (philipp.heckel@gmail.com)
  */
 public class CipherSession {
@@ -59,14 +70,23 @@ public class CipherSession {
 	private static final int DEFAULT_SECRET_KEY_READ_CACHE_SIZE = 20;
 	private static final int DEFAULT_SECRET_KEY_WRITE_REUSE_COUNT = 100;
 
+	private static final int MAX_READ_CACHE_STRIPES = 16;
+	private static final int MIN_READ_CACHE_STRIPE_SIZE = 8;
+
 	private SecretKey masterKey;
 
-	private Map<CipherSpecWithSalt, SecretKeyCacheEntry> secretKeyReadCache;
+	private SecretKeyReadCacheStripe[] secretKeyReadCacheStripes;
 	private int secretKeyReadCacheSize;
 
-	private Map<CipherSpec, SecretKeyCacheEntry> secretKeyWriteCache;
+	private ConcurrentMap<CipherSpec, SecretKeyWriteCacheSlot> secretKeyWriteCache;
 	private int secretKeyWriteReuseCount;
 
+	private AtomicLong readCacheHitCount;
+	private AtomicLong readCacheMissCount;
+	private AtomicLong readCacheEvictionCount;
+	private AtomicLong writeCacheHitCount;
+	private AtomicLong writeCacheMissCount;
+
 	/**
 	 * Creates a new cipher session, using the given master key. Derived keys will be created
 	 * from that master key.
@@ -95,11 +115,17 @@ public class CipherSession {
 	public CipherSession(SaltedSecretKey masterKey, int secretKeyReadCacheSize, int secretKeyWriteReuseCount) {
 		this.masterKey = masterKey;
 
-		this.secretKeyReadCache = new LinkedHashMap<CipherSpecWithSalt, SecretKeyCacheEntry>();
 		this.secretKeyReadCacheSize = secretKeyReadCacheSize;
+		this.secretKeyReadCacheStripes = createReadCacheStripes(secretKeyReadCacheSize);
 
-		this.secretKeyWriteCache = new HashMap<CipherSpec, SecretKeyCacheEntry>();
+		this.secretKeyWriteCache = new ConcurrentHashMap<CipherSpec, SecretKeyWriteCacheSlot>();
 		this.secretKeyWriteReuseCount = secretKeyWriteReuseCount;
+
+		this.readCacheHitCount = new AtomicLong(0);
+		this.readCacheMissCount = new AtomicLong(0);
+		this.readCacheEvictionCount = new AtomicLong(0);
+		this.writeCacheHitCount = new AtomicLong(0);
+		this.writeCacheMissCount = new AtomicLong(0);
 	}
 
 	/**
@@ -124,40 +150,59 @@ public class CipherSession {
 	 * @throws Exception If an error occurs with key creation
 	 */
 	public SaltedSecretKey getWriteSecretKey(CipherSpec cipherSpec) throws Exception {
-		SecretKeyCacheEntry secretKeyCacheEntry = secretKeyWriteCache.get(cipherSpec);
+		SecretKeyWriteCacheSlot secretKeyWriteCacheSlot = getWriteCacheSlot(cipherSpec);
 
-		// Remove key if use more than X times
-		if (secretKeyCacheEntry != null && secretKeyCacheEntry.getUseCount() >= secretKeyWriteReuseCount) {
-			logger.log(Level.FINE, "- Removed WRITE secret key from cache, because it was used " + secretKeyCacheEntry.getUseCount() + " times.");
+		synchronized (secretKeyWriteCacheSlot) {
+			SecretKeyCacheEntry secretKeyCacheEntry = secretKeyWriteCacheSlot.getEntry();
 
-			secretKeyWriteCache.remove(cipherSpec);
-			secretKeyCacheEntry = null;
-		}
+			// Remove key if use more than X times
+			if (secretKeyCacheEntry != null && secretKeyCacheEntry.getUseCount() >= secretKeyWriteReuseCount) {
+				logger.log(Level.FINE, "- Removed WRITE secret key from cache, because it was used " + secretKeyCacheEntry.getUseCount() + " times.");
+
+				secretKeyWriteCacheSlot.setEntry(null);
+				secretKeyCacheEntry = null;
+			}
 
-		// Return cached key, or create a new one
-		if (secretKeyCacheEntry != null) {
-			secretKeyCacheEntry.increaseUseCount();
+			// Return cached key, or create a new one
+			if (secretKeyCacheEntry != null) {
+				secretKeyCacheEntry.increaseUseCount();
+				writeCacheHitCount.incrementAndGet();
 
-			logger.log(Level.FINE, "- Using CACHED WRITE secret key " + secretKeyCacheEntry.getSaltedSecretKey().getAlgorithm() + ", with salt "
-					+ StringUtil.toHex(secretKeyCacheEntry.getSaltedSecretKey().getSalt()));
-			return secretKeyCacheEntry.getSaltedSecretKey();
-		}
-		else {
-			SaltedSecretKey saltedSecretKey = createSaltedSecretKey(cipherSpec);
+				logger.log(Level.FINE, "- Using CACHED WRITE secret key " + secretKeyCacheEntry.getSaltedSecretKey().getAlgorithm() + ", with salt "
+						+ StringUtil.toHex(secretKeyCacheEntry.getSaltedSecretKey().getSalt()));
+				return secretKeyCacheEntry.getSaltedSecretKey();
+			}
+			else {
+				SaltedSecretKey saltedSecretKey = createSaltedSecretKey(cipherSpec);
 
-			secretKeyCacheEntry = new SecretKeyCacheEntry(saltedSecretKey);
-			secretKeyWriteCache.put(cipherSpec, secretKeyCacheEntry);
+				secretKeyCacheEntry = new SecretKeyCacheEntry(saltedSecretKey);
+				secretKeyWriteCacheSlot.setEntry(secretKeyCacheEntry);
+				writeCacheMissCount.incrementAndGet();
 
-			logger.log(Level.FINE, "- Created NEW WRITE secret key " + secretKeyCacheEntry.getSaltedSecretKey().getAlgorithm()
-					+ ", and added to cache, with salt " + StringUtil.toHex(saltedSecretKey.getSalt()));
-			return saltedSecretKey;
+				logger.log(Level.FINE, "- Created NEW WRITE secret key " + secretKeyCacheEntry.getSaltedSecretKey().getAlgorithm()
+						+ ", and added to cache, with salt " + StringUtil.toHex(saltedSecretKey.getSalt()));
+				return saltedSecretKey;
+			}
 		}
 	}
 
+	/**
+	 * Creates a new initialization vector (IV) for the given cipher spec, to be used
+	 * with a key returned by {@link #getWriteSecretKey(CipherSpec)}. IVs are random,
+	 * and never reused.
+	 * 
+	 * @param cipherSpec Defines the IV size
+	 * @return Returns a new random IV
+	 */
+	public byte[] createWriteIv(CipherSpec cipherSpec) {
+		return CipherUtil.createRandomArray(cipherSpec.getIvSize() / 8);
+	}
+
 	/**
 	 * Creates a new secret key or retrieves it from the read cache. If the given cipher spec / salt combination
-	 * is found in the cache, the cached secret key is returned. If not, a new key is created. Keys are removed
-	 * from the cache when the cache reached the size defined by {@link #secretKeyReadCacheSize} (as set in
+	 * is found in the cache, the cached secret key is returned. If not, a new key is created. If the cache
+	 * (or rather the stripe responsible for this combination) is full, the least recently used key is removed
+	 * from the cache. The cache size is defined by {@link #secretKeyReadCacheSize} (as set in
 	 * {@link #CipherSession(SaltedSecretKey, int, int) the constructor}.
 	 *
 	 * <p>If a new key needs to be created, {@link CipherUtil} is used to do so.
@@ -172,30 +217,138 @@ public class CipherSession {
 	 */
 	public SaltedSecretKey getReadSecretKey(CipherSpec cipherSpec, byte[] salt) throws Exception {
 		CipherSpecWithSalt cipherSpecWithSalt = new CipherSpecWithSalt(cipherSpec, salt);
-		SecretKeyCacheEntry secretKeyCacheEntry = secretKeyReadCache.get(cipherSpecWithSalt);
+		SecretKeyReadCacheStripe secretKeyReadCacheStripe = getReadCacheStripe(cipherSpecWithSalt);
 
-		if (secretKeyCacheEntry != null) {
-			logger.log(Level.FINE, "- Using CACHED READ secret key " + secretKeyCacheEntry.getSaltedSecretKey().getAlgorithm() + ", with salt "
-					+ StringUtil.toHex(salt));
-			return secretKeyCacheEntry.getSaltedSecretKey();
+		synchronized (secretKeyReadCacheStripe) {
+			SecretKeyCacheEntry secretKeyCacheEntry = secretKeyReadCacheStripe.get(cipherSpecWithSalt);
+
+			if (secretKeyCacheEntry != null) {
+				readCacheHitCount.incrementAndGet();
+
+				logger.log(Level.FINE, "- Using CACHED READ secret key " + secretKeyCacheEntry.getSaltedSecretKey().getAlgorithm() + ", with salt "
+						+ StringUtil.toHex(salt));
+				return secretKeyCacheEntry.getSaltedSecretKey();
+			}
+			else {
+				SaltedSecretKey saltedSecretKey = createSaltedSecretKey(cipherSpec, salt);
+				secretKeyCacheEntry = new SecretKeyCacheEntry(saltedSecretKey);
+
+				secretKeyReadCacheStripe.put(cipherSpecWithSalt, secretKeyCacheEntry); // May evict LRU entry
+				readCacheMissCount.incrementAndGet();
+
+				logger.log(Level.FINE, "- Created NEW READ secret key " + secretKeyCacheEntry.getSaltedSecretKey().getAlgorithm()
+						+ ", and added to cache, with salt " + StringUtil.toHex(salt));
+				return saltedSecretKey;
+			}
 		}
-		else {
-			if (secretKeyReadCache.size() >= secretKeyReadCacheSize) {
-				CipherSpecWithSalt firstKey = secretKeyReadCache.keySet().iterator().next();
-				secretKeyReadCache.remove(firstKey);
+	}
 
-				logger.log(Level.FINE, "- Removed oldest READ secret key from cache.");
+	/**
+	 * Returns the number of keys currently held in the read cache. 
+	 */
+	public int getReadCacheSize() {
+		int readCacheSize = 0;
+
+		for (SecretKeyReadCacheStripe secretKeyReadCacheStripe : secretKeyReadCacheStripes) {
+			synchronized (secretKeyReadCacheStripe) {
+				readCacheSize += secretKeyReadCacheStripe.size();
 			}
+		}
 
-			SaltedSecretKey saltedSecretKey = createSaltedSecretKey(cipherSpec, salt);
-			secretKeyCacheEntry = new SecretKeyCacheEntry(saltedSecretKey);
+		return readCacheSize;
+	}
 
-			secretKeyReadCache.put(cipherSpecWithSalt, secretKeyCacheEntry);
+	/**
+	 * Returns the number of read keys returned from the cache.
+	 */
+	public long getReadCacheHitCount() {
+		return readCacheHitCount.get();
+	}
 
-			logger.log(Level.FINE, "- Created NEW READ secret key " + secretKeyCacheEntry.getSaltedSecretKey().getAlgorithm()
-					+ ", and added to cache, with salt " + StringUtil.toHex(salt));
-			return saltedSecretKey;
+	/**
+	 * Returns the number of read keys that had to be derived, because
+	 * they were not in the cache.
+	 */
+	public long getReadCacheMissCount() {
+		return readCacheMissCount.get();
+	}
+
+	/**
+	 * Returns the number of read keys that were removed from the cache
+	 * to make room for other keys.
+	 */
+	public long getReadCacheEvictionCount() {
+		return readCacheEvictionCount.get();
+	}
+
+	/**
+	 * Returns the ratio of read cache hits to all read key lookups, 
+	 * or zero if no read keys have been requested yet.
+	 */
+	public double getReadCacheHitRate() {
+		return getHitRate(readCacheHitCount.get(), readCacheMissCount.get());
+	}
+
+	/**
+	 * Returns the number of write keys that were reused.
+	 */
+	public long getWriteCacheHitCount() {
+		return writeCacheHitCount.get();
+	}
+
+	/**
+	 * Returns the number of write keys that were newly derived.
+	 */
+	public long getWriteCacheMissCount() {
+		return writeCacheMissCount.get();
+	}
+
+	/**
+	 * Returns the ratio of reused write keys to all write key lookups, 
+	 * or zero if no write keys have been requested yet.
+	 */
+	public double getWriteCacheHitRate() {
+		return getHitRate(writeCacheHitCount.get(), writeCacheMissCount.get());
+	}
+
+	private double getHitRate(long hitCount, long missCount) {
+		long totalCount = hitCount + missCount;
+		return (totalCount > 0) ? (double) hitCount / totalCount : 0;
+	}
+
+	private SecretKeyReadCacheStripe[] createReadCacheStripes(int secretKeyReadCacheSize) {
+		int stripeCount = Math.max(1, Math.min(MAX_READ_CACHE_STRIPES, secretKeyReadCacheSize / MIN_READ_CACHE_STRIPE_SIZE));
+		SecretKeyReadCacheStripe[] readCacheStripes = new SecretKeyReadCacheStripe[stripeCount];
+
+		for (int i = 0; i < stripeCount; i++) {
+			// Distribute cache size evenly, first stripes take the remainder
+			int stripeSize = secretKeyReadCacheSize / stripeCount + ((i < secretKeyReadCacheSize % stripeCount) ? 1 : 0);
+			readCacheStripes[i] = new SecretKeyReadCacheStripe(Math.max(1, stripeSize));
 		}
+
+		return readCacheStripes;
+	}
+
+	private SecretKeyReadCacheStripe getReadCacheStripe(CipherSpecWithSalt cipherSpecWithSalt) {
+		int hashCode = cipherSpecWithSalt.hashCode();
+		int spreadHashCode = hashCode ^ (hashCode >>> 16);
+
+		return secretKeyReadCacheStripes[(spreadHashCode & 0x7fffffff) % secretKeyReadCacheStripes.length];
+	}
+
+	private SecretKeyWriteCacheSlot getWriteCacheSlot(CipherSpec cipherSpec) {
+		SecretKeyWriteCacheSlot secretKeyWriteCacheSlot = secretKeyWriteCache.get(cipherSpec);
+
+		if (secretKeyWriteCacheSlot == null) {
+			SecretKeyWriteCacheSlot newSecretKeyWriteCacheSlot = new SecretKeyWriteCacheSlot();
+			secretKeyWriteCacheSlot = secretKeyWriteCache.putIfAbsent(cipherSpec, newSecretKeyWriteCacheSlot);
+
+			if (secretKeyWriteCacheSlot == null) {
+				secretKeyWriteCacheSlot = newSecretKeyWriteCacheSlot;
+			}
+		}
+
+		return secretKeyWriteCacheSlot;
 	}
 
 	private SaltedSecretKey createSaltedSecretKey(CipherSpec cipherSpec) throws InvalidKeySpecException, NoSuchAlgorithmException,
@@ -231,6 +384,49 @@ public class CipherSession {
 		}
 	}
 
+	/**
+	 * One stripe of the read cache: An access-ordered map that removes the least
+	 * recently used entry when its capacity is exceeded. Access must be synchronized
+	 * on the stripe.
+	 */
+	private class SecretKeyReadCacheStripe extends LinkedHashMap<CipherSpecWithSalt, SecretKeyCacheEntry> {
+		private static final long serialVersionUID = -2497312040213829463L;
+		private int capacity;
+
+		public SecretKeyReadCacheStripe(int capacity) {
+			super(capacity + 1, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<CipherSpecWithSalt, SecretKeyCacheEntry> eldest) {
+			if (size() > capacity) {
+				readCacheEvictionCount.incrementAndGet();
+				logger.log(Level.FINE, "- Removed least recently used READ secret key from cache.");
+
+				return true;
+			}
+
+			return false;
+		}
+	}
+
+	/**
+	 * Holds the current write key of a cipher spec. Access must be
+	 * synchronized on the slot.
+	 */
+	private static class SecretKeyWriteCacheSlot {
+		private SecretKeyCacheEntry entry;
+
+		public SecretKeyCacheEntry getEntry() {
+			return entry;
+		}
+
+		public void setEntry(SecretKeyCacheEntry entry) {
+			this.entry = entry;
+		}
+	}
+
 	private static class CipherSpecWithSalt {
 		private CipherSpec cipherSpec;
 		private byte[] salt;
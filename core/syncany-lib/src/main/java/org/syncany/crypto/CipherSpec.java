@@ -81,6 +81,8 @@ public abstract class CipherSpec {
 
 	public abstract InputStream newCipherInputStream(InputStream underlyingInputStream, byte[] secretKey, byte[] iv) throws CipherException;
 
+	public abstract BufferCipher newBufferCipher(boolean forEncryption, byte[] secretKey, byte[] iv) throws CipherException;
+
 	@Override
 	public String toString() {
 		return algorithm + ", " + keySize + " bit";
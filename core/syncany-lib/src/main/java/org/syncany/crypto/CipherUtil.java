@@ -72,11 +72,13 @@ import org.bouncycastle.asn1.x500.style.BCStyle;
 import org.bouncycastle.cert.X509v3CertificateBuilder;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
 import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.crypto.Digest;
 import org.bouncycastle.crypto.generators.HKDFBytesGenerator;
 import org.bouncycastle.crypto.params.HKDFParameters;
 import org.bouncycastle.operator.ContentSigner;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.util.Memoable;
 
 /**
  * The cipher utility provides functions to create a master key using PBKDF2,
@@ -89,6 +91,17 @@ import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 public class CipherUtil {
 	private static final Logger logger = Logger.getLogger(CipherUtil.class.getSimpleName());
 
+	/**
+	 * Thread-confined copies of the {@link CipherParams#KEY_DERIVATION_DIGEST} prototype. Digests
+	 * are stateful, so a single instance cannot be shared by concurrent key derivations.
+	 */
+	private static final ThreadLocal<Digest> keyDerivationDigest = new ThreadLocal<Digest>() {
+		@Override
+		protected Digest initialValue() {
+			return (Digest) ((Memoable) KEY_DERIVATION_DIGEST).copy();
+		}
+	};
+
 	/**
 	 * Chars from A-Z / a-z to be used in randomly generated passwords.
 	 *
@@ -237,7 +250,7 @@ public class CipherUtil {
 	public static SaltedSecretKey createDerivedKey(byte[] inputKeyMaterial, byte[] inputSalt, String outputKeyAlgorithm, int outputKeySize)
 			throws InvalidKeySpecException, NoSuchAlgorithmException, NoSuchProviderException {
 
-		HKDFBytesGenerator hkdf = new HKDFBytesGenerator(KEY_DERIVATION_DIGEST);
+		HKDFBytesGenerator hkdf = new HKDFBytesGenerator(keyDerivationDigest.get());
 		hkdf.init(new HKDFParameters(inputKeyMaterial, inputSalt, KEY_DERIVATION_INFO));
 
 		byte[] derivedKey = new byte[outputKeySize / 8];
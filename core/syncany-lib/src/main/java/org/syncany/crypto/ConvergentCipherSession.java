@@ -0,0 +1,97 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.crypto;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The convergent cipher session is a {@link CipherSession} for writing exactly one
+ * file whose contents are identified by a content ID, e.g. a convergent multichunk.
+ * 
+ * <p>Instead of random salts and IVs, the session derives the salt of each write key
+ * and each IV from the content ID, keyed with the master key. Encrypting the same
+ * content (with the same content ID) with the same master key therefore produces
+ * identical ciphertext, while different content IDs yield different keys and IVs.
+ * 
+ * <p>Since key and IV are reused for identical content IDs, the content ID <b>must</b>
+ * uniquely identify the plaintext (e.g. a keyed hash of the plaintext). Otherwise,
+ * different plaintexts would be encrypted with the same key and IV.
+ * 
+ * <p>Reading is not affected by this class: The salts and IVs are stored in the 
+ * header of the encrypted file, just like with random salts and IVs.
+ * 
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class ConvergentCipherSession extends CipherSession {
+	private static final String DERIVATION_HMAC_ALGORITHM = "HmacSHA256";
+	
+	private static final byte DERIVATION_TYPE_SALT = 1;
+	private static final byte DERIVATION_TYPE_IV = 2;
+	
+	private byte[] contentId;
+
+	public ConvergentCipherSession(SaltedSecretKey masterKey, byte[] contentId) {
+		super(masterKey);
+		this.contentId = contentId;
+	}
+
+	/**
+	 * Returns a write secret key for the given cipher spec. The salt of the key is
+	 * derived from the content ID, so the same key is returned for the same content
+	 * ID and cipher spec.
+	 */
+	@Override
+	public SaltedSecretKey getWriteSecretKey(CipherSpec cipherSpec) throws Exception {
+		byte[] salt = deriveBytes(DERIVATION_TYPE_SALT, cipherSpec, MultiCipherOutputStream.SALT_SIZE);
+		return CipherUtil.createDerivedKey(getMasterKey(), salt, cipherSpec);
+	}
+
+	/**
+	 * Returns an IV for the given cipher spec, derived from the content ID.
+	 */
+	@Override
+	public byte[] createWriteIv(CipherSpec cipherSpec) {
+		return deriveBytes(DERIVATION_TYPE_IV, cipherSpec, cipherSpec.getIvSize() / 8);
+	}
+
+	private byte[] deriveBytes(byte derivationType, CipherSpec cipherSpec, int length) {
+		try {
+			Mac derivationHmac = Mac.getInstance(DERIVATION_HMAC_ALGORITHM);
+			derivationHmac.init(new SecretKeySpec(getMasterKey().getEncoded(), DERIVATION_HMAC_ALGORITHM));
+			
+			derivationHmac.update(derivationType);
+			derivationHmac.update(ByteBuffer.allocate(4).putInt(cipherSpec.getId()).array());
+			derivationHmac.update(contentId);
+
+			byte[] derivedBytes = derivationHmac.doFinal();
+			
+			if (length > derivedBytes.length) {
+				throw new RuntimeException("Cannot derive " + length + " bytes from content ID; maximum is " + derivedBytes.length);
+			}
+			
+			return Arrays.copyOf(derivedBytes, length);
+		}
+		catch (Exception e) {
+			throw new RuntimeException("Cannot derive convergent salt/IV.", e);
+		}
+	}
+}
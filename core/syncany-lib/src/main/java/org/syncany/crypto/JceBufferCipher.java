@@ -0,0 +1,126 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.crypto;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+
+/**
+ * Buffer cipher backed by a JCE {@link Cipher}.
+ * 
+ * <p>The data is passed to the cipher as byte arrays, and not using the cipher's {@link ByteBuffer}
+ * methods: On JDK 8, the buffer methods reject the input if the output buffer cannot hold everything the 
+ * cipher has buffered so far. For AES/GCM decryption, which buffers the entire ciphertext, this 
+ * would force an ever-growing output buffer for each call. If both buffers are backed by an accessible 
+ * array (heap buffers), the data is processed in place. Otherwise, it is copied to and from a scratch
+ * array that is re-used across calls.
+ * 
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class JceBufferCipher extends BufferCipher {
+	private Cipher cipher;
+	
+	private byte[] inputScratch;
+	private byte[] outputScratch;
+	
+	public JceBufferCipher(Cipher cipher) {
+		this.cipher = cipher;
+		
+		this.inputScratch = new byte[0];
+		this.outputScratch = new byte[0];
+	}
+
+	@Override
+	public int getOutputSize(int inputLength) {
+		return cipher.getOutputSize(inputLength);
+	}
+
+	@Override
+	public void update(ByteBuffer input, ByteBuffer output) throws ShortBufferException, CipherException {
+		int inputLength = input.remaining();
+
+		try {
+			if (input.hasArray() && output.hasArray()) {
+				int outputLength = cipher.update(input.array(), input.arrayOffset() + input.position(), inputLength, output.array(), output.arrayOffset() + output.position());
+
+				input.position(input.position() + inputLength);
+				output.position(output.position() + outputLength);
+			}
+			else {
+				byte[] inputBytes = getInputScratch(inputLength);
+				byte[] outputBytes = getOutputScratch(output.remaining());
+				
+				input.mark();
+				input.get(inputBytes, 0, inputLength);
+				
+				try {
+					int outputLength = cipher.update(inputBytes, 0, inputLength, outputBytes, 0);
+					output.put(outputBytes, 0, outputLength);
+				}
+				catch (ShortBufferException e) {
+					input.reset();
+					throw e;
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			throw new CipherException(e);
+		}
+	}
+
+	@Override
+	public void doFinal(ByteBuffer output) throws ShortBufferException, CipherException {
+		try {
+			if (output.hasArray()) {
+				int outputLength = cipher.doFinal(output.array(), output.arrayOffset() + output.position());
+				output.position(output.position() + outputLength);
+			}
+			else {
+				byte[] outputBytes = getOutputScratch(output.remaining());
+
+				int outputLength = cipher.doFinal(outputBytes, 0);
+				output.put(outputBytes, 0, outputLength);
+			}
+		}
+		catch (ShortBufferException e) {
+			throw e;
+		}
+		catch (GeneralSecurityException | RuntimeException e) {
+			throw new CipherException(e);
+		}
+	}
+	
+	private byte[] getInputScratch(int length) {
+		if (inputScratch.length < length) {
+			inputScratch = new byte[length];
+		}
+		
+		return inputScratch;
+	}
+	
+	private byte[] getOutputScratch(int length) {
+		if (outputScratch.length < length) {
+			outputScratch = new byte[length];
+		}
+		
+		return outputScratch;
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.crypto;
+
+import static org.syncany.crypto.CipherParams.CRYPTO_PROVIDER_ID;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+/**
+ * Writes and reads the header of the multi cipher format, i.e. everything up to and
+ * including the header HMAC (see {@link MultiCipherOutputStream} for the format). The header
+ * determines the stream version, the cipher specs, and the keys and IVs used to encrypt the 
+ * ciphertext that follows it.
+ * 
+ * <p>The header is shared by the stream implementations ({@link MultiCipherOutputStream}, 
+ * {@link MultiCipherInputStream}) and the channel implementations ({@link MultiCipherWritableChannel},
+ * {@link MultiCipherReadableChannel}) of the format.
+ * 
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+class MultiCipherHeader {
+	private byte streamVersion;
+	private List<CipherSpec> cipherSpecs;
+	private List<byte[]> secretKeys;
+	private List<byte[]> ivs;
+	private int segmentSize;
+	
+	private MultiCipherHeader() {
+		this.cipherSpecs = new ArrayList<CipherSpec>();
+		this.secretKeys = new ArrayList<byte[]>();
+		this.ivs = new ArrayList<byte[]>();
+	}
+	
+	/**
+	 * Creates new random IVs, and writes the header for the given cipher specs to the 
+	 * output stream. If the segment size is greater than zero, the header of a segmented
+	 * stream ({@link MultiCipherOutputStream#STREAM_VERSION_SEGMENTED}) is written.
+	 */
+	public static MultiCipherHeader write(OutputStream outputStream, List<CipherSpec> cipherSpecs, CipherSession cipherSession, int segmentSize) throws Exception {
+		MultiCipherHeader header = new MultiCipherHeader();
+		
+		// Initialize header HMAC
+		SaltedSecretKey hmacSecretKey = cipherSession.getWriteSecretKey(MultiCipherOutputStream.HMAC_SPEC);
+
+		Mac headerHmac = Mac.getInstance(MultiCipherOutputStream.HMAC_SPEC.getAlgorithm(), CRYPTO_PROVIDER_ID);
+		headerHmac.init(hmacSecretKey);
+
+		// Write header
+		header.streamVersion = (segmentSize > 0) ? MultiCipherOutputStream.STREAM_VERSION_SEGMENTED : MultiCipherOutputStream.STREAM_VERSION;
+		header.segmentSize = segmentSize;
+		
+		writeNoHmac(outputStream, MultiCipherOutputStream.STREAM_MAGIC);
+		writeNoHmac(outputStream, header.streamVersion);
+		writeNoHmac(outputStream, hmacSecretKey.getSalt());			
+		writeAndUpdateHmac(outputStream, cipherSpecs.size(), headerHmac);
+
+		for (CipherSpec cipherSpec : cipherSpecs) { 
+			SaltedSecretKey saltedSecretKey = cipherSession.getWriteSecretKey(cipherSpec);				
+			byte[] iv = cipherSession.createWriteIv(cipherSpec);
+
+			writeAndUpdateHmac(outputStream, cipherSpec.getId(), headerHmac);
+			writeAndUpdateHmac(outputStream, saltedSecretKey.getSalt(), headerHmac);
+			writeAndUpdateHmac(outputStream, iv, headerHmac);
+
+			header.cipherSpecs.add(cipherSpec);
+			header.secretKeys.add(saltedSecretKey.getEncoded());
+			header.ivs.add(iv);
+		}	
+
+		if (header.streamVersion == MultiCipherOutputStream.STREAM_VERSION_SEGMENTED) {
+			writeAndUpdateHmac(outputStream, ByteBuffer.allocate(4).putInt(segmentSize).array(), headerHmac);
+		}
+		
+		writeNoHmac(outputStream, headerHmac.doFinal());
+		
+		return header;
+	}
+	
+	/**
+	 * Reads and verifies the header from the given input stream. After this method, 
+	 * the input stream is positioned at the first byte of the ciphertext.
+	 */
+	public static MultiCipherHeader read(InputStream inputStream, CipherSession cipherSession) throws Exception {
+		MultiCipherHeader header = new MultiCipherHeader();
+
+		readAndVerifyMagicNoHmac(inputStream);
+		header.streamVersion = readAndVerifyVersionNoHmac(inputStream);
+
+		Mac headerHmac = readHmacSaltAndInitHmac(inputStream, cipherSession);
+		int cipherSpecCount = readByteAndUpdateHmac(inputStream, headerHmac);		
+
+		for (int i=0; i<cipherSpecCount; i++) {
+			int cipherSpecId = readByteAndUpdateHmac(inputStream, headerHmac);				
+			CipherSpec cipherSpec = CipherSpecs.getCipherSpec(cipherSpecId);
+			
+			if (cipherSpec == null) {
+				throw new IOException("Cannot find cipher spec with ID "+cipherSpecId);
+			}
+
+			byte[] salt = readAndUpdateHmac(inputStream, MultiCipherOutputStream.SALT_SIZE, headerHmac);
+			byte[] iv = readAndUpdateHmac(inputStream, cipherSpec.getIvSize()/8, headerHmac);
+			
+			SecretKey secretKey = cipherSession.getReadSecretKey(cipherSpec, salt);			
+
+			header.cipherSpecs.add(cipherSpec);
+			header.secretKeys.add(secretKey.getEncoded());
+			header.ivs.add(iv);
+		}	 
+		
+		if (header.streamVersion == MultiCipherOutputStream.STREAM_VERSION_SEGMENTED) {
+			header.segmentSize = ByteBuffer.wrap(readAndUpdateHmac(inputStream, 4, headerHmac)).getInt();
+			
+			if (header.segmentSize <= 0 || header.segmentSize > MultiCipherOutputStream.MAX_SEGMENT_SIZE) {
+				throw new IOException("Invalid segment size: " + header.segmentSize);
+			}
+		}
+
+		readAndVerifyHmac(inputStream, headerHmac);
+		
+		return header;
+	}
+	
+	public byte getStreamVersion() {
+		return streamVersion;
+	}
+
+	public List<CipherSpec> getCipherSpecs() {
+		return cipherSpecs;
+	}
+
+	public List<byte[]> getSecretKeys() {
+		return secretKeys;
+	}
+
+	public List<byte[]> getIvs() {
+		return ivs;
+	}
+
+	public int getSegmentSize() {
+		return segmentSize;
+	}
+	
+	/**
+	 * Creates the segment cipher for a segmented stream, using the
+	 * cipher specs, keys and IVs of this header.
+	 */
+	public SegmentCipher createSegmentCipher() throws CipherException {
+		return new SegmentCipher(cipherSpecs, secretKeys, ivs);
+	}
+	
+	private static void writeNoHmac(OutputStream outputStream, byte[] bytes) throws IOException {
+		outputStream.write(bytes);
+	}
+
+	private static void writeNoHmac(OutputStream outputStream, int abyte) throws IOException {
+		outputStream.write(abyte);
+	}	
+	
+	private static void writeAndUpdateHmac(OutputStream outputStream, byte[] bytes, Mac hmac) throws IOException {
+		writeNoHmac(outputStream, bytes);
+		hmac.update(bytes);
+	}
+
+	private static void writeAndUpdateHmac(OutputStream outputStream, int abyte, Mac hmac) throws IOException {
+		writeNoHmac(outputStream, abyte);
+		hmac.update((byte) abyte);
+	}	
+
+	private static void readAndVerifyMagicNoHmac(InputStream inputStream) throws IOException {
+		byte[] streamMagic = new byte[MultiCipherOutputStream.STREAM_MAGIC.length];
+		inputStream.read(streamMagic);
+		
+		if (!Arrays.equals(MultiCipherOutputStream.STREAM_MAGIC, streamMagic)) {
+			throw new IOException("Not a Syncany-encrypted file, no magic!");
+		}
+	}
+
+	private static byte readAndVerifyVersionNoHmac(InputStream inputStream) throws IOException {
+		byte streamVersion = (byte) inputStream.read();
+		
+		if (streamVersion != MultiCipherOutputStream.STREAM_VERSION && streamVersion != MultiCipherOutputStream.STREAM_VERSION_SEGMENTED) {
+			throw new IOException("Stream version not supported: "+streamVersion);
+		}		
+		
+		return streamVersion;
+	}
+	
+	private static Mac readHmacSaltAndInitHmac(InputStream inputStream, CipherSession cipherSession) throws Exception {
+		byte[] hmacSalt = readNoHmac(inputStream, MultiCipherOutputStream.SALT_SIZE);
+		SecretKey hmacSecretKey = cipherSession.getReadSecretKey(MultiCipherOutputStream.HMAC_SPEC, hmacSalt);
+		
+		Mac hmac = Mac.getInstance(MultiCipherOutputStream.HMAC_SPEC.getAlgorithm(), CRYPTO_PROVIDER_ID);
+		hmac.init(hmacSecretKey);	
+		
+		return hmac;
+	}
+
+	private static void readAndVerifyHmac(InputStream inputStream, Mac hmac) throws Exception {
+		byte[] calculatedHeaderHmac = hmac.doFinal();
+		byte[] readHeaderHmac = readNoHmac(inputStream, calculatedHeaderHmac.length);
+		
+		if (!Arrays.equals(calculatedHeaderHmac, readHeaderHmac)) {
+			throw new Exception("Integrity exception: Calculated HMAC and read HMAC do not match.");
+		}			
+	}
+
+	private static byte[] readNoHmac(InputStream inputStream, int size) throws IOException {
+		byte[] bytes = new byte[size];		
+		inputStream.read(bytes);	
+		
+		return bytes;
+	}
+
+	private static byte[] readAndUpdateHmac(InputStream inputStream, int size, Mac hmac) throws IOException {
+		byte[] bytes = readNoHmac(inputStream, size);		
+		hmac.update(bytes);
+		
+		return bytes;
+	}
+
+	private static int readByteAndUpdateHmac(InputStream inputStream, Mac hmac) throws IOException {
+		int abyte = inputStream.read();
+		hmac.update((byte) abyte);
+		
+		return abyte;
+	}
+}
@@ -17,15 +17,16 @@
  */
 package org.syncany.crypto;
 
-import static org.syncany.crypto.CipherParams.CRYPTO_PROVIDER_ID;
-
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
-
-import javax.crypto.Mac;
-import javax.crypto.SecretKey;
 
+/**
+ * Implements an input stream that decrypts a stream written by the
+ * {@link MultiCipherOutputStream}. Both the version 1 format and the segmented
+ * version 2 format are supported. For the format, see {@link MultiCipherOutputStream}.
+ * 
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
 public class MultiCipherInputStream extends InputStream {
 	private InputStream underlyingInputStream;
 
@@ -33,7 +34,10 @@ public class MultiCipherInputStream extends InputStream {
 	private CipherSession cipherSession;
 	
 	private boolean headerRead;
-	private Mac headerHmac;
+	
+	private byte streamVersion;
+	private SegmentCipher segmentCipher;
+	private int segmentSize;
 		
 	public MultiCipherInputStream(InputStream in, CipherSession cipherSession) throws IOException {
 		this.underlyingInputStream = in;		
@@ -42,7 +46,6 @@ public class MultiCipherInputStream extends InputStream {
 		this.cipherSession = cipherSession;
 		
 		this.headerRead = false;		
-		this.headerHmac = null;		
 	}
 
 	@Override
@@ -65,19 +68,39 @@ public class MultiCipherInputStream extends InputStream {
 	
 	@Override
 	public void close() throws IOException {
-		cipherInputStream.close();
+		if (cipherInputStream != null) {
+			cipherInputStream.close();
+		}
+		else {
+			underlyingInputStream.close();
+		}
 	}	
 	
-	private void readHeader() throws IOException {
+	/**
+	 * Reads and verifies the header of the stream. This method is called
+	 * automatically by the first read, but may be called before to determine
+	 * the stream version and the segment parameters. After this method, the underlying
+	 * stream is positioned at the first byte of the ciphertext.
+	 */
+	void readHeader() throws IOException {
 		if (!headerRead) {
 			try {
-				readAndVerifyMagicNoHmac(underlyingInputStream);
-				readAndVerifyVersionNoHmac(underlyingInputStream);
-
-				headerHmac = readHmacSaltAndInitHmac(underlyingInputStream, cipherSession);				
-				cipherInputStream = readCipherSpecsAndUpdateHmac(underlyingInputStream, headerHmac, cipherSession);
-
-				readAndVerifyHmac(underlyingInputStream, headerHmac);			
+				MultiCipherHeader header = MultiCipherHeader.read(underlyingInputStream, cipherSession);
+				
+				streamVersion = header.getStreamVersion();
+				segmentSize = header.getSegmentSize();
+				
+				if (streamVersion == MultiCipherOutputStream.STREAM_VERSION_SEGMENTED) {
+					segmentCipher = header.createSegmentCipher();
+					cipherInputStream = new SegmentedCipherInputStream(underlyingInputStream, segmentCipher, segmentSize);
+				}
+				else {
+					cipherInputStream = underlyingInputStream;
+
+					for (int i = 0; i < header.getCipherSpecs().size(); i++) {
+						cipherInputStream = header.getCipherSpecs().get(i).newCipherInputStream(cipherInputStream, header.getSecretKeys().get(i), header.getIvs().get(i));
+					}
+				}
 			}
 			catch (Exception e) {
 				throw new IOException(e);
@@ -87,82 +110,15 @@ public class MultiCipherInputStream extends InputStream {
 		}
 	}
 
-	private void readAndVerifyMagicNoHmac(InputStream inputStream) throws IOException {
-		byte[] streamMagic = new byte[MultiCipherOutputStream.STREAM_MAGIC.length];
-		inputStream.read(streamMagic);
-		
-		if (!Arrays.equals(MultiCipherOutputStream.STREAM_MAGIC, streamMagic)) {
-			throw new IOException("Not a Syncany-encrypted file, no magic!");
-		}
+	byte getStreamVersion() {
+		return streamVersion;
 	}
 
-	private void readAndVerifyVersionNoHmac(InputStream inputStream) throws IOException {
-		byte streamVersion = (byte) inputStream.read();
-		
-		if (streamVersion != MultiCipherOutputStream.STREAM_VERSION) {
-			throw new IOException("Stream version not supported: "+streamVersion);
-		}		
-	}
-	
-	private Mac readHmacSaltAndInitHmac(InputStream inputStream, CipherSession cipherSession) throws Exception {
-		byte[] hmacSalt = readNoHmac(inputStream, MultiCipherOutputStream.SALT_SIZE);
-		SecretKey hmacSecretKey = cipherSession.getReadSecretKey(MultiCipherOutputStream.HMAC_SPEC, hmacSalt);
-		
-		Mac hmac = Mac.getInstance(MultiCipherOutputStream.HMAC_SPEC.getAlgorithm(), CRYPTO_PROVIDER_ID);
-		hmac.init(hmacSecretKey);	
-		
-		return hmac;
-	}
-	
-	private InputStream readCipherSpecsAndUpdateHmac(InputStream underlyingInputStream, Mac hmac, CipherSession cipherSession) throws Exception {
-		int cipherSpecCount = readByteAndUpdateHmac(underlyingInputStream, hmac);		
-		InputStream nestedCipherInputStream = underlyingInputStream;
-		
-		for (int i=0; i<cipherSpecCount; i++) {
-			int cipherSpecId = readByteAndUpdateHmac(underlyingInputStream, hmac);				
-			CipherSpec cipherSpec = CipherSpecs.getCipherSpec(cipherSpecId);
-			
-			if (cipherSpec == null) {
-				throw new IOException("Cannot find cipher spec with ID "+cipherSpecId);
-			}
-
-			byte[] salt = readAndUpdateHmac(underlyingInputStream, MultiCipherOutputStream.SALT_SIZE, hmac);
-			byte[] iv = readAndUpdateHmac(underlyingInputStream, cipherSpec.getIvSize()/8, hmac);
-			
-			SecretKey secretKey = cipherSession.getReadSecretKey(cipherSpec, salt);			
-			nestedCipherInputStream = cipherSpec.newCipherInputStream(nestedCipherInputStream, secretKey.getEncoded(), iv);		
-		}	 
-		
-		return nestedCipherInputStream;
-	}
-
-	private void readAndVerifyHmac(InputStream inputStream, Mac hmac) throws Exception {
-		byte[] calculatedHeaderHmac = hmac.doFinal();
-		byte[] readHeaderHmac = readNoHmac(inputStream, calculatedHeaderHmac.length);
-		
-		if (!Arrays.equals(calculatedHeaderHmac, readHeaderHmac)) {
-			throw new Exception("Integrity exception: Calculated HMAC and read HMAC do not match.");
-		}			
-	}
-
-	private byte[] readNoHmac(InputStream inputStream, int size) throws IOException {
-		byte[] bytes = new byte[size];		
-		inputStream.read(bytes);	
-		
-		return bytes;
+	SegmentCipher getSegmentCipher() {
+		return segmentCipher;
 	}
 
-	private byte[] readAndUpdateHmac(InputStream inputStream, int size, Mac hmac) throws IOException {
-		byte[] bytes = readNoHmac(inputStream, size);		
-		hmac.update(bytes);
-		
-		return bytes;
-	}
-
-	private int readByteAndUpdateHmac(InputStream inputStream, Mac hmac) throws IOException {
-		int abyte = inputStream.read();
-		hmac.update((byte) abyte);
-		
-		return abyte;
+	int getSegmentSize() {
+		return segmentSize;
 	}
-}
\ No newline at end of file
+}
@@ -17,13 +17,10 @@
  */
 package org.syncany.crypto;
 
-import static org.syncany.crypto.CipherParams.CRYPTO_PROVIDER_ID;
-
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.List;
-
-import javax.crypto.Mac;
+import java.util.concurrent.ExecutorService;
 
 import org.syncany.crypto.specs.HmacSha256CipherSpec;
 
@@ -45,10 +42,17 @@ import org.syncany.crypto.specs.HmacSha256CipherSpec;
  *      12             yes (in header)  Salt for cipher i (12 bytes)
  *      aa             yes (in header)  IV for cipher i (cipher specific length, 0..x)
  *      
+ *    04               yes (in header)  Segment size (4 bytes, only for version 2)
  *    20               no               Header HMAC (20 bytes, for "HmacSHA1")
  *    bb               yes (in mode)    Ciphertext (HMAC'd by mode, e.g. GCM)
  * </pre>
  * 
+ * Version 1 streams encrypt the entire plaintext as one ciphertext with each cipher.
+ * Version 2 streams ({@link #STREAM_VERSION_SEGMENTED}) cut the plaintext into segments
+ * of a fixed size and encrypt/authenticate each segment independently, followed by an
+ * encrypted segment index (see {@link SegmentedCipherOutputStream}). This allows reading
+ * a part of the plaintext without decrypting the whole file (see {@link SeekableMultiCipherFile}).
+ * 
  * It follows a few Do's and Don'ts:
  * - http://blog.cryptographyengineering.com/2011/11/how-not-to-use-symmetric-encryption.html
  * - http://security.stackexchange.com/questions/30170/after-how-much-data-encryption-aes-256-we-should-change-key
@@ -63,6 +67,10 @@ import org.syncany.crypto.specs.HmacSha256CipherSpec;
 public class MultiCipherOutputStream extends OutputStream {
 	public static final byte[] STREAM_MAGIC = new byte[] { 0x53, 0x79, 0x02, 0x05 };
 	public static final byte STREAM_VERSION = 1;
+	public static final byte STREAM_VERSION_SEGMENTED = 2;
+
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+	public static final int MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
 
 	public static final int SALT_SIZE = 12;	
 	public static final CipherSpec HMAC_SPEC = new HmacSha256CipherSpec();
@@ -71,20 +79,48 @@ public class MultiCipherOutputStream extends OutputStream {
 	
 	private List<CipherSpec> cipherSpecs;
 	private CipherSession cipherSession;
+	private int segmentSize;
+	private ExecutorService segmentExecutor;
+	private int maxPendingSegments;
 	private OutputStream cipherOutputStream;
 
 	private boolean headerWritten;	
-	private Mac headerHmac;
 	
 	public MultiCipherOutputStream(OutputStream out, List<CipherSpec> cipherSpecs, CipherSession cipherSession) throws IOException {
+		this(out, cipherSpecs, cipherSession, 0);
+	}
+
+	/**
+	 * Creates a new multi cipher output stream. If the given segment size is greater than zero,
+	 * a segmented stream ({@link #STREAM_VERSION_SEGMENTED}) is written, otherwise the plaintext
+	 * is encrypted as a whole ({@link #STREAM_VERSION}).
+	 */
+	public MultiCipherOutputStream(OutputStream out, List<CipherSpec> cipherSpecs, CipherSession cipherSession, int segmentSize) throws IOException {
+		this(out, cipherSpecs, cipherSession, segmentSize, null, 0);
+	}
+
+	/**
+	 * Creates a new segmented multi cipher output stream that encrypts up to <code>maxPendingSegments</code>
+	 * segments concurrently using the given executor (see {@link SegmentedCipherOutputStream}). The output
+	 * is identical to the output of a stream without executor.
+	 */
+	public MultiCipherOutputStream(OutputStream out, List<CipherSpec> cipherSpecs, CipherSession cipherSession, int segmentSize,
+			ExecutorService segmentExecutor, int maxPendingSegments) throws IOException {
+		
+		if (segmentSize < 0 || segmentSize > MAX_SEGMENT_SIZE) {
+			throw new IOException("Invalid segment size " + segmentSize + ", must be between 0 and " + MAX_SEGMENT_SIZE + ".");
+		}
+		
 		this.underlyingOutputStream = out;	
 		
 		this.cipherSpecs = cipherSpecs;		
 		this.cipherSession = cipherSession;		
+		this.segmentSize = segmentSize;
+		this.segmentExecutor = segmentExecutor;
+		this.maxPendingSegments = maxPendingSegments;
 		this.cipherOutputStream = null;
 		
 		this.headerWritten = false;
-		this.headerHmac = null;		
 	}
 	
 	@Override
@@ -107,38 +143,27 @@ public class MultiCipherOutputStream extends OutputStream {
 	
 	@Override
 	public void close() throws IOException {
+		writeHeader();
 		cipherOutputStream.close();
 	}
 		
 	private void writeHeader() throws IOException {
 		if (!headerWritten) {
 			try {
-				// Initialize header HMAC
-				SaltedSecretKey hmacSecretKey = cipherSession.getWriteSecretKey(HMAC_SPEC);
-
-				headerHmac = Mac.getInstance(HMAC_SPEC.getAlgorithm(), CRYPTO_PROVIDER_ID);
-				headerHmac.init(hmacSecretKey);
-
-				// Write header
-				writeNoHmac(underlyingOutputStream, STREAM_MAGIC);
-				writeNoHmac(underlyingOutputStream, STREAM_VERSION);
-				writeNoHmac(underlyingOutputStream, hmacSecretKey.getSalt());			
-				writeAndUpdateHmac(underlyingOutputStream, cipherSpecs.size());
-
-				cipherOutputStream = underlyingOutputStream;
-
-				for (CipherSpec cipherSpec : cipherSpecs) { 
-					SaltedSecretKey saltedSecretKey = cipherSession.getWriteSecretKey(cipherSpec);				
-					byte[] iv = CipherUtil.createRandomArray(cipherSpec.getIvSize()/8);
-
-					writeAndUpdateHmac(underlyingOutputStream, cipherSpec.getId());
-					writeAndUpdateHmac(underlyingOutputStream, saltedSecretKey.getSalt());
-					writeAndUpdateHmac(underlyingOutputStream, iv);
-
-					cipherOutputStream = cipherSpec.newCipherOutputStream(cipherOutputStream, saltedSecretKey.getEncoded(), iv);	        
-				}	
-
-				writeNoHmac(underlyingOutputStream, headerHmac.doFinal());
+				MultiCipherHeader header = MultiCipherHeader.write(underlyingOutputStream, cipherSpecs, cipherSession, segmentSize);
+				
+				// Create cipher stream(s)
+				if (header.getStreamVersion() == STREAM_VERSION_SEGMENTED) {
+					SegmentCipher segmentCipher = header.createSegmentCipher();
+					cipherOutputStream = new SegmentedCipherOutputStream(underlyingOutputStream, segmentCipher, segmentSize, segmentExecutor, maxPendingSegments);
+				}
+				else {
+					cipherOutputStream = underlyingOutputStream;
+					
+					for (int i = 0; i < cipherSpecs.size(); i++) {
+						cipherOutputStream = cipherSpecs.get(i).newCipherOutputStream(cipherOutputStream, header.getSecretKeys().get(i), header.getIvs().get(i));
+					}
+				}
 			}
 			catch (Exception e) {
 				throw new IOException(e);
@@ -146,22 +171,4 @@ public class MultiCipherOutputStream extends OutputStream {
 			headerWritten = true;
 		}
 	}	
-
-	private void writeNoHmac(OutputStream outputStream, byte[] bytes) throws IOException {
-		outputStream.write(bytes);
-	}
-
-	private void writeNoHmac(OutputStream outputStream, int abyte) throws IOException {
-		outputStream.write(abyte);
-	}	
-	
-	private void writeAndUpdateHmac(OutputStream outputStream, byte[] bytes) throws IOException {
-		writeNoHmac(outputStream, bytes);
-		headerHmac.update(bytes);
-	}
-
-	private void writeAndUpdateHmac(OutputStream outputStream, int abyte) throws IOException {
-		writeNoHmac(outputStream, abyte);
-		headerHmac.update((byte) abyte);
-	}	
-}
\ No newline at end of file
+}
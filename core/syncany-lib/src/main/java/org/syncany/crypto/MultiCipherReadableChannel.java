@@ -0,0 +1,212 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.crypto;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.syncany.crypto.BufferCipherPipeline.BufferSink;
+import org.syncany.util.ByteBufferPool;
+
+/**
+ * Implements a readable channel that decrypts a stream written by the {@link MultiCipherOutputStream}
+ * or the {@link MultiCipherWritableChannel}. For the format, see {@link MultiCipherOutputStream}.
+ * 
+ * <p>Version 1 streams are decrypted using a {@link BufferCipherPipeline}, i.e. the ciphertext is 
+ * read into a pooled buffer and decrypted block-wise, and the plaintext is written directly to the 
+ * caller's buffer. Only plaintext that does not fit into the caller's buffer is kept in an overflow
+ * buffer for the next read. Segmented (version 2) streams are decrypted segment by segment using 
+ * a {@link SegmentedCipherInputStream}. 
+ * 
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class MultiCipherReadableChannel implements ReadableByteChannel {
+	private ReadableByteChannel underlyingChannel;
+	
+	private CipherSession cipherSession;
+	private ByteBufferPool bufferPool;
+	
+	private BufferCipherPipeline pipeline;
+	private ReadableByteChannel segmentedChannel;
+	
+	private ByteBuffer inputBuffer;
+	private ByteBuffer overflowBuffer;
+	private ByteBuffer targetBuffer;
+	
+	private boolean headerRead;
+	private boolean endOfStream;
+	private boolean closed;
+
+	public MultiCipherReadableChannel(ReadableByteChannel in, CipherSession cipherSession, ByteBufferPool bufferPool) {
+		this.underlyingChannel = in;
+		
+		this.cipherSession = cipherSession;
+		this.bufferPool = bufferPool;
+		
+		this.pipeline = null;
+		this.segmentedChannel = null;
+		
+		this.inputBuffer = null;
+		this.overflowBuffer = null;
+		this.targetBuffer = null;
+		
+		this.headerRead = false;
+		this.endOfStream = false;
+		this.closed = false;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		if (closed) {
+			throw new ClosedChannelException();
+		}
+		
+		readHeader();
+		
+		if (segmentedChannel != null) {
+			return segmentedChannel.read(dst);
+		}
+		
+		int dstStartPosition = dst.position();
+		
+		while (dst.position() == dstStartPosition && dst.hasRemaining()) {
+			if (overflowBuffer.hasRemaining()) {
+				readFromOverflowBuffer(dst);
+			}
+			else if (endOfStream) {
+				return -1;
+			}
+			else {
+				targetBuffer = dst;				
+				overflowBuffer.clear();
+				inputBuffer.clear();
+				
+				if (underlyingChannel.read(inputBuffer) < 0) {
+					endOfStream = true;
+					pipeline.doFinal();
+				}
+				else {
+					inputBuffer.flip();
+					pipeline.update(inputBuffer);
+				}
+				
+				targetBuffer = null;
+				overflowBuffer.flip();
+			}
+		}
+		
+		return dst.position() - dstStartPosition;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return !closed;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			
+			if (pipeline != null) {
+				pipeline.release();
+				bufferPool.release(inputBuffer);
+			}
+			
+			underlyingChannel.close();
+		}
+	}
+	
+	private void readHeader() throws IOException {
+		if (!headerRead) {
+			try {
+				// Note: The input stream reads exactly the header, and does not read ahead
+				MultiCipherHeader header = MultiCipherHeader.read(Channels.newInputStream(underlyingChannel), cipherSession);
+				
+				if (header.getStreamVersion() == MultiCipherOutputStream.STREAM_VERSION_SEGMENTED) {
+					SegmentCipher segmentCipher = header.createSegmentCipher();
+					segmentedChannel = Channels.newChannel(new SegmentedCipherInputStream(Channels.newInputStream(underlyingChannel), segmentCipher, header.getSegmentSize()));
+				}
+				else {
+					List<BufferCipher> ciphers = new ArrayList<BufferCipher>();
+					
+					for (int i = 0; i < header.getCipherSpecs().size(); i++) {
+						ciphers.add(header.getCipherSpecs().get(i).newBufferCipher(false, header.getSecretKeys().get(i), header.getIvs().get(i)));
+					}
+					
+					pipeline = new BufferCipherPipeline(ciphers, new BufferSink() {
+						@Override
+						public void write(ByteBuffer buffer) throws IOException {
+							writeToTarget(buffer);
+						}						
+					}, bufferPool);
+					
+					inputBuffer = bufferPool.acquire();
+					overflowBuffer = ByteBuffer.allocate(0);
+				}
+			}
+			catch (IOException e) {
+				throw e;
+			}
+			catch (Exception e) {
+				throw new IOException(e);
+			}
+			
+			headerRead = true;
+		}
+	}
+	
+	private void writeToTarget(ByteBuffer buffer) {
+		// Write as much as possible to the caller's buffer ...
+		if (overflowBuffer.position() == 0 && targetBuffer.hasRemaining()) {
+			int bufferLimit = buffer.limit();
+			
+			buffer.limit(Math.min(bufferLimit, buffer.position() + targetBuffer.remaining()));
+			targetBuffer.put(buffer);
+			buffer.limit(bufferLimit);
+		}
+		
+		// ... and the rest to the overflow buffer
+		if (buffer.hasRemaining()) {
+			if (overflowBuffer.remaining() < buffer.remaining()) {
+				int newCapacity = Math.max(overflowBuffer.position() + buffer.remaining(), Math.max(2 * overflowBuffer.capacity(), bufferPool.getBufferSize()));
+				ByteBuffer newOverflowBuffer = ByteBuffer.allocate(newCapacity);
+				
+				overflowBuffer.flip();
+				newOverflowBuffer.put(overflowBuffer);
+				
+				overflowBuffer = newOverflowBuffer;
+			}
+			
+			overflowBuffer.put(buffer);
+		}
+	}
+	
+	private void readFromOverflowBuffer(ByteBuffer dst) {
+		int overflowLimit = overflowBuffer.limit();
+		
+		overflowBuffer.limit(Math.min(overflowLimit, overflowBuffer.position() + dst.remaining()));
+		dst.put(overflowBuffer);
+		overflowBuffer.limit(overflowLimit);
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.crypto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.syncany.crypto.BufferCipherPipeline.BufferSink;
+import org.syncany.util.ByteBufferPool;
+
+/**
+ * Implements a writable channel that encrypts the data written to it using one to many
+ * ciphers, and writes it to the underlying channel. The output is the version 1 format 
+ * written by the {@link MultiCipherOutputStream} (see there for the format), and can be read 
+ * by the {@link MultiCipherInputStream} or the {@link MultiCipherReadableChannel}.
+ * 
+ * <p>Unlike the output stream, which nests one cipher stream per cipher spec (each with its
+ * own buffers), this channel passes the data through a {@link BufferCipherPipeline}: The data is
+ * encrypted block-wise from the caller's buffer into pooled buffers, and the ciphertext of the last
+ * cipher is written to the underlying channel directly from its pooled buffer.
+ * 
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class MultiCipherWritableChannel implements WritableByteChannel {
+	private WritableByteChannel underlyingChannel;
+	
+	private List<CipherSpec> cipherSpecs;
+	private CipherSession cipherSession;
+	private ByteBufferPool bufferPool;
+	private BufferCipherPipeline pipeline;
+	
+	private boolean headerWritten;
+	private boolean closed;
+
+	public MultiCipherWritableChannel(WritableByteChannel out, List<CipherSpec> cipherSpecs, CipherSession cipherSession, ByteBufferPool bufferPool) {
+		this.underlyingChannel = out;
+		
+		this.cipherSpecs = cipherSpecs;
+		this.cipherSession = cipherSession;
+		this.bufferPool = bufferPool;
+		this.pipeline = null;
+		
+		this.headerWritten = false;
+		this.closed = false;
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		if (closed) {
+			throw new ClosedChannelException();
+		}
+		
+		writeHeader();
+		
+		int length = src.remaining();
+		pipeline.update(src);
+		
+		return length;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return !closed;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			try {
+				writeHeader();
+				pipeline.doFinal();
+			}
+			finally {
+				closed = true;
+				
+				if (pipeline != null) {
+					pipeline.release();
+				}
+				
+				underlyingChannel.close();
+			}
+		}
+	}
+	
+	private void writeHeader() throws IOException {
+		if (!headerWritten) {
+			try {
+				ByteArrayOutputStream headerOutputStream = new ByteArrayOutputStream();
+				MultiCipherHeader header = MultiCipherHeader.write(headerOutputStream, cipherSpecs, cipherSession, 0);
+
+				writeFully(ByteBuffer.wrap(headerOutputStream.toByteArray()));
+
+				// The last cipher spec is applied first (cf. nested streams in MultiCipherOutputStream)
+				List<BufferCipher> ciphers = new ArrayList<BufferCipher>();
+				
+				for (int i = cipherSpecs.size() - 1; i >= 0; i--) {
+					ciphers.add(cipherSpecs.get(i).newBufferCipher(true, header.getSecretKeys().get(i), header.getIvs().get(i)));
+				}
+				
+				pipeline = new BufferCipherPipeline(ciphers, new BufferSink() {
+					@Override
+					public void write(ByteBuffer buffer) throws IOException {
+						writeFully(buffer);
+					}					
+				}, bufferPool);
+			}
+			catch (IOException e) {
+				throw e;
+			}
+			catch (Exception e) {
+				throw new IOException(e);
+			}
+			
+			headerWritten = true;
+		}
+	}
+	
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			underlyingChannel.write(buffer);
+		}
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.crypto;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Provides random access to the plaintext of a file written by a segmented
+ * {@link MultiCipherOutputStream} ({@link MultiCipherOutputStream#STREAM_VERSION_SEGMENTED}).
+ *
+ * <p>When the file is opened, the header is verified and the encrypted segment index at
+ * the end of the file is read. Reading a range of the plaintext then only reads, verifies and
+ * decrypts the segments that overlap with this range, instead of the entire file. The most
+ * recently decrypted segment is kept, so that consecutive small reads do not decrypt the
+ * same segment again.
+ *
+ * <p>Instances of this class are not thread-safe.
+ *
+ * @see SegmentedCipherOutputStream
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class SeekableMultiCipherFile implements Closeable {
+	private FileInputStream fileInputStream;
+	private FileChannel fileChannel;
+
+	private SegmentCipher segmentCipher;
+	private int segmentSize;
+	private long bodyOffset;
+
+	private long plaintextLength;
+	private long[] segmentOffsets;
+
+	private int cachedSegmentNumber;
+	private byte[] cachedSegmentPlaintext;
+
+	public SeekableMultiCipherFile(File file, CipherSession cipherSession) throws IOException {
+		this.fileInputStream = new FileInputStream(file);
+		this.fileChannel = fileInputStream.getChannel();
+
+		this.cachedSegmentNumber = -1;
+		this.cachedSegmentPlaintext = null;
+
+		try {
+			readHeader(cipherSession);
+			readIndex();
+		}
+		catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the length of the plaintext in bytes.
+	 */
+	public long length() {
+		return plaintextLength;
+	}
+
+	/**
+	 * Returns the number of segments in this file.
+	 */
+	public int getSegmentCount() {
+		return segmentOffsets.length;
+	}
+
+	/**
+	 * Reads up to <code>len</code> bytes of plaintext, starting at the given position
+	 * in the plaintext, into the given buffer.
+	 *
+	 * @return Returns the number of bytes read, or -1 if the position is at or after the end
+	 * @throws IOException If the file cannot be read, or if a segment cannot be verified
+	 */
+	public int read(long position, byte[] b, int off, int len) throws IOException {
+		if (position < 0) {
+			throw new IOException("Invalid position: " + position);
+		}
+		else if (position >= plaintextLength) {
+			return -1;
+		}
+
+		int readLength = (int) Math.min(len, plaintextLength - position);
+		int totalRead = 0;
+
+		while (totalRead < readLength) {
+			long currentPosition = position + totalRead;
+
+			int segmentNumber = (int) (currentPosition / segmentSize);
+			int segmentPosition = (int) (currentPosition % segmentSize);
+
+			byte[] segmentPlaintext = readSegment(segmentNumber);
+			int copyLength = Math.min(readLength - totalRead, segmentPlaintext.length - segmentPosition);
+
+			System.arraycopy(segmentPlaintext, segmentPosition, b, off + totalRead, copyLength);
+			totalRead += copyLength;
+		}
+
+		return totalRead;
+	}
+
+	/**
+	 * Reads exactly <code>len</code> bytes of plaintext, starting at the given position
+	 * in the plaintext, into the given buffer.
+	 *
+	 * @throws EOFException If the plaintext ends before <code>len</code> bytes are read
+	 */
+	public void readFully(long position, byte[] b, int off, int len) throws IOException {
+		if (position + len > plaintextLength) {
+			throw new EOFException("Cannot read " + len + " bytes at position " + position + ", plaintext length is " + plaintextLength + ".");
+		}
+
+		read(position, b, off, len);
+	}
+
+	@Override
+	public void close() throws IOException {
+		fileInputStream.close();
+	}
+
+	private void readHeader(CipherSession cipherSession) throws IOException {
+		// The input stream is not closed here, because that would close the file
+		MultiCipherInputStream multiCipherInputStream = new MultiCipherInputStream(fileInputStream, cipherSession);
+		multiCipherInputStream.readHeader();
+
+		if (multiCipherInputStream.getStreamVersion() != MultiCipherOutputStream.STREAM_VERSION_SEGMENTED) {
+			throw new IOException("Random access not supported for stream version " + multiCipherInputStream.getStreamVersion());
+		}
+
+		segmentCipher = multiCipherInputStream.getSegmentCipher();
+		segmentSize = multiCipherInputStream.getSegmentSize();
+		bodyOffset = fileChannel.position();
+	}
+
+	private void readIndex() throws IOException {
+		long fileLength = fileChannel.size();
+
+		if (fileLength - bodyOffset < 4) {
+			throw new IOException("Invalid segmented file: File too short.");
+		}
+
+		int indexCiphertextLength = ByteBuffer.wrap(readFully(fileLength - 4, 4)).getInt();
+		long indexOffset = fileLength - 4 - indexCiphertextLength;
+
+		if (indexCiphertextLength < 0 || indexOffset < bodyOffset) {
+			throw new IOException("Invalid segmented file: Invalid index length " + indexCiphertextLength);
+		}
+
+		byte[] indexCiphertext = readFully(indexOffset, indexCiphertextLength);
+		byte[] indexPlaintext = segmentCipher.decryptSegment(indexCiphertext, 0, indexCiphertextLength, 0, SegmentCipher.FLAG_INDEX);
+
+		DataInputStream indexInputStream = new DataInputStream(new ByteArrayInputStream(indexPlaintext));
+
+		plaintextLength = indexInputStream.readLong();
+		int indexSegmentSize = indexInputStream.readInt();
+		int segmentCount = indexInputStream.readInt();
+
+		if (indexSegmentSize != segmentSize || segmentCount <= 0 || indexPlaintext.length != 16 + segmentCount * 8) {
+			throw new IOException("Invalid segmented file: Segment index does not match header.");
+		}
+
+		segmentOffsets = new long[segmentCount];
+
+		for (int i = 0; i < segmentCount; i++) {
+			segmentOffsets[i] = indexInputStream.readLong();
+		}
+	}
+
+	private byte[] readSegment(int segmentNumber) throws IOException {
+		if (segmentNumber == cachedSegmentNumber) {
+			return cachedSegmentPlaintext;
+		}
+
+		boolean expectLastSegment = segmentNumber == segmentOffsets.length - 1;
+		long segmentOffset = bodyOffset + segmentOffsets[segmentNumber];
+
+		int segmentHeader = ByteBuffer.wrap(readFully(segmentOffset, 4)).getInt();
+
+		boolean lastSegment = (segmentHeader & SegmentedCipherOutputStream.LAST_SEGMENT_BIT) != 0;
+		int segmentCiphertextLength = segmentHeader & ~SegmentedCipherOutputStream.LAST_SEGMENT_BIT;
+
+		if (lastSegment != expectLastSegment || segmentCiphertextLength > segmentCipher.getMaxCiphertextLength(segmentSize)) {
+			throw new IOException("Invalid segment " + segmentNumber + ": Invalid segment header.");
+		}
+
+		byte segmentFlag = (lastSegment) ? SegmentCipher.FLAG_LAST_SEGMENT : SegmentCipher.FLAG_SEGMENT;
+		byte[] segmentCiphertext = readFully(segmentOffset + 4, segmentCiphertextLength);
+
+		cachedSegmentPlaintext = segmentCipher.decryptSegment(segmentCiphertext, 0, segmentCiphertextLength, segmentNumber, segmentFlag);
+		cachedSegmentNumber = segmentNumber;
+
+		return cachedSegmentPlaintext;
+	}
+
+	private byte[] readFully(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+
+		while (buffer.hasRemaining()) {
+			if (fileChannel.read(buffer, position + buffer.position()) == -1) {
+				throw new EOFException("Unexpected end of file at position " + (position + buffer.position()));
+			}
+		}
+
+		return buffer.array();
+	}
+}
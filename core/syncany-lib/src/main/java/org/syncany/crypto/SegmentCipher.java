@@ -0,0 +1,143 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.crypto;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Encrypts and decrypts the individual segments of a segmented
+ * {@link MultiCipherOutputStream} (stream version {@link MultiCipherOutputStream#STREAM_VERSION_SEGMENTED}).
+ *
+ * <p>Each segment is encrypted separately with the full cipher cascade. The IV of every
+ * cipher is derived from the IV in the stream header by XOR'ing the segment number and a
+ * segment flag into its last five bytes (similar to the STREAM construction). Since all
+ * allowed ciphers are authenticated, a segment cannot be modified, reordered, or moved to
+ * another position, and the end of the stream (last segment or index) cannot be forged.
+ *
+ * <p>This class does not hold any state besides the keys and IVs, so segments can be
+ * encrypted and decrypted concurrently and in any order.
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class SegmentCipher {
+	public static final byte FLAG_SEGMENT = 0;
+	public static final byte FLAG_LAST_SEGMENT = 1;
+	public static final byte FLAG_INDEX = 2;
+
+	private static final int MIN_IV_SIZE = 8; // in bytes
+	private static final int MAX_CIPHERTEXT_OVERHEAD = 64; // per cipher, in bytes
+
+	private List<CipherSpec> cipherSpecs;
+	private List<byte[]> secretKeys;
+	private List<byte[]> ivs;
+
+	public SegmentCipher(List<CipherSpec> cipherSpecs, List<byte[]> secretKeys, List<byte[]> ivs) throws CipherException {
+		this.cipherSpecs = cipherSpecs;
+		this.secretKeys = secretKeys;
+		this.ivs = ivs;
+
+		for (byte[] iv : ivs) {
+			if (iv.length < MIN_IV_SIZE) {
+				throw new CipherException("IV too short for segmented encryption: " + iv.length + " byte(s)");
+			}
+		}
+	}
+
+	/**
+	 * Encrypts the given plaintext as the segment with the given number and flag, and
+	 * returns the resulting ciphertext.
+	 */
+	public byte[] encryptSegment(byte[] plaintext, int offset, int length, int segmentNumber, byte segmentFlag) throws IOException {
+		try {
+			ByteArrayOutputStream ciphertextOutputStream = new ByteArrayOutputStream(length + 64);
+			OutputStream cipherOutputStream = ciphertextOutputStream;
+
+			for (int i = 0; i < cipherSpecs.size(); i++) {
+				byte[] segmentIv = createSegmentIv(ivs.get(i), segmentNumber, segmentFlag);
+				cipherOutputStream = cipherSpecs.get(i).newCipherOutputStream(cipherOutputStream, secretKeys.get(i), segmentIv);
+			}
+
+			cipherOutputStream.write(plaintext, offset, length);
+			cipherOutputStream.close();
+
+			return ciphertextOutputStream.toByteArray();
+		}
+		catch (CipherException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Decrypts and verifies the given ciphertext of the segment with the given number and flag,
+	 * and returns the plaintext. If the segment was modified, or if it does not belong to the given
+	 * position in the stream, an {@link IOException} is thrown.
+	 */
+	public byte[] decryptSegment(byte[] ciphertext, int offset, int length, int segmentNumber, byte segmentFlag) throws IOException {
+		try {
+			InputStream cipherInputStream = new ByteArrayInputStream(ciphertext, offset, length);
+
+			for (int i = 0; i < cipherSpecs.size(); i++) {
+				byte[] segmentIv = createSegmentIv(ivs.get(i), segmentNumber, segmentFlag);
+				cipherInputStream = cipherSpecs.get(i).newCipherInputStream(cipherInputStream, secretKeys.get(i), segmentIv);
+			}
+
+			ByteArrayOutputStream plaintextOutputStream = new ByteArrayOutputStream(length);
+			byte[] buffer = new byte[8192];
+			int read = -1;
+
+			while (-1 != (read = cipherInputStream.read(buffer))) {
+				plaintextOutputStream.write(buffer, 0, read);
+			}
+
+			cipherInputStream.close();
+			return plaintextOutputStream.toByteArray();
+		}
+		catch (CipherException e) {
+			throw new IOException(e);
+		}
+		catch (IOException e) {
+			throw new IOException("Integrity exception: Cannot decrypt segment " + segmentNumber + " (flag " + segmentFlag + ").", e);
+		}
+	}
+
+	/**
+	 * Returns an upper bound for the length of the ciphertext of a segment with the
+	 * given plaintext length. Readers use it to reject invalid segment lengths before
+	 * allocating any buffers.
+	 */
+	public int getMaxCiphertextLength(int plaintextLength) {
+		return plaintextLength + cipherSpecs.size() * MAX_CIPHERTEXT_OVERHEAD;
+	}
+
+	private byte[] createSegmentIv(byte[] iv, int segmentNumber, byte segmentFlag) {
+		byte[] segmentIv = iv.clone();
+
+		segmentIv[segmentIv.length - 5] ^= (byte) (segmentNumber >>> 24);
+		segmentIv[segmentIv.length - 4] ^= (byte) (segmentNumber >>> 16);
+		segmentIv[segmentIv.length - 3] ^= (byte) (segmentNumber >>> 8);
+		segmentIv[segmentIv.length - 2] ^= (byte) segmentNumber;
+		segmentIv[segmentIv.length - 1] ^= segmentFlag;
+
+		return segmentIv;
+	}
+}
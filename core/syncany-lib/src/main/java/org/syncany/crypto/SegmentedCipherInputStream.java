@@ -0,0 +1,120 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.crypto;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the body of a segmented {@link MultiCipherOutputStream} sequentially, i.e. decrypts
+ * and verifies the segments written by the {@link SegmentedCipherOutputStream} one after
+ * the other. The segment index at the end of the stream is not needed for sequential reading
+ * and is therefore not read.
+ *
+ * <p>Each segment is verified before any of its plaintext is returned. If a segment
+ * was modified, reordered or removed, or if the stream ends before the last segment,
+ * an {@link IOException} is thrown.
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class SegmentedCipherInputStream extends InputStream {
+	private DataInputStream underlyingInputStream;
+	private SegmentCipher segmentCipher;
+	private int segmentSize;
+
+	private byte[] segmentPlaintext;
+	private int segmentPosition;
+	private int segmentNumber;
+	private boolean lastSegmentRead;
+
+	public SegmentedCipherInputStream(InputStream underlyingInputStream, SegmentCipher segmentCipher, int segmentSize) {
+		this.underlyingInputStream = new DataInputStream(underlyingInputStream);
+		this.segmentCipher = segmentCipher;
+		this.segmentSize = segmentSize;
+
+		this.segmentPlaintext = new byte[0];
+		this.segmentPosition = 0;
+		this.segmentNumber = 0;
+		this.lastSegmentRead = false;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		int read = read(b, 0, 1);
+
+		return (read == -1) ? -1 : b[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+
+		while (segmentPosition == segmentPlaintext.length) {
+			if (lastSegmentRead) {
+				return -1;
+			}
+
+			readSegment();
+		}
+
+		int readLength = Math.min(len, segmentPlaintext.length - segmentPosition);
+		System.arraycopy(segmentPlaintext, segmentPosition, b, off, readLength);
+
+		segmentPosition += readLength;
+		return readLength;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return segmentPlaintext.length - segmentPosition;
+	}
+
+	@Override
+	public void close() throws IOException {
+		underlyingInputStream.close();
+	}
+
+	private void readSegment() throws IOException {
+		int segmentHeader = underlyingInputStream.readInt();
+
+		boolean lastSegment = (segmentHeader & SegmentedCipherOutputStream.LAST_SEGMENT_BIT) != 0;
+		int segmentCiphertextLength = segmentHeader & ~SegmentedCipherOutputStream.LAST_SEGMENT_BIT;
+		byte segmentFlag = (lastSegment) ? SegmentCipher.FLAG_LAST_SEGMENT : SegmentCipher.FLAG_SEGMENT;
+
+		if (segmentCiphertextLength > segmentCipher.getMaxCiphertextLength(segmentSize)) {
+			throw new IOException("Invalid segment " + segmentNumber + ": Ciphertext length " + segmentCiphertextLength + " exceeds segment size.");
+		}
+
+		byte[] segmentCiphertext = new byte[segmentCiphertextLength];
+		underlyingInputStream.readFully(segmentCiphertext);
+
+		segmentPlaintext = segmentCipher.decryptSegment(segmentCiphertext, 0, segmentCiphertextLength, segmentNumber, segmentFlag);
+		segmentPosition = 0;
+
+		if (!lastSegment && segmentPlaintext.length != segmentSize) {
+			throw new IOException("Invalid segment " + segmentNumber + ": Expected " + segmentSize + " bytes, but got " + segmentPlaintext.length + ".");
+		}
+
+		segmentNumber++;
+		lastSegmentRead = lastSegment;
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.crypto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Writes the body of a segmented {@link MultiCipherOutputStream}. The plaintext is cut
+ * into segments of a fixed size, and each segment is encrypted independently using the
+ * {@link SegmentCipher}. After the last segment, an encrypted segment index is written,
+ * so that readers can seek to any segment (see {@link SeekableMultiCipherFile}).
+ *
+ * <p>Format (after the header of the {@link MultiCipherOutputStream}):
+ * <pre>
+ *    Length           Description
+ *    ----------------------------------------------
+ *    for i := 0..n-1:
+ *      04             Segment ciphertext length, highest bit set for the last segment (4 bytes)
+ *      aa             Segment ciphertext (segment number i, flag 0 or 1)
+ *
+ *    bb               Index ciphertext (segment number 0, flag 2)
+ *    04               Index ciphertext length (4 bytes)
+ * </pre>
+ *
+ * <p>The index plaintext consists of the total plaintext length (8 bytes), the segment size
+ * (4 bytes), the segment count (4 bytes), and the offset of each segment relative to the
+ * beginning of the body (8 bytes each). The plaintext of all segments except the last one
+ * is exactly the segment size. Even an empty stream has one (empty) last segment.
+ *
+ * <p>If an executor is given, segments are encrypted concurrently on the executor's
+ * threads, and written to the underlying stream in order as soon as they are done. At most
+ * <code>maxPendingSegments</code> segments are encrypted at the same time, which limits the
+ * memory used to about that many times the segment size. Since the IV of each segment only
+ * depends on its number and flag, the output is byte-identical to the output of a stream
+ * without executor.
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class SegmentedCipherOutputStream extends OutputStream {
+	public static final int LAST_SEGMENT_BIT = 0x80000000;
+
+	private OutputStream underlyingOutputStream;
+	private SegmentCipher segmentCipher;
+	private int segmentSize;
+
+	private ExecutorService segmentExecutor;
+	private int maxPendingSegments;
+	private Deque<PendingSegment> pendingSegments;
+
+	private byte[] segmentBuffer;
+	private int segmentBufferLength;
+
+	private long plaintextLength;
+	private long bodyLength;
+	private List<Long> segmentOffsets;
+	private boolean closed;
+
+	public SegmentedCipherOutputStream(OutputStream underlyingOutputStream, SegmentCipher segmentCipher, int segmentSize) {
+		this(underlyingOutputStream, segmentCipher, segmentSize, null, 0);
+	}
+
+	/**
+	 * Creates a new segmented output stream that encrypts up to <code>maxPendingSegments</code> segments
+	 * concurrently using the given executor. If the executor is <code>null</code>, segments are encrypted
+	 * on the writing thread.
+	 */
+	public SegmentedCipherOutputStream(OutputStream underlyingOutputStream, SegmentCipher segmentCipher, int segmentSize,
+			ExecutorService segmentExecutor, int maxPendingSegments) {
+
+		this.underlyingOutputStream = underlyingOutputStream;
+		this.segmentCipher = segmentCipher;
+		this.segmentSize = segmentSize;
+
+		this.segmentExecutor = segmentExecutor;
+		this.maxPendingSegments = Math.max(1, maxPendingSegments);
+		this.pendingSegments = new ArrayDeque<PendingSegment>();
+
+		this.segmentBuffer = new byte[segmentSize];
+		this.segmentBufferLength = 0;
+
+		this.plaintextLength = 0;
+		this.bodyLength = 0;
+		this.segmentOffsets = new ArrayList<Long>();
+		this.closed = false;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			// A full segment is only written once more data arrives, because
+			// we do not know if it is the last segment before that.
+			if (segmentBufferLength == segmentSize) {
+				writeSegment(false);
+			}
+
+			int copyLength = Math.min(len, segmentSize - segmentBufferLength);
+			System.arraycopy(b, off, segmentBuffer, segmentBufferLength, copyLength);
+
+			segmentBufferLength += copyLength;
+			plaintextLength += copyLength;
+
+			off += copyLength;
+			len -= copyLength;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+
+			try {
+				writeSegment(true);
+				writePendingSegments(0);
+				writeIndex();
+			}
+			finally {
+				cancelPendingSegments();
+				underlyingOutputStream.close();
+			}
+		}
+	}
+
+	private void writeSegment(boolean lastSegment) throws IOException {
+		int segmentNumber = getNextSegmentNumber();
+		byte segmentFlag = (lastSegment) ? SegmentCipher.FLAG_LAST_SEGMENT : SegmentCipher.FLAG_SEGMENT;
+
+		if (segmentExecutor != null) {
+			writeSegmentConcurrently(segmentBuffer, segmentBufferLength, segmentNumber, segmentFlag, lastSegment);
+			segmentBuffer = (lastSegment) ? null : new byte[segmentSize];
+		}
+		else {
+			byte[] segmentCiphertext = segmentCipher.encryptSegment(segmentBuffer, 0, segmentBufferLength, segmentNumber, segmentFlag);
+			writeSegmentCiphertext(segmentCiphertext, lastSegment);
+		}
+
+		segmentBufferLength = 0;
+	}
+
+	private void writeSegmentConcurrently(final byte[] segmentPlaintext, final int segmentPlaintextLength, final int segmentNumber,
+			final byte segmentFlag, boolean lastSegment) throws IOException {
+
+		// Make room for the new segment by writing the oldest ones
+		writePendingSegments(maxPendingSegments - 1);
+
+		Future<byte[]> segmentCiphertextFuture = segmentExecutor.submit(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				return segmentCipher.encryptSegment(segmentPlaintext, 0, segmentPlaintextLength, segmentNumber, segmentFlag);
+			}
+		});
+
+		pendingSegments.add(new PendingSegment(segmentCiphertextFuture, lastSegment));
+	}
+
+	/**
+	 * Waits for the oldest pending segments to be encrypted and writes them to the underlying
+	 * stream (in order), until at most the given number of segments is pending.
+	 */
+	private void writePendingSegments(int maxRemainingPendingSegments) throws IOException {
+		while (pendingSegments.size() > maxRemainingPendingSegments) {
+			PendingSegment pendingSegment = pendingSegments.poll();
+
+			try {
+				writeSegmentCiphertext(pendingSegment.segmentCiphertextFuture.get(), pendingSegment.lastSegment);
+			}
+			catch (ExecutionException e) {
+				throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for segment encryption.", e);
+			}
+		}
+	}
+
+	private void cancelPendingSegments() {
+		for (PendingSegment pendingSegment : pendingSegments) {
+			pendingSegment.segmentCiphertextFuture.cancel(true);
+		}
+
+		pendingSegments.clear();
+	}
+
+	private int getNextSegmentNumber() {
+		return segmentOffsets.size() + pendingSegments.size();
+	}
+
+	private void writeSegmentCiphertext(byte[] segmentCiphertext, boolean lastSegment) throws IOException {
+		int segmentHeader = (lastSegment) ? segmentCiphertext.length | LAST_SEGMENT_BIT : segmentCiphertext.length;
+
+		segmentOffsets.add(bodyLength);
+
+		writeInt(segmentHeader);
+		underlyingOutputStream.write(segmentCiphertext);
+
+		bodyLength += 4 + segmentCiphertext.length;
+	}
+
+	private void writeIndex() throws IOException {
+		ByteArrayOutputStream indexOutputStream = new ByteArrayOutputStream(16 + segmentOffsets.size() * 8);
+		DataOutputStream indexDataOutputStream = new DataOutputStream(indexOutputStream);
+
+		indexDataOutputStream.writeLong(plaintextLength);
+		indexDataOutputStream.writeInt(segmentSize);
+		indexDataOutputStream.writeInt(segmentOffsets.size());
+
+		for (Long segmentOffset : segmentOffsets) {
+			indexDataOutputStream.writeLong(segmentOffset);
+		}
+
+		indexDataOutputStream.close();
+
+		byte[] indexPlaintext = indexOutputStream.toByteArray();
+		byte[] indexCiphertext = segmentCipher.encryptSegment(indexPlaintext, 0, indexPlaintext.length, 0, SegmentCipher.FLAG_INDEX);
+
+		underlyingOutputStream.write(indexCiphertext);
+		writeInt(indexCiphertext.length);
+	}
+
+	private void writeInt(int value) throws IOException {
+		underlyingOutputStream.write(value >>> 24);
+		underlyingOutputStream.write(value >>> 16);
+		underlyingOutputStream.write(value >>> 8);
+		underlyingOutputStream.write(value);
+	}
+
+	private static class PendingSegment {
+		private Future<byte[]> segmentCiphertextFuture;
+		private boolean lastSegment;
+
+		public PendingSegment(Future<byte[]> segmentCiphertextFuture, boolean lastSegment) {
+			this.segmentCiphertextFuture = segmentCiphertextFuture;
+			this.lastSegment = lastSegment;
+		}
+	}
+}
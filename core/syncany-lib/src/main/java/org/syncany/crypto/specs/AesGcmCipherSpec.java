@@ -17,41 +17,173 @@
  */
 package org.syncany.crypto.specs;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.bouncycastle.crypto.engines.AESEngine;
 import org.bouncycastle.crypto.modes.AEADBlockCipher;
 import org.bouncycastle.crypto.modes.GCMBlockCipher;
 import org.bouncycastle.crypto.params.AEADParameters;
 import org.bouncycastle.crypto.params.KeyParameter;
+import org.syncany.crypto.AeadBufferCipher;
+import org.syncany.crypto.BufferCipher;
 import org.syncany.crypto.CipherException;
 import org.syncany.crypto.CipherSpec;
 
 /**
+ * Base class for the AES/GCM cipher specs. 
+ * 
+ * <p>If the JDK provides AES/GCM for the key size of this cipher spec, encrypting streams
+ * and encrypting buffer ciphers are created by a {@link JceAesGcmCipherSpec}, which is typically much
+ * faster (hardware acceleration). Otherwise, the BouncyCastle lightweight engine is used. Both 
+ * produce the same output. To be on the safe side, the JCE implementation is only used if it 
+ * produces the same ciphertext as the lightweight engine for a test input.
+ * 
+ * <p>Decrypting streams and decrypting buffer ciphers always use the lightweight engine: The JDK's 
+ * GCM implementation buffers the entire ciphertext until the authentication tag has been verified.
+ * Since a buffer cipher may be used to decrypt an entire (non-segmented) multichunk, decrypting 
+ * with the JCE implementation would need memory proportional to the size of the ciphertext.
+ * 
  * @author pheckel
  *
  */
 public abstract class AesGcmCipherSpec extends CipherSpec {
+	private static final Logger logger = Logger.getLogger(AesGcmCipherSpec.class.getSimpleName());
 	private static final int MAC_SIZE = 128;		
 
+	private JceAesGcmCipherSpec jceCipherSpec;
+	private boolean jceCipherSpecChecked;
+
 	public AesGcmCipherSpec(int id, String algorithm, int keySize, int ivSize, boolean needsUnlimitedStrength) {
 		super(id, algorithm, keySize, ivSize, needsUnlimitedStrength);
+
+		this.jceCipherSpec = null;
+		this.jceCipherSpecChecked = false;
 	}
 		
 	@Override
 	public OutputStream newCipherOutputStream(OutputStream underlyingOutputStream, byte[] secretKey, byte[] iv) throws CipherException {
+		JceAesGcmCipherSpec jceCipherSpec = getJceCipherSpec();
+
+		if (jceCipherSpec != null) {
+			return jceCipherSpec.newCipherOutputStream(underlyingOutputStream, secretKey, iv);
+		}
+		else {
+			return newLightweightCipherOutputStream(underlyingOutputStream, secretKey, iv);
+		}
+	}
+
+	@Override
+	public InputStream newCipherInputStream(InputStream underlyingInputStream, byte[] secretKey, byte[] iv) throws CipherException {
+		return newLightweightCipherInputStream(underlyingInputStream, secretKey, iv);
+	}
+
+	@Override
+	public BufferCipher newBufferCipher(boolean forEncryption, byte[] secretKey, byte[] iv) throws CipherException {
+		JceAesGcmCipherSpec jceCipherSpec = (forEncryption) ? getJceCipherSpec() : null;
+
+		if (jceCipherSpec != null) {
+			return jceCipherSpec.newBufferCipher(true, secretKey, iv);
+		}
+		else {
+			return newLightweightBufferCipher(forEncryption, secretKey, iv);
+		}
+	}
+
+	/**
+	 * Creates an encrypting output stream using the BouncyCastle lightweight
+	 * engine, regardless of whether the JCE implementation is available.
+	 */
+	public OutputStream newLightweightCipherOutputStream(OutputStream underlyingOutputStream, byte[] secretKey, byte[] iv) {
 		AEADBlockCipher cipher = new GCMBlockCipher(new AESEngine()); 
 		cipher.init(true, new AEADParameters(new KeyParameter(secretKey), MAC_SIZE, iv));
 		
 		return new org.bouncycastle.crypto.io.CipherOutputStream(underlyingOutputStream, cipher);
 	}
 
-	@Override
-	public InputStream newCipherInputStream(InputStream underlyingInputStream, byte[] secretKey, byte[] iv) throws CipherException {
+	/**
+	 * Creates a decrypting input stream using the BouncyCastle lightweight
+	 * engine, regardless of whether the JCE implementation is available.
+	 */
+	public InputStream newLightweightCipherInputStream(InputStream underlyingInputStream, byte[] secretKey, byte[] iv) {
 		AEADBlockCipher cipher = new GCMBlockCipher(new AESEngine()); 
 		cipher.init(false, new AEADParameters(new KeyParameter(secretKey), MAC_SIZE, iv));
 		
 		return new org.bouncycastle.crypto.io.CipherInputStream(underlyingInputStream, cipher);
 	}
+
+	/**
+	 * Creates a buffer cipher using the BouncyCastle lightweight engine,
+	 * regardless of whether the JCE implementation is available.
+	 */
+	public BufferCipher newLightweightBufferCipher(boolean forEncryption, byte[] secretKey, byte[] iv) {
+		AEADBlockCipher cipher = new GCMBlockCipher(new AESEngine()); 
+		cipher.init(forEncryption, new AEADParameters(new KeyParameter(secretKey), MAC_SIZE, iv));
+		
+		return new AeadBufferCipher(cipher);
+	}
+
+	/**
+	 * Returns whether the encrypting streams and the encrypting buffer ciphers of this 
+	 * cipher spec are created by the (faster) JCE implementation.
+	 */
+	public boolean isJceEnabled() {
+		return getJceCipherSpec() != null;
+	}
+
+	/**
+	 * Returns the JCE cipher spec if it is available and compatible, or <code>null</code> otherwise.
+	 * The check is done on first use (and not in the constructor), because the crypto policy
+	 * might be changed after the cipher specs are registered (see 
+	 * {@link org.syncany.crypto.CipherUtil#enableUnlimitedStrength() enableUnlimitedStrength()}). 
+	 */
+	private synchronized JceAesGcmCipherSpec getJceCipherSpec() {
+		if (!jceCipherSpecChecked) {
+			jceCipherSpecChecked = true;
+
+			if (JceAesGcmCipherSpec.isAvailable(getKeySize())) {
+				JceAesGcmCipherSpec candidateCipherSpec = new JceAesGcmCipherSpec(getId(), getKeySize(), getIvSize(), needsUnlimitedStrength());
+
+				if (isCompatible(candidateCipherSpec)) {
+					jceCipherSpec = candidateCipherSpec;
+				}
+			}
+
+			logger.log(Level.INFO, "Using " + ((jceCipherSpec != null) ? "JCE" : "BouncyCastle lightweight") + " implementation for " + this);
+		}
+
+		return jceCipherSpec;
+	}
+
+	private boolean isCompatible(JceAesGcmCipherSpec candidateCipherSpec) {
+		byte[] testKey = new byte[getKeySize() / 8];
+		byte[] testIv = new byte[getIvSize() / 8];
+		byte[] testPlaintext = new byte[100];
+
+		Arrays.fill(testIv, (byte) 0x5a);
+		Arrays.fill(testPlaintext, (byte) 0xa5);
+
+		try {
+			ByteArrayOutputStream lightweightCiphertext = new ByteArrayOutputStream();
+			ByteArrayOutputStream jceCiphertext = new ByteArrayOutputStream();
+
+			try (OutputStream lightweightOutputStream = newLightweightCipherOutputStream(lightweightCiphertext, testKey, testIv);
+					OutputStream jceOutputStream = candidateCipherSpec.newCipherOutputStream(jceCiphertext, testKey, testIv)) {
+
+				lightweightOutputStream.write(testPlaintext);
+				jceOutputStream.write(testPlaintext);
+			}
+
+			return Arrays.equals(lightweightCiphertext.toByteArray(), jceCiphertext.toByteArray());
+		}
+		catch (CipherException | IOException | RuntimeException e) {
+			logger.log(Level.INFO, "JCE implementation cannot be used for " + this, e);
+			return false;
+		}
+	}
 }
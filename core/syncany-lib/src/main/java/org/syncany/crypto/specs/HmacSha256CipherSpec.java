@@ -20,6 +20,7 @@ package org.syncany.crypto.specs;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+import org.syncany.crypto.BufferCipher;
 import org.syncany.crypto.CipherException;
 import org.syncany.crypto.CipherSpec;
 
@@ -41,4 +42,9 @@ public class HmacSha256CipherSpec extends CipherSpec {
 	public InputStream newCipherInputStream(InputStream underlyingInputStream, byte[] secretKey, byte[] iv) throws CipherException {
 		throw new RuntimeException("Cannot create cipher.");
 	}
+
+	@Override
+	public BufferCipher newBufferCipher(boolean forEncryption, byte[] secretKey, byte[] iv) throws CipherException {
+		throw new RuntimeException("Cannot create cipher.");
+	}
 }
@@ -0,0 +1,101 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.crypto.specs;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.syncany.crypto.BufferCipher;
+import org.syncany.crypto.CipherException;
+import org.syncany.crypto.CipherSpec;
+import org.syncany.crypto.JceBufferCipher;
+
+/**
+ * AES/GCM cipher spec backed by the JDK's own provider (<code>Cipher.getInstance("AES/GCM/NoPadding")</code>),
+ * instead of the BouncyCastle lightweight engine used by {@link AesGcmCipherSpec}. On most JVMs, the JDK's AES/GCM
+ * implementation is intrinsified (AES-NI, carry-less multiplication), and thereby many times faster than the
+ * pure-Java table-based implementation.
+ * 
+ * <p>The output is identical to the output of the lightweight engine: The ciphertext is followed by a 128-bit
+ * authentication tag, and the IV is used as-is (no truncation to 96 bits). The {@link AesGcmCipherSpec}
+ * uses this cipher spec automatically for encrypting streams and buffer ciphers if it is available (see 
+ * {@link #isAvailable(int)}).
+ * 
+ * <p>Note: The JDK's GCM implementation does not release any plaintext before the authentication tag
+ * has been verified, i.e. the entire ciphertext is buffered in memory during decryption. The
+ * {@link AesGcmCipherSpec} therefore never uses this cipher spec for decryption.
+ * 
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class JceAesGcmCipherSpec extends CipherSpec {
+	public static final String JCE_ALGORITHM = "AES/GCM/NoPadding";
+	private static final int MAC_SIZE = 128;
+
+	public JceAesGcmCipherSpec(int id, int keySize, int ivSize, boolean needsUnlimitedStrength) {
+		super(id, JCE_ALGORITHM, keySize, ivSize, needsUnlimitedStrength);
+	}
+
+	@Override
+	public OutputStream newCipherOutputStream(OutputStream underlyingOutputStream, byte[] secretKey, byte[] iv) throws CipherException {
+		return new CipherOutputStream(underlyingOutputStream, createCipher(Cipher.ENCRYPT_MODE, secretKey, iv));
+	}
+
+	@Override
+	public InputStream newCipherInputStream(InputStream underlyingInputStream, byte[] secretKey, byte[] iv) throws CipherException {
+		return new CipherInputStream(underlyingInputStream, createCipher(Cipher.DECRYPT_MODE, secretKey, iv));
+	}
+
+	@Override
+	public BufferCipher newBufferCipher(boolean forEncryption, byte[] secretKey, byte[] iv) throws CipherException {
+		return new JceBufferCipher(createCipher((forEncryption) ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, secretKey, iv));
+	}
+
+	private Cipher createCipher(int mode, byte[] secretKey, byte[] iv) throws CipherException {
+		try {
+			Cipher cipher = Cipher.getInstance(JCE_ALGORITHM);
+			cipher.init(mode, new SecretKeySpec(secretKey, "AES"), new GCMParameterSpec(MAC_SIZE, iv));
+
+			return cipher;
+		}
+		catch (GeneralSecurityException e) {
+			throw new CipherException("Cannot create JCE cipher " + JCE_ALGORITHM, e);
+		}
+	}
+
+	/**
+	 * Returns whether the JDK provides AES/GCM for the given key size, i.e. whether
+	 * the algorithm is present and the key size is allowed by the crypto policy.
+	 * 
+	 * @param keySize Key size in bits
+	 */
+	public static boolean isAvailable(int keySize) {
+		try {
+			return Cipher.getMaxAllowedKeyLength(JCE_ALGORITHM) >= keySize && Cipher.getInstance(JCE_ALGORITHM) != null;
+		}
+		catch (GeneralSecurityException e) {
+			return false;
+		}
+	}
+}
@@ -25,6 +25,8 @@ import org.bouncycastle.crypto.modes.AEADBlockCipher;
 import org.bouncycastle.crypto.modes.GCMBlockCipher;
 import org.bouncycastle.crypto.params.AEADParameters;
 import org.bouncycastle.crypto.params.KeyParameter;
+import org.syncany.crypto.AeadBufferCipher;
+import org.syncany.crypto.BufferCipher;
 import org.syncany.crypto.CipherException;
 import org.syncany.crypto.CipherSpec;
 
@@ -50,4 +52,12 @@ public abstract class TwofishGcmCipherSpec extends CipherSpec {
 		
 		return new org.bouncycastle.crypto.io.CipherInputStream(underlyingInputStream, cipher);
 	}
+
+	@Override
+	public BufferCipher newBufferCipher(boolean forEncryption, byte[] secretKey, byte[] iv) throws CipherException {
+		AEADBlockCipher cipher = new GCMBlockCipher(new TwofishEngine()); 
+		cipher.init(forEncryption, new AEADParameters(new KeyParameter(secretKey), MAC_SIZE, iv));
+		
+		return new AeadBufferCipher(cipher);
+	}
 }
@@ -0,0 +1,52 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The cached database backend is the default {@link DatabaseBackend}. It uses
+ * HSQLDB's <code>CACHED</code> tables with the engine's default row cache and
+ * memory-mapping limits.
+ *
+ * <p>Applying this backend resets all settings changed by other backends, so that
+ * a local database can be switched back to the default behavior.
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class CachedDatabaseBackend extends DatabaseBackend {
+	public static final String TYPE = "cached";
+
+	private static final List<String> STORAGE_STATEMENTS = Arrays.asList(new String[] {
+			"SET FILES NIO TRUE",
+			"SET FILES NIO SIZE 256",
+			"SET FILES CACHE ROWS 50000",
+			"SET FILES CACHE SIZE 10000"
+	});
+
+	@Override
+	public String getType() {
+		return TYPE;
+	}
+
+	@Override
+	protected List<String> getStorageStatements() {
+		return STORAGE_STATEMENTS;
+	}
+}
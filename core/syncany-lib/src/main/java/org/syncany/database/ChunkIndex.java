@@ -0,0 +1,124 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.config.Config;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.dao.ChunkSqlDao;
+
+/**
+ * The chunk index is an in-memory index of all {@link ChunkEntry}s in the local
+ * database. It is used by the {@link ChunkSqlDao} to answer chunk lookups (mainly
+ * during indexing/deduplication) without querying the database.
+ *
+ * <p>The index is loaded lazily from the database when it is first used, and then
+ * kept up-to-date incrementally: chunks written to the database are added, chunks
+ * removed from the database are removed. Since it is held by the {@link Config},
+ * it survives across operations, e.g. between the sync cycles of the daemon.
+ *
+ * <p>If the database is changed in a way that cannot be tracked incrementally
+ * (e.g. a rollback), the index must be invalidated using {@link #invalidate()}.
+ * It is then reloaded from the database the next time it is used.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class ChunkIndex {
+	private static final Logger logger = Logger.getLogger(ChunkIndex.class.getSimpleName());
+
+	private Map<ChunkChecksum, ChunkEntry> chunks;
+
+	public ChunkIndex() {
+		this.chunks = null;
+	}
+
+	/**
+	 * Returns whether the index is loaded, i.e. whether it can be
+	 * used to look up chunks.
+	 */
+	public synchronized boolean isLoaded() {
+		return chunks != null;
+	}
+
+	/**
+	 * Replaces the contents of the index with the given chunks, and marks
+	 * the index as loaded.
+	 */
+	public synchronized void load(Map<ChunkChecksum, ChunkEntry> loadedChunks) {
+		logger.log(Level.INFO, "Chunk index loaded with " + loadedChunks.size() + " chunk(s).");
+		chunks = loadedChunks;
+	}
+
+	/**
+	 * Returns the chunk with the given checksum, or <code>null</code> if
+	 * it is not in the index (or the index is not loaded).
+	 */
+	public synchronized ChunkEntry get(ChunkChecksum chunkChecksum) {
+		return (chunks != null) ? chunks.get(chunkChecksum) : null;
+	}
+
+	/**
+	 * Adds the given chunks to the index. If the index is not loaded,
+	 * this method does nothing, since the chunks will be loaded from the
+	 * database anyway.
+	 */
+	public synchronized void addAll(Collection<ChunkEntry> addedChunks) {
+		if (chunks != null) {
+			for (ChunkEntry chunk : addedChunks) {
+				chunks.put(chunk.getChecksum(), chunk);
+			}
+		}
+	}
+
+	/**
+	 * Removes the chunks with the given checksums from the index. If the index
+	 * is not loaded, this method does nothing.
+	 */
+	public synchronized void removeAll(Collection<ChunkChecksum> removedChunkChecksums) {
+		if (chunks != null) {
+			for (ChunkChecksum chunkChecksum : removedChunkChecksums) {
+				chunks.remove(chunkChecksum);
+			}
+		}
+	}
+
+	/**
+	 * Throws away the contents of the index. The next lookup will
+	 * reload the index from the database.
+	 */
+	public synchronized void invalidate() {
+		if (chunks != null) {
+			logger.log(Level.INFO, "Chunk index invalidated.");
+			chunks = null;
+		}
+	}
+
+	/**
+	 * Returns the number of chunks in the index, or zero
+	 * if the index is not loaded.
+	 */
+	public synchronized int size() {
+		return (chunks != null) ? chunks.size() : 0;
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database;
+
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+
+/**
+ * A chunk position describes where a chunk can be found in a file of the
+ * current local file tree: The chunk with the given checksum is expected
+ * at the given offset of the file at the given path, if the file has
+ * not been changed since it was last indexed.
+ *
+ * <p>Chunk positions are derived from the order of the chunks in a
+ * {@link FileContent} and the sizes of the {@link ChunkEntry}s. They
+ * are only hints: Before the chunk data at this position is used, its
+ * checksum must be verified.
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class ChunkPosition {
+	private ChunkChecksum chunkChecksum;
+	private String path;
+	private long fileSize;
+	private long offset;
+	private int size;
+
+	public ChunkPosition(ChunkChecksum chunkChecksum, String path, long fileSize, long offset, int size) {
+		this.chunkChecksum = chunkChecksum;
+		this.path = path;
+		this.fileSize = fileSize;
+		this.offset = offset;
+		this.size = size;
+	}
+
+	public ChunkChecksum getChunkChecksum() {
+		return chunkChecksum;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return "ChunkPosition [chunkChecksum=" + chunkChecksum + ", path=" + path + ", offset=" + offset + ", size=" + size + "]";
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.util.StringUtil;
+
+/**
+ * A database backend defines how the embedded HSQLDB database stores the
+ * local database on disk. It is applied by the {@link DatabaseConnectionFactory}
+ * every time a new connection is created, i.e. before any of the data access
+ * objects of the {@link SqlDatabase} touch the tables.
+ *
+ * <p>The backend does not change the schema or the SQL queries used by the DAOs.
+ * It only controls the storage engine settings, e.g. whether the data file is
+ * memory-mapped and how many rows are kept in the row cache.
+ *
+ * <p>A backend can be instantiated by its type name using {@link #getInstance(String)}.
+ * The type name is configured in the local config file; if it is absent, the
+ * {@link CachedDatabaseBackend} is used.
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public abstract class DatabaseBackend {
+	private static final Logger logger = Logger.getLogger(DatabaseBackend.class.getSimpleName());
+
+	public static final String DEFAULT_TYPE = "cached";
+
+	/**
+	 * Returns the list of HSQLDB <code>SET FILES ..</code> statements that
+	 * configure the storage engine for this backend. The statements are persisted
+	 * by HSQLDB, so they must be idempotent and must fully reset all settings
+	 * changed by any other backend.
+	 */
+	protected abstract List<String> getStorageStatements();
+
+	/**
+	 * Returns the type name of this backend, as used in the config file
+	 * and in {@link #getInstance(String)}.
+	 */
+	public abstract String getType();
+
+	/**
+	 * Applies the storage settings of this backend to the given connection. This
+	 * method must be called before the connection is set to read-only mode.
+	 *
+	 * @param connection Connection to the local database
+	 * @throws SQLException If any of the statements cannot be executed
+	 */
+	public void configure(Connection connection) throws SQLException {
+		logger.log(Level.INFO, "Configuring database backend '" + getType() + "' ...");
+
+		try (Statement statement = connection.createStatement()) {
+			// Group commit mode might not have been ended properly (e.g. crash), so we reset
+			// it here -- unless it is in use by this process. See SqlDatabase#beginGroupCommit()
+			if (!SqlDatabase.isGroupCommitActive(connection.getMetaData().getURL())) {
+				statement.execute("SET FILES WRITE DELAY FALSE");
+			}
+
+			for (String storageStatement : getStorageStatements()) {
+				logger.log(Level.FINE, "- " + storageStatement);
+				statement.execute(storageStatement);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getType();
+	}
+
+	/**
+	 * Instantiates a database backend by its type name using the default constructor.
+	 *
+	 * <p>The given type attribute is mapped to fully qualified class name (FQCN) of the form
+	 * <code>org.syncany.database.XDatabaseBackend</code>, where <code>X</code> is the camel-cased type
+	 * attribute.
+	 *
+	 * @param type Type/name of the backend (corresponds to its camel case class name)
+	 * @return Returns a new database backend, or <code>null</code> if the backend cannot be found
+	 */
+	public static DatabaseBackend getInstance(String type) {
+		String thisPackage = DatabaseBackend.class.getPackage().getName();
+		String camelCaseName = StringUtil.toCamelCase(type);
+		String fqClassName = thisPackage + "." + camelCaseName + DatabaseBackend.class.getSimpleName();
+
+		try {
+			Class<?> clazz = Class.forName(fqClassName);
+			return (DatabaseBackend) clazz.newInstance();
+		}
+		catch (Exception ex) {
+			logger.log(Level.INFO, "Could not find database backend FQCN " + fqClassName, ex);
+			return null;
+		}
+	}
+}
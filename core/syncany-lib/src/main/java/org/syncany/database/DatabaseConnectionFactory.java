@@ -65,16 +65,33 @@ public class DatabaseConnectionFactory {
 		}
 	}
 
+	/**
+	 * Creates a database connection using the given database file and the default
+	 * {@link CachedDatabaseBackend}.
+	 *
+	 * @see #createConnection(File, DatabaseBackend, boolean)
+	 * @param databaseFile File at which to create/load the database
+	 * @param readOnly True if this connection is only used for reading.
+	 * @return Returns a valid database connection
+	 */
+	public static Connection createConnection(File databaseFile, boolean readOnly) {
+		return createConnection(databaseFile, new CachedDatabaseBackend(), readOnly);
+	}
+
 	/**
 	 * Creates a database connection using the given database file. If the database exists and the
 	 * application tables are present, a valid connection is returned. If not, the database is created
 	 * and the application tables are created.
 	 *
+	 * <p>Before the connection is returned, the storage settings of the given {@link DatabaseBackend}
+	 * are applied to the database.
+	 *
 	 * @param databaseFile File at which to create/load the database
+	 * @param databaseBackend Storage backend to configure the database with
 	 * @param readOnly True if this connection is only used for reading.
 	 * @return Returns a valid database connection
 	 */
-	public static Connection createConnection(File databaseFile, boolean readOnly) {
+	public static Connection createConnection(File databaseFile, DatabaseBackend databaseBackend, boolean readOnly) {
 		String databaseFilePath = FileUtil.getDatabasePath(databaseFile.toString());
 		String connectionString = DATABASE_CONNECTION_FILE_STRING.replaceAll("%DATABASEFILE%", databaseFilePath);
 
@@ -82,7 +99,7 @@ public class DatabaseConnectionFactory {
 			connectionString += ";hsqldb.sqllog=3";
 		}
 
-		return createConnection(connectionString, readOnly);
+		return createConnection(connectionString, databaseBackend, readOnly);
 	}
 
 	/**
@@ -123,10 +140,13 @@ public class DatabaseConnectionFactory {
 		return statementInputStream;
 	}
 
-	private static Connection createConnection(String connectionString, boolean readOnly) {
+	private static Connection createConnection(String connectionString, DatabaseBackend databaseBackend, boolean readOnly) {
 		try {
 			Connection connection = DriverManager.getConnection(connectionString);
 			connection.setAutoCommit(false);
+
+			// Storage settings must be applied before the connection is read-only
+			databaseBackend.configure(connection);
 			connection.setReadOnly(readOnly);
 
 			// We use UNCOMMITTED read to enable operations to alter the database and continue
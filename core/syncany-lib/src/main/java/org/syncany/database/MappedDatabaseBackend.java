@@ -0,0 +1,59 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The mapped database backend keeps the entire HSQLDB data file memory-mapped
+ * and uses a much larger row cache than the {@link CachedDatabaseBackend}.
+ *
+ * <p>With the default backend, HSQLDB stops memory-mapping the data file once it
+ * exceeds 256 MB and falls back to random access file I/O. For large repositories,
+ * the hot tables (<code>chunk</code>, <code>multichunk_chunk</code>, <code>filecontent_chunk</code>
+ * and <code>fileversion</code>) easily exceed that limit, so that every index lookup
+ * results in a read system call. This backend raises the mapping limit to 16 GB and keeps
+ * up to 500,000 rows in the row cache, so that point lookups on these tables are served
+ * from the page cache.
+ *
+ * <p>Note that this backend trades heap and virtual memory for lookup latency.
+ * It should only be used on machines with sufficient memory.
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class MappedDatabaseBackend extends DatabaseBackend {
+	public static final String TYPE = "mapped";
+
+	private static final List<String> STORAGE_STATEMENTS = Arrays.asList(new String[] {
+			"SET FILES NIO TRUE",
+			"SET FILES NIO SIZE 16384",
+			"SET FILES CACHE ROWS 500000",
+			"SET FILES CACHE SIZE 131072"
+	});
+
+	@Override
+	public String getType() {
+		return TYPE;
+	}
+
+	@Override
+	protected List<String> getStorageStatements() {
+		return STORAGE_STATEMENTS;
+	}
+}
@@ -43,7 +43,13 @@ import org.syncany.database.PartialFileHistory.FileHistoryId;
  * {@link #getContent(FileChecksum) getContent()} and {@link #getMultiChunk(MultiChunkId) getMultiChunk()}.
  *
  * <p>To allow this convenience, a few caches are kept in memory, and updated whenever a
- * database version is added or removed.
+ * database version is added or removed. The secondary indexes by file name and by content
+ * checksum are only built on demand, i.e. when they are first queried, and are thrown away
+ * whenever the database changes. Users that only iterate over the file histories (such as
+ * the down operation) therefore never pay for them.
+ *
+ * <p>To allow bounding the memory used by a memory database, {@link #getEstimatedSize()}
+ * returns a rough estimate of the heap consumed by its contents.
  *
  * @see DatabaseVersion
  * @author Philipp C. Heckel (philipp.heckel@gmail.com)
@@ -57,14 +63,19 @@ public class MemoryDatabase {
 	private Map<VectorClock, DatabaseVersion> databaseVersionIdCache;
 	private Map<FileChecksum, List<PartialFileHistory>> contentChecksumFileHistoriesCache;
 
+	// Size estimate
+	private long estimatedSize;
+
 	public MemoryDatabase() {
 		databaseVersions = new ArrayList<DatabaseVersion>();
 
 		// Caches
 		fullDatabaseVersionCache = new DatabaseVersion();
-		filenameHistoryCache = new HashMap<String, PartialFileHistory>();
+		filenameHistoryCache = null; // Built on demand
 		databaseVersionIdCache = new HashMap<VectorClock, DatabaseVersion>();
-		contentChecksumFileHistoriesCache = new HashMap<FileChecksum, List<PartialFileHistory>>();
+		contentChecksumFileHistoriesCache = null; // Built on demand
+
+		estimatedSize = 0;
 	}
 
 	public DatabaseVersion getLastDatabaseVersion() {
@@ -103,10 +114,18 @@ public class MemoryDatabase {
 	}
 
 	public PartialFileHistory getFileHistory(String relativeFilePath) {
+		if (filenameHistoryCache == null) {
+			updateFilenameHistoryCache();
+		}
+
 		return filenameHistoryCache.get(relativeFilePath);
 	}
 
 	public List<PartialFileHistory> getFileHistories(FileChecksum fileContentChecksum) {
+		if (contentChecksumFileHistoriesCache == null) {
+			updateContentChecksumCache();
+		}
+
 		return contentChecksumFileHistoriesCache.get(fileContentChecksum);
 	}
 
@@ -122,6 +141,38 @@ public class MemoryDatabase {
 		return fullDatabaseVersionCache.getMultiChunks();
 	}
 
+	/**
+	 * Returns a rough estimate of the heap memory (in bytes) used by the
+	 * database versions in this memory database, including its caches.
+	 *
+	 * <p>The estimate is based on the number of chunks, multichunks, file contents
+	 * and file versions, and fixed per-object costs. It is not exact, but good enough
+	 * to decide when to stop loading more database versions into memory.
+	 */
+	public long getEstimatedSize() {
+		return estimatedSize;
+	}
+
+	/**
+	 * Returns a single database version that contains the entire content of this memory
+	 * database, i.e. the chunks, multichunks, file contents and file histories of all of its
+	 * database versions. The collapsed database version carries the header of the last
+	 * database version, or no header if the database is empty.
+	 *
+	 * <p>Note that the returned database version shares its entities with the caches
+	 * of this memory database. It must not be altered.
+	 */
+	public DatabaseVersion getCollapsedDatabaseVersion() {
+		DatabaseVersion collapsedDatabaseVersion = fullDatabaseVersionCache.clone();
+		DatabaseVersion lastDatabaseVersion = getLastDatabaseVersion();
+
+		if (lastDatabaseVersion != null) {
+			collapsedDatabaseVersion.setHeader(lastDatabaseVersion.getHeader());
+		}
+
+		return collapsedDatabaseVersion;
+	}
+
 	public void addDatabaseVersion(DatabaseVersion databaseVersion) {
 		databaseVersions.add(databaseVersion);
 
@@ -129,8 +180,7 @@ public class MemoryDatabase {
 		// WARNING: Do NOT reorder, order important!!
 		updateDatabaseVersionIdCache(databaseVersion);
 		updateFullDatabaseVersionCache(databaseVersion);
-		updateFilenameHistoryCache();
-		updateContentChecksumCache();
+		invalidateOnDemandCaches();
 	}
 
 	public void removeDatabaseVersion(DatabaseVersion databaseVersion) {
@@ -140,13 +190,16 @@ public class MemoryDatabase {
 		// WARNING: Do NOT reorder, order important!!
 		updateFullDatabaseVersionCache();
 		updateDatabaseVersionIdCache();
-		updateFilenameHistoryCache();
-		updateContentChecksumCache();
+		invalidateOnDemandCaches();
+	}
+
+	private void invalidateOnDemandCaches() {
+		filenameHistoryCache = null;
+		contentChecksumFileHistoriesCache = null;
 	}
 
-	// TODO [medium] Very inefficient. Always updates whole cache
 	private void updateContentChecksumCache() {
-		contentChecksumFileHistoriesCache.clear();
+		contentChecksumFileHistoriesCache = new HashMap<FileChecksum, List<PartialFileHistory>>();
 
 		for (PartialFileHistory fullFileHistory : fullDatabaseVersionCache.getFileHistories()) {
 			FileChecksum lastVersionChecksum = fullFileHistory.getLastVersion().getChecksum();
@@ -168,8 +221,7 @@ public class MemoryDatabase {
 	}
 
 	private void updateFilenameHistoryCache() {
-		// TODO [medium] Performance: This throws away the unchanged entries. It should only update new database version
-		filenameHistoryCache.clear();
+		filenameHistoryCache = new HashMap<String, PartialFileHistory>();
 
 		for (PartialFileHistory cacheFileHistory : fullDatabaseVersionCache.getFileHistories()) {
 			FileVersion lastVersion = cacheFileHistory.getLastVersion();
@@ -195,6 +247,7 @@ public class MemoryDatabase {
 
 	private void updateFullDatabaseVersionCache() {
 		fullDatabaseVersionCache = new DatabaseVersion();
+		estimatedSize = 0;
 
 		for (DatabaseVersion databaseVersion : databaseVersions) {
 			updateFullDatabaseVersionCache(databaseVersion);
@@ -206,6 +259,7 @@ public class MemoryDatabase {
 		for (ChunkEntry sourceChunk : newDatabaseVersion.getChunks()) {
 			if (fullDatabaseVersionCache.getChunk(sourceChunk.getChecksum()) == null) {
 				fullDatabaseVersionCache.addChunk(sourceChunk);
+				estimatedSize += EstimatedSize.CHUNK;
 			}
 		}
 
@@ -213,6 +267,7 @@ public class MemoryDatabase {
 		for (MultiChunkEntry sourceMultiChunk : newDatabaseVersion.getMultiChunks()) {
 			if (fullDatabaseVersionCache.getMultiChunk(sourceMultiChunk.getId()) == null) {
 				fullDatabaseVersionCache.addMultiChunk(sourceMultiChunk);
+				estimatedSize += EstimatedSize.MULTICHUNK + sourceMultiChunk.getChunks().size() * EstimatedSize.CHUNK_REFERENCE;
 			}
 		}
 
@@ -220,6 +275,7 @@ public class MemoryDatabase {
 		for (FileContent sourceFileContent : newDatabaseVersion.getFileContents()) {
 			if (fullDatabaseVersionCache.getFileContent(sourceFileContent.getChecksum()) == null) {
 				fullDatabaseVersionCache.addFileContent(sourceFileContent);
+				estimatedSize += EstimatedSize.FILE_CONTENT + sourceFileContent.getChunks().size() * EstimatedSize.CHUNK_REFERENCE;
 			}
 		}
 
@@ -229,15 +285,31 @@ public class MemoryDatabase {
 
 			if (targetFileHistory == null) {
 				fullDatabaseVersionCache.addFileHistory(sourceFileHistory.clone());
+				estimatedSize += EstimatedSize.FILE_HISTORY + sourceFileHistory.getFileVersions().size() * EstimatedSize.FILE_VERSION;
 			}
 			else {
 				for (FileVersion sourceFileVersion : sourceFileHistory.getFileVersions().values()) {
 					if (targetFileHistory.getFileVersion(sourceFileVersion.getVersion()) == null) {
 						targetFileHistory.addFileVersion(sourceFileVersion);
+						estimatedSize += EstimatedSize.FILE_VERSION;
 					}
 				}
 			}
 		}
 	}
 
+	/**
+	 * Approximate per-object heap costs (in bytes) used by {@link MemoryDatabase#getEstimatedSize()}.
+	 * The values include the object itself, its checksums/identifiers and the map entries
+	 * in both the database version and the full database version cache.
+	 */
+	private static class EstimatedSize {
+		private static final long CHUNK = 200;
+		private static final long CHUNK_REFERENCE = 80;
+		private static final long MULTICHUNK = 150;
+		private static final long FILE_CONTENT = 150;
+		private static final long FILE_HISTORY = 200;
+		private static final long FILE_VERSION = 500;
+	}
+
 }
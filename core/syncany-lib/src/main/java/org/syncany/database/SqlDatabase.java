@@ -21,6 +21,7 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -63,6 +64,18 @@ import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
 public class SqlDatabase {
 	protected static final Logger logger = Logger.getLogger(SqlDatabase.class.getSimpleName());
 
+	/**
+	 * Maximum time (in milliseconds) committed transactions may stay unsynced
+	 * while in group commit mode. See {@link #beginGroupCommit()}.
+	 */
+	public static final int GROUP_COMMIT_WRITE_DELAY = 10000;
+
+	/**
+	 * Number of {@link SqlDatabase} instances in group commit mode, per JDBC URL. See
+	 * {@link #beginGroupCommit()} and {@link #isGroupCommitActive(String)}.
+	 */
+	private static final Map<String, Integer> activeGroupCommits = new HashMap<String, Integer>();
+
 	protected Connection connection;
 	protected ApplicationSqlDao applicationDao;
 	protected ChunkSqlDao chunkDao;
@@ -72,6 +85,9 @@ public class SqlDatabase {
 	protected MultiChunkSqlDao multiChunkDao;
 	protected DatabaseVersionSqlDao databaseVersionDao;
 
+	protected String databaseUrl;
+	protected boolean groupCommit;
+
 	public SqlDatabase(Config config) {
 		this(config, false);
 	}
@@ -79,13 +95,24 @@ public class SqlDatabase {
 	public SqlDatabase(Config config, boolean readOnly) {
 		this.connection = config.createDatabaseConnection(readOnly);
 		this.applicationDao = new ApplicationSqlDao(connection);
-		this.chunkDao = new ChunkSqlDao(connection);
+		this.chunkDao = new ChunkSqlDao(connection, config.getChunkIndex());
 		this.fileContentDao = new FileContentSqlDao(connection);
 		this.fileVersionDao = new FileVersionSqlDao(connection);
 		this.fileHistoryDao = new FileHistorySqlDao(connection, fileVersionDao);
 		this.multiChunkDao = new MultiChunkSqlDao(connection);
 		this.databaseVersionDao = new DatabaseVersionSqlDao(connection, chunkDao, fileContentDao, fileVersionDao, fileHistoryDao, multiChunkDao);
 
+		this.databaseUrl = getDatabaseUrl(connection);
+		this.groupCommit = false;
+	}
+
+	private static String getDatabaseUrl(Connection connection) {
+		try {
+			return connection.getMetaData().getURL();
+		}
+		catch (SQLException e) {
+			throw new RuntimeException("Cannot determine database URL.", e);
+		}
 	}
 
 	// General
@@ -109,6 +136,101 @@ public class SqlDatabase {
 
 	public void rollback() throws SQLException {
 		connection.rollback();
+		databaseVersionDao.clearCaches();
+	}
+
+	/**
+	 * Switches the database to group commit mode. In this mode, {@link #commit()} still
+	 * commits the current transaction, but the database log is not synced to disk on
+	 * every commit. Instead, many commits are synced at once -- either when {@link #sync()}
+	 * or {@link #endGroupCommit()} is called, or after {@link #GROUP_COMMIT_WRITE_DELAY}
+	 * milliseconds at the latest.
+	 *
+	 * <p>If the application crashes in group commit mode, the most recent commits might
+	 * be lost. Since transactions are always synced in order, the database is always
+	 * consistent and reflects the state of an earlier commit. Callers must therefore
+	 * call {@link #sync()} before any action that depends on the durability of the local
+	 * database, e.g. before or after committing a remote transaction.
+	 *
+	 * <p>The write delay is a setting of the database, not of the connection. While group
+	 * commit mode is enabled, other connections to the same database (opened by this process)
+	 * therefore do not reset the write delay (see {@link #isGroupCommitActive(String)}).
+	 *
+	 * <p><b>Note:</b> This method does not commit the current transaction.
+	 */
+	public void beginGroupCommit() {
+		if (!groupCommit) {
+			logger.log(Level.INFO, "Database group commit mode enabled (max. write delay " + GROUP_COMMIT_WRITE_DELAY + " ms).");
+
+			synchronized (activeGroupCommits) {
+				Integer activeCount = activeGroupCommits.get(databaseUrl);
+				activeGroupCommits.put(databaseUrl, (activeCount != null) ? activeCount + 1 : 1);
+
+				applicationDao.setWriteDelay(GROUP_COMMIT_WRITE_DELAY);
+			}
+
+			groupCommit = true;
+		}
+	}
+
+	/**
+	 * Durability barrier: Forces all committed transactions to be synced to disk. If group
+	 * commit mode is not enabled, this method does nothing, because all commits are synced 
+	 * immediately.
+	 *
+	 * <p><b>Note:</b> This method does not commit the current transaction, i.e. uncommitted
+	 * changes are not synced. Call {@link #commit()} first to make them durable.
+	 */
+	public void sync() {
+		if (groupCommit) {
+			logger.log(Level.FINE, "Syncing committed database transactions to disk ...");
+
+			applicationDao.setWriteDelay(0);
+			applicationDao.setWriteDelay(GROUP_COMMIT_WRITE_DELAY);
+		}
+	}
+
+	/**
+	 * Syncs all committed transactions to disk, and disables the group commit mode, i.e. every
+	 * subsequent commit is synced immediately. If group commit mode is not enabled, this method
+	 * does nothing. If another {@link SqlDatabase} of this process is still in group commit 
+	 * mode for the same database, the committed transactions are synced, but the write delay 
+	 * is kept until that instance ends its group commit as well.
+	 *
+	 * <p><b>Note:</b> This method does not commit the current transaction.
+	 */
+	public void endGroupCommit() {
+		if (groupCommit) {
+			logger.log(Level.INFO, "Database group commit mode disabled; syncing committed transactions to disk.");
+
+			synchronized (activeGroupCommits) {
+				int activeCount = activeGroupCommits.get(databaseUrl) - 1;
+
+				if (activeCount > 0) {
+					activeGroupCommits.put(databaseUrl, activeCount);
+
+					applicationDao.setWriteDelay(0);
+					applicationDao.setWriteDelay(GROUP_COMMIT_WRITE_DELAY);
+				}
+				else {
+					activeGroupCommits.remove(databaseUrl);
+					applicationDao.setWriteDelay(0);
+				}
+			}
+
+			groupCommit = false;
+		}
+	}
+
+	/**
+	 * Returns whether any {@link SqlDatabase} of this process is in group commit mode for the
+	 * database with the given JDBC URL. Used by the {@link DatabaseBackend} to decide whether 
+	 * the write delay of a newly opened connection has to be reset.
+	 */
+	static boolean isGroupCommitActive(String databaseUrl) {
+		synchronized (activeGroupCommits) {
+			return activeGroupCommits.containsKey(databaseUrl);
+		}
 	}
 
 	public void removeUnreferencedDatabaseEntities() {
@@ -125,6 +247,17 @@ public class SqlDatabase {
 		}
 	}
 
+	/**
+	 * Rewrites the database files to reclaim the space of deleted rows.
+	 * See {@link ApplicationSqlDao#defragment()} for details.
+	 *
+	 * <p><b>Note:</b> This method does not commit the current transaction; only committed
+	 * changes are written to the defragmented files. Call {@link #commit()} first.
+	 */
+	public void defragment() {
+		applicationDao.defragment();
+	}
+
 	// Application
 
 	public void writeKnownRemoteDatabases(List<DatabaseRemoteFile> remoteDatabases) throws SQLException {
@@ -161,6 +294,7 @@ public class SqlDatabase {
 
 	public void deleteAll() {
 		applicationDao.deleteAll();
+		databaseVersionDao.clearCaches();
 	}
 
 	public void shutdown() {
@@ -173,6 +307,10 @@ public class SqlDatabase {
 		return databaseVersionDao.getDirtyDatabaseVersions();
 	}
 
+	public Iterator<DatabaseVersion> getDatabaseVersions() {
+		return databaseVersionDao.getDatabaseVersions();
+	}
+
 	public Iterator<DatabaseVersion> getDatabaseVersionsTo(String machineName, long maxLocalClientVersion) {
 		return databaseVersionDao.getDatabaseVersionsTo(machineName, maxLocalClientVersion);
 	}
@@ -241,6 +379,10 @@ public class SqlDatabase {
 		fileHistoryDao.removeUnreferencedFileHistories();
 	}
 
+	public int removeUnreferencedFileHistories(int maxCount) throws SQLException {
+		return fileHistoryDao.removeUnreferencedFileHistories(maxCount);
+	}
+
 	public FileHistoryId expandFileHistoryId(FileHistoryId fileHistoryId) {
 		return fileHistoryDao.expandFileHistoryId(fileHistoryId);
 	}
@@ -333,14 +475,26 @@ public class SqlDatabase {
 		chunkDao.removeUnreferencedChunks();
 	}
 
+	public int removeUnreferencedChunks(int maxCount) {
+		return chunkDao.removeUnreferencedChunks(maxCount);
+	}
+
 	// File Content
 
 	public FileContent getFileContent(FileChecksum fileChecksum, boolean includeChunkChecksums) {
 		return fileContentDao.getFileContent(fileChecksum, includeChunkChecksums);
 	}
 
+	public Map<ChunkChecksum, List<ChunkPosition>> getChunkPositions(Collection<ChunkChecksum> chunkChecksums) {
+		return fileContentDao.getChunkPositions(chunkChecksums);
+	}
+
 	private void removeUnreferencedFileContents() throws SQLException {
 		fileContentDao.removeUnreferencedFileContents();
 	}
 
+	public int removeUnreferencedFileContents(int maxCount) throws SQLException {
+		return fileContentDao.removeUnreferencedFileContents(maxCount);
+	}
+
 }
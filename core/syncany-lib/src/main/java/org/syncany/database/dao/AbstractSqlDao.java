@@ -21,6 +21,11 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 
 import org.syncany.database.DatabaseConnectionFactory;
 import org.syncany.util.SqlRunner;
@@ -32,6 +37,13 @@ import org.syncany.util.SqlRunner;
  * @author Philipp C. Heckel (philipp.heckel@gmail.com)
  */
 public abstract class AbstractSqlDao {
+	/**
+	 * Maximum number of rows collected in a JDBC batch before it is executed. 
+	 * Used by the bulk write methods of the DAOs to avoid holding all rows of
+	 * a large database version in a single batch.
+	 */
+	protected static final int MAX_BATCH_SIZE = 5000;
+	
 	protected Connection connection;
 	
 	public AbstractSqlDao(Connection connection) {
@@ -50,7 +62,71 @@ public abstract class AbstractSqlDao {
 		return overrideConnection.prepareStatement(DatabaseConnectionFactory.getStatement(resourceId));
 	}
 	
+	/**
+	 * Adds the current set of parameters to the batch of the given statement, 
+	 * and executes the batch if it has reached {@link #MAX_BATCH_SIZE} rows. 
+	 * 
+	 * @param preparedStatement Statement to add the current parameters to
+	 * @param rowCount Number of rows added to this statement so far (incl. the current row)
+	 * @return Returns the update counts of the executed batch, or an empty array if the batch was not executed
+	 * @throws SQLException If the batch cannot be executed
+	 */
+	protected int[] addBatch(PreparedStatement preparedStatement, int rowCount) throws SQLException {
+		preparedStatement.addBatch();
+		
+		if (rowCount % MAX_BATCH_SIZE == 0) {
+			return preparedStatement.executeBatch();
+		}
+		else {
+			return new int[0];
+		}
+	}
+
+	/**
+	 * Verifies that every statement of an executed batch has affected at least one row. 
+	 * Statements for which the driver does not report an update count are not checked.
+	 * 
+	 * @param affectedRows Update counts as returned by {@link PreparedStatement#executeBatch()}
+	 * @param errorMessage Message of the exception thrown if a statement affected no rows
+	 * @throws SQLException If any of the statements affected no rows
+	 */
+	protected void checkAffectedRows(int[] affectedRows, String errorMessage) throws SQLException {
+		for (int affectedRowsOfStatement : affectedRows) {
+			if (affectedRowsOfStatement == 0) {
+				throw new SQLException(errorMessage);
+			}
+		}
+	}
+
+	/**
+	 * Returns a copy of the given entities, sorted by their primary key. Inserting rows in
+	 * primary key order keeps the index updates local, which speeds up large batch inserts.
+	 * 
+	 * @param entities Entities to be sorted
+	 * @param primaryKey Returns the primary key of an entity, as written to the database
+	 * @return Returns a new list containing the entities in primary key order
+	 */
+	protected <T> List<T> sortByPrimaryKey(Collection<T> entities, final PrimaryKey<T> primaryKey) {
+		List<T> sortedEntities = new ArrayList<T>(entities);
+
+		Collections.sort(sortedEntities, new Comparator<T>() {
+			@Override
+			public int compare(T entity1, T entity2) {
+				return primaryKey.of(entity1).compareTo(primaryKey.of(entity2));
+			}
+		});
+
+		return sortedEntities;
+	}
+	
 	protected void runScript(String resourceId) throws SQLException, IOException {
 		SqlRunner.runScript(connection, DatabaseConnectionFactory.getStatementInputStream(resourceId));
 	}
+
+	/**
+	 * Extracts the primary key of an entity, see {@link AbstractSqlDao#sortByPrimaryKey(Collection, PrimaryKey)}.
+	 */
+	protected interface PrimaryKey<T> {
+		public String of(T entity);
+	}
 }
@@ -156,6 +156,47 @@ public class ApplicationSqlDao extends AbstractSqlDao {
 		}
 	}
 
+	/**
+	 * Sets the maximum delay after which committed transactions are synced to disk,
+	 * i.e. after which the database log is <code>fsync</code>'d.
+	 *
+	 * <p>A delay of zero means that every commit is synced immediately (the default). When
+	 * the delay is changed, HSQLDB forces a sync of all previously committed transactions,
+	 * so setting the delay can also be used as a durability barrier.
+	 *
+	 * <p>The command sends the <b><code>SET FILES WRITE DELAY</code></b> SQL command. It does 
+	 * not commit the current transaction, i.e. only previously committed transactions are synced.
+	 *
+	 * @param writeDelayMillis Maximum write delay in milliseconds, or zero to sync on every commit
+	 */
+	public void setWriteDelay(int writeDelayMillis) {
+		String writeDelayStatement = (writeDelayMillis > 0) ? "SET FILES WRITE DELAY " + writeDelayMillis + " MILLIS" : "SET FILES WRITE DELAY FALSE";
+
+		try (PreparedStatement preparedStatement = connection.prepareStatement(writeDelayStatement)) {
+			preparedStatement.execute();
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Rewrites the database files to reclaim the space of deleted rows. Without
+	 * this, the HSQLDB data file never shrinks, even if rows are deleted.
+	 *
+	 * <p>The command sends the <b><code>CHECKPOINT DEFRAG</code></b> SQL command. It does not
+	 * commit the current transaction, so changes must be committed before. Depending on the
+	 * size of the database, this might take a while.
+	 */
+	public void defragment() {
+		try (PreparedStatement preparedStatement = connection.prepareStatement("CHECKPOINT DEFRAG")) {
+			preparedStatement.execute();
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	public Long getCleanupNumber() {
 		return readSettingAsLong("cleanupNumber");
 	}
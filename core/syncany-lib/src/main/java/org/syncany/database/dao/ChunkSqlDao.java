@@ -21,12 +21,15 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.syncany.database.ChunkEntry;
 import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.ChunkIndex;
 import org.syncany.database.VectorClock;
 
 /**
@@ -37,50 +40,76 @@ import org.syncany.database.VectorClock;
  * @author Philipp C. Heckel (philipp.heckel@gmail.com)
  */
 public class ChunkSqlDao extends AbstractSqlDao {
-	private Map<ChunkChecksum, ChunkEntry> chunkCache;
+	private ChunkIndex chunkIndex;
 
 	public ChunkSqlDao(Connection connection) {
+		this(connection, new ChunkIndex());
+	}
+
+	public ChunkSqlDao(Connection connection, ChunkIndex chunkIndex) {
 		super(connection);
-		this.chunkCache = null;
+		this.chunkIndex = chunkIndex;
 	}
 
 	/**
 	 * Writes a list of {@link ChunkEntry}s to the database using <code>INSERT</code>s and the given connection.
+	 * The chunks are inserted in the order of their checksums, in batches of at most {@link #MAX_BATCH_SIZE} rows.
+	 * 
+	 * <p>The written chunks are also added to the chunk index (if it is loaded).
 	 * 
 	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the query.
 	 * 
 	 * @param connection The connection used to execute the statements
 	 * @param databaseVersionId 
 	 * @param chunks List of {@link ChunkEntry}s to be inserted in the database
+	 * @return Returns the number of rows written
 	 * @throws SQLException If the SQL statement fails
 	 */
-	public void writeChunks(Connection connection, long databaseVersionId, Collection<ChunkEntry> chunks) throws SQLException {
+	public int writeChunks(Connection connection, long databaseVersionId, Collection<ChunkEntry> chunks) throws SQLException {
+		int rowCount = 0;
+		
 		if (chunks.size() > 0) {
 			PreparedStatement preparedStatement = getStatement(connection, "chunk.insert.all.writeChunks.sql");
 
-			for (ChunkEntry chunk : chunks) {
+			List<ChunkEntry> sortedChunks = sortByPrimaryKey(chunks, new PrimaryKey<ChunkEntry>() {
+				@Override
+				public String of(ChunkEntry chunk) {
+					return chunk.getChecksum().toString();
+				}
+			});
+
+			for (ChunkEntry chunk : sortedChunks) {
 				preparedStatement.setString(1, chunk.getChecksum().toString());
 				preparedStatement.setLong(2, databaseVersionId);
 				preparedStatement.setInt(3, chunk.getSize());
 
-				preparedStatement.addBatch();
+				addBatch(preparedStatement, ++rowCount);
 			}
 
 			preparedStatement.executeBatch();
 			preparedStatement.close();
+
+			chunkIndex.addAll(chunks);
 		}
+		
+		return rowCount;
 	}	
-
+	
 	/**
 	 * Removes unreferenced chunks from the database. Unreferenced chunks are chunks
 	 * that are not referenced by any file content or multichunk. 
 	 * 
 	 * <p>During the cleanup process, when file versions are deleted, unused chunks 
-	 * are left over. This method removes these chunks from the database.
+	 * are left over. This method removes these chunks from the database, and from
+	 * the chunk index (if it is loaded).
 	 * 
 	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the query. 
 	 */
 	public void removeUnreferencedChunks() {
+		if (chunkIndex.isLoaded()) {
+			chunkIndex.removeAll(getUnreferencedChunkChecksums(0));
+		}
+
 		try (PreparedStatement preparedStatement = getStatement("chunk.delete.all.removeUnreferencesChunks.sql")) {
 			preparedStatement.execute();
 			preparedStatement.close();
@@ -91,35 +120,68 @@ public class ChunkSqlDao extends AbstractSqlDao {
 	}
 	
 	/**
-	 * Queries the database of a chunk with the given checksum. 
+	 * Removes at most <code>maxCount</code> unreferenced chunks from the database and the 
+	 * chunk index. Unlike {@link #removeUnreferencedChunks()}, this method can be called 
+	 * repeatedly to remove unreferenced chunks in small batches (see <code>compact</code>).
 	 * 
-	 * <p>Note: When first called, this method loads the <b>chunk cache</b> and keeps
-	 * this cache until it is cleared explicitly with {@link #clearCache()}. 
+	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the query. 
+	 * 
+	 * @param maxCount Maximum number of chunks to remove
+	 * @return Returns the number of removed chunks
+	 */
+	public int removeUnreferencedChunks(int maxCount) {
+		List<ChunkChecksum> unreferencedChunkChecksums = getUnreferencedChunkChecksums(maxCount);
+
+		if (unreferencedChunkChecksums.size() > 0) {
+			try (PreparedStatement preparedStatement = getStatement("chunk.delete.all.removeChunk.sql")) {
+				for (ChunkChecksum chunkChecksum : unreferencedChunkChecksums) {
+					preparedStatement.setString(1, chunkChecksum.toString());
+					preparedStatement.addBatch();
+				}
+
+				preparedStatement.executeBatch();
+			}
+			catch (SQLException e) {
+				throw new RuntimeException(e);
+			}
+
+			chunkIndex.removeAll(unreferencedChunkChecksums);
+		}
+
+		return unreferencedChunkChecksums.size();
+	}
+	
+	/**
+	 * Queries the database of a chunk with the given checksum. 
 	 * 
-	 * <p>Also note that this method will return <code>null</code> if the chunk has been
-	 * added after the cache has been filled. 
+	 * <p>Note: When first called, this method loads the <b>chunk index</b> from the
+	 * database. The index is kept up-to-date by {@link #writeChunks(Connection, long, Collection) writeChunks()}
+	 * and {@link #removeUnreferencedChunks()}, and is only reloaded if it is 
+	 * invalidated explicitly with {@link #clearCache()}. 
 	 * 
 	 * @param chunkChecksum Chunk checksum of the chunk to be selected
 	 * @return Returns the chunk entry, or <code>null</code> if the chunk does not exist.
 	 */	
-	public synchronized ChunkEntry getChunk(ChunkChecksum chunkChecksum) {
-		if (chunkCache == null) {
-			loadChunkCache();
-		}
+	public ChunkEntry getChunk(ChunkChecksum chunkChecksum) {
+		synchronized (chunkIndex) {
+			if (!chunkIndex.isLoaded()) {
+				loadChunkIndex();
+			}
 
-		return chunkCache.get(chunkChecksum);
+			return chunkIndex.get(chunkChecksum);
+		}
 	}
 	
 	/**
-	 * Clears the chunk cache loaded by {@link #getChunk(ChunkChecksum) getChunk()}
-	 * and resets the cache. If {@link #getChunk(ChunkChecksum) getChunk()} is called
-	 * after the cache is cleared, it is re-populated.
+	 * Invalidates the chunk index used by {@link #getChunk(ChunkChecksum) getChunk()}.
+	 * If {@link #getChunk(ChunkChecksum) getChunk()} is called after the index is 
+	 * invalidated, it is re-populated from the database.
+	 * 
+	 * <p>This method must be called if chunks are changed in a way that is not 
+	 * tracked by the index, e.g. when the database is rolled back.
 	 */
-	public synchronized void clearCache() {
-		if (chunkCache != null) {
-			chunkCache.clear();
-			chunkCache = null;
-		}
+	public void clearCache() {
+		chunkIndex.invalidate();
 	}
 
 	/**
@@ -162,15 +224,34 @@ public class ChunkSqlDao extends AbstractSqlDao {
 		return new ChunkEntry(chunkChecksum, resultSet.getInt("size"));
 	}
 	
-	protected void loadChunkCache() {
+	protected void loadChunkIndex() {
 		try (PreparedStatement preparedStatement = getStatement("chunk.select.all.loadChunkCache.sql")) {
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
-				chunkCache = createChunkEntries(resultSet);
+				chunkIndex.load(createChunkEntries(resultSet));
+			}
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private List<ChunkChecksum> getUnreferencedChunkChecksums(int maxCount) {
+		List<ChunkChecksum> unreferencedChunkChecksums = new ArrayList<ChunkChecksum>();
+
+		try (PreparedStatement preparedStatement = getStatement("chunk.select.all.getUnreferencedChunks.sql")) {
+			preparedStatement.setMaxRows(maxCount); // Zero means no limit
+
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				while (resultSet.next()) {
+					unreferencedChunkChecksums.add(ChunkChecksum.parseChunkChecksum(resultSet.getString("checksum")));
+				}
 			}
 		}
 		catch (SQLException e) {
 			throw new RuntimeException(e);
 		}
+
+		return unreferencedChunkChecksums;
 	}
 	
 	/**
@@ -0,0 +1,441 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.syncany.chunk.Transformer;
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.DatabaseVersionHeader;
+import org.syncany.database.FileContent;
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileVersion;
+import org.syncany.database.MemoryDatabase;
+import org.syncany.database.MultiChunkEntry;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.database.VectorClock;
+import org.syncany.database.dao.DatabaseSerializer.DatabaseReadType;
+
+/**
+ * This class is used by the {@link DatabaseSerializer} to read a database file
+ * in the binary format described in {@link DatabaseBinarySerializer}. 
+ *
+ * <p>Like the {@link DatabaseXmlParseHandler}, the class can read either an entire file into 
+ * memory, or only parts of it -- excluding contents (headers only) or only selecting a range
+ * of database versions. Unlike the XML parser, it uses the index at the beginning of the file
+ * to skip the payloads of database versions outside of the range without parsing them.
+ * 
+ * <p>If only headers are read, only the index section is decoded. The payload section is 
+ * not read at all. If payloads are read, the payload section is always decoded until the end
+ * of the file, so that the transformer (e.g. the cipher) gets to verify the integrity of the
+ * entire section. Before any payload is parsed, the file identifier at the beginning of the
+ * payload section is compared to the one in the index section.
+ *
+ * @see DatabaseBinarySerializer
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class DatabaseBinaryReader {
+	private static final Logger logger = Logger.getLogger(DatabaseBinaryReader.class.getSimpleName());
+
+	private MemoryDatabase database;
+	private VectorClock versionFrom;
+	private VectorClock versionTo;
+	private DatabaseReadType readType;
+	private Transformer transformer;
+
+	public DatabaseBinaryReader(MemoryDatabase database, VectorClock fromVersion, VectorClock toVersion, DatabaseReadType readType,
+			Transformer transformer) {
+		
+		this.database = database;
+		this.versionFrom = fromVersion;
+		this.versionTo = toVersion;
+		this.readType = readType;
+		this.transformer = transformer;
+	}
+
+	public void read(InputStream in) throws IOException {
+		readMagicAndFormatVersion(in);
+
+		// Read index section (entirely, to verify its integrity)
+		int indexLength = readVarInt(in, "index length");
+
+		BoundedInputStream transformedIndexIn = new BoundedInputStream(in, indexLength);
+		transformedIndexIn.setPropagateClose(false);
+
+		InputStream indexIn = new ByteArrayInputStream(IOUtils.toByteArray(createInputStream(transformedIndexIn)));
+		int databaseVersionCount = readVarInt(indexIn, "database version count");
+
+		List<DatabaseVersionHeader> headers = new ArrayList<DatabaseVersionHeader>(databaseVersionCount);
+		long[] payloadLengths = new long[databaseVersionCount];
+		int lastInRangeIndex = -1;
+
+		for (int i = 0; i < databaseVersionCount; i++) {
+			DatabaseVersionHeader header = readDatabaseVersionHeader(indexIn);
+
+			headers.add(header);
+			payloadLengths[i] = readVarLong(indexIn, "payload length");
+
+			if (DatabaseSerializer.vectorClockInRange(header.getVectorClock(), versionFrom, versionTo)) {
+				lastInRangeIndex = i;
+			}
+		}
+
+		byte[] fileId = readBytes(indexIn, DatabaseBinarySerializer.FILE_ID_SIZE);
+
+		if (indexIn.read() != -1) {
+			throw new IOException("Invalid binary database file: Index section is longer than expected.");
+		}
+
+		// Read payload section (if requested)
+		if (readType == DatabaseReadType.HEADER_ONLY) {
+			readHeaders(headers);
+		}
+		else {
+			readPayloads(in, fileId, headers, payloadLengths, lastInRangeIndex);
+		}
+	}
+
+	private void readHeaders(List<DatabaseVersionHeader> headers) {
+		for (DatabaseVersionHeader header : headers) {
+			if (DatabaseSerializer.vectorClockInRange(header.getVectorClock(), versionFrom, versionTo)) {
+				addDatabaseVersion(createDatabaseVersion(header));
+			}
+		}
+	}
+
+	private void readPayloads(InputStream in, byte[] fileId, List<DatabaseVersionHeader> headers, long[] payloadLengths, int lastInRangeIndex)
+			throws IOException {
+		
+		InputStream payloadIn = createInputStream(in);
+
+		if (!Arrays.equals(readBytes(payloadIn, DatabaseBinarySerializer.FILE_ID_SIZE), fileId)) {
+			throw new IOException("Invalid binary database file: Payload section does not belong to index section.");
+		}
+
+		for (int i = 0; i <= lastInRangeIndex; i++) {
+			DatabaseVersionHeader header = headers.get(i);
+
+			if (DatabaseSerializer.vectorClockInRange(header.getVectorClock(), versionFrom, versionTo)) {
+				DatabaseVersion databaseVersion = createDatabaseVersion(header);
+
+				readPayload(payloadIn, payloadLengths[i], databaseVersion);
+				addDatabaseVersion(databaseVersion);
+			}
+			else {
+				skipFully(payloadIn, payloadLengths[i]);
+			}
+		}
+
+		// Stop parsing after the last requested database version, but read the remainder
+		// of transformed files, so that the transformer (e.g. the cipher) gets to verify the
+		// integrity of the entire payload section.
+
+		if (payloadIn != in) {
+			IOUtils.skip(payloadIn, Long.MAX_VALUE);
+		}
+	}
+
+	private DatabaseVersion createDatabaseVersion(DatabaseVersionHeader header) {
+		DatabaseVersion databaseVersion = new DatabaseVersion();
+
+		databaseVersion.setTimestamp(header.getDate());
+		databaseVersion.setClient(header.getClient());
+		databaseVersion.setVectorClock(header.getVectorClock());
+
+		return databaseVersion;
+	}
+
+	private void addDatabaseVersion(DatabaseVersion databaseVersion) {
+		database.addDatabaseVersion(databaseVersion);
+		logger.log(Level.INFO, "   + Added database version " + databaseVersion.getHeader());
+	}
+
+	private InputStream createInputStream(InputStream in) throws IOException {
+		return (transformer != null) ? transformer.createInputStream(in) : in;
+	}
+
+	private void readMagicAndFormatVersion(InputStream in) throws IOException {
+		byte[] magic = readBytes(in, DatabaseBinarySerializer.MAGIC.length);
+
+		if (!Arrays.equals(magic, DatabaseBinarySerializer.MAGIC)) {
+			throw new IOException("Invalid binary database file: Magic bytes do not match.");
+		}
+
+		int formatVersion = readByte(in);
+
+		if (formatVersion != DatabaseBinarySerializer.FORMAT_VERSION) {
+			throw new IOException("Unsupported binary database format version " + formatVersion + "; supported version is "
+					+ DatabaseBinarySerializer.FORMAT_VERSION);
+		}
+	}
+
+	private DatabaseVersionHeader readDatabaseVersionHeader(InputStream in) throws IOException {
+		DatabaseVersionHeader header = new DatabaseVersionHeader();
+
+		header.setDate(readDate(in));
+		header.setClient(readString(in));
+
+		VectorClock vectorClock = new VectorClock();
+		int vectorClockSize = readVarInt(in, "vector clock size");
+
+		for (int i = 0; i < vectorClockSize; i++) {
+			String clientName = readString(in);
+			long clientValue = readVarLong(in, "vector clock value");
+
+			vectorClock.setClock(clientName, clientValue);
+		}
+
+		header.setVectorClock(vectorClock);
+		return header;
+	}
+
+	private void readPayload(InputStream in, long payloadLength, DatabaseVersion databaseVersion) throws IOException {
+		BoundedInputStream payloadIn = new BoundedInputStream(in, payloadLength);
+		payloadIn.setPropagateClose(false);
+
+		readChunks(payloadIn, databaseVersion);
+		readMultiChunks(payloadIn, databaseVersion);
+		readFileContents(payloadIn, databaseVersion);
+		readFileHistories(payloadIn, databaseVersion);
+
+		if (payloadIn.read() != -1) {
+			throw new IOException("Invalid binary database file: Payload of " + databaseVersion.getHeader() + " is longer than expected.");
+		}
+	}
+
+	private void readChunks(InputStream in, DatabaseVersion databaseVersion) throws IOException {
+		int chunkCount = readVarInt(in, "chunk count");
+
+		for (int i = 0; i < chunkCount; i++) {
+			ChunkChecksum chunkChecksum = new ChunkChecksum(readByteArray(in));
+			int chunkSize = readVarInt(in, "chunk size");
+
+			databaseVersion.addChunk(new ChunkEntry(chunkChecksum, chunkSize));
+		}
+	}
+
+	private void readMultiChunks(InputStream in, DatabaseVersion databaseVersion) throws IOException {
+		int multiChunkCount = readVarInt(in, "multichunk count");
+
+		for (int i = 0; i < multiChunkCount; i++) {
+			MultiChunkId multiChunkId = new MultiChunkId(readByteArray(in));
+			long size = readVarLong(in, "multichunk size");
+
+			MultiChunkEntry multiChunk = new MultiChunkEntry(multiChunkId, size);
+			int chunkRefCount = readVarInt(in, "chunk reference count");
+
+			for (int j = 0; j < chunkRefCount; j++) {
+				multiChunk.addChunk(new ChunkChecksum(readByteArray(in)));
+			}
+
+			databaseVersion.addMultiChunk(multiChunk);
+		}
+	}
+
+	private void readFileContents(InputStream in, DatabaseVersion databaseVersion) throws IOException {
+		int fileContentCount = readVarInt(in, "file content count");
+
+		for (int i = 0; i < fileContentCount; i++) {
+			FileContent fileContent = new FileContent();
+
+			fileContent.setChecksum(new FileChecksum(readByteArray(in)));
+			fileContent.setSize(readVarLong(in, "file content size"));
+
+			int chunkRefCount = readVarInt(in, "chunk reference count");
+
+			for (int j = 0; j < chunkRefCount; j++) {
+				fileContent.addChunk(new ChunkChecksum(readByteArray(in)));
+			}
+
+			databaseVersion.addFileContent(fileContent);
+		}
+	}
+
+	private void readFileHistories(InputStream in, DatabaseVersion databaseVersion) throws IOException {
+		int fileHistoryCount = readVarInt(in, "file history count");
+
+		for (int i = 0; i < fileHistoryCount; i++) {
+			PartialFileHistory fileHistory = new PartialFileHistory(new FileHistoryId(readByteArray(in)));
+			int fileVersionCount = readVarInt(in, "file version count");
+
+			for (int j = 0; j < fileVersionCount; j++) {
+				fileHistory.addFileVersion(readFileVersion(in));
+			}
+
+			// File history might be empty, see DatabaseXmlParseHandler
+			if (fileHistory.getFileVersions().size() > 0) {
+				databaseVersion.addFileHistory(fileHistory);
+			}
+		}
+	}
+
+	private FileVersion readFileVersion(InputStream in) throws IOException {
+		FileVersion fileVersion = new FileVersion();
+
+		fileVersion.setVersion(readVarLong(in, "file version number"));
+		fileVersion.setType(DatabaseBinarySerializer.FILE_TYPES[readCode(in, DatabaseBinarySerializer.FILE_TYPES.length)]);
+		fileVersion.setStatus(DatabaseBinarySerializer.FILE_STATUSES[readCode(in, DatabaseBinarySerializer.FILE_STATUSES.length)]);
+		fileVersion.setPath(readString(in));
+		fileVersion.setSize(readVarLong(in, "file size"));
+		fileVersion.setLastModified(readDate(in));
+
+		int flags = readByte(in);
+
+		if ((flags & DatabaseBinarySerializer.FLAG_UPDATED) != 0) {
+			fileVersion.setUpdated(readDate(in));
+		}
+
+		if ((flags & DatabaseBinarySerializer.FLAG_CHECKSUM) != 0) {
+			fileVersion.setChecksum(new FileChecksum(readByteArray(in)));
+		}
+
+		if ((flags & DatabaseBinarySerializer.FLAG_LINK_TARGET) != 0) {
+			fileVersion.setLinkTarget(readString(in));
+		}
+
+		if ((flags & DatabaseBinarySerializer.FLAG_DOS_ATTRIBUTES) != 0) {
+			fileVersion.setDosAttributes(readString(in));
+		}
+
+		if ((flags & DatabaseBinarySerializer.FLAG_POSIX_PERMISSIONS) != 0) {
+			fileVersion.setPosixPermissions(readString(in));
+		}
+
+		return fileVersion;
+	}
+
+	private int readCode(InputStream in, int codeCount) throws IOException {
+		int code = readByte(in);
+
+		if (code >= codeCount) {
+			throw new IOException("Invalid binary database file: Unknown code " + code);
+		}
+
+		return code;
+	}
+
+	private String readString(InputStream in) throws IOException {
+		return new String(readByteArray(in), "UTF-8");
+	}
+
+	private byte[] readByteArray(InputStream in) throws IOException {
+		return readBytes(in, readVarInt(in, "byte array length"));
+	}
+
+	private byte[] readBytes(InputStream in, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		IOUtils.readFully(in, bytes);
+
+		return bytes;
+	}
+
+	private Date readDate(InputStream in) throws IOException {
+		long zigZagTime = readRawVarLong(in);
+		return new Date((zigZagTime >>> 1) ^ -(zigZagTime & 1));
+	}
+
+	private int readByte(InputStream in) throws IOException {
+		int value = in.read();
+
+		if (value == -1) {
+			throw new EOFException("Invalid binary database file: Unexpected end of file.");
+		}
+
+		return value;
+	}
+
+	/**
+	 * Reads a varint that is used as a count, length or size, i.e. must be
+	 * non-negative and fit into an <code>int</code>.
+	 */
+	private int readVarInt(InputStream in, String field) throws IOException {
+		long value = readVarLong(in, field);
+
+		if (value > Integer.MAX_VALUE) {
+			throw new IOException("Invalid binary database file: Value of " + field + " too large: " + value);
+		}
+
+		return (int) value;
+	}
+
+	/**
+	 * Reads a varint that must be non-negative, e.g. a size or a version number.
+	 */
+	private long readVarLong(InputStream in, String field) throws IOException {
+		long value = readRawVarLong(in);
+
+		if (value < 0) {
+			throw new IOException("Invalid binary database file: Negative value of " + field + ": " + value);
+		}
+
+		return value;
+	}
+
+	private long readRawVarLong(InputStream in) throws IOException {
+		long value = 0;
+
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = readByte(in);
+			value |= (long) (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new IOException("Invalid binary database file: Malformed varint.");
+	}
+
+	/**
+	 * Skips exactly the given number of bytes. For untransformed files, this
+	 * results in a seek on the underlying file; for transformed files, the bytes
+	 * are still decoded, but not parsed.
+	 */
+	private void skipFully(InputStream in, long length) throws IOException {
+		long remaining = length;
+
+		while (remaining > 0) {
+			long skipped = in.skip(remaining);
+
+			if (skipped <= 0) {
+				if (in.read() == -1) {
+					throw new EOFException("Invalid binary database file: Unexpected end of file.");
+				}
+
+				skipped = 1;
+			}
+
+			remaining -= skipped;
+		}
+	}
+}
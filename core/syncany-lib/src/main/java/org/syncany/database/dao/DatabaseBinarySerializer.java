@@ -0,0 +1,122 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.syncany.chunk.Transformer;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.MemoryDatabase;
+
+/**
+ * Serializes a {@link MemoryDatabase} or a list of {@link DatabaseVersion}s to a
+ * compact binary file format. Compared to the {@link DatabaseXmlSerializer}, checksums
+ * and identifiers are stored as raw bytes, numbers are stored as variable-length
+ * integers, and the file starts with an index of all database versions it contains.
+ *
+ * <p>The index allows readers to skip database versions they are not interested
+ * in without parsing them, and to stop parsing once all requested database versions
+ * have been read. Since the index and the payloads are transformed (compressed/encrypted)
+ * separately, reading only the database version headers does not require decoding any 
+ * of the payloads: only the magic bytes and the (small) index section are read.
+ * 
+ * <p>Both sections contain the same random file identifier. When the payload section is 
+ * read, the reader compares it to the identifier in the index, so that the index of one
+ * file cannot be combined with the (individually valid) payload section of another file.
+ *
+ * <p>The file format (version 2) is structured as follows. Numbers are unsigned
+ * varints (7 bits per byte, least significant group first), except for dates,
+ * which are zig-zag encoded varints. Strings and byte arrays are prefixed
+ * with their length as a varint; strings are UTF-8 encoded.
+ *
+ * <pre>
+ *  magic                 4 bytes, "SYDB" (not transformed)
+ *  format version        1 byte (not transformed)
+ *  index length          length of the transformed index section (not transformed)
+ *  index section         transformed:
+ *    count               number of database versions
+ *    entries             per database version:
+ *      timestamp         date
+ *      client            string
+ *      vector clock      number of entries, followed by (client string, value) pairs
+ *      payload length    length of the database version's (untransformed) payload in bytes
+ *    file identifier     16 random bytes
+ *  payload section       transformed, until the end of the file:
+ *    file identifier     16 bytes, must match the file identifier of the index section
+ *                        followed by, per database version, in the order of the index entries:
+ *    chunks              count, followed by (checksum bytes, size)
+ *    multichunks         count, followed by (id bytes, size, chunk count, chunk checksums)
+ *    file contents       count, followed by (checksum bytes, size, chunk count, chunk checksums)
+ *    file histories      count, followed by (id bytes, version count, file versions)
+ * </pre>
+ *
+ * <p>A file version consists of its version, type and status code (one byte each, see
+ * {@link #FILE_TYPES} and {@link #FILE_STATUSES}), path, size and last modified date,
+ * followed by a flags byte indicating which of the optional fields are present.
+ *
+ * @see DatabaseBinaryWriter
+ * @see DatabaseBinaryReader
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class DatabaseBinarySerializer extends DatabaseSerializer {
+	public static final String FORMAT = "binary";
+
+	static final byte[] MAGIC = new byte[] { 'S', 'Y', 'D', 'B' };
+	static final int FORMAT_VERSION = 2;
+	static final int FILE_ID_SIZE = 16;
+
+	/**
+	 * File types by their code in the binary format. The position of the
+	 * types in this array must never change.
+	 */
+	static final FileType[] FILE_TYPES = new FileType[] { FileType.FILE, FileType.FOLDER, FileType.SYMLINK };
+
+	/**
+	 * File statuses by their code in the binary format. The position of the
+	 * statuses in this array must never change.
+	 */
+	static final FileStatus[] FILE_STATUSES = new FileStatus[] { FileStatus.NEW, FileStatus.CHANGED, FileStatus.RENAMED, FileStatus.DELETED };
+
+	static final int FLAG_UPDATED = 0x01;
+	static final int FLAG_CHECKSUM = 0x02;
+	static final int FLAG_LINK_TARGET = 0x04;
+	static final int FLAG_DOS_ATTRIBUTES = 0x08;
+	static final int FLAG_POSIX_PERMISSIONS = 0x10;
+
+	public DatabaseBinarySerializer() {
+		this(null);
+	}
+
+	public DatabaseBinarySerializer(Transformer transformer) {
+		super(transformer);
+	}
+
+	@Override
+	public String getFormat() {
+		return FORMAT;
+	}
+
+	@Override
+	public void save(Iterator<DatabaseVersion> databaseVersions, File destinationFile) throws IOException {
+		new DatabaseBinaryWriter(databaseVersions, destinationFile, transformer).write();
+	}
+}
@@ -0,0 +1,321 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.syncany.chunk.Transformer;
+import org.syncany.crypto.CipherUtil;
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.DatabaseVersionHeader;
+import org.syncany.database.FileContent;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.MultiChunkEntry;
+import org.syncany.database.ObjectId;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.VectorClock;
+import org.syncany.util.StringUtil;
+
+/**
+ * This class writes the given {@link DatabaseVersion}s to a file, using the binary format 
+ * described in {@link DatabaseBinarySerializer}. Database versions are written sequentially,
+ * i.e. according to their position in the given iterator.
+ *
+ * <p>Since the index at the beginning of the file contains the length of each database
+ * version's payload, the payloads are first written to a temporary file. Once all database
+ * versions have been written, the index and the payloads are transformed separately and 
+ * written to the destination file. That way, only the database version headers are kept 
+ * in memory.
+ *
+ * <p>To bind the separately transformed sections to each other, a random file identifier
+ * is written at the end of the index section and at the beginning of the payload section.
+ *
+ * @see DatabaseBinarySerializer
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class DatabaseBinaryWriter {
+	private static final Logger logger = Logger.getLogger(DatabaseBinaryWriter.class.getSimpleName());
+
+	private Iterator<DatabaseVersion> databaseVersions;
+	private File destinationFile;
+	private Transformer transformer;
+
+	public DatabaseBinaryWriter(Iterator<DatabaseVersion> databaseVersions, File destinationFile, Transformer transformer) {
+		this.databaseVersions = databaseVersions;
+		this.destinationFile = destinationFile;
+		this.transformer = transformer;
+	}
+
+	public void write() throws IOException {
+		File tempPayloadFile = File.createTempFile("syncany-database-", ".tmp");
+
+		try {
+			byte[] fileId = CipherUtil.createRandomArray(DatabaseBinarySerializer.FILE_ID_SIZE);
+
+			List<DatabaseVersionHeader> headers = new ArrayList<DatabaseVersionHeader>();
+			List<Long> payloadLengths = new ArrayList<Long>();
+
+			// Write payloads to temp file, remember headers and lengths
+			try (CountingOutputStream payloadOut = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(tempPayloadFile)))) {
+				while (databaseVersions.hasNext()) {
+					DatabaseVersion databaseVersion = databaseVersions.next();
+					long payloadOffset = payloadOut.getByteCount();
+
+					validateDatabaseVersionHeader(databaseVersion);
+
+					writeChunks(payloadOut, databaseVersion.getChunks());
+					writeMultiChunks(payloadOut, databaseVersion.getMultiChunks());
+					writeFileContents(payloadOut, databaseVersion.getFileContents());
+					writeFileHistories(payloadOut, databaseVersion.getFileHistories());
+
+					headers.add(databaseVersion.getHeader());
+					payloadLengths.add(payloadOut.getByteCount() - payloadOffset);
+				}
+			}
+
+			// Create (transformed) index
+			ByteArrayOutputStream indexOut = new ByteArrayOutputStream();
+			writeVarLong(indexOut, headers.size());
+
+			for (int i = 0; i < headers.size(); i++) {
+				writeDatabaseVersionHeader(indexOut, headers.get(i));
+				writeVarLong(indexOut, payloadLengths.get(i));
+			}
+
+			indexOut.write(fileId);
+
+			byte[] transformedIndex = transform(indexOut.toByteArray());
+
+			// Write magic, version and index, then file ID and copy (transformed) payloads
+			try (OutputStream out = new BufferedOutputStream(new FileOutputStream(destinationFile))) {
+				out.write(DatabaseBinarySerializer.MAGIC);
+				out.write(DatabaseBinarySerializer.FORMAT_VERSION);
+
+				writeVarLong(out, transformedIndex.length);
+				out.write(transformedIndex);
+
+				try (InputStream payloadIn = new FileInputStream(tempPayloadFile);
+						OutputStream payloadOut = createOutputStream(new CloseShieldOutputStream(out))) {
+
+					payloadOut.write(fileId);
+					IOUtils.copyLarge(payloadIn, payloadOut);
+				}
+			}
+
+			logger.log(Level.FINE, "Wrote {0} database version(s) in binary format.", headers.size());
+		}
+		finally {
+			tempPayloadFile.delete();
+		}
+	}
+
+	private byte[] transform(byte[] plaintext) throws IOException {
+		ByteArrayOutputStream transformedOut = new ByteArrayOutputStream();
+
+		try (OutputStream out = createOutputStream(transformedOut)) {
+			out.write(plaintext);
+		}
+
+		return transformedOut.toByteArray();
+	}
+
+	private OutputStream createOutputStream(OutputStream out) throws IOException {
+		return (transformer != null) ? transformer.createOutputStream(out) : out;
+	}
+
+	private void validateDatabaseVersionHeader(DatabaseVersion databaseVersion) throws IOException {
+		if (databaseVersion.getTimestamp() == null || databaseVersion.getClient() == null
+				|| databaseVersion.getVectorClock() == null || databaseVersion.getVectorClock().isEmpty()) {
+
+			logger.log(Level.SEVERE, "Cannot write database version. Header fields must be filled: " + databaseVersion.getHeader());
+			throw new IOException("Cannot write database version. Header fields must be filled: " + databaseVersion.getHeader());
+		}
+	}
+
+	private void writeDatabaseVersionHeader(OutputStream out, DatabaseVersionHeader header) throws IOException {
+		writeDate(out, header.getDate());
+		writeString(out, header.getClient());
+
+		VectorClock vectorClock = header.getVectorClock();
+		writeVarLong(out, vectorClock.size());
+
+		for (Map.Entry<String, Long> vectorClockEntry : vectorClock.entrySet()) {
+			writeString(out, vectorClockEntry.getKey());
+			writeVarLong(out, vectorClockEntry.getValue());
+		}
+	}
+
+	private void writeChunks(OutputStream out, Collection<ChunkEntry> chunks) throws IOException {
+		writeVarLong(out, chunks.size());
+
+		for (ChunkEntry chunk : chunks) {
+			writeObjectId(out, chunk.getChecksum());
+			writeVarLong(out, chunk.getSize());
+		}
+	}
+
+	private void writeMultiChunks(OutputStream out, Collection<MultiChunkEntry> multiChunks) throws IOException {
+		writeVarLong(out, multiChunks.size());
+
+		for (MultiChunkEntry multiChunk : multiChunks) {
+			writeObjectId(out, multiChunk.getId());
+			writeVarLong(out, multiChunk.getSize());
+			writeChunkRefs(out, multiChunk.getChunks());
+		}
+	}
+
+	private void writeFileContents(OutputStream out, Collection<FileContent> fileContents) throws IOException {
+		writeVarLong(out, fileContents.size());
+
+		for (FileContent fileContent : fileContents) {
+			writeObjectId(out, fileContent.getChecksum());
+			writeVarLong(out, fileContent.getSize());
+			writeChunkRefs(out, fileContent.getChunks());
+		}
+	}
+
+	private void writeChunkRefs(OutputStream out, Collection<ChunkChecksum> chunkChecksums) throws IOException {
+		writeVarLong(out, chunkChecksums.size());
+
+		for (ChunkChecksum chunkChecksum : chunkChecksums) {
+			writeObjectId(out, chunkChecksum);
+		}
+	}
+
+	private void writeFileHistories(OutputStream out, Collection<PartialFileHistory> fileHistories) throws IOException {
+		writeVarLong(out, fileHistories.size());
+
+		for (PartialFileHistory fileHistory : fileHistories) {
+			Collection<FileVersion> fileVersions = fileHistory.getFileVersions().values();
+
+			writeObjectId(out, fileHistory.getFileHistoryId());
+			writeVarLong(out, fileVersions.size());
+
+			for (FileVersion fileVersion : fileVersions) {
+				writeFileVersion(out, fileVersion);
+			}
+		}
+	}
+
+	private void writeFileVersion(OutputStream out, FileVersion fileVersion) throws IOException {
+		if (fileVersion.getVersion() == null || fileVersion.getType() == null || fileVersion.getPath() == null
+				|| fileVersion.getStatus() == null || fileVersion.getSize() == null || fileVersion.getLastModified() == null) {
+
+			throw new IOException("Unable to write file version, because one or many mandatory fields are null (version, type, path, name, status, size, last modified): "+fileVersion);
+		}
+
+		if (fileVersion.getType() == FileType.SYMLINK && fileVersion.getLinkTarget() == null) {
+			throw new IOException("Unable to write file version: All symlinks must have a target.");
+		}
+
+		writeVarLong(out, fileVersion.getVersion());
+		out.write(indexOf(DatabaseBinarySerializer.FILE_TYPES, fileVersion.getType()));
+		out.write(indexOf(DatabaseBinarySerializer.FILE_STATUSES, fileVersion.getStatus()));
+		writeString(out, fileVersion.getPath());
+		writeVarLong(out, fileVersion.getSize());
+		writeDate(out, fileVersion.getLastModified());
+
+		int flags = 0;
+
+		flags |= (fileVersion.getUpdated() != null) ? DatabaseBinarySerializer.FLAG_UPDATED : 0;
+		flags |= (fileVersion.getChecksum() != null) ? DatabaseBinarySerializer.FLAG_CHECKSUM : 0;
+		flags |= (fileVersion.getLinkTarget() != null) ? DatabaseBinarySerializer.FLAG_LINK_TARGET : 0;
+		flags |= (fileVersion.getDosAttributes() != null) ? DatabaseBinarySerializer.FLAG_DOS_ATTRIBUTES : 0;
+		flags |= (fileVersion.getPosixPermissions() != null) ? DatabaseBinarySerializer.FLAG_POSIX_PERMISSIONS : 0;
+
+		out.write(flags);
+
+		if (fileVersion.getUpdated() != null) {
+			writeDate(out, fileVersion.getUpdated());
+		}
+
+		if (fileVersion.getChecksum() != null) {
+			writeObjectId(out, fileVersion.getChecksum());
+		}
+
+		if (fileVersion.getLinkTarget() != null) {
+			writeString(out, fileVersion.getLinkTarget());
+		}
+
+		if (fileVersion.getDosAttributes() != null) {
+			writeString(out, fileVersion.getDosAttributes());
+		}
+
+		if (fileVersion.getPosixPermissions() != null) {
+			writeString(out, fileVersion.getPosixPermissions());
+		}
+	}
+
+	private int indexOf(Object[] codes, Object value) throws IOException {
+		for (int i = 0; i < codes.length; i++) {
+			if (codes[i] == value) {
+				return i;
+			}
+		}
+
+		throw new IOException("Unable to write file version: No binary code for " + value);
+	}
+
+	private void writeObjectId(OutputStream out, ObjectId objectId) throws IOException {
+		writeBytes(out, objectId.getBytes());
+	}
+
+	private void writeString(OutputStream out, String str) throws IOException {
+		writeBytes(out, StringUtil.toBytesUTF8(str));
+	}
+
+	private void writeBytes(OutputStream out, byte[] bytes) throws IOException {
+		writeVarLong(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private void writeDate(OutputStream out, Date date) throws IOException {
+		long time = date.getTime();
+		writeVarLong(out, (time << 1) ^ (time >> 63)); // zig-zag encoding
+	}
+
+	private void writeVarLong(OutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+
+		out.write((int) value);
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.commons.io.IOUtils;
+import org.syncany.chunk.Transformer;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.MemoryDatabase;
+import org.syncany.database.VectorClock;
+import org.syncany.database.VectorClock.VectorClockComparison;
+import org.syncany.util.StringUtil;
+
+/**
+ * Serializes a {@link MemoryDatabase} or a list of {@link DatabaseVersion}s to a
+ * database file, using a {@link Transformer} to compress/encrypt the file before
+ * writing, and to decompress/decrypt it before reading.
+ *
+ * <p>Implementations define the file format that is used to write database files,
+ * e.g. the {@link DatabaseXmlSerializer} writes XML files and the {@link DatabaseBinarySerializer}
+ * writes a compact binary format. Reading, however, is independent of the implementation:
+ * the format of a database file is detected when it is loaded, so that any serializer can
+ * read files written in any of the supported formats. This allows clients of the same
+ * repository to switch between formats without breaking older database files.
+ *
+ * <p>A serializer can be instantiated by its format name using {@link #getInstance(String, Transformer)}.
+ * The format name is configured in the repo file; if it is absent, {@link #DEFAULT_FORMAT} is used.
+ *
+ * @see DatabaseXmlSerializer
+ * @see DatabaseBinarySerializer
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public abstract class DatabaseSerializer {
+	private static final Logger logger = Logger.getLogger(DatabaseSerializer.class.getSimpleName());
+
+	public static final String DEFAULT_FORMAT = "xml";
+
+	public enum DatabaseReadType {
+		FULL, HEADER_ONLY
+	}
+
+	protected Transformer transformer;
+
+	public DatabaseSerializer(Transformer transformer) {
+		this.transformer = transformer;
+	}
+
+	/**
+	 * Returns the format name of this serializer, as used in the repo file
+	 * and in {@link #getInstance(String, Transformer)}.
+	 */
+	public abstract String getFormat();
+
+	public void save(List<DatabaseVersion> databaseVersions, File destinationFile) throws IOException {
+		save(databaseVersions.iterator(), destinationFile);
+	}
+
+	/**
+	 * Writes the given database versions to the destination file, in the format of this
+	 * serializer, using the transformer to compress/encrypt it.
+	 */
+	public abstract void save(Iterator<DatabaseVersion> databaseVersions, File destinationFile) throws IOException;
+
+	/**
+	 * Loads the database versions in the given range from a database file into the given
+	 * memory database. The format of the file is detected by its first bytes: files starting
+	 * with the {@link DatabaseBinarySerializer#MAGIC magic bytes} of the binary format are read
+	 * by the {@link DatabaseBinaryReader}, all others are decoded using the transformer and 
+	 * parsed as XML.
+	 *
+	 * @param db Memory database to add the loaded database versions to
+	 * @param databaseFile Local database file (transformed, i.e. as stored remotely)
+	 * @param fromVersion Vector clock of the first database version to load (inclusive, or <code>null</code>)
+	 * @param toVersion Vector clock of the last database version to load (inclusive, or <code>null</code>)
+	 * @param readType Whether to load the entire database versions, or only their headers
+	 */
+	public void load(MemoryDatabase db, File databaseFile, VectorClock fromVersion, VectorClock toVersion, DatabaseReadType readType)
+			throws IOException {
+
+		InputStream is = new BufferedInputStream(new FileInputStream(databaseFile));
+
+		try {
+			if (isBinaryFormat(is)) {
+				logger.log(Level.INFO, "- Loading database ({0}, binary) from file {1} ...", new Object[] { readType, databaseFile });
+				new DatabaseBinaryReader(db, fromVersion, toVersion, readType, transformer).read(is);
+			}
+			else {
+				logger.log(Level.INFO, "- Loading database ({0}) from file {1} ...", new Object[] { readType, databaseFile });
+
+				InputStream decodedInputStream = (transformer != null) ? transformer.createInputStream(is) : is;
+
+				SAXParserFactory factory = SAXParserFactory.newInstance();
+				SAXParser saxParser = factory.newSAXParser();
+
+				saxParser.parse(decodedInputStream, new DatabaseXmlParseHandler(db, fromVersion, toVersion, readType));
+			}
+		}
+		catch (Exception e) {
+			throw new IOException(e);
+		}
+		finally {
+			is.close();
+		}
+	}
+
+	private boolean isBinaryFormat(InputStream is) throws IOException {
+		byte[] magic = new byte[DatabaseBinarySerializer.MAGIC.length];
+
+		is.mark(magic.length);
+		int read = IOUtils.read(is, magic);
+		is.reset();
+
+		return read == magic.length && Arrays.equals(magic, DatabaseBinarySerializer.MAGIC);
+	}
+
+	/**
+	 * Determines whether the given vector clock is within the given range, i.e. whether
+	 * <code>rangeFrom &lt;= vectorClock &lt;= rangeTo</code>. If one or both of the range
+	 * boundaries are <code>null</code>, the range is open on that side.
+	 */
+	static boolean vectorClockInRange(VectorClock vectorClock, VectorClock vectorClockRangeFrom, VectorClock vectorClockRangeTo) {
+		// Determine if: versionFrom < databaseVersion
+		boolean greaterOrEqualToVersionFrom = false;
+
+		if (vectorClockRangeFrom == null) {
+			greaterOrEqualToVersionFrom = true;
+		}
+		else {
+			VectorClockComparison comparison = VectorClock.compare(vectorClockRangeFrom, vectorClock);
+
+			if (comparison == VectorClockComparison.EQUAL || comparison == VectorClockComparison.SMALLER) {
+				greaterOrEqualToVersionFrom = true;
+			}
+		}
+
+		// Determine if: databaseVersion < versionTo
+		boolean lowerOrEqualToVersionTo = false;
+
+		if (vectorClockRangeTo == null) {
+			lowerOrEqualToVersionTo = true;
+		}
+		else {
+			VectorClockComparison comparison = VectorClock.compare(vectorClock, vectorClockRangeTo);
+
+			if (comparison == VectorClockComparison.EQUAL || comparison == VectorClockComparison.SMALLER) {
+				lowerOrEqualToVersionTo = true;
+			}
+		}
+
+		return greaterOrEqualToVersionFrom && lowerOrEqualToVersionTo;
+	}
+
+	/**
+	 * Instantiates a database serializer by its format name, using the constructor
+	 * taking a {@link Transformer} argument.
+	 *
+	 * <p>The given format attribute is mapped to fully qualified class name (FQCN) of the form
+	 * <code>org.syncany.database.dao.DatabaseXSerializer</code>, where <code>X</code> is the camel-cased
+	 * format attribute.
+	 *
+	 * @param format Format name of the serializer (corresponds to its camel case class name)
+	 * @param transformer Transformer to use when writing/reading files (may be <code>null</code>)
+	 * @return Returns a new database serializer, or <code>null</code> if the format cannot be found
+	 */
+	public static DatabaseSerializer getInstance(String format, Transformer transformer) {
+		String thisPackage = DatabaseSerializer.class.getPackage().getName();
+		String camelCaseName = StringUtil.toCamelCase(format);
+		String fqClassName = thisPackage + ".Database" + camelCaseName + "Serializer";
+
+		try {
+			Class<?> clazz = Class.forName(fqClassName);
+			return (DatabaseSerializer) clazz.getConstructor(Transformer.class).newInstance(transformer);
+		}
+		catch (Exception ex) {
+			logger.log(Level.INFO, "Could not find database serializer FQCN " + fqClassName, ex);
+			return null;
+		}
+	}
+}
@@ -105,12 +105,8 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 	public long writeDatabaseVersion(DatabaseVersion databaseVersion) {
 		try {
 			// Insert & commit database version
-			long databaseVersionId = writeDatabaseVersion(connection, databaseVersion);
-			
-			// Commit & clear local caches
-			clearCaches();
-
-			return databaseVersionId;
+			// Note: The chunk index is updated incrementally (no need to clear caches)
+			return writeDatabaseVersion(connection, databaseVersion);
 		}
 		catch (Exception e) {
 			logger.log(Level.SEVERE, "SQL Error: ", e);
@@ -123,14 +119,39 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 		long databaseVersionId = writeDatabaseVersionHeaderInternal(connection, databaseVersion.getHeader()); // TODO [low] Use writeDatabaseVersion()?
 		writeVectorClock(connection, databaseVersionId, databaseVersion.getHeader().getVectorClock());
 
-		chunkDao.writeChunks(connection, databaseVersionId, databaseVersion.getChunks());
-		multiChunkDao.writeMultiChunks(connection, databaseVersionId, databaseVersion.getMultiChunks());
-		fileContentDao.writeFileContents(connection, databaseVersionId, databaseVersion.getFileContents());
-		fileHistoryDao.writeFileHistories(connection, databaseVersionId, databaseVersion.getFileHistories());
+		// Write table by table (in order of the foreign keys), and measure the write rate of each
+		long startTime = System.currentTimeMillis();
+
+		int chunkRowCount = chunkDao.writeChunks(connection, databaseVersionId, databaseVersion.getChunks());
+		long chunkEndTime = logWriteRate("chunk", chunkRowCount, startTime);
+
+		int multiChunkRowCount = multiChunkDao.writeMultiChunks(connection, databaseVersionId, databaseVersion.getMultiChunks());
+		long multiChunkEndTime = logWriteRate("multichunk/multichunk_chunk", multiChunkRowCount, chunkEndTime);
+
+		int fileContentRowCount = fileContentDao.writeFileContents(connection, databaseVersionId, databaseVersion.getFileContents());
+		long fileContentEndTime = logWriteRate("filecontent/filecontent_chunk", fileContentRowCount, multiChunkEndTime);
+
+		int fileHistoryRowCount = fileHistoryDao.writeFileHistories(connection, databaseVersionId, databaseVersion.getFileHistories());
+		logWriteRate("filehistory/fileversion", fileHistoryRowCount, fileContentEndTime);
+
+		logWriteRate("all tables", chunkRowCount + multiChunkRowCount + fileContentRowCount + fileHistoryRowCount, startTime);
 
 		return databaseVersionId;
 	}
 
+	private long logWriteRate(String tableNames, int rowCount, long startTime) {
+		long endTime = System.currentTimeMillis();
+
+		if (rowCount > 0) {
+			long duration = Math.max(1, endTime - startTime);
+			long rowsPerSecond = rowCount * 1000L / duration;
+
+			logger.log(Level.INFO, "- Wrote " + rowCount + " row(s) to " + tableNames + " in " + duration + " ms (" + rowsPerSecond + " rows/sec)");
+		}
+
+		return endTime;
+	}
+
 	private long writeDatabaseVersionHeaderInternal(Connection connection, DatabaseVersionHeader databaseVersionHeader) throws SQLException {
 		try (PreparedStatement preparedStatement = connection.prepareStatement(
 				DatabaseConnectionFactory.getStatement("databaseversion.insert.all.writeDatabaseVersion.sql"), Statement.RETURN_GENERATED_KEYS)) {
@@ -197,9 +218,8 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 			removeDirtyVectorClocks();
 			removeDirtyDatabaseVersionsInt();
 
-			// Commit & clear local caches
+			// Commit (dirty chunks are not deleted, so the chunk index stays valid)
 			connection.commit();
-			clearCaches();
 		}
 		catch (SQLException e) {
 			throw new RuntimeException("Unable to remove dirty database versions.", e);
@@ -277,6 +297,15 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 		}
 	}
 
+	public Iterator<DatabaseVersion> getDatabaseVersions() {
+		try (PreparedStatement preparedStatement = getStatement("databaseversion.select.master.getDatabaseVersions.sql")) {
+			return new DatabaseVersionIterator(preparedStatement.executeQuery());
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	public Iterator<DatabaseVersion> getDatabaseVersionsTo(String machineName, long maxLocalClientVersion) {
 		try (PreparedStatement preparedStatement = getStatement("databaseversion.select.master.getDatabaseVersionsTo.sql")) {
 			preparedStatement.setString(1, machineName);
@@ -37,8 +37,7 @@ import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.database.PartialFileHistory;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
 import org.syncany.database.VectorClock;
-import org.syncany.database.VectorClock.VectorClockComparison;
-import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
+import org.syncany.database.dao.DatabaseSerializer.DatabaseReadType;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
@@ -233,7 +232,7 @@ public class DatabaseXmlParseHandler extends DefaultHandler {
 			vectorClockInLoadRange = true;
 		}
 		else if (elementPath.equalsIgnoreCase("/database/databaseVersions/databaseVersion/header/vectorClock")) {
-			vectorClockInLoadRange = vectorClockInRange(vectorClock, versionFrom, versionTo);
+			vectorClockInLoadRange = DatabaseSerializer.vectorClockInRange(vectorClock, versionFrom, versionTo);
 
 			databaseVersion.setVectorClock(vectorClock);
 			vectorClock = null;
@@ -267,36 +266,4 @@ public class DatabaseXmlParseHandler extends DefaultHandler {
 	public void characters(char[] ch, int start, int length) throws SAXException {
 		// Nothing
 	}
-
-	private boolean vectorClockInRange(VectorClock vectorClock, VectorClock vectorClockRangeFrom, VectorClock vectorClockRangeTo) {
-		// Determine if: versionFrom < databaseVersion
-		boolean greaterOrEqualToVersionFrom = false;
-
-		if (vectorClockRangeFrom == null) {
-			greaterOrEqualToVersionFrom = true;
-		}
-		else {
-			VectorClockComparison comparison = VectorClock.compare(vectorClockRangeFrom, vectorClock);
-
-			if (comparison == VectorClockComparison.EQUAL || comparison == VectorClockComparison.SMALLER) {
-				greaterOrEqualToVersionFrom = true;
-			}
-		}
-
-		// Determine if: databaseVersion < versionTo
-		boolean lowerOrEqualToVersionTo = false;
-
-		if (vectorClockRangeTo == null) {
-			lowerOrEqualToVersionTo = true;
-		}
-		else {
-			VectorClockComparison comparison = VectorClock.compare(vectorClock, vectorClockRangeTo);
-
-			if (comparison == VectorClockComparison.EQUAL || comparison == VectorClockComparison.SMALLER) {
-				lowerOrEqualToVersionTo = true;
-			}
-		}
-
-		return greaterOrEqualToVersionFrom && lowerOrEqualToVersionTo;
-	}
 }
@@ -21,11 +21,16 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.ChunkPosition;
 import org.syncany.database.FileContent;
 import org.syncany.database.FileContent.FileChecksum;
 import org.syncany.database.VectorClock;
@@ -47,51 +52,73 @@ public class FileContentSqlDao extends AbstractSqlDao {
 	 * It fills two tables, the <i>filecontent</i> table ({@link FileContent}) and the <i>filecontent_chunk</i> 
 	 * table ({@link ChunkChecksum}).
 	 * 
-	 * <p>To do the latter (write chunk references), this method calls
-	 * {@link #writeFileContentChunkRefs(Connection, FileContent) writeFileContentChunkRefs()} for every 
-	 * {@link FileContent}. 
+	 * <p>The file contents are inserted in the order of their checksums, in batches of at most 
+	 * {@link #MAX_BATCH_SIZE} rows. All file contents are written before any of the chunk references 
+	 * (see {@link #writeFileContentChunkRefs(Connection, List) writeFileContentChunkRefs()}).
 	 * 
 	 * <p><b>Note:</b> This method executes, but does not commit the queries.
 	 * 
 	 * @param connection The connection used to execute the statements
 	 * @param databaseVersionId 
 	 * @param fileContents List of {@link FileContent}s to be inserted in the database
+	 * @return Returns the number of rows written (in both tables)
 	 * @throws SQLException If the SQL statement fails
 	 */
-	public void writeFileContents(Connection connection, long databaseVersionId, Collection<FileContent> fileContents) throws SQLException {
-		for (FileContent fileContent : fileContents) {
-			PreparedStatement preparedStatement = getStatement(connection, "filecontent.insert.all.writeFileContents.sql");
+	public int writeFileContents(Connection connection, long databaseVersionId, Collection<FileContent> fileContents) throws SQLException {
+		List<FileContent> sortedFileContents = sortByPrimaryKey(fileContents, new PrimaryKey<FileContent>() {
+			@Override
+			public String of(FileContent fileContent) {
+				return fileContent.getChecksum().toString();
+			}
+		});
 
-			preparedStatement.setString(1, fileContent.getChecksum().toString());
-			preparedStatement.setLong(2, databaseVersionId);
-			preparedStatement.setLong(3, fileContent.getSize());
+		int rowCount = 0;
+		
+		if (sortedFileContents.size() > 0) {
+			PreparedStatement preparedStatement = getStatement(connection, "filecontent.insert.all.writeFileContents.sql");
+	
+			for (FileContent fileContent : sortedFileContents) {
+				preparedStatement.setString(1, fileContent.getChecksum().toString());
+				preparedStatement.setLong(2, databaseVersionId);
+				preparedStatement.setLong(3, fileContent.getSize());
+				
+				addBatch(preparedStatement, ++rowCount);
+			}
 			
-			preparedStatement.executeUpdate();
+			preparedStatement.executeBatch();
 			preparedStatement.close();	
 			
 			// Write chunk references
-			writeFileContentChunkRefs(connection, fileContent);			
+			rowCount += writeFileContentChunkRefs(connection, sortedFileContents);			
 		}
+		
+		return rowCount;
 	}
 	
-	private void writeFileContentChunkRefs(Connection connection, FileContent fileContent) throws SQLException {
+	private int writeFileContentChunkRefs(Connection connection, List<FileContent> fileContents) throws SQLException {
 		PreparedStatement preparedStatement = getStatement(connection, "filecontent.insert.all.writeFileContentChunkRefs.sql");
-		int order = 0;
+		int rowCount = 0;
 		
-		for (ChunkChecksum chunkChecksum : fileContent.getChunks()) {
-			preparedStatement.setString(1, fileContent.getChecksum().toString());
-			preparedStatement.setString(2, chunkChecksum.toString());
-			preparedStatement.setInt(3, order);
-
-			preparedStatement.addBatch();
+		for (FileContent fileContent : fileContents) {
+			int order = 0;
 			
-			order++;				
+			for (ChunkChecksum chunkChecksum : fileContent.getChunks()) {
+				preparedStatement.setString(1, fileContent.getChecksum().toString());
+				preparedStatement.setString(2, chunkChecksum.toString());
+				preparedStatement.setInt(3, order);
+	
+				addBatch(preparedStatement, ++rowCount);
+				
+				order++;				
+			}
 		}
 		
 		preparedStatement.executeBatch();
 		preparedStatement.close();
+		
+		return rowCount;
 	}
-
+	
 	/**
 	 * Removes unreferenced {@link FileContent}s from the database table <i>filecontent</i>,
 	 * as well as the corresponding chunk references (list of {@link ChunkChecksum}s) from the
@@ -115,6 +142,51 @@ public class FileContentSqlDao extends AbstractSqlDao {
 		preparedStatement.close();
 	}
 	
+	/**
+	 * Removes at most <code>maxCount</code> unreferenced {@link FileContent}s from the database 
+	 * table <i>filecontent</i>, as well as their chunk references from the table <i>filecontent_chunk</i>.
+	 * Unlike {@link #removeUnreferencedFileContents()}, this method can be called repeatedly to 
+	 * remove unreferenced file contents in small batches (see <code>compact</code>).
+	 * 
+	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the query.
+	 * 
+	 * @param maxCount Maximum number of file contents to remove
+	 * @return Returns the number of removed file contents
+	 * @throws SQLException If the SQL statement fails
+	 */
+	public int removeUnreferencedFileContents(int maxCount) throws SQLException {
+		List<String> unreferencedFileContentChecksums = new ArrayList<String>();
+		
+		try (PreparedStatement preparedStatement = getStatement("filecontent.select.all.getUnreferencedFileContents.sql")) {
+			preparedStatement.setMaxRows(maxCount);
+			
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				while (resultSet.next()) {
+					unreferencedFileContentChecksums.add(resultSet.getString("checksum"));
+				}
+			}
+		}
+		
+		if (unreferencedFileContentChecksums.size() > 0) {
+			// Note: Chunk references must be removed first (foreign key constraints)
+			removeFileContentsByChecksum("filecontent.delete.all.removeFileContentChunkRefs.sql", unreferencedFileContentChecksums);
+			removeFileContentsByChecksum("filecontent.delete.all.removeFileContent.sql", unreferencedFileContentChecksums);
+		}
+		
+		return unreferencedFileContentChecksums.size();
+	}
+	
+	private void removeFileContentsByChecksum(String resourceId, List<String> fileContentChecksums) throws SQLException {
+		try (PreparedStatement preparedStatement = getStatement(resourceId)) {
+			for (String fileContentChecksum : fileContentChecksums) {
+				preparedStatement.setString(1, fileContentChecksum);
+				preparedStatement.addBatch();
+			}
+			
+			preparedStatement.executeBatch();
+		}
+	}
+
 	private void removeUnreferencedFileContentChunkRefs() throws SQLException {
 		PreparedStatement preparedStatement = getStatement("filecontent.delete.all.removeUnreferencedFileContentRefs.sql");
 		preparedStatement.executeUpdate();	
@@ -141,6 +213,56 @@ public class FileContentSqlDao extends AbstractSqlDao {
 		}
 	}
 
+	/**
+	 * Queries the database for the positions of the given chunks in the files of the current 
+	 * file tree. A chunk may appear in many files, or many times in the same file; all of its
+	 * positions are returned. Chunks that do not appear in any current file are not part of the
+	 * resulting map.
+	 * 
+	 * <p><b>Note:</b> The positions are derived from the database only. The local files might
+	 * have changed since they were last indexed, so the chunk data must be verified before use.
+	 * 
+	 * @param chunkChecksums Checksums of the chunks to look up
+	 * @return Returns the {@link ChunkPosition}s of the given chunks, grouped by chunk checksum
+	 */
+	public Map<ChunkChecksum, List<ChunkPosition>> getChunkPositions(Collection<ChunkChecksum> chunkChecksums) {
+		// Gather a unique array of checksum strings (required for query!)
+		Set<ChunkChecksum> chunkChecksumSet = new HashSet<ChunkChecksum>(chunkChecksums);
+		String[] checksums = new String[chunkChecksumSet.size()];
+		int i = 0;
+		for (ChunkChecksum checksum : chunkChecksumSet) {
+			checksums[i] = checksum.toString();
+			i++;
+		}
+
+		// Execute query
+		Map<ChunkChecksum, List<ChunkPosition>> chunkPositions = new HashMap<ChunkChecksum, List<ChunkPosition>>();
+
+		try (PreparedStatement preparedStatement = getStatement("filecontent.select.master.getChunkPositions.sql")) {
+			preparedStatement.setArray(1, connection.createArrayOf("varchar", checksums));
+
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				while (resultSet.next()) {
+					ChunkChecksum chunkChecksum = ChunkChecksum.parseChunkChecksum(resultSet.getString("chunk_checksum"));
+					List<ChunkPosition> positionsForChunk = chunkPositions.get(chunkChecksum);
+
+					if (positionsForChunk == null) {
+						positionsForChunk = new ArrayList<ChunkPosition>();
+						chunkPositions.put(chunkChecksum, positionsForChunk);
+					}
+
+					positionsForChunk.add(new ChunkPosition(chunkChecksum, resultSet.getString("path"), resultSet.getLong("file_size"),
+							resultSet.getLong("chunk_offset"), resultSet.getInt("chunk_size")));
+				}
+			}
+
+			return chunkPositions;
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	/**
 	 * Queries the SQL database for all {@link FileContent}s that <b>originally appeared</b> in the
 	 * database version identified by the given vector clock.
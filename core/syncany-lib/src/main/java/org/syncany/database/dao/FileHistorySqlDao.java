@@ -56,34 +56,48 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 	 * Writes a list of {@link PartialFileHistory}s to the database table <i>filehistory</i> using <code>INSERT</code>s
 	 * and the given connection. In addition, this method also writes the corresponding {@link FileVersion}s of
 	 * each file history to the database using
-	 * {@link FileVersionSqlDao#writeFileVersions(Connection, FileHistoryId, long, Collection) FileVersionSqlDao#writeFileVersions}.
+	 * {@link FileVersionSqlDao#writeFileVersions(Connection, long, List) FileVersionSqlDao#writeFileVersions}.
+	 * 
+	 * <p>The file histories are inserted in the order of their IDs, in batches of at most {@link #MAX_BATCH_SIZE} 
+	 * rows. All file histories are written before any of the file versions.
 	 *
 	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the queries.
 	 *
 	 * @param connection The connection used to execute the statements
 	 * @param databaseVersionId References the {@link PartialFileHistory} to which the list of file versions belongs
 	 * @param fileHistories List of {@link PartialFileHistory}s to be written to the database
+	 * @return Returns the number of rows written (file histories and file versions)
 	 * @throws SQLException If the SQL statement fails
 	 */
-	public void writeFileHistories(Connection connection, long databaseVersionId, Collection<PartialFileHistory> fileHistories) throws SQLException {
-		for (PartialFileHistory fileHistory : fileHistories) {
-			PreparedStatement preparedStatement = getStatement(connection, "filehistory.insert.all.writeFileHistories.sql");
-
-			preparedStatement.setString(1, fileHistory.getFileHistoryId().toString());
-			preparedStatement.setLong(2, databaseVersionId);
+	public int writeFileHistories(Connection connection, long databaseVersionId, Collection<PartialFileHistory> fileHistories) throws SQLException {
+		List<PartialFileHistory> sortedFileHistories = sortByPrimaryKey(fileHistories, new PrimaryKey<PartialFileHistory>() {
+			@Override
+			public String of(PartialFileHistory fileHistory) {
+				return fileHistory.getFileHistoryId().toString();
+			}
+		});
 
-			int affectedRows = preparedStatement.executeUpdate();
+		int rowCount = 0;
+		
+		if (sortedFileHistories.size() > 0) {
+			PreparedStatement preparedStatement = getStatement(connection, "filehistory.insert.all.writeFileHistories.sql");
 
-			if (affectedRows == 0) {
-				throw new SQLException("Cannot add database version header. Affected rows is zero.");
+			for (PartialFileHistory fileHistory : sortedFileHistories) {
+				preparedStatement.setString(1, fileHistory.getFileHistoryId().toString());
+				preparedStatement.setLong(2, databaseVersionId);
+	
+				checkAffectedRows(addBatch(preparedStatement, ++rowCount), "Cannot add file history. Affected rows is zero.");
 			}
 
+			checkAffectedRows(preparedStatement.executeBatch(), "Cannot add file history. Affected rows is zero.");
 			preparedStatement.close();
 
-			fileVersionDao.writeFileVersions(connection, fileHistory.getFileHistoryId(), databaseVersionId, fileHistory.getFileVersions().values());
+			rowCount += fileVersionDao.writeFileVersions(connection, databaseVersionId, sortedFileHistories);
 		}
+		
+		return rowCount;
 	}
-
+	
 	public void removeDirtyFileHistories() throws SQLException {
 		try (PreparedStatement preparedStatement = getStatement("filehistory.delete.dirty.removeDirtyFileHistories.sql")) {
 			preparedStatement.executeUpdate();
@@ -104,6 +118,44 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 		}
 	}
 	
+	/**
+	 * Removes at most <code>maxCount</code> unreferenced {@link PartialFileHistory}s from the 
+	 * database table <i>filehistory</i>. Unlike {@link #removeUnreferencedFileHistories()}, this 
+	 * method can be called repeatedly to remove unreferenced file histories in small batches 
+	 * (see <code>compact</code>).
+	 *
+	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the query.
+	 *
+	 * @param maxCount Maximum number of file histories to remove
+	 * @return Returns the number of removed file histories
+	 * @throws SQLException If the SQL statement fails
+	 */
+	public int removeUnreferencedFileHistories(int maxCount) throws SQLException {
+		int removedFileHistoriesCount = 0;
+		
+		try (PreparedStatement selectStatement = getStatement("filehistory.select.all.getUnreferencedFileHistories.sql");
+				PreparedStatement deleteStatement = getStatement("filehistory.delete.all.removeFileHistory.sql")) {
+
+			selectStatement.setMaxRows(maxCount);
+			
+			try (ResultSet resultSet = selectStatement.executeQuery()) {
+				while (resultSet.next()) {
+					deleteStatement.setString(1, resultSet.getString("id"));
+					deleteStatement.setLong(2, resultSet.getLong("databaseversion_id"));
+					deleteStatement.addBatch();
+					
+					removedFileHistoriesCount++;
+				}
+			}
+			
+			if (removedFileHistoriesCount > 0) {
+				deleteStatement.executeBatch();
+			}
+		}
+		
+		return removedFileHistoriesCount;
+	}
+	
 	/**
 	 * Note: Also selects versions marked as {@link DatabaseVersionStatus#DIRTY DIRTY}
 	 */
@@ -82,29 +82,65 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 	public void writeFileVersions(Connection connection, FileHistoryId fileHistoryId, long databaseVersionId, Collection<FileVersion> fileVersions)
 			throws SQLException {
 		PreparedStatement preparedStatement = getStatement(connection, "fileversion.insert.writeFileVersions.sql");
+		int rowCount = 0;
 
 		for (FileVersion fileVersion : fileVersions) {
-			String fileContentChecksumStr = (fileVersion.getChecksum() != null) ? fileVersion.getChecksum().toString() : null;
+			setFileVersionParameters(preparedStatement, fileHistoryId, databaseVersionId, fileVersion);
+			addBatch(preparedStatement, ++rowCount);
+		}
 
-			preparedStatement.setString(1, fileHistoryId.toString());
-			preparedStatement.setInt(2, Integer.parseInt("" + fileVersion.getVersion()));
-			preparedStatement.setLong(3, databaseVersionId);
-			preparedStatement.setString(4, fileVersion.getPath());
-			preparedStatement.setString(5, fileVersion.getType().toString());
-			preparedStatement.setString(6, fileVersion.getStatus().toString());
-			preparedStatement.setLong(7, fileVersion.getSize());
-			preparedStatement.setTimestamp(8, new Timestamp(fileVersion.getLastModified().getTime()));
-			preparedStatement.setString(9, fileVersion.getLinkTarget());
-			preparedStatement.setString(10, fileContentChecksumStr);
-			preparedStatement.setTimestamp(11, new Timestamp(fileVersion.getUpdated().getTime()));
-			preparedStatement.setString(12, fileVersion.getPosixPermissions());
-			preparedStatement.setString(13, fileVersion.getDosAttributes());
-
-			preparedStatement.addBatch();
+		preparedStatement.executeBatch();
+		preparedStatement.close();
+	}
+
+	/**
+	 * Writes the {@link FileVersion}s of all of the given {@link PartialFileHistory}s to the database table 
+	 * <i>fileversion</i>, using a single statement and batches of at most {@link #MAX_BATCH_SIZE} rows.
+	 * The file versions are written in the order of the given list.
+	 *
+	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the queries.
+	 *
+	 * @param connection The connection used to execute the statements
+	 * @param databaseVersionId References the database version to which the file versions belong
+	 * @param fileHistories List of {@link PartialFileHistory}s whose file versions are to be written
+	 * @return Returns the number of rows written
+	 * @throws SQLException If the SQL statement fails
+	 */
+	public int writeFileVersions(Connection connection, long databaseVersionId, List<PartialFileHistory> fileHistories) throws SQLException {
+		PreparedStatement preparedStatement = getStatement(connection, "fileversion.insert.writeFileVersions.sql");
+		int rowCount = 0;
+
+		for (PartialFileHistory fileHistory : fileHistories) {
+			for (FileVersion fileVersion : fileHistory.getFileVersions().values()) {
+				setFileVersionParameters(preparedStatement, fileHistory.getFileHistoryId(), databaseVersionId, fileVersion);
+				addBatch(preparedStatement, ++rowCount);
+			}
 		}
 
 		preparedStatement.executeBatch();
 		preparedStatement.close();
+
+		return rowCount;
+	}
+
+	private void setFileVersionParameters(PreparedStatement preparedStatement, FileHistoryId fileHistoryId, long databaseVersionId,
+			FileVersion fileVersion) throws SQLException {
+
+		String fileContentChecksumStr = (fileVersion.getChecksum() != null) ? fileVersion.getChecksum().toString() : null;
+
+		preparedStatement.setString(1, fileHistoryId.toString());
+		preparedStatement.setInt(2, Integer.parseInt("" + fileVersion.getVersion()));
+		preparedStatement.setLong(3, databaseVersionId);
+		preparedStatement.setString(4, fileVersion.getPath());
+		preparedStatement.setString(5, fileVersion.getType().toString());
+		preparedStatement.setString(6, fileVersion.getStatus().toString());
+		preparedStatement.setLong(7, fileVersion.getSize());
+		preparedStatement.setTimestamp(8, new Timestamp(fileVersion.getLastModified().getTime()));
+		preparedStatement.setString(9, fileVersion.getLinkTarget());
+		preparedStatement.setString(10, fileContentChecksumStr);
+		preparedStatement.setTimestamp(11, new Timestamp(fileVersion.getUpdated().getTime()));
+		preparedStatement.setString(12, fileVersion.getPosixPermissions());
+		preparedStatement.setString(13, fileVersion.getDosAttributes());
 	}
 
 	/**
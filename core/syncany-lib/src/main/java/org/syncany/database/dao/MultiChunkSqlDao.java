@@ -50,35 +50,70 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 		super(connection);
 	}
 
-	public void writeMultiChunks(Connection connection, long databaseVersionId, Collection<MultiChunkEntry> multiChunks) throws SQLException {
-		for (MultiChunkEntry multiChunk : multiChunks) {
+	/**
+	 * Writes a list of {@link MultiChunkEntry}s to the database using <code>INSERT</code>s and the given connection.
+	 * It fills two tables, the <i>multichunk</i> table and the <i>multichunk_chunk</i> table (chunk references).
+	 * 
+	 * <p>The multichunks are inserted in the order of their IDs, in batches of at most {@link #MAX_BATCH_SIZE} 
+	 * rows. All multichunks are written before any of the chunk references.
+	 * 
+	 * <p><b>Note:</b> This method executes, but does not commit the queries.
+	 * 
+	 * @param connection The connection used to execute the statements
+	 * @param databaseVersionId 
+	 * @param multiChunks List of {@link MultiChunkEntry}s to be inserted in the database
+	 * @return Returns the number of rows written (in both tables)
+	 * @throws SQLException If the SQL statement fails
+	 */
+	public int writeMultiChunks(Connection connection, long databaseVersionId, Collection<MultiChunkEntry> multiChunks) throws SQLException {
+		List<MultiChunkEntry> sortedMultiChunks = sortByPrimaryKey(multiChunks, new PrimaryKey<MultiChunkEntry>() {
+			@Override
+			public String of(MultiChunkEntry multiChunk) {
+				return multiChunk.getId().toString();
+			}
+		});
+
+		int rowCount = 0;
+		
+		if (sortedMultiChunks.size() > 0) {
 			PreparedStatement preparedStatement = getStatement(connection, "multichunk.insert.all.writeMultiChunks.sql");
 
-			preparedStatement.setString(1, multiChunk.getId().toString());
-			preparedStatement.setLong(2, databaseVersionId);
-			preparedStatement.setLong(3, multiChunk.getSize());
-			
-			preparedStatement.executeUpdate();
+			for (MultiChunkEntry multiChunk : sortedMultiChunks) {
+				preparedStatement.setString(1, multiChunk.getId().toString());
+				preparedStatement.setLong(2, databaseVersionId);
+				preparedStatement.setLong(3, multiChunk.getSize());
+				
+				addBatch(preparedStatement, ++rowCount);
+			}
+
+			preparedStatement.executeBatch();
 			preparedStatement.close();
 			
-			writeMultiChunkRefs(connection, multiChunk);			
+			rowCount += writeMultiChunkRefs(connection, sortedMultiChunks);
 		}
+		
+		return rowCount;
 	}
 
-	private void writeMultiChunkRefs(Connection connection, MultiChunkEntry multiChunk) throws SQLException {
-		PreparedStatement preparedStatement = getStatement("multichunk.insert.all.writeMultiChunkRefs.sql");
+	private int writeMultiChunkRefs(Connection connection, List<MultiChunkEntry> multiChunks) throws SQLException {
+		PreparedStatement preparedStatement = getStatement(connection, "multichunk.insert.all.writeMultiChunkRefs.sql");
+		int rowCount = 0;
 		
-		for (ChunkChecksum chunkChecksum : multiChunk.getChunks()) {
-			preparedStatement.setString(1, multiChunk.getId().toString());
-			preparedStatement.setString(2, chunkChecksum.toString());
-			
-			preparedStatement.addBatch();			
+		for (MultiChunkEntry multiChunk : multiChunks) {
+			for (ChunkChecksum chunkChecksum : multiChunk.getChunks()) {
+				preparedStatement.setString(1, multiChunk.getId().toString());
+				preparedStatement.setString(2, chunkChecksum.toString());
+				
+				addBatch(preparedStatement, ++rowCount);
+			}
 		}
 		
 		preparedStatement.executeBatch();
 		preparedStatement.close();
-	}	
-
+		
+		return rowCount;
+	}
+	
 	public void writeMuddyMultiChunks(Map<DatabaseVersionHeader, Collection<MultiChunkEntry>> muddyMultiChunksPerDatabaseVersion) throws SQLException {
 		PreparedStatement preparedStatement = getStatement("multichunk_muddy.insert.muddy.writeMuddyMultiChunks.sql");
 		
@@ -0,0 +1,230 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+import org.syncany.chunk.Transformer;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.MemoryDatabase;
+import org.syncany.database.VectorClock;
+import org.syncany.plugins.transfer.files.SnapshotRemoteFile;
+
+/**
+ * Reads and writes snapshot files (see {@link SnapshotRemoteFile}). A snapshot file contains
+ * the entire database of a repository, as well as the list of remote database files it covers,
+ * i.e. the database files a client does not have to download when it applies the snapshot.
+ *
+ * <p>To keep snapshots compact, consecutive database versions are collapsed into a single
+ * database version (see {@link MemoryDatabase#getCollapsedDatabaseVersion()}) until their
+ * estimated size reaches {@link #MAX_COLLAPSED_DATABASE_VERSION_SIZE}. A collapsed database version
+ * carries the header of the last database version it contains, so the headers in a snapshot
+ * are a subsequence of the original database branch.
+ *
+ * <p>The file format (version 2) is structured as follows:
+ *
+ * <pre>
+ *  magic                 4 bytes, "SYSN"
+ *  format version        1 byte
+ *  transformed section   until the end of the file; transformed (compressed/encrypted) using
+ *                        the transformer of the given {@link DatabaseSerializer}, containing:
+ *
+ *    covered files       modified UTF-8 string, prefixed with its length (2 bytes); a vector
+ *                        clock of the highest covered database file number per client
+ *    database            until the end of the section; a regular, untransformed database file
+ *                        in the format of the given {@link DatabaseSerializer}
+ * </pre>
+ *
+ * <p>The covered files list is part of the transformed section, so that it is authenticated
+ * along with the database: A client applying a snapshot skips all database files it covers,
+ * so a tampered list could otherwise hide arbitrary database versions from it. Since the
+ * transformed section is transformed as a whole, the contained database itself is not
+ * transformed again (see {@link #getDatabaseSerializer()}).
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class SnapshotSerializer {
+	private static final Logger logger = Logger.getLogger(SnapshotSerializer.class.getSimpleName());
+
+	static final byte[] MAGIC = new byte[] { 'S', 'Y', 'S', 'N' };
+	static final int FORMAT_VERSION = 2;
+
+	private static final long MAX_COLLAPSED_DATABASE_VERSION_SIZE = 16 * 1024 * 1024;
+
+	private Transformer transformer;
+	private DatabaseSerializer databaseSerializer;
+
+	public SnapshotSerializer(DatabaseSerializer databaseSerializer) {
+		this.transformer = databaseSerializer.transformer;
+		this.databaseSerializer = DatabaseSerializer.getInstance(databaseSerializer.getFormat(), null);
+	}
+
+	/**
+	 * Returns the serializer used to write and read the database contained in a snapshot. Since
+	 * the database is transformed as part of the snapshot file, this serializer has no transformer,
+	 * i.e. database files extracted by {@link #load(File, File) load()} must be read using this serializer.
+	 */
+	public DatabaseSerializer getDatabaseSerializer() {
+		return databaseSerializer;
+	}
+
+	/**
+	 * Writes the given database versions to a snapshot file, collapsing consecutive
+	 * database versions as described {@link SnapshotSerializer in the class description}.
+	 *
+	 * @param databaseVersions All database versions of the database branch, in order
+	 * @param coveredDatabaseFiles Highest database file number covered by the snapshot, per client
+	 * @param snapshotFile Local snapshot file to write
+	 */
+	public void save(Iterator<DatabaseVersion> databaseVersions, VectorClock coveredDatabaseFiles, File snapshotFile) throws IOException {
+		File databaseFile = new File(snapshotFile.getAbsolutePath() + ".database");
+
+		try {
+			CollapsingDatabaseVersionIterator collapsedDatabaseVersions = new CollapsingDatabaseVersionIterator(databaseVersions);
+			databaseSerializer.save(collapsedDatabaseVersions, databaseFile);
+
+			logger.log(Level.INFO, "- Snapshot: Collapsed {0} database version(s) to {1}.", new Object[] {
+					collapsedDatabaseVersions.getDatabaseVersionCount(), collapsedDatabaseVersions.getCollapsedDatabaseVersionCount() });
+
+			try (OutputStream snapshotOutputStream = new BufferedOutputStream(new FileOutputStream(snapshotFile));
+					InputStream databaseInputStream = new FileInputStream(databaseFile)) {
+
+				snapshotOutputStream.write(MAGIC);
+				snapshotOutputStream.write(FORMAT_VERSION);
+
+				OutputStream transformedOutputStream = (transformer != null) ? transformer.createOutputStream(snapshotOutputStream) : snapshotOutputStream;
+
+				try (DataOutputStream sectionOutputStream = new DataOutputStream(transformedOutputStream)) {
+					sectionOutputStream.writeUTF(coveredDatabaseFiles.toString());
+					IOUtils.copy(databaseInputStream, sectionOutputStream);
+				}
+			}
+		}
+		finally {
+			databaseFile.delete();
+		}
+	}
+
+	/**
+	 * Reads a snapshot file, extracts the contained database to the given database file, and
+	 * returns the database files covered by the snapshot. The extracted database file is not
+	 * transformed and must be loaded using {@link #getDatabaseSerializer()}.
+	 *
+	 * <p>The entire transformed section is read before this method returns, so that a snapshot
+	 * file failing the transformer's integrity checks never yields a covered files list.
+	 *
+	 * @param snapshotFile Local snapshot file to read
+	 * @param databaseFile Local file to write the contained database file to
+	 * @return Returns the highest database file number covered by the snapshot, per client
+	 * @throws IOException If the file cannot be read, if it is not a snapshot file, or if it cannot be decoded
+	 */
+	public VectorClock load(File snapshotFile, File databaseFile) throws IOException {
+		try (InputStream snapshotInputStream = new BufferedInputStream(new FileInputStream(snapshotFile));
+				OutputStream databaseOutputStream = new FileOutputStream(databaseFile)) {
+
+			byte[] magic = new byte[MAGIC.length];
+			IOUtils.readFully(snapshotInputStream, magic);
+
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new IOException("Not a snapshot file: " + snapshotFile);
+			}
+
+			int formatVersion = snapshotInputStream.read();
+
+			if (formatVersion != FORMAT_VERSION) {
+				throw new IOException("Unsupported snapshot format version " + formatVersion + " in file " + snapshotFile);
+			}
+
+			InputStream transformedInputStream = (transformer != null) ? transformer.createInputStream(snapshotInputStream) : snapshotInputStream;
+
+			try (DataInputStream sectionInputStream = new DataInputStream(transformedInputStream)) {
+				String coveredDatabaseFilesStr = sectionInputStream.readUTF();
+				IOUtils.copy(sectionInputStream, databaseOutputStream);
+
+				return VectorClock.parseVectorClock(coveredDatabaseFilesStr);
+			}
+		}
+	}
+
+	/**
+	 * Collapses the database versions of the underlying iterator into batches whose
+	 * estimated size is at most {@link SnapshotSerializer#MAX_COLLAPSED_DATABASE_VERSION_SIZE}
+	 * (unless a single database version is larger).
+	 */
+	private static class CollapsingDatabaseVersionIterator implements Iterator<DatabaseVersion> {
+		private Iterator<DatabaseVersion> databaseVersions;
+		private int databaseVersionCount;
+		private int collapsedDatabaseVersionCount;
+
+		public CollapsingDatabaseVersionIterator(Iterator<DatabaseVersion> databaseVersions) {
+			this.databaseVersions = databaseVersions;
+			this.databaseVersionCount = 0;
+			this.collapsedDatabaseVersionCount = 0;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return databaseVersions.hasNext();
+		}
+
+		@Override
+		public DatabaseVersion next() {
+			if (!databaseVersions.hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			MemoryDatabase collapseDatabase = new MemoryDatabase();
+
+			while (databaseVersions.hasNext() && collapseDatabase.getEstimatedSize() < MAX_COLLAPSED_DATABASE_VERSION_SIZE) {
+				collapseDatabase.addDatabaseVersion(databaseVersions.next());
+				databaseVersionCount++;
+			}
+
+			collapsedDatabaseVersionCount++;
+			return collapseDatabase.getCollapsedDatabaseVersion();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		public int getDatabaseVersionCount() {
+			return databaseVersionCount;
+		}
+
+		public int getCollapsedDatabaseVersionCount() {
+			return collapsedDatabaseVersionCount;
+		}
+	}
+}
@@ -18,8 +18,11 @@
 package org.syncany.operations;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.Collection;
@@ -27,6 +30,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.syncany.chunk.Chunker;
 import org.syncany.chunk.Deduper;
 import org.syncany.chunk.MultiChunk;
@@ -38,6 +42,7 @@ import org.syncany.database.FileVersion;
 import org.syncany.database.MemoryDatabase;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.database.SqlDatabase;
+import org.syncany.operations.down.LocalChunkLocator;
 import org.syncany.util.StringUtil;
 
 /**
@@ -48,6 +53,15 @@ import org.syncany.util.StringUtil;
  * <p>It uses the local {@link SqlDatabase} and an optional {@link MemoryDatabase}
  * to perform file checksum and chunk checksum lookups.   
  * 
+ * <p>Chunks are usually read from the decrypted multichunks in the local cache. If
+ * a chunk has been copied to the cache from a local file (see {@link LocalChunkLocator}),
+ * it is read from there instead. Since such a file might be a leftover of an earlier,
+ * interrupted operation, its checksum is verified before it is used.
+ * 
+ * <p>The assembler can be used by multiple threads at the same time. Since the
+ * local database uses a single connection, lookups in the local database are
+ * synchronized on the database object.
+ * 
  * @author Philipp C. Heckel (philipp.heckel@gmail.com)
  */
 public class Assembler {
@@ -75,7 +89,7 @@ public class Assembler {
 		File reconstructedFileInCache = config.getCache().createTempFile("reconstructedFileVersion");
 		logger.log(Level.INFO, "     - Creating file " + fileVersion.getPath() + " to " + reconstructedFileInCache + " ...");
 
-		FileContent fileContent = localDatabase.getFileContent(fileVersion.getChecksum(), true);
+		FileContent fileContent = getFileContent(fileVersion);
 
 		if (fileContent == null && memoryDatabase != null) {
 			fileContent = memoryDatabase.getContent(fileVersion.getChecksum());
@@ -98,12 +112,23 @@ public class Assembler {
 		
 		FileOutputStream reconstructedFileOutputStream = new FileOutputStream(reconstructedFileInCache);		
 		MessageDigest reconstructedFileChecksum = MessageDigest.getInstance(chunker.getChecksumAlgorithm());
+		MessageDigest chunkDigest = MessageDigest.getInstance(chunker.getChecksumAlgorithm());
 		
 		if (fileContent != null) { // File can be empty!
 			Collection<ChunkChecksum> fileChunks = fileContent.getChunks();
 
 			for (ChunkChecksum chunkChecksum : fileChunks) {
-				MultiChunkId multiChunkIdForChunk = localDatabase.getMultiChunkId(chunkChecksum);
+				byte[] localChunkData = readLocalChunk(chunkChecksum, chunkDigest);
+
+				// Chunk was copied from a local file (see LocalChunkLocator)
+				if (localChunkData != null) {
+					reconstructedFileChecksum.update(localChunkData);
+					reconstructedFileOutputStream.write(localChunkData);
+
+					continue;
+				}
+
+				MultiChunkId multiChunkIdForChunk = getMultiChunkId(chunkChecksum);
 
 				if (multiChunkIdForChunk == null && memoryDatabase != null) {
 					multiChunkIdForChunk = memoryDatabase.getMultiChunkIdForChunk(chunkChecksum);
@@ -114,13 +139,7 @@ public class Assembler {
 				MultiChunk multiChunk = multiChunker.createMultiChunk(decryptedMultiChunkFile);
 				InputStream chunkInputStream = multiChunk.getChunkInputStream(chunkChecksum.getBytes());
 
-				byte[] buffer = new byte[4096];
-				int read = 0;
-
-				while (-1 != (read = chunkInputStream.read(buffer))) {
-					reconstructedFileChecksum.update(buffer, 0, read);
-					reconstructedFileOutputStream.write(buffer, 0, read);
-				}
+				copyChunk(chunkInputStream, reconstructedFileOutputStream, reconstructedFileChecksum);
 
 				chunkInputStream.close();
 				multiChunk.close();
@@ -140,4 +159,57 @@ public class Assembler {
 		
 		return reconstructedFileInCache;
 	}	
+
+	/**
+	 * Reads the chunk with the given checksum from the local chunk file in the cache (see
+	 * {@link LocalChunkLocator}) and verifies its checksum. Returns the chunk data, or 
+	 * <code>null</code> if there is no such file or if its checksum does not match, e.g. 
+	 * because it is a leftover of an interrupted operation.
+	 */
+	private byte[] readLocalChunk(ChunkChecksum chunkChecksum, MessageDigest chunkDigest) throws IOException {
+		File localChunkFile = config.getCache().getLocalChunkFile(chunkChecksum);
+
+		if (!localChunkFile.exists()) {
+			return null;
+		}
+
+		byte[] chunkData;
+
+		try (InputStream chunkInputStream = new FileInputStream(localChunkFile)) {
+			chunkData = IOUtils.toByteArray(chunkInputStream);
+		}
+
+		chunkDigest.reset();
+
+		if (!Arrays.equals(chunkDigest.digest(chunkData), chunkChecksum.getBytes())) {
+			logger.log(Level.WARNING, "     - Local chunk file " + localChunkFile + " does not match its checksum. Ignoring it.");
+			return null;
+		}
+
+		return chunkData;
+	}
+
+	private void copyChunk(InputStream chunkInputStream, OutputStream reconstructedFileOutputStream, MessageDigest reconstructedFileChecksum)
+			throws IOException {
+
+		byte[] buffer = new byte[4096];
+		int read = 0;
+
+		while (-1 != (read = chunkInputStream.read(buffer))) {
+			reconstructedFileChecksum.update(buffer, 0, read);
+			reconstructedFileOutputStream.write(buffer, 0, read);
+		}
+	}
+
+	private FileContent getFileContent(FileVersion fileVersion) {
+		synchronized (localDatabase) {
+			return localDatabase.getFileContent(fileVersion.getChecksum(), true);
+		}
+	}
+
+	private MultiChunkId getMultiChunkId(ChunkChecksum chunkChecksum) {
+		synchronized (localDatabase) {
+			return localDatabase.getMultiChunkId(chunkChecksum);
+		}
+	}
 }
@@ -62,6 +62,17 @@ public class ChangeSet {
 			|| deletedFiles.size() > 0;
 	}
 	
+	/**
+	 * Adds all new, changed, deleted and unchanged files of the given 
+	 * change set to this change set.
+	 */
+	public void addAll(ChangeSet otherChangeSet) {
+		changedFiles.addAll(otherChangeSet.getChangedFiles());
+		newFiles.addAll(otherChangeSet.getNewFiles());
+		deletedFiles.addAll(otherChangeSet.getDeletedFiles());
+		unchangedFiles.addAll(otherChangeSet.getUnchangedFiles());
+	}
+	
 	// TODO [low] This is ugly. Use unmutable lists.
 	public TreeSet<String> getChangedFiles() {
 		return changedFiles;
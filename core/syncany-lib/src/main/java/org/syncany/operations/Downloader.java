@@ -22,33 +22,69 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.FileUtils;
 import org.syncany.config.Config;
 import org.syncany.config.LocalEventBus;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.operations.daemon.messages.DownDownloadFileSyncExternalEvent;
 import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.StreamingTransferManager;
 import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.TransferManagerFactory;
+import org.syncany.plugins.transfer.features.PathAware;
+import org.syncany.plugins.transfer.features.ReadAfterWriteConsistent;
+import org.syncany.plugins.transfer.features.Retriable;
+import org.syncany.plugins.transfer.features.TransactionAware;
 import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.util.ChannelUtil;
 
 /**
  * The downloader uses a {@link TransferManager} to download a given set of multichunks,
  * decrypt them and store them in the local cache folder. 
  * 
+ * <p>If more than one multichunk has to be downloaded, the downloader works as a pipeline:
+ * Up to {@link Config#getDownloadThreads()} multichunks are downloaded concurrently, each
+ * by a download worker with its own transfer manager (transfer managers are not thread-safe).
+ * Downloaded multichunks are handed to a separate pool of decryption workers, so that the
+ * CPU-bound decryption does not block the I/O-bound download of the next multichunks.
+ * 
+ * <p>If the transfer manager supports streaming (see {@link StreamingTransferManager}), the
+ * multichunk is not downloaded to the cache at all. Instead, the remote stream is decrypted
+ * directly into the cache, so that each multichunk is only written to disk once. In either
+ * case, a multichunk is only published under its final name in the cache once it has been
+ * fully decrypted and verified.
+ * 
  * @author Philipp C. Heckel (philipp.heckel@gmail.com)
  */
 public class Downloader {
 	private static final Logger logger = Logger.getLogger(Downloader.class.getSimpleName());
 
+	public static final int DEFAULT_DOWNLOAD_THREADS = 4;
+	private static final int DECRYPT_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
 	private Config config;
 	private TransferManager transferManager;
 	private LocalEventBus eventBus;
 
+	private LinkedBlockingQueue<TransferManager> idleTransferManagers;
+	private List<TransferManager> workerTransferManagers;
+	private int downloadEventNumber;
+
 	public Downloader(Config config, TransferManager transferManager) {
 		this.config = config;
 		this.transferManager = transferManager;
@@ -62,56 +98,304 @@ public class Downloader {
 	public void downloadAndDecryptMultiChunks(Set<MultiChunkId> unknownMultiChunkIds) throws StorageException, IOException {
 		logger.log(Level.INFO, "Downloading and extracting multichunks ...");
 
-		int multiChunkNumber = 0;
+		List<MultiChunkId> missingMultiChunkIds = new ArrayList<MultiChunkId>();
 
 		for (MultiChunkId multiChunkId : unknownMultiChunkIds) {
-			File localEncryptedMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(multiChunkId);
 			File localDecryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(multiChunkId);
-			MultichunkRemoteFile remoteMultiChunkFile = new MultichunkRemoteFile(multiChunkId);
-
-			multiChunkNumber++;
 
 			if (localDecryptedMultiChunkFile.exists()) {
 				logger.log(Level.INFO, "  + Decrypted multichunk exists locally " + multiChunkId + ". No need to download it!");
 			}
 			else {
-				eventBus.post(new DownDownloadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), "multichunk", multiChunkNumber,
-						unknownMultiChunkIds.size()));
+				missingMultiChunkIds.add(multiChunkId);
+			}
+		}
 
-				logger.log(Level.INFO, "  + Downloading multichunk " + multiChunkId + " ...");
-				transferManager.download(remoteMultiChunkFile, localEncryptedMultiChunkFile);
+		// Event numbers continue after the multichunks that exist locally
+		downloadEventNumber = unknownMultiChunkIds.size() - missingMultiChunkIds.size();
+		int downloadThreads = Math.min(config.getDownloadThreads(), missingMultiChunkIds.size());
 
-				try {
-					logger.log(Level.INFO, "  + Decrypting multichunk " + multiChunkId + " ...");
-					InputStream multiChunkInputStream = config.getTransformer().createInputStream(new FileInputStream(localEncryptedMultiChunkFile));
-					OutputStream decryptedMultiChunkOutputStream = new FileOutputStream(localDecryptedMultiChunkFile);
+		if (downloadThreads <= 1) {
+			downloadAndDecryptMultiChunksSequentially(missingMultiChunkIds, unknownMultiChunkIds.size());
+		}
+		else {
+			downloadAndDecryptMultiChunksConcurrently(missingMultiChunkIds, unknownMultiChunkIds.size(), downloadThreads);
+		}
 
-					IOUtils.copy(multiChunkInputStream, decryptedMultiChunkOutputStream);
+		transferManager.disconnect();
+	}
 
-					decryptedMultiChunkOutputStream.close();
-					multiChunkInputStream.close();
+	private void downloadAndDecryptMultiChunksSequentially(List<MultiChunkId> multiChunkIds, int multiChunkCount) throws StorageException,
+			IOException {
 
-				}
-				catch (IOException e) {
-					// Security: Deleting the multichunk if the decryption/extraction failed is important!
-					//           If it is not deleted, the partially decrypted multichunk will reside in the
-					//           local cache and the next 'down' will try to use it. If this is the only
-					//           multichunk that has been tampered with, other changes might be applied to the 
-					//           file system! See https://github.com/syncany/syncany/issues/59#issuecomment-55154793
-
-					logger.log(Level.FINE, "    -> FAILED: Decryption/extraction of multichunk failed, deleting " + multiChunkId + " ...");
-					localDecryptedMultiChunkFile.delete();
-
-					throw new IOException("Decryption/extraction of multichunk " + multiChunkId
-							+ " failed. The multichunk might have been tampered with!", e);
-				}
-				finally {
-					logger.log(Level.FINE, "  + Locally deleting multichunk " + multiChunkId + " ...");
-					localEncryptedMultiChunkFile.delete();
+		for (MultiChunkId multiChunkId : multiChunkIds) {
+			if (isStreamingSupported(transferManager)) {
+				downloadAndDecryptMultiChunkStreaming(transferManager, multiChunkId, multiChunkCount);
+			}
+			else {
+				downloadMultiChunk(transferManager, multiChunkId, multiChunkCount);
+				decryptMultiChunk(multiChunkId);
+			}
+		}
+	}
+
+	/**
+	 * Downloads and decrypts the given multichunks using a pool of download workers and
+	 * a pool of decryption workers. Each downloaded multichunk is handed to the decryption
+	 * pool as soon as it is available. If a worker's transfer manager supports streaming,
+	 * the worker decrypts the multichunk itself while downloading it.
+	 * 
+	 * <p>If a download or decryption fails, all pending work is cancelled and the first
+	 * exception (in the order of the given multichunks) is rethrown.
+	 */
+	private void downloadAndDecryptMultiChunksConcurrently(List<MultiChunkId> multiChunkIds, final int multiChunkCount, int downloadThreads)
+			throws StorageException, IOException {
+
+		logger.log(Level.INFO, "  + Using " + downloadThreads + " download worker(s) and " + DECRYPT_THREADS + " decryption worker(s) ...");
+
+		final ExecutorService downloadExecutor = Executors.newFixedThreadPool(downloadThreads);
+		final ExecutorService decryptExecutor = Executors.newFixedThreadPool(DECRYPT_THREADS);
+
+		idleTransferManagers = new LinkedBlockingQueue<TransferManager>();
+		workerTransferManagers = new ArrayList<TransferManager>();
+
+		idleTransferManagers.add(transferManager);
+
+		try {
+			List<Future<Future<Void>>> downloadFutures = new ArrayList<Future<Future<Void>>>();
+			List<Future<Void>> decryptFutures = new ArrayList<Future<Void>>();
+
+			for (final MultiChunkId multiChunkId : multiChunkIds) {
+				downloadFutures.add(downloadExecutor.submit(new Callable<Future<Void>>() {
+					@Override
+					public Future<Void> call() throws Exception {
+						TransferManager workerTransferManager = acquireTransferManager();
+						boolean streamingSupported = isStreamingSupported(workerTransferManager);
+
+						try {
+							if (streamingSupported) {
+								downloadAndDecryptMultiChunkStreaming(workerTransferManager, multiChunkId, multiChunkCount);
+							}
+							else {
+								downloadMultiChunk(workerTransferManager, multiChunkId, multiChunkCount);
+							}
+						}
+						finally {
+							idleTransferManagers.add(workerTransferManager);
+						}
+
+						if (streamingSupported) {
+							return null; // Nothing left to do
+						}
+
+						return decryptExecutor.submit(new Callable<Void>() {
+							@Override
+							public Void call() throws Exception {
+								decryptMultiChunk(multiChunkId);
+								return null;
+							}
+						});
+					}
+				}));
+			}
+
+			for (Future<Future<Void>> downloadFuture : downloadFutures) {
+				Future<Void> decryptFuture = waitFor(downloadFuture);
+
+				if (decryptFuture != null) {
+					decryptFutures.add(decryptFuture);
 				}
 			}
+
+			for (Future<Void> decryptFuture : decryptFutures) {
+				waitFor(decryptFuture);
+			}
 		}
+		finally {
+			shutdownAndAwait(downloadExecutor);
+			shutdownAndAwait(decryptExecutor);
 
-		transferManager.disconnect();
+			disconnectWorkerTransferManagers();
+		}
+	}
+
+	/**
+	 * Returns an idle transfer manager, or creates a new one if all existing
+	 * transfer managers are in use by other download workers. Since there are
+	 * never more workers than download threads, no more than that number of
+	 * transfer managers is ever created.
+	 *
+	 * <p>Worker transfer managers have the same features as the operation's transfer
+	 * manager. In particular, they are {@link TransactionAware}, so that multichunks
+	 * that are being deleted by a concurrent cleanup are downloaded from their
+	 * temporary location.
+	 */
+	private TransferManager acquireTransferManager() throws StorageException {
+		TransferManager idleTransferManager = idleTransferManagers.poll();
+
+		if (idleTransferManager != null) {
+			return idleTransferManager;
+		}
+		else {
+			TransferManager newTransferManager = TransferManagerFactory
+					.build(config)
+					.withFeature(ReadAfterWriteConsistent.class)
+					.withFeature(Retriable.class)
+					.withFeature(PathAware.class)
+					.withFeature(TransactionAware.class)
+					.asDefault();
+
+			synchronized (workerTransferManagers) {
+				workerTransferManagers.add(newTransferManager);
+			}
+
+			return newTransferManager;
+		}
+	}
+
+	private void disconnectWorkerTransferManagers() {
+		for (TransferManager workerTransferManager : workerTransferManagers) {
+			try {
+				workerTransferManager.disconnect();
+			}
+			catch (StorageException e) {
+				logger.log(Level.FINE, "Cannot disconnect worker transfer manager. Ignoring.", e);
+			}
+		}
+	}
+
+	private <T> T waitFor(Future<T> future) throws StorageException, IOException {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while downloading multichunks.", e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof StorageException) {
+				throw (StorageException) cause;
+			}
+			else if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			else {
+				throw new RuntimeException(cause);
+			}
+		}
+	}
+
+	private void shutdownAndAwait(ExecutorService executor) {
+		executor.shutdownNow();
+
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+				logger.log(Level.FINE, "Waiting for running download/decryption workers to finish ...");
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void downloadMultiChunk(TransferManager downloadTransferManager, MultiChunkId multiChunkId, int multiChunkCount) throws StorageException {
+		File localEncryptedMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(multiChunkId);
+		MultichunkRemoteFile remoteMultiChunkFile = new MultichunkRemoteFile(multiChunkId);
+
+		postDownloadEvent(multiChunkCount);
+
+		logger.log(Level.INFO, "  + Downloading multichunk " + multiChunkId + " ...");
+		downloadTransferManager.download(remoteMultiChunkFile, localEncryptedMultiChunkFile);
+	}
+
+	/**
+	 * Posts the download event for the next multichunk. Numbering the events here (and not when
+	 * the downloads are submitted) guarantees that listeners see strictly increasing numbers, even
+	 * if the download workers start in a different order.
+	 */
+	private synchronized void postDownloadEvent(int multiChunkCount) {
+		downloadEventNumber++;
+		eventBus.post(new DownDownloadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), "multichunk", downloadEventNumber,
+				multiChunkCount));
+	}
+
+	private boolean isStreamingSupported(TransferManager transferManager) {
+		return transferManager instanceof StreamingTransferManager && ((StreamingTransferManager) transferManager).isStreamingSupported();
+	}
+
+	private void downloadAndDecryptMultiChunkStreaming(TransferManager streamingTransferManager, MultiChunkId multiChunkId, int multiChunkCount)
+			throws StorageException, IOException {
+
+		MultichunkRemoteFile remoteMultiChunkFile = new MultichunkRemoteFile(multiChunkId);
+
+		postDownloadEvent(multiChunkCount);
+
+		logger.log(Level.INFO, "  + Downloading and decrypting multichunk " + multiChunkId + " (streaming) ...");
+		InputStream remoteMultiChunkInputStream = ((StreamingTransferManager) streamingTransferManager).downloadStream(remoteMultiChunkFile);
+
+		decryptMultiChunk(multiChunkId, remoteMultiChunkInputStream);
+	}
+
+	private void decryptMultiChunk(MultiChunkId multiChunkId) throws IOException {
+		File localEncryptedMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(multiChunkId);
+
+		try {
+			logger.log(Level.INFO, "  + Decrypting multichunk " + multiChunkId + " ...");
+			decryptMultiChunk(multiChunkId, new FileInputStream(localEncryptedMultiChunkFile));
+		}
+		finally {
+			logger.log(Level.FINE, "  + Locally deleting multichunk " + multiChunkId + " ...");
+			localEncryptedMultiChunkFile.delete();
+		}
+	}
+
+	/**
+	 * Decrypts the given encrypted multichunk stream to a temporary file, and moves it to the
+	 * decrypted multichunk file in the cache once the stream has been read entirely. The stream
+	 * is closed by this method.
+	 */
+	private void decryptMultiChunk(MultiChunkId multiChunkId, InputStream encryptedMultiChunkInputStream) throws IOException {
+		File localDecryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(multiChunkId);
+		File tempDecryptedMultiChunkFile = config.getCache().createTempFile("multichunk-" + multiChunkId);
+
+		boolean decryptionSucceeded = false;
+
+		try {
+			try (ReadableByteChannel multiChunkChannel = config.getTransformer().createReadableChannel(ChannelUtil.newChannel(encryptedMultiChunkInputStream));
+					FileChannel decryptedMultiChunkChannel = new FileOutputStream(tempDecryptedMultiChunkFile).getChannel()) {
+
+				ChannelUtil.copy(multiChunkChannel, decryptedMultiChunkChannel);
+			}
+
+			decryptionSucceeded = true;
+		}
+		catch (IOException e) {
+			// Security: Publishing the multichunk only if the decryption/extraction succeeded is important!
+			//           If it were published, the partially decrypted multichunk would reside in the
+			//           local cache and the next 'down' would try to use it. If this is the only
+			//           multichunk that has been tampered with, other changes might be applied to the 
+			//           file system! See https://github.com/syncany/syncany/issues/59#issuecomment-55154793
+
+			logger.log(Level.FINE, "    -> FAILED: Decryption/extraction of multichunk failed, deleting " + multiChunkId + " ...");
+
+			throw new IOException("Decryption/extraction of multichunk " + multiChunkId
+					+ " failed. The multichunk might have been tampered with!", e);
+		}
+		finally {
+			// Also delete the temporary file if the decryption failed with a runtime exception
+			if (!decryptionSucceeded) {
+				tempDecryptedMultiChunkFile.delete();
+			}
+
+			encryptedMultiChunkInputStream.close();
+		}
+
+		localDecryptedMultiChunkFile.delete();
+		FileUtils.moveFile(tempDecryptedMultiChunkFile, localDecryptedMultiChunkFile);
 	}
 }
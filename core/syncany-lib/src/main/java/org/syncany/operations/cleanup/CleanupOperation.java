@@ -42,8 +42,10 @@ import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.database.PartialFileHistory;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
 import org.syncany.database.SqlDatabase;
-import org.syncany.database.dao.DatabaseXmlSerializer;
+import org.syncany.database.VectorClock;
+import org.syncany.database.dao.DatabaseSerializer;
 import org.syncany.database.dao.FileVersionSqlDao;
+import org.syncany.database.dao.SnapshotSerializer;
 import org.syncany.operations.AbstractTransferOperation;
 import org.syncany.operations.cleanup.CleanupOperationOptions.TimeUnit;
 import org.syncany.operations.cleanup.CleanupOperationResult.CleanupResultCode;
@@ -63,6 +65,7 @@ import org.syncany.plugins.transfer.files.CleanupRemoteFile;
 import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
 import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
 import org.syncany.plugins.transfer.files.RemoteFile;
+import org.syncany.plugins.transfer.files.SnapshotRemoteFile;
 
 /**
  * The purpose of the cleanup operation is to keep the local database and the
@@ -86,6 +89,7 @@ import org.syncany.plugins.transfer.files.RemoteFile;
  *    <li>Delete all remote metadata</li>
  *    <li>Obtain consistent database files from local database</li>
  *    <li>Upload new database files to repo</li>
+ *    <li>Replace remote snapshot file with a new one (if the database is large enough)</li>
  *    <li>Remotely delete unused multichunks</li>
  *    <li>Stop lock renewal thread and unlock repo</li>
  * </ul>
@@ -457,6 +461,9 @@ public class CleanupOperation extends AbstractTransferOperation {
 			remoteTransaction.upload(lastLocalMergeDatabaseFile, lastRemoteMergeDatabaseFile);
 		}
 
+		// Queue snapshot for uploading (and old snapshots for deletion)
+		writeSnapshotFile(allMergedDatabaseFiles);
+
 		finishMerging();
 
 		// Update stats
@@ -510,11 +517,59 @@ public class CleanupOperation extends AbstractTransferOperation {
 
 		Iterator<DatabaseVersion> lastNDatabaseVersions = localDatabase.getDatabaseVersionsTo(clientName, lastClientVersion);
 
-		DatabaseXmlSerializer databaseDAO = new DatabaseXmlSerializer(config.getTransformer());
+		DatabaseSerializer databaseDAO = config.getDatabaseSerializer();
 		databaseDAO.save(lastNDatabaseVersions, newLocalMergeDatabaseFile);
 		allMergedDatabaseFiles.put(newLocalMergeDatabaseFile, newRemoteMergeDatabaseFile);
 	}
 
+	/**
+	 * This method replaces the remote snapshot file (if any) with a new snapshot of the local database, and
+	 * adds the corresponding deletions and uploads to the current {@link RemoteTransaction}. The snapshot covers
+	 * exactly the given merged database files, since they have been written from the same local database.
+	 *
+	 * <p>Existing snapshots are always deleted, since they become invalid when the cleanup number is incremented. A
+	 * new snapshot is only written if the local database has at least {@link CleanupOperationOptions#getMinSnapshotDatabaseVersions()}
+	 * database versions -- for small databases, downloading the merged database files is just as fast.
+	 *
+	 * @param allMergedDatabaseFiles Map with the newly written merged database files, which are covered by the snapshot
+	 */
+	private void writeSnapshotFile(Map<File, DatabaseRemoteFile> allMergedDatabaseFiles) throws StorageException, IOException {
+		Map<String, SnapshotRemoteFile> oldSnapshotFiles = transferManager.list(SnapshotRemoteFile.class);
+
+		for (SnapshotRemoteFile oldSnapshotFile : oldSnapshotFiles.values()) {
+			logger.log(Level.INFO, "   + Deleting old snapshot file " + oldSnapshotFile + " ...");
+			remoteTransaction.delete(oldSnapshotFile);
+		}
+
+		long databaseVersionCount = localDatabase.getLocalDatabaseBranch().size();
+		boolean snapshotsEnabled = options.getMinSnapshotDatabaseVersions() > 0;
+
+		if (!snapshotsEnabled || databaseVersionCount < options.getMinSnapshotDatabaseVersions()) {
+			logger.log(Level.INFO, "   + Not writing snapshot file; {0} database version(s), {1} required.", new Object[] { databaseVersionCount,
+					options.getMinSnapshotDatabaseVersions() });
+			return;
+		}
+
+		// The snapshot is valid for the cleanup number written by this cleanup
+		long newCleanupNumber = getLastRemoteCleanupNumber(transferManager.list(CleanupRemoteFile.class)) + 1;
+		SnapshotRemoteFile snapshotRemoteFile = new SnapshotRemoteFile(newCleanupNumber, databaseVersionCount);
+		File snapshotFile = config.getCache().getDatabaseFile(snapshotRemoteFile.getName());
+
+		VectorClock coveredDatabaseFiles = new VectorClock();
+
+		for (DatabaseRemoteFile mergedDatabaseFile : allMergedDatabaseFiles.values()) {
+			coveredDatabaseFiles.setClock(mergedDatabaseFile.getClientName(), mergedDatabaseFile.getClientVersion());
+		}
+
+		logger.log(Level.INFO, "   + Writing snapshot file (covering {0}) to {1} ...", new Object[] { coveredDatabaseFiles, snapshotFile });
+
+		SnapshotSerializer snapshotSerializer = new SnapshotSerializer(config.getDatabaseSerializer());
+		snapshotSerializer.save(localDatabase.getDatabaseVersions(), coveredDatabaseFiles, snapshotFile);
+
+		remoteTransaction.upload(snapshotFile, snapshotRemoteFile);
+		result.setSnapshotDatabaseVersionCount(databaseVersionCount);
+	}
+
 	/**
 	 * This method locally remembers which databases were newly uploaded, such that they will not be downloaded in
 	 * future Downs.
@@ -50,6 +50,9 @@ public class CleanupOperationOptions implements OperationOptions {
 	@Element(required = false)
 	private long minSecondsBetweenCleanups = 3 * 60 * 60; // 3 hours
 
+	@Element(required = false)
+	private int minSnapshotDatabaseVersions = 100; // 0 = no snapshots
+
 	@ElementMap(entry = "fromTime", key = "truncateDateFormat", required = false, attribute = true, inline = true)
 	private SortedMap<Long, TimeUnit> purgeFileVersionSettings;
 
@@ -105,6 +108,14 @@ public class CleanupOperationOptions implements OperationOptions {
 		return minSecondsBetweenCleanups;
 	}
 
+	public int getMinSnapshotDatabaseVersions() {
+		return minSnapshotDatabaseVersions;
+	}
+
+	public void setMinSnapshotDatabaseVersions(int minSnapshotDatabaseVersions) {
+		this.minSnapshotDatabaseVersions = minSnapshotDatabaseVersions;
+	}
+
 	public void setMinKeepSeconds(long minKeepDeletedSeconds) {
 		this.minKeepDeletedSeconds = minKeepDeletedSeconds;
 	}
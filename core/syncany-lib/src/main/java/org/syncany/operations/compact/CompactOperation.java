@@ -0,0 +1,163 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.compact;
+
+import java.sql.SQLException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.syncany.config.Config;
+import org.syncany.database.SqlDatabase;
+import org.syncany.operations.Operation;
+import org.syncany.operations.cleanup.CleanupOperation;
+
+/**
+ * The compact operation shrinks the local database. Unlike the {@link CleanupOperation},
+ * it does not touch the remote repository and does not remove any file versions. 
+ * 
+ * <p>The operation consists of two steps:
+ * <ul>
+ *   <li>Remove unreferenced file histories, file contents and chunks from the local
+ *       database. This is done in small batches (see {@link CompactOperationOptions#getBatchSize()}),
+ *       each of which is committed separately. That keeps the transactions (and the database 
+ *       log) small, even for very large databases. Multichunks are not touched, because
+ *       they are needed to clean up the remote repository.</li>
+ *   <li>Defragment the database files, i.e. rewrite them without the space of the deleted
+ *       rows. Without this step, the HSQLDB data file never shrinks.</li>
+ * </ul>
+ * 
+ * <p>The result contains the number of removed entities, the size of the local database
+ * files before and after the operation, and the duration of the operation.
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class CompactOperation extends Operation {
+	private static final Logger logger = Logger.getLogger(CompactOperation.class.getSimpleName());
+
+	private CompactOperationOptions options;
+	private SqlDatabase localDatabase;
+
+	public CompactOperation(Config config) {
+		this(config, new CompactOperationOptions());
+	}
+
+	public CompactOperation(Config config, CompactOperationOptions options) {
+		super(config);
+
+		this.options = options;
+		this.localDatabase = new SqlDatabase(config);
+	}
+
+	@Override
+	public CompactOperationResult execute() throws Exception {
+		logger.log(Level.INFO, "");
+		logger.log(Level.INFO, "Running 'Compact' at client " + config.getMachineName() + " ...");
+		logger.log(Level.INFO, "--------------------------------------------");
+
+		if (options.getBatchSize() <= 0) {
+			throw new IllegalArgumentException("Invalid batch size " + options.getBatchSize() + "; must be > 0");
+		}
+
+		CompactOperationResult result = new CompactOperationResult();
+		long startTime = System.currentTimeMillis();
+
+		result.setDatabaseSizeBefore(getDatabaseSize());
+
+		try {
+			// IMPORTANT: The order is important, because of 
+			//            the database foreign key consistencies!
+
+			result.setRemovedFileHistoriesCount(removeUnreferencedFileHistories());
+			result.setRemovedFileContentsCount(removeUnreferencedFileContents());
+			result.setRemovedChunksCount(removeUnreferencedChunks());
+		}
+		catch (Exception e) {
+			logger.log(Level.SEVERE, "Removing unreferenced database entities failed. Rolling back current batch.", e);
+			localDatabase.rollback();
+
+			throw e;
+		}
+
+		if (options.isDefragment()) {
+			logger.log(Level.INFO, "Defragmenting local database ...");
+			localDatabase.defragment();
+		}
+
+		result.setDatabaseSizeAfter(getDatabaseSize());
+		result.setDuration(System.currentTimeMillis() - startTime);
+
+		logger.log(Level.INFO, "Compact done: Database size " + result.getDatabaseSizeBefore() + " -> " + result.getDatabaseSizeAfter() + " bytes ("
+				+ result.getReclaimedSize() + " bytes reclaimed) in " + result.getDuration() + " ms");
+
+		return result;
+	}
+
+	private int removeUnreferencedFileHistories() throws SQLException {
+		int removedCount = 0;
+		int batchCount;
+
+		do {
+			batchCount = localDatabase.removeUnreferencedFileHistories(options.getBatchSize());
+			removedCount += commitBatch("file histories", batchCount, removedCount);
+		}
+		while (batchCount == options.getBatchSize());
+
+		return removedCount;
+	}
+
+	private int removeUnreferencedFileContents() throws SQLException {
+		int removedCount = 0;
+		int batchCount;
+
+		do {
+			batchCount = localDatabase.removeUnreferencedFileContents(options.getBatchSize());
+			removedCount += commitBatch("file contents", batchCount, removedCount);
+		}
+		while (batchCount == options.getBatchSize());
+
+		return removedCount;
+	}
+
+	private int removeUnreferencedChunks() throws SQLException {
+		int removedCount = 0;
+		int batchCount;
+
+		do {
+			batchCount = localDatabase.removeUnreferencedChunks(options.getBatchSize());
+			removedCount += commitBatch("chunks", batchCount, removedCount);
+		}
+		while (batchCount == options.getBatchSize());
+
+		return removedCount;
+	}
+
+	private int commitBatch(String entityName, int batchCount, int previouslyRemovedCount) throws SQLException {
+		localDatabase.commit();
+
+		if (batchCount > 0) {
+			logger.log(Level.INFO, "- Removed " + batchCount + " unreferenced " + entityName + " (" + (previouslyRemovedCount + batchCount) + " total)");
+		}
+
+		return batchCount;
+	}
+
+	private long getDatabaseSize() {
+		return FileUtils.sizeOfDirectory(config.getDatabaseDir());
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.compact;
+
+import org.simpleframework.xml.Element;
+import org.syncany.operations.OperationResult;
+
+public class CompactOperationResult implements OperationResult {
+	@Element(name = "removedFileHistoriesCount", required = false)
+	private int removedFileHistoriesCount;
+
+	@Element(name = "removedFileContentsCount", required = false)
+	private int removedFileContentsCount;
+
+	@Element(name = "removedChunksCount", required = false)
+	private int removedChunksCount;
+
+	@Element(name = "databaseSizeBefore", required = false)
+	private long databaseSizeBefore;
+
+	@Element(name = "databaseSizeAfter", required = false)
+	private long databaseSizeAfter;
+
+	@Element(name = "duration", required = false)
+	private long duration;
+
+	public CompactOperationResult() {
+		// Nothing
+	}
+
+	public int getRemovedFileHistoriesCount() {
+		return removedFileHistoriesCount;
+	}
+
+	public void setRemovedFileHistoriesCount(int removedFileHistoriesCount) {
+		this.removedFileHistoriesCount = removedFileHistoriesCount;
+	}
+
+	public int getRemovedFileContentsCount() {
+		return removedFileContentsCount;
+	}
+
+	public void setRemovedFileContentsCount(int removedFileContentsCount) {
+		this.removedFileContentsCount = removedFileContentsCount;
+	}
+
+	public int getRemovedChunksCount() {
+		return removedChunksCount;
+	}
+
+	public void setRemovedChunksCount(int removedChunksCount) {
+		this.removedChunksCount = removedChunksCount;
+	}
+
+	public long getDatabaseSizeBefore() {
+		return databaseSizeBefore;
+	}
+
+	public void setDatabaseSizeBefore(long databaseSizeBefore) {
+		this.databaseSizeBefore = databaseSizeBefore;
+	}
+
+	public long getDatabaseSizeAfter() {
+		return databaseSizeAfter;
+	}
+
+	public void setDatabaseSizeAfter(long databaseSizeAfter) {
+		this.databaseSizeAfter = databaseSizeAfter;
+	}
+
+	/**
+	 * Returns the number of bytes by which the local database files 
+	 * shrunk. This can be negative if nothing could be reclaimed.
+	 */
+	public long getReclaimedSize() {
+		return databaseSizeBefore - databaseSizeAfter;
+	}
+
+	/**
+	 * Returns the duration of the operation in milliseconds.
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+}
@@ -23,6 +23,7 @@ import java.util.Collections;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.simpleframework.xml.core.Persister;
 import org.syncany.config.Config;
 import org.syncany.config.ConfigException;
 import org.syncany.config.DaemonConfigHelper;
@@ -61,6 +62,9 @@ import com.google.common.eventbus.Subscribe;
  *  <li>The {@link WebServer} starts a websocket and allows clients 
  *      (e.g. GUI, Web) to control the daemon (if authenticated). 
  *      TODO [medium] This is not yet implemented!</li>
+ *  <li>The {@link MasterKeyAgent} caches master keys derived for CLI commands,
+ *      so that they do not have to be derived again for every command (if
+ *      enabled in the <code>daemon.xml</code> file).</li>
  *  <li>The {@link ControlServer} creates and watches the daemon control file
  *      which allows the <code>syd</code> shell/batch script to write reload/shutdown
  *      commands.</li>  
@@ -79,6 +83,7 @@ public class DaemonOperation extends Operation {
 	
 	private WebServer webServer;
 	private WatchServer watchServer;
+	private MasterKeyAgent masterKeyAgent;
 	private ControlServer controlServer;
 	private LocalEventBus eventBus;
 	private DaemonConfigTO daemonConfig;
@@ -203,6 +208,7 @@ public class DaemonOperation extends Operation {
 		loadOrCreateConfig();
 		
 		startWebServer();
+		startMasterKeyAgent();
 		startWatchServer();
 		
 		enterControlLoop(); // This blocks until SHUTDOWN is received!
@@ -248,6 +254,7 @@ public class DaemonOperation extends Operation {
 	// General stopping and reloading functions
 
 	private void stopOperation() {
+		stopMasterKeyAgent();
 		stopWebServer();
 		stopWatchServer();
 	}
@@ -330,6 +337,42 @@ public class DaemonOperation extends Operation {
 		}
 	}
 	
+	// Master key agent starting and stopping functions
+
+	private void startMasterKeyAgent() throws IOException {
+		if (webServer != null && daemonConfig.getKeyAgent().isEnabled()) {
+			logger.log(Level.INFO, "Starting master key agent ...");
+
+			masterKeyAgent = new MasterKeyAgent(daemonConfig.getKeyAgent().getTtl() * 1000L);
+			masterKeyAgent.start();
+
+			// Write port to file, so that clients can find the agent
+			File daemonPortFile = new File(UserConfig.getUserConfigDir(), UserConfig.DAEMON_PORT_FILE);
+
+			daemonPortFile.createNewFile();
+			daemonPortFile.deleteOnExit();
+
+			try {
+				new Persister().write(daemonConfig.getPortTO(), daemonPortFile);
+			}
+			catch (Exception e) {
+				throw new IOException("Cannot write daemon port file " + daemonPortFile, e);
+			}
+		}
+		else {
+			logger.log(Level.INFO, "Not starting master key agent (disabled in config, or web server not running)");
+		}
+	}
+
+	private void stopMasterKeyAgent() {
+		if (masterKeyAgent != null) {
+			logger.log(Level.INFO, "Stopping master key agent ...");
+
+			new File(UserConfig.getUserConfigDir(), UserConfig.DAEMON_PORT_FILE).delete();
+			masterKeyAgent.stop();
+		}
+	}
+
 	// Watch server starting and stopping functions
 	
 	private void startWatchServer() throws ConfigException {
@@ -0,0 +1,283 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.daemon;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.syncany.config.LocalEventBus;
+import org.syncany.crypto.CipherException;
+import org.syncany.crypto.CipherParams;
+import org.syncany.crypto.CipherUtil;
+import org.syncany.crypto.SaltedSecretKey;
+import org.syncany.operations.daemon.messages.GetMasterKeyManagementRequest;
+import org.syncany.operations.daemon.messages.GetMasterKeyManagementResponse;
+import org.syncany.util.StringUtil;
+
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * The master key agent keeps recently derived master keys in the memory of the
+ * daemon, so that CLI commands do not have to re-run the (deliberately slow) key
+ * derivation function every time the user enters the same password for the same
+ * repository.
+ *
+ * <p>Master keys are identified by their salt. A cached key is only returned if the
+ * given password matches the password it was derived from. The agent does not store
+ * the password itself, but only a keyed hash (HMAC) of it, using a random key that
+ * never leaves the agent.
+ *
+ * <p>Each key is kept for a configurable time-to-live after its last use. Expired
+ * keys are overwritten in memory and discarded, as are all keys when the agent is
+ * stopped. Note that the JVM offers no way to prevent the memory from being swapped
+ * to disk, or to guarantee that no other copies of a key exist on the heap.
+ *
+ * <p>The agent answers {@link GetMasterKeyManagementRequest}s posted on the
+ * {@link LocalEventBus}, i.e. requests sent to the daemon's web server by the
+ * {@link MasterKeyAgentClient}. Requests are processed by at most {@link #REQUEST_THREADS}
+ * worker threads, and at most {@link #MAX_QUEUED_REQUESTS} requests are queued. Further
+ * requests are answered with {@link GetMasterKeyManagementResponse#NOK_BUSY}, so that
+ * a flood of requests cannot start an unbounded number of key derivations.
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class MasterKeyAgent {
+	private static final Logger logger = Logger.getLogger(MasterKeyAgent.class.getSimpleName());
+
+	private static final String VERIFIER_ALGORITHM = "HmacSHA256";
+	private static final int VERIFIER_KEY_SIZE = 32;
+	private static final long EXPIRY_CHECK_INTERVAL = 30 * 1000L;
+	private static final int REQUEST_THREADS = 2;
+	private static final int MAX_QUEUED_REQUESTS = 16;
+
+	private final long ttl;
+	private final byte[] verifierKey;
+	private final Map<String, CachedMasterKey> masterKeys;
+	private final LocalEventBus eventBus;
+
+	private Timer expiryTimer;
+	private ExecutorService requestExecutor;
+
+	/**
+	 * Creates a new master key agent.
+	 *
+	 * @param ttl Time (in milliseconds) a master key is kept after it was last used
+	 */
+	public MasterKeyAgent(long ttl) {
+		this.ttl = ttl;
+		this.verifierKey = CipherUtil.createRandomArray(VERIFIER_KEY_SIZE);
+		this.masterKeys = new HashMap<String, CachedMasterKey>();
+		this.eventBus = LocalEventBus.getInstance();
+	}
+
+	public void start() {
+		logger.log(Level.INFO, "Starting master key agent (TTL " + (ttl / 1000) + " sec) ...");
+
+		expiryTimer = new Timer("MasterKeyAgent", true);
+		expiryTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				removeExpiredMasterKeys();
+			}
+		}, EXPIRY_CHECK_INTERVAL, EXPIRY_CHECK_INTERVAL);
+
+		requestExecutor = new ThreadPoolExecutor(REQUEST_THREADS, REQUEST_THREADS, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(MAX_QUEUED_REQUESTS), new ThreadFactory() {
+					private int threadCount = 0;
+
+					@Override
+					public synchronized Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "MasterKeyAgent/Req-" + (++threadCount));
+						thread.setDaemon(true);
+
+						return thread;
+					}
+				});
+
+		eventBus.register(this);
+	}
+
+	public void stop() {
+		logger.log(Level.INFO, "Stopping master key agent ...");
+
+		eventBus.unregister(this);
+
+		if (expiryTimer != null) {
+			expiryTimer.cancel();
+			expiryTimer = null;
+		}
+
+		if (requestExecutor != null) {
+			requestExecutor.shutdownNow();
+			requestExecutor = null;
+		}
+
+		clear();
+	}
+
+	@Subscribe
+	public void onGetMasterKeyRequest(final GetMasterKeyManagementRequest request) {
+		// Deriving a master key takes a while, so we must not block the event bus
+		try {
+			requestExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						SaltedSecretKey masterKey = getMasterKey(request.getPassword(), request.getSalt());
+						eventBus.post(new GetMasterKeyManagementResponse(request.getId(), masterKey));
+					}
+					catch (Exception e) {
+						logger.log(Level.WARNING, "Cannot create master key.", e);
+						eventBus.post(new GetMasterKeyManagementResponse(GetMasterKeyManagementResponse.NOK_FAILED, request.getId(), "Cannot create master key."));
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			logger.log(Level.WARNING, "Too many pending master key requests. Rejecting request " + request.getId() + ".");
+			eventBus.post(new GetMasterKeyManagementResponse(GetMasterKeyManagementResponse.NOK_BUSY, request.getId(), "Too many pending master key requests."));
+		}
+	}
+
+	/**
+	 * Returns the master key for the given password and salt. If the key is cached
+	 * and was derived from the same password, the cached key is returned and its
+	 * time-to-live is reset. Otherwise, the key is derived and then cached.
+	 */
+	public SaltedSecretKey getMasterKey(String password, byte[] salt) throws CipherException {
+		String saltHex = StringUtil.toHex(salt);
+		byte[] passwordVerifier = createPasswordVerifier(password, salt);
+
+		synchronized (masterKeys) {
+			CachedMasterKey cachedMasterKey = masterKeys.get(saltHex);
+
+			if (cachedMasterKey != null && MessageDigest.isEqual(cachedMasterKey.passwordVerifier, passwordVerifier)) {
+				logger.log(Level.INFO, "Master key for salt " + saltHex + " found in agent.");
+
+				cachedMasterKey.expiryTime = System.currentTimeMillis() + ttl;
+				return toSaltedSecretKey(cachedMasterKey.keyBytes, salt);
+			}
+		}
+
+		logger.log(Level.INFO, "Master key for salt " + saltHex + " not found in agent. Creating new key ...");
+		SaltedSecretKey masterKey = CipherUtil.createMasterKey(password, salt);
+
+		synchronized (masterKeys) {
+			CachedMasterKey replacedMasterKey = masterKeys.put(saltHex, new CachedMasterKey(passwordVerifier, masterKey.getEncoded(), System.currentTimeMillis() + ttl));
+
+			if (replacedMasterKey != null) {
+				replacedMasterKey.wipe();
+			}
+		}
+
+		return masterKey;
+	}
+
+	/**
+	 * Overwrites and removes all cached master keys.
+	 */
+	public void clear() {
+		synchronized (masterKeys) {
+			logger.log(Level.INFO, "Clearing " + masterKeys.size() + " master key(s) from agent.");
+
+			for (CachedMasterKey cachedMasterKey : masterKeys.values()) {
+				cachedMasterKey.wipe();
+			}
+
+			masterKeys.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of master keys currently held by the agent.
+	 */
+	public int size() {
+		synchronized (masterKeys) {
+			return masterKeys.size();
+		}
+	}
+
+	void removeExpiredMasterKeys() {
+		long now = System.currentTimeMillis();
+
+		synchronized (masterKeys) {
+			Iterator<CachedMasterKey> cachedMasterKeyIterator = masterKeys.values().iterator();
+
+			while (cachedMasterKeyIterator.hasNext()) {
+				CachedMasterKey cachedMasterKey = cachedMasterKeyIterator.next();
+
+				if (cachedMasterKey.expiryTime <= now) {
+					logger.log(Level.INFO, "Master key expired. Removing from agent.");
+
+					cachedMasterKey.wipe();
+					cachedMasterKeyIterator.remove();
+				}
+			}
+		}
+	}
+
+	private byte[] createPasswordVerifier(String password, byte[] salt) throws CipherException {
+		try {
+			Mac mac = Mac.getInstance(VERIFIER_ALGORITHM);
+			mac.init(new SecretKeySpec(verifierKey, VERIFIER_ALGORITHM));
+
+			mac.update(salt);
+			return mac.doFinal(password.getBytes("UTF-8"));
+		}
+		catch (Exception e) {
+			throw new CipherException(e);
+		}
+	}
+
+	private SaltedSecretKey toSaltedSecretKey(byte[] keyBytes, byte[] salt) {
+		return CipherUtil.toSaltedSecretKey(Arrays.copyOf(keyBytes, keyBytes.length), salt, CipherParams.MASTER_KEY_DERIVATION_FUNCTION);
+	}
+
+	private static class CachedMasterKey {
+		private final byte[] passwordVerifier;
+		private final byte[] keyBytes;
+		private long expiryTime;
+
+		public CachedMasterKey(byte[] passwordVerifier, byte[] keyBytes, long expiryTime) {
+			this.passwordVerifier = passwordVerifier;
+			this.keyBytes = keyBytes;
+			this.expiryTime = expiryTime;
+		}
+
+		public void wipe() {
+			Arrays.fill(passwordVerifier, (byte) 0);
+			Arrays.fill(keyBytes, (byte) 0);
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.daemon;
+
+import java.io.File;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.ssl.AllowAllHostnameVerifier;
+import org.apache.http.conn.ssl.X509HostnameVerifier;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.simpleframework.xml.core.Persister;
+import org.syncany.config.UserConfig;
+import org.syncany.config.to.PortTO;
+import org.syncany.crypto.CipherException;
+import org.syncany.crypto.CipherUtil;
+import org.syncany.crypto.SaltedSecretKey;
+import org.syncany.operations.daemon.messages.GetMasterKeyManagementRequest;
+import org.syncany.operations.daemon.messages.GetMasterKeyManagementResponse;
+import org.syncany.operations.daemon.messages.api.Response;
+import org.syncany.operations.daemon.messages.api.XmlMessageFactory;
+import org.syncany.util.PidFileUtil;
+
+/**
+ * The master key agent client creates master keys from a password and a salt. If
+ * a daemon with an enabled {@link MasterKeyAgent} is running, the key is requested
+ * from the agent, which might have the key cached from an earlier request. If
+ * no agent is available, or the request fails for any reason, the key is
+ * derived locally using {@link CipherUtil#createMasterKey(String, byte[])}.
+ *
+ * <p>The agent is reached through the REST API of the daemon's web server, using
+ * the access credentials the daemon writes to the {@link UserConfig#DAEMON_PORT_FILE}
+ * while it is running.
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class MasterKeyAgentClient {
+	private static final Logger logger = Logger.getLogger(MasterKeyAgentClient.class.getSimpleName());
+
+	private static final String SERVER_SCHEMA = "https://";
+	private static final String SERVER_HOSTNAME = "127.0.0.1";
+	private static final String SERVER_REST_API = WebServer.API_ENDPOINT_REST_XML;
+
+	private static final int CONNECT_TIMEOUT = 2 * 1000;
+	private static final int RESPONSE_TIMEOUT = 2 * 60 * 1000;
+
+	public static SaltedSecretKey createMasterKey(String password, byte[] salt) throws CipherException {
+		SaltedSecretKey masterKey = requestMasterKeyFromAgent(password, salt);
+
+		if (masterKey != null) {
+			return masterKey;
+		}
+		else {
+			return CipherUtil.createMasterKey(password, salt);
+		}
+	}
+
+	private static SaltedSecretKey requestMasterKeyFromAgent(String password, byte[] salt) {
+		File pidFile = new File(UserConfig.getUserConfigDir(), DaemonOperation.PID_FILE);
+		File portFile = new File(UserConfig.getUserConfigDir(), UserConfig.DAEMON_PORT_FILE);
+
+		if (!portFile.exists() || !PidFileUtil.isProcessRunning(pidFile)) {
+			logger.log(Level.INFO, "Master key agent not available (daemon not running or agent disabled).");
+			return null;
+		}
+
+		try {
+			// Read port config (for daemon) from port file
+			PortTO portConfig = new Persister().read(PortTO.class, portFile);
+
+			// Create authentication details
+			CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+			credentialsProvider.setCredentials(
+					new AuthScope(SERVER_HOSTNAME, portConfig.getPort()),
+					new UsernamePasswordCredentials(portConfig.getUser().getUsername(), portConfig.getUser().getPassword()));
+
+			// Allow all hostnames in CN; this is okay as long as hostname is localhost/127.0.0.1!
+			X509HostnameVerifier hostnameVerifier = new AllowAllHostnameVerifier();
+
+			// Fetch the SSL context (using the user key/trust store)
+			SSLContext sslContext = UserConfig.createUserSSLContext();
+
+			// Deriving a key takes a while, so the response timeout must be generous
+			RequestConfig requestConfig = RequestConfig.custom()
+					.setConnectTimeout(CONNECT_TIMEOUT)
+					.setSocketTimeout(RESPONSE_TIMEOUT)
+					.build();
+
+			CloseableHttpClient client = HttpClients
+					.custom()
+					.setSslcontext(sslContext)
+					.setHostnameVerifier(hostnameVerifier)
+					.setDefaultCredentialsProvider(credentialsProvider)
+					.setDefaultRequestConfig(requestConfig)
+					.build();
+
+			try {
+				GetMasterKeyManagementRequest request = new GetMasterKeyManagementRequest(password, salt);
+				request.setId(Math.abs(new Random().nextInt()));
+
+				String serverUri = SERVER_SCHEMA + SERVER_HOSTNAME + ":" + portConfig.getPort() + SERVER_REST_API;
+
+				HttpPost httpPost = new HttpPost(serverUri);
+				httpPost.setEntity(new StringEntity(XmlMessageFactory.toXml(request)));
+
+				logger.log(Level.INFO, "Requesting master key from agent at " + serverUri + " ...");
+
+				HttpResponse httpResponse = client.execute(httpPost);
+				Response response = XmlMessageFactory.toResponse(IOUtils.toString(httpResponse.getEntity().getContent()));
+
+				if (response instanceof GetMasterKeyManagementResponse && response.getCode() == GetMasterKeyManagementResponse.OK) {
+					return ((GetMasterKeyManagementResponse) response).getMasterKey();
+				}
+				else {
+					logger.log(Level.WARNING, "Master key agent returned an unexpected response: " + response.getClass().getSimpleName() + ", code " + response.getCode());
+					return null;
+				}
+			}
+			finally {
+				client.close();
+			}
+		}
+		catch (Exception e) {
+			logger.log(Level.WARNING, "Cannot get master key from agent; creating key locally.", e);
+			return null;
+		}
+	}
+}
@@ -56,6 +56,7 @@ import org.syncany.operations.daemon.messages.api.ExternalEvent;
 import org.syncany.operations.daemon.messages.api.JsonMessageFactory;
 import org.syncany.operations.daemon.messages.api.Message;
 import org.syncany.operations.daemon.messages.api.Response;
+import org.syncany.operations.daemon.messages.api.SensitiveMessage;
 import org.syncany.operations.daemon.messages.api.XmlMessageFactory;
 import org.syncany.plugins.web.WebInterfacePlugin;
 
@@ -329,19 +330,28 @@ public class WebServer {
 	private void sendTo(WebSocketChannel clientChannel, Message message) throws Exception {
 		String messageStr = createMessageStr(clientChannel, message);
 		
-		logger.log(Level.INFO, "Sending message to " + clientChannel + ": " + messageStr);
+		logger.log(Level.INFO, "Sending message to " + clientChannel + ": " + toLogString(message, messageStr));
 		WebSockets.sendText(messageStr, clientChannel, null);
 	}
 
 	private void sendTo(HttpServerExchange serverExchange, Response response) throws Exception {
 		String responseStr = createMessageStr(response);
 
-		logger.log(Level.INFO, "Sending message to " + serverExchange.getHostAndPort() + ": " + responseStr);
+		logger.log(Level.INFO, "Sending message to " + serverExchange.getHostAndPort() + ": " + toLogString(response, responseStr));
 
 		serverExchange.getResponseSender().send(responseStr);
 		serverExchange.endExchange();
 	}
 	
+	private String toLogString(Message message, String messageStr) {
+		if (message instanceof SensitiveMessage) {
+			return message.getClass().getSimpleName() + " (content hidden)";
+		}
+		else {
+			return messageStr;
+		}
+	}
+
 	private String createMessageStr(WebSocketChannel channel, Message message) throws Exception {
 		RequestFormatType requestFormatType = webSocketChannelRequestFormatMap.get(channel);
 		return createMessageStr(message, requestFormatType);
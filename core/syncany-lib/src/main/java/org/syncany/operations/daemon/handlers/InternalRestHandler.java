@@ -31,6 +31,7 @@ import org.syncany.operations.daemon.WebServer.RequestFormatType;
 import org.syncany.operations.daemon.messages.BadRequestResponse;
 import org.syncany.operations.daemon.messages.api.JsonMessageFactory;
 import org.syncany.operations.daemon.messages.api.Request;
+import org.syncany.operations.daemon.messages.api.SensitiveMessage;
 import org.syncany.operations.daemon.messages.api.XmlMessageFactory;
 
 import com.google.common.base.Joiner;
@@ -76,7 +77,6 @@ public class InternalRestHandler implements HttpHandler {
 
 	private void handleNormalRequest(HttpServerExchange exchange) throws IOException {
 		String message = IOUtils.toString(exchange.getInputStream()); // TODO [high] Read entire file to memory. Dangerous!
-		logger.log(Level.INFO, "REST message received: " + message);
 
 		try {
 			Request request;
@@ -94,6 +94,13 @@ public class InternalRestHandler implements HttpHandler {
 					throw new Exception("Unknown request format. Valid formats are " + Joiner.on(", ").join(RequestFormatType.values()));
 			}
 
+			if (!(request instanceof SensitiveMessage)) {
+				logger.log(Level.INFO, "REST message received: " + message);
+			}
+			else {
+				logger.log(Level.INFO, "REST message received: " + request.getClass().getSimpleName() + " (content hidden)");
+			}
+
 			daemonWebServer.putRequestFormatType(request.getId(), requestFormatType);
 			daemonWebServer.putCacheRestRequest(request.getId(), exchange);
 			
@@ -32,6 +32,7 @@ import org.syncany.operations.daemon.messages.api.JsonMessageFactory;
 import org.syncany.operations.daemon.messages.api.EventResponse;
 import org.syncany.operations.daemon.messages.api.Message;
 import org.syncany.operations.daemon.messages.api.Request;
+import org.syncany.operations.daemon.messages.api.SensitiveMessage;
 import org.syncany.operations.daemon.messages.api.XmlMessageFactory;
 
 import com.google.common.base.Joiner;
@@ -137,8 +138,6 @@ public class InternalWebSocketHandler implements WebSocketConnectionCallback {
 	}
 
 	private void handleMessage(WebSocketChannel clientSocket, String messageStr) {
-		logger.log(Level.INFO, "Web socket message received: " + messageStr);
-
 		try {
 			Message message;
 			
@@ -155,6 +154,13 @@ public class InternalWebSocketHandler implements WebSocketConnectionCallback {
 					throw new Exception("Unknown request format. Valid formats are " + Joiner.on(", ").join(RequestFormatType.values()));
 			}
 
+			if (!(message instanceof SensitiveMessage)) {
+				logger.log(Level.INFO, "Web socket message received: " + messageStr);
+			}
+			else {
+				logger.log(Level.INFO, "Web socket message received: " + message.getClass().getSimpleName() + " (content hidden)");
+			}
+
 			if (message instanceof Request) {
 				handleRequest(clientSocket, (Request) message);
 			}
@@ -0,0 +1,55 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.daemon.messages;
+
+import org.simpleframework.xml.Element;
+import org.syncany.operations.daemon.MasterKeyAgent;
+import org.syncany.operations.daemon.messages.api.ManagementRequest;
+import org.syncany.operations.daemon.messages.api.SensitiveMessage;
+import org.syncany.util.StringUtil;
+
+/**
+ * Requests the master key for the given password and salt from the {@link MasterKeyAgent}
+ * of the daemon. The agent answers with a {@link GetMasterKeyManagementResponse}.
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class GetMasterKeyManagementRequest extends ManagementRequest implements SensitiveMessage {
+	@Element(required = true)
+	private String password;
+
+	@Element(required = true)
+	private String salt;
+
+	public GetMasterKeyManagementRequest() {
+		// Nothing
+	}
+
+	public GetMasterKeyManagementRequest(String password, byte[] salt) {
+		this.password = password;
+		this.salt = StringUtil.toHex(salt);
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public byte[] getSalt() {
+		return StringUtil.fromHex(salt);
+	}
+}
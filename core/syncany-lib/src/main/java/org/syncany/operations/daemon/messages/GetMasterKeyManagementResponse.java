@@ -0,0 +1,68 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.daemon.messages;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.simpleframework.xml.Element;
+import org.syncany.crypto.CipherParams;
+import org.syncany.crypto.SaltedSecretKey;
+import org.syncany.operations.daemon.messages.api.ManagementResponse;
+import org.syncany.operations.daemon.messages.api.SensitiveMessage;
+import org.syncany.util.StringUtil;
+
+/**
+ * Response to a {@link GetMasterKeyManagementRequest}. If the code is {@link #OK},
+ * the response contains the master key.
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class GetMasterKeyManagementResponse extends ManagementResponse implements SensitiveMessage {
+	public static final int OK = 200;
+	public static final int NOK_FAILED = 500;
+	public static final int NOK_BUSY = 503;
+
+	@Element(required = false)
+	private String masterKey;
+
+	@Element(required = false)
+	private String masterKeySalt;
+
+	public GetMasterKeyManagementResponse() {
+		// Nothing
+	}
+
+	public GetMasterKeyManagementResponse(int code, int requestId, String message) {
+		super(code, requestId, message);
+	}
+
+	public GetMasterKeyManagementResponse(int requestId, SaltedSecretKey masterKey) {
+		super(OK, requestId, null);
+
+		this.masterKey = StringUtil.toHex(masterKey.getEncoded());
+		this.masterKeySalt = StringUtil.toHex(masterKey.getSalt());
+	}
+
+	public SaltedSecretKey getMasterKey() {
+		if (masterKey == null || masterKeySalt == null) {
+			return null;
+		}
+
+		return new SaltedSecretKey(new SecretKeySpec(StringUtil.fromHex(masterKey), CipherParams.MASTER_KEY_DERIVATION_FUNCTION), StringUtil.fromHex(masterKeySalt));
+	}
+}
@@ -17,11 +17,22 @@
  */
 package org.syncany.operations.down;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -29,15 +40,20 @@ import org.syncany.config.Config;
 import org.syncany.database.ChunkEntry.ChunkChecksum;
 import org.syncany.database.FileContent;
 import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileType;
 import org.syncany.database.MemoryDatabase;
+import org.syncany.database.MultiChunkEntry;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.database.PartialFileHistory;
 import org.syncany.database.SqlDatabase;
 import org.syncany.operations.Downloader;
 import org.syncany.operations.Operation;
 import org.syncany.operations.OperationResult;
+import org.syncany.operations.down.MultiChunkPrefetcher.Window;
+import org.syncany.operations.down.actions.ChangeFileSystemAction;
 import org.syncany.operations.down.actions.FileCreatingFileSystemAction;
 import org.syncany.operations.down.actions.FileSystemAction;
+import org.syncany.operations.down.actions.NewFileSystemAction;
 import org.syncany.plugins.transfer.TransferManager;
 
 /**
@@ -48,34 +64,52 @@ import org.syncany.plugins.transfer.TransferManager;
  *  <li>Determine whether the local branch needs to be updated (new database versions); if so, determine
  *      local {@link FileSystemAction}s</li>
  *  <li>Determine, download and decrypt required multi chunks from remote storage from file actions
- *      (implemented in {@link #determineMultiChunksToDownload(FileVersion, MemoryDatabase) determineMultiChunksToDownload()},
+ *      (implemented in {@link #determineMultiChunksToDownload(FileVersion, MemoryDatabase, Set) determineMultiChunksToDownload()},
  *      and {@link Downloader#downloadAndDecryptMultiChunks(Set) downloadAndDecryptMultiChunks()})</li>
  *  <li>Apply file system actions locally, creating conflict files where necessary if local file does
  *      not match the expected file (implemented in {@link #applyFileSystemActions(List) applyFileSystemActions()} </li>
  * </ul>
  * 
+ * <p>If a multichunk cache budget is set (see {@link DownOperationOptions#getMultiChunkCacheBudget()}), the 
+ * multichunks are not downloaded all at once. Instead, they are prefetched by the {@link MultiChunkPrefetcher} in the
+ * order in which the sorted actions need them, and the actions are applied as soon as their multichunks are available.
+ * Multichunks are removed from the cache once no later action needs them.
+ * 
+ * <p>If local chunks are enabled (see {@link DownOperationOptions#isLocalChunks()}), the {@link LocalChunkLocator}
+ * is used to find the chunks of new and changed files in the local folder. Multichunks are only downloaded for the
+ * chunks that cannot be found locally.
+ * 
+ * <p>Actions that reconstruct files (new and changed files) make up most of the work when applying changes.
+ * Consecutive actions of this kind are executed concurrently if they touch disjoint paths. All other
+ * actions are executed one by one, in the order determined by the {@link FileSystemActionComparator}.
+ * 
  * @author Philipp C. Heckel (philipp.heckel@gmail.com)
  */
 public class ApplyChangesOperation extends Operation {
 	private static final Logger logger = Logger.getLogger(DownOperation.class.getSimpleName());
+	private static final int APPLY_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+	private static final long UNKNOWN_MULTICHUNK_SIZE = 4 * 1024 * 1024;
 
 	private SqlDatabase localDatabase;
 	private Downloader downloader;
 
 	private MemoryDatabase winnersDatabase;
+	private DownOperationOptions options;
 	private DownOperationResult result;
+	private LocalChunkLocator chunkLocator;
 	
 	private boolean cleanupOccurred;
 	private List<PartialFileHistory> preDeleteFileHistoriesWithLastVersion;
 
 	public ApplyChangesOperation(Config config, SqlDatabase localDatabase, TransferManager transferManager, MemoryDatabase winnersDatabase,
-			DownOperationResult result, boolean cleanupOccurred, List<PartialFileHistory> preDeleteFileHistoriesWithLastVersion) {
+			DownOperationOptions options, DownOperationResult result, boolean cleanupOccurred, List<PartialFileHistory> preDeleteFileHistoriesWithLastVersion) {
 		
 		super(config);
 		
 		this.localDatabase = localDatabase;
 		this.downloader = new Downloader(config, transferManager);
 		this.winnersDatabase = winnersDatabase;
+		this.options = options;
 		this.result = result;
 		this.cleanupOccurred = cleanupOccurred;
 		this.preDeleteFileHistoriesWithLastVersion = preDeleteFileHistoriesWithLastVersion;
@@ -95,12 +129,31 @@ public class ApplyChangesOperation extends Operation {
 			actions = actionReconciliator.determineFileSystemActions(winnersDatabase);
 		}
 
-		Set<MultiChunkId> unknownMultiChunks = determineRequiredMultiChunks(actions, winnersDatabase);
-		
-		downloader.downloadAndDecryptMultiChunks(unknownMultiChunks);
-		result.getDownloadedMultiChunks().addAll(unknownMultiChunks);
+		if (options.isLocalChunks()) {
+			chunkLocator = new LocalChunkLocator(config, localDatabase);
+		}
+
+		try {
+			if (options.getMultiChunkCacheBudget() > 0) {
+				applyFileSystemActionsWithPrefetching(actions);
+			}
+			else {
+				Set<MultiChunkId> unknownMultiChunks = determineRequiredMultiChunks(actions, winnersDatabase, new HashSet<ChunkChecksum>());
+	
+				downloader.downloadAndDecryptMultiChunks(unknownMultiChunks);
+				result.getDownloadedMultiChunks().addAll(unknownMultiChunks);
+	
+				applyFileSystemActions(actions);
+			}
+		}
+		finally {
+			if (chunkLocator != null) {
+				logger.log(Level.INFO, "- Used " + chunkLocator.getLocatedChunkCount() + " chunk(s) from local files (" + chunkLocator.getLocatedBytes()
+						+ " bytes), removing them from cache ...");
 
-		applyFileSystemActions(actions);
+				chunkLocator.clear();
+			}
+		}
 		
 		return null;
 	}
@@ -108,13 +161,16 @@ public class ApplyChangesOperation extends Operation {
 	/**
 	 * Finds the multichunks that need to be downloaded to apply the given file system actions.
 	 * The method looks at all {@link FileCreatingFileSystemAction}s and returns their multichunks. 
+	 * Chunks found in local files (if local chunks are enabled) are added to the given set. 
 	 */
-	private Set<MultiChunkId> determineRequiredMultiChunks(List<FileSystemAction> actions, MemoryDatabase winnersDatabase) {
+	private Set<MultiChunkId> determineRequiredMultiChunks(List<FileSystemAction> actions, MemoryDatabase winnersDatabase,
+			Set<ChunkChecksum> localChunks) {
+		
 		Set<MultiChunkId> multiChunksToDownload = new HashSet<MultiChunkId>();
 
 		for (FileSystemAction action : actions) {
-			if (action instanceof FileCreatingFileSystemAction) { // TODO [low] This adds ALL multichunks even though some might be available locally
-				multiChunksToDownload.addAll(determineMultiChunksToDownload(action.getFile2(), winnersDatabase));
+			if (action instanceof FileCreatingFileSystemAction) {
+				multiChunksToDownload.addAll(determineMultiChunksToDownload(action.getFile2(), winnersDatabase, localChunks));
 			}
 		}
 
@@ -124,9 +180,27 @@ public class ApplyChangesOperation extends Operation {
 	/**
 	 * Finds the multichunks that need to be downloaded for the given file version -- using the local 
 	 * database and given winners database. Returns a set of multichunk identifiers.
+	 * 
+	 * <p>If the local chunk locator is enabled, only the multichunks of the chunks that cannot be 
+	 * found in local files are returned. The chunks found locally are added to the given set.
 	 */
-	private Collection<MultiChunkId> determineMultiChunksToDownload(FileVersion fileVersion, MemoryDatabase winnersDatabase) {
-		Set<MultiChunkId> multiChunksToDownload = new HashSet<MultiChunkId>();
+	private Collection<MultiChunkId> determineMultiChunksToDownload(FileVersion fileVersion, MemoryDatabase winnersDatabase,
+			Set<ChunkChecksum> localChunks) {
+		
+		if (chunkLocator != null) {
+			return determineMultiChunksToDownloadWithLocalChunks(fileVersion, winnersDatabase, localChunks);
+		}
+		else {
+			return determineAllMultiChunks(fileVersion, winnersDatabase);
+		}
+	}
+
+	/**
+	 * Finds all multichunks of the given file version -- using the local database and given winners
+	 * database, without looking for its chunks in local files. Returns a set of multichunk identifiers.
+	 */
+	private Collection<MultiChunkId> determineAllMultiChunks(FileVersion fileVersion, MemoryDatabase winnersDatabase) {
+		Set<MultiChunkId> multiChunksToDownload = new LinkedHashSet<MultiChunkId>();
 
 		// First: Check if we know this file locally!
 		List<MultiChunkId> multiChunkIds = localDatabase.getMultiChunkIds(fileVersion.getChecksum());
@@ -141,37 +215,86 @@ public class ApplyChangesOperation extends Operation {
 
 			if (winningFileHasContent) { // File can be empty!
 				List<ChunkChecksum> fileChunks = winningFileContent.getChunks(); 
-				
-				// TODO [medium] Instead of just looking for multichunks to download here, we should look for chunks in local files as well
-				// and return the chunk positions in the local files ChunkPosition (chunk123 at file12, offset 200, size 250)
-				
-				Map<ChunkChecksum, MultiChunkId> checksumsWithMultiChunkIds = localDatabase.getMultiChunkIdsByChecksums(fileChunks);
-				
-				for (ChunkChecksum chunkChecksum : fileChunks) {
-					MultiChunkId multiChunkIdForChunk = checksumsWithMultiChunkIds.get(chunkChecksum);
-					if (multiChunkIdForChunk == null) {
-						multiChunkIdForChunk = winnersDatabase.getMultiChunkIdForChunk(chunkChecksum);
-						
-						if (multiChunkIdForChunk == null) {
-							throw new RuntimeException("Cannot find multichunk for chunk "+chunkChecksum);	
-						}
-					}
-					
-					if (!multiChunksToDownload.contains(multiChunkIdForChunk)) {
-						logger.log(Level.INFO, "  + Adding multichunk " + multiChunkIdForChunk + " to download list ...");
-						multiChunksToDownload.add(multiChunkIdForChunk);
-					}
-				}
+				addMultiChunksForChunks(fileChunks, winnersDatabase, multiChunksToDownload);
 			}
 		}
 		
 		return multiChunksToDownload;
 	}
+
+	/**
+	 * Finds the multichunks that need to be downloaded for the given file version, looking for its
+	 * chunks in local files first (see {@link LocalChunkLocator}). Chunks found locally are copied to
+	 * the cache and added to the given set; only the multichunks of the remaining chunks are returned. 
+	 */
+	private Collection<MultiChunkId> determineMultiChunksToDownloadWithLocalChunks(FileVersion fileVersion, MemoryDatabase winnersDatabase,
+			Set<ChunkChecksum> localChunks) {
+		
+		Set<MultiChunkId> multiChunksToDownload = new LinkedHashSet<MultiChunkId>();
+		FileContent fileContent = localDatabase.getFileContent(fileVersion.getChecksum(), true);
+
+		if (fileContent == null) {
+			fileContent = winnersDatabase.getContent(fileVersion.getChecksum());
+		}
+
+		if (fileContent != null) { // File can be empty!
+			List<ChunkChecksum> fileChunks = fileContent.getChunks();
+			Set<ChunkChecksum> availableChunks = chunkLocator.locateChunks(fileChunks);
+			localChunks.addAll(availableChunks);
+
+			List<ChunkChecksum> missingChunks = new ArrayList<ChunkChecksum>();
+
+			for (ChunkChecksum chunkChecksum : fileChunks) {
+				if (!availableChunks.contains(chunkChecksum)) {
+					missingChunks.add(chunkChecksum);
+				}
+			}
+
+			logger.log(Level.INFO, "  + Found " + (fileChunks.size() - missingChunks.size()) + "/" + fileChunks.size() + " chunk(s) of "
+					+ fileVersion.getPath() + " in local files.");
+
+			if (missingChunks.size() > 0) {
+				addMultiChunksForChunks(missingChunks, winnersDatabase, multiChunksToDownload);
+			}
+		}
+
+		return multiChunksToDownload;
+	}
+
+	/**
+	 * Looks up the multichunks of the given chunks in the local database and the winners
+	 * database, and adds them to the given set of multichunks to download.
+	 */
+	private void addMultiChunksForChunks(List<ChunkChecksum> chunkChecksums, MemoryDatabase winnersDatabase, Set<MultiChunkId> multiChunksToDownload) {
+		Map<ChunkChecksum, MultiChunkId> checksumsWithMultiChunkIds = localDatabase.getMultiChunkIdsByChecksums(chunkChecksums);
+		
+		for (ChunkChecksum chunkChecksum : chunkChecksums) {
+			MultiChunkId multiChunkIdForChunk = checksumsWithMultiChunkIds.get(chunkChecksum);
+			if (multiChunkIdForChunk == null) {
+				multiChunkIdForChunk = winnersDatabase.getMultiChunkIdForChunk(chunkChecksum);
+				
+				if (multiChunkIdForChunk == null) {
+					throw new RuntimeException("Cannot find multichunk for chunk "+chunkChecksum);	
+				}
+			}
+			
+			if (!multiChunksToDownload.contains(multiChunkIdForChunk)) {
+				logger.log(Level.INFO, "  + Adding multichunk " + multiChunkIdForChunk + " to download list ...");
+				multiChunksToDownload.add(multiChunkIdForChunk);
+			}
+		}
+	}
 	
 	/**
 	 * Applies the given file system actions in a sensible order. To do that, 
 	 * the given actions are first sorted using the {@link FileSystemActionComparator} and
-	 * then executed individually using {@link FileSystemAction#execute()}.
+	 * then executed using {@link FileSystemAction#execute()}.
+	 * 
+	 * <p>The sorted actions are split into batches: A batch is either a single action that must
+	 * be executed on its own, or a run of consecutive file-reconstructing actions with disjoint
+	 * paths (see {@link #isConcurrentAction(FileSystemAction)}). The actions of a batch are executed
+	 * concurrently. Since batches are executed in order, all dependencies of the comparator (e.g.
+	 * new folders before files, deletions before renames) are respected.
 	 */
 	private void applyFileSystemActions(List<FileSystemAction> actions) throws Exception {
 		// Sort
@@ -181,17 +304,289 @@ public class ApplyChangesOperation extends Operation {
 		logger.log(Level.FINER, "- Applying file system actions (sorted!) ...");
 
 		// Apply
+		ExecutorService applyExecutor = Executors.newFixedThreadPool(APPLY_THREADS);
+
+		try {
+			applySortedFileSystemActions(applyExecutor, actions);
+		}
+		finally {
+			applyExecutor.shutdownNow();
+			applyExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Applies the given file system actions like {@link #applyFileSystemActions(List) applyFileSystemActions()},
+	 * but downloads the required multichunks window by window (see {@link MultiChunkPrefetcher}): While the actions of
+	 * one window are applied, the multichunks of the next window are downloaded in the background.
+	 * 
+	 * <p>Windows are planned using all multichunks of the actions. If local chunks are enabled, the chunks of a window's
+	 * actions are only located (and copied to the cache) right before its multichunks are prefetched, and they are removed 
+	 * from the cache after the window has been applied. Since located chunks replace parts of the planned multichunks,
+	 * the cache stays within the budget.
+	 */
+	private void applyFileSystemActionsWithPrefetching(List<FileSystemAction> actions) throws Exception {
+		// Sort
+		FileSystemActionComparator actionComparator = new FileSystemActionComparator();
+		actionComparator.sort(actions);
+
+		// Plan windows in the order the actions will consume the multichunks
+		List<Collection<MultiChunkId>> actionMultiChunkIds = new ArrayList<Collection<MultiChunkId>>();
+		Map<MultiChunkId, Long> multiChunkSizes = new HashMap<MultiChunkId, Long>();
+
 		for (FileSystemAction action : actions) {
-			if (logger.isLoggable(Level.FINER)) {
-				logger.log(Level.FINER, "   +  {0}", action);
+			Collection<MultiChunkId> multiChunkIds = Collections.emptyList();
+
+			if (action instanceof FileCreatingFileSystemAction) {
+				multiChunkIds = determineAllMultiChunks(action.getFile2(), winnersDatabase);
 			}
 
-			// Execute the file system action
-			
-			// Note that exceptions are not caught here, to prevent 
-			// apply-failed-delete-on-up situations.
-			
-			action.execute(); 
+			for (MultiChunkId multiChunkId : multiChunkIds) {
+				MultiChunkEntry multiChunk = winnersDatabase.getMultiChunk(multiChunkId);
+				multiChunkSizes.put(multiChunkId, (multiChunk != null) ? multiChunk.getSize() : UNKNOWN_MULTICHUNK_SIZE);
+			}
+
+			actionMultiChunkIds.add(multiChunkIds);
+		}
+
+		List<Window> windows = MultiChunkPrefetcher.planWindows(actionMultiChunkIds, multiChunkSizes, options.getMultiChunkCacheBudget());
+		logger.log(Level.INFO, "- Applying " + actions.size() + " file system actions (sorted!) in " + windows.size() + " window(s) ...");
+
+		// Apply window by window, prefetching the next one
+		MultiChunkPrefetcher prefetcher = new MultiChunkPrefetcher(config, downloader);
+		ExecutorService applyExecutor = Executors.newFixedThreadPool(APPLY_THREADS);
+
+		try {
+			Set<ChunkChecksum> windowLocalChunks = new HashSet<ChunkChecksum>();
+			Set<MultiChunkId> windowMultiChunkIds = null;
+
+			if (windows.size() > 0) {
+				windowMultiChunkIds = prefetchWindow(prefetcher, actions, windows.get(0), windowLocalChunks);
+			}
+
+			for (int i = 0; i < windows.size(); i++) {
+				Window window = windows.get(i);
+
+				prefetcher.awaitPrefetched(window);
+				result.getDownloadedMultiChunks().addAll(windowMultiChunkIds);
+
+				Set<ChunkChecksum> nextWindowLocalChunks = new HashSet<ChunkChecksum>();
+
+				if (i + 1 < windows.size()) {
+					windowMultiChunkIds = prefetchWindow(prefetcher, actions, windows.get(i + 1), nextWindowLocalChunks);
+				}
+
+				applySortedFileSystemActions(applyExecutor, actions.subList(window.getFromActionIndex(), window.getToActionIndex()));
+
+				prefetcher.release(window);
+				releaseLocalChunks(windowLocalChunks, nextWindowLocalChunks);
+
+				windowLocalChunks = nextWindowLocalChunks;
+			}
+		}
+		finally {
+			prefetcher.close();
+
+			applyExecutor.shutdownNow();
+			applyExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Determines the multichunks required by the actions of the given window and starts prefetching them. If local 
+	 * chunks are enabled, the chunks of the window's actions are located first, and the chunks found locally are added 
+	 * to the given set. Returns the multichunks that are prefetched.
+	 */
+	private Set<MultiChunkId> prefetchWindow(MultiChunkPrefetcher prefetcher, List<FileSystemAction> actions, Window window,
+			Set<ChunkChecksum> windowLocalChunks) {
+
+		List<FileSystemAction> windowActions = actions.subList(window.getFromActionIndex(), window.getToActionIndex());
+		Set<MultiChunkId> windowMultiChunkIds = determineRequiredMultiChunks(windowActions, winnersDatabase, windowLocalChunks);
+
+		prefetcher.prefetch(window, windowMultiChunkIds);
+		return windowMultiChunkIds;
+	}
+
+	/**
+	 * Removes the chunks located for a window from the cache once the window has been applied,
+	 * except for the chunks that are also used by the next window.
+	 */
+	private void releaseLocalChunks(Set<ChunkChecksum> windowLocalChunks, Set<ChunkChecksum> nextWindowLocalChunks) {
+		if (chunkLocator != null) {
+			Set<ChunkChecksum> releasedLocalChunks = new HashSet<ChunkChecksum>(windowLocalChunks);
+			releasedLocalChunks.removeAll(nextWindowLocalChunks);
+
+			chunkLocator.release(releasedLocalChunks);
+		}
+	}
+
+	/**
+	 * Applies the given (sorted) actions in batches, as described in {@link #applyFileSystemActions(List) 
+	 * applyFileSystemActions()}, using the given executor for concurrent batches.
+	 */
+	private void applySortedFileSystemActions(ExecutorService applyExecutor, List<FileSystemAction> actions) throws Exception {
+		List<FileSystemAction> concurrentActions = new ArrayList<FileSystemAction>();
+		ActionPaths concurrentActionPaths = new ActionPaths();
+
+		for (FileSystemAction action : actions) {
+			boolean isConcurrentAction = isConcurrentAction(action);
+
+			// Finish current batch if this action cannot be added to it
+			if (!isConcurrentAction || concurrentActionPaths.conflictsWith(action)) {
+				applyFileSystemActionsConcurrently(applyExecutor, concurrentActions);
+
+				concurrentActions.clear();
+				concurrentActionPaths.clear();
+			}
+
+			if (isConcurrentAction) {
+				concurrentActions.add(action);
+				concurrentActionPaths.add(action);
+			}
+			else {
+				applyFileSystemAction(action);
+			}
+		}
+
+		applyFileSystemActionsConcurrently(applyExecutor, concurrentActions);
+	}
+
+	private void applyFileSystemAction(FileSystemAction action) throws Exception {
+		if (logger.isLoggable(Level.FINER)) {
+			logger.log(Level.FINER, "   +  {0}", action);
+		}
+
+		// Execute the file system action
+		
+		// Note that exceptions are not caught here, to prevent 
+		// apply-failed-delete-on-up situations.
+		
+		action.execute(); 
+	}
+
+	/**
+	 * Executes the given actions using the given executor and waits for all of them to
+	 * finish. If one of the actions fails, the remaining actions are cancelled (if they
+	 * have not started yet), and the exception is rethrown. 
+	 */
+	private void applyFileSystemActionsConcurrently(ExecutorService applyExecutor, List<FileSystemAction> actions) throws Exception {
+		if (actions.size() == 0) {
+			return;
+		}
+		else if (actions.size() == 1) {
+			applyFileSystemAction(actions.get(0));
+			return;
+		}
+
+		logger.log(Level.FINER, "- Applying " + actions.size() + " file system actions concurrently ...");
+		List<Future<Void>> actionFutures = new ArrayList<Future<Void>>();
+
+		for (final FileSystemAction action : actions) {
+			actionFutures.add(applyExecutor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					applyFileSystemAction(action);
+					return null;
+				}
+			}));
+		}
+
+		try {
+			for (Future<Void> actionFuture : actionFutures) {
+				actionFuture.get();
+			}
+		}
+		catch (ExecutionException e) {
+			for (Future<Void> actionFuture : actionFutures) {
+				actionFuture.cancel(false);
+			}
+
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			else {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the given action may be executed concurrently with other actions. This is
+	 * only the case for new and changed files, since they do not depend on any other action apart
+	 * from the creation of their parent folders (which are created beforehand, see 
+	 * {@link FileSystemActionComparator}).
+	 */
+	private boolean isConcurrentAction(FileSystemAction action) {
+		boolean isNewOrChangeAction = action.getClass().equals(NewFileSystemAction.class) || action.getClass().equals(ChangeFileSystemAction.class);
+		boolean isFileAction = action.getType() == FileType.FILE && (action.getFile1() == null || action.getFile1().getType() == FileType.FILE);
+
+		return isNewOrChangeAction && isFileAction;
+	}
+
+	/**
+	 * Keeps track of the paths touched by a batch of concurrently executed actions. Two actions
+	 * conflict if one of them touches the same path as the other, or a parent folder of one of its
+	 * paths. Paths are compared case-insensitively, to be on the safe side on case-insensitive
+	 * file systems.
+	 */
+	private static class ActionPaths {
+		private Set<String> paths = new HashSet<String>();
+		private Set<String> parentPaths = new HashSet<String>();
+
+		public boolean conflictsWith(FileSystemAction action) {
+			for (String path : getPaths(action)) {
+				if (paths.contains(path) || parentPaths.contains(path)) {
+					return true;
+				}
+
+				for (String parentPath : getParentPaths(path)) {
+					if (paths.contains(parentPath)) {
+						return true;
+					}
+				}
+			}
+
+			return false;
+		}
+
+		public void add(FileSystemAction action) {
+			for (String path : getPaths(action)) {
+				paths.add(path);
+				parentPaths.addAll(getParentPaths(path));
+			}
+		}
+
+		public void clear() {
+			paths.clear();
+			parentPaths.clear();
+		}
+
+		private List<String> getPaths(FileSystemAction action) {
+			List<String> actionPaths = new ArrayList<String>();
+
+			if (action.getFile1() != null) {
+				actionPaths.add(action.getFile1().getPath().toLowerCase(Locale.ROOT));
+			}
+
+			if (action.getFile2() != null) {
+				actionPaths.add(action.getFile2().getPath().toLowerCase(Locale.ROOT));
+			}
+
+			return actionPaths;
+		}
+
+		private List<String> getParentPaths(String path) {
+			List<String> parentPaths = new ArrayList<String>();
+			int lastSlashIndex = path.lastIndexOf('/');
+
+			while (lastSlashIndex > 0) {
+				path = path.substring(0, lastSlashIndex);
+				parentPaths.add(path);
+
+				lastSlashIndex = path.lastIndexOf('/');
+			}
+
+			return parentPaths;
 		}
 	}
 }
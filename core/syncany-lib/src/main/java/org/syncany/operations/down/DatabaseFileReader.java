@@ -17,44 +17,103 @@
  */
 package org.syncany.operations.down;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.syncany.database.DatabaseVersion;
 import org.syncany.database.DatabaseVersionHeader;
 import org.syncany.database.MemoryDatabase;
 import org.syncany.database.VectorClock;
-import org.syncany.database.dao.DatabaseXmlSerializer;
-import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
+import org.syncany.database.dao.DatabaseBinarySerializer;
+import org.syncany.database.dao.DatabaseSerializer;
+import org.syncany.database.dao.DatabaseSerializer.DatabaseReadType;
 
 /**
  * The DatabaseFileReader provides a way to read a series of database files
  * in a memory-efficient way, by converting them to a series of MemoryDatabases,
  * none of which are too large.
+ *
+ * <p>The size of each memory database is bounded by a memory budget: database files
+ * (or ranges thereof) are loaded into the current memory database until its
+ * {@link MemoryDatabase#getEstimatedSize() estimated size} exceeds the budget. At least
+ * one range is always loaded, so a single range larger than the budget is still read.
+ *
+ * <p>Since the ranges are independent of each other, they are decrypted and parsed
+ * concurrently. At most {@link #PARSE_THREADS} ranges are parsed ahead of the range that 
+ * is currently merged, and ranges parsed ahead count against the memory budget: No further
+ * range is submitted once the current memory database and the pending ranges together reach
+ * the budget. Since the size of a range is only known once it is parsed, a pending range is
+ * estimated by the largest range parsed so far (or by the entire budget, if no range has been 
+ * parsed yet). The reader must be closed after use to stop the parser threads.
  * 
  * @author Pim Otte
  */
-public class DatabaseFileReader implements Iterator<MemoryDatabase> {
-	private static final int MAX_FILES = 9999;
+public class DatabaseFileReader implements Iterator<MemoryDatabase>, Closeable {
+	private static final Logger logger = Logger.getLogger(DatabaseFileReader.class.getSimpleName());
+
+	/**
+	 * Fraction of the maximum heap size used as memory budget if no explicit
+	 * budget is given, see {@link #getDefaultMemoryBudget()}.
+	 */
+	private static final int DEFAULT_MEMORY_BUDGET_HEAP_DIVISOR = 4;
+	private static final int PARSE_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+	private DatabaseSerializer databaseSerializer;
+	private List<DatabaseVersionRange> databaseVersionRanges;
+	private long memoryBudget;
 
-	private DatabaseXmlSerializer databaseSerializer;
-	private List<DatabaseVersionHeader> winnersApplyBranchList;
-	private Map<DatabaseVersionHeader, File> databaseVersionLocations;
-	private int branchIndex = 0;
+	private ExecutorService parseExecutor;
+	private LinkedList<Future<MemoryDatabase>> parsedRanges;
+	private int mergeRangeIndex;
+	private int parseRangeIndex;
+	private long maxRangeSize;
 
-	public DatabaseFileReader(DatabaseXmlSerializer databaseSerializer, DatabaseBranch winnersApplyBranch,
+	public DatabaseFileReader(DatabaseSerializer databaseSerializer, DatabaseBranch winnersApplyBranch,
 			Map<DatabaseVersionHeader, File> databaseVersionLocations) {
+
+		this(databaseSerializer, winnersApplyBranch, databaseVersionLocations, getDefaultMemoryBudget());
+	}
+
+	public DatabaseFileReader(DatabaseSerializer databaseSerializer, DatabaseBranch winnersApplyBranch,
+			Map<DatabaseVersionHeader, File> databaseVersionLocations, long memoryBudget) {
 		
-		this.winnersApplyBranchList = winnersApplyBranch.getAll();
-		this.databaseVersionLocations = databaseVersionLocations;
 		this.databaseSerializer = databaseSerializer;
+		this.databaseVersionRanges = findDatabaseVersionRanges(winnersApplyBranch.getAll(), databaseVersionLocations);
+		this.memoryBudget = memoryBudget;
+
+		this.parseExecutor = null; // Created on demand
+		this.parsedRanges = new LinkedList<Future<MemoryDatabase>>();
+		this.mergeRangeIndex = 0;
+		this.parseRangeIndex = 0;
+		this.maxRangeSize = -1; // Unknown until a range is parsed
+	}
+
+	/**
+	 * Returns the default memory budget (in bytes) for a single memory database, i.e.
+	 * a quarter of the maximum heap size of the JVM.
+	 */
+	public static long getDefaultMemoryBudget() {
+		return Runtime.getRuntime().maxMemory() / DEFAULT_MEMORY_BUDGET_HEAP_DIVISOR;
+	}
+
+	public long getMemoryBudget() {
+		return memoryBudget;
 	}
 
 	public boolean hasNext() {
-		return branchIndex < winnersApplyBranchList.size();
+		return mergeRangeIndex < databaseVersionRanges.size();
 	}
 
 	/**
@@ -92,67 +151,188 @@ public class DatabaseFileReader implements Iterator<MemoryDatabase> {
 	 * First load (A1)-(A2) from db-A-0005, then load (A2,B1) from db-B-0001, then load (A3,B1)-(A4,B1)
 	 * from db-A-0005, and ignore (A5,B1).
 	 *
+	 * <p>Depending on the format of the database file, loading a range is more or less expensive: XML-based
+	 * files have to be parsed entirely, whereas for binary files, only the database versions in the range
+	 * are parsed (see {@link DatabaseBinarySerializer}).
+	 *
+	 * <p>Ranges are decrypted and parsed ahead of time by up to {@link #PARSE_THREADS} workers,
+	 * each into its own memory database. Their database versions are then added to the returned
+	 * memory database strictly in the order of the winner's branch.
+	 *
 	 * @return Returns a loaded memory database containing all metadata from the winner's branch
 	 */
 	@Override
 	public MemoryDatabase next() {
 		MemoryDatabase winnerBranchDatabase = new MemoryDatabase();
-		String rangeClientName = null;
-		VectorClock rangeVersionFrom = null;
-		VectorClock rangeVersionTo = null;
-
-		while (branchIndex < winnersApplyBranchList.size() && winnerBranchDatabase.getFileHistories().size() < MAX_FILES) {
-			DatabaseVersionHeader currentDatabaseVersionHeader = winnersApplyBranchList.get(branchIndex);
-			DatabaseVersionHeader nextDatabaseVersionHeader = (branchIndex + 1 < winnersApplyBranchList.size()) ? winnersApplyBranchList
-					.get(branchIndex + 1) : null;
-
-			// First of range for this client
-			if (rangeClientName == null) {
-				rangeClientName = currentDatabaseVersionHeader.getClient();
-				rangeVersionFrom = currentDatabaseVersionHeader.getVectorClock();
-				rangeVersionTo = currentDatabaseVersionHeader.getVectorClock();
-			}
 
-			// Still in range for this client
-			else {
-				rangeVersionTo = currentDatabaseVersionHeader.getVectorClock();
+		while (mergeRangeIndex < databaseVersionRanges.size() && winnerBranchDatabase.getEstimatedSize() < memoryBudget) {
+			parseAhead(winnerBranchDatabase);
+
+			MemoryDatabase rangeDatabase = waitForParsedRange(parsedRanges.removeFirst());
+
+			for (DatabaseVersion databaseVersion : rangeDatabase.getDatabaseVersions()) {
+				winnerBranchDatabase.addDatabaseVersion(databaseVersion);
 			}
 
-			// Now load this stuff from the database file (or not)
-			//   - If the database file exists, load the range and reset it
-			//   - If not, only force a load if this is the range end
+			mergeRangeIndex++;
+		}
+
+		if (!hasNext()) {
+			close();
+		}
+
+		logger.log(Level.INFO, "Loaded " + winnerBranchDatabase.getDatabaseVersions().size() + " database version(s) into memory (estimated size "
+				+ winnerBranchDatabase.getEstimatedSize() / 1024 + " KB, budget " + memoryBudget / 1024 + " KB); "
+				+ (databaseVersionRanges.size() - mergeRangeIndex) + " range(s) remaining.");
+
+		return winnerBranchDatabase;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Removing a databaseversion is not supported");
+
+	}
+
+	/**
+	 * Stops the parser threads and discards all ranges that have been
+	 * parsed ahead, but not yet returned.
+	 */
+	@Override
+	public void close() {
+		for (Future<MemoryDatabase> parsedRange : parsedRanges) {
+			parsedRange.cancel(true);
+		}
+
+		parsedRanges.clear();
+
+		if (parseExecutor != null) {
+			parseExecutor.shutdownNow();
+			parseExecutor = null;
+		}
+	}
+
+	/**
+	 * Splits the winner's branch into ranges of consecutive database versions that are
+	 * stored in the same database file. Each range can be loaded with a single call to
+	 * {@link DatabaseSerializer#load(MemoryDatabase, File, VectorClock, VectorClock, DatabaseReadType) load()}.
+	 */
+	private List<DatabaseVersionRange> findDatabaseVersionRanges(List<DatabaseVersionHeader> winnersApplyBranchList,
+			Map<DatabaseVersionHeader, File> databaseVersionLocations) {
+
+		List<DatabaseVersionRange> databaseVersionRanges = new ArrayList<DatabaseVersionRange>();
+		DatabaseVersionRange currentRange = null;
 
-			File databaseVersionFile = databaseVersionLocations.get(currentDatabaseVersionHeader);
+		for (DatabaseVersionHeader databaseVersionHeader : winnersApplyBranchList) {
+			File databaseVersionFile = databaseVersionLocations.get(databaseVersionHeader);
 
 			if (databaseVersionFile == null) {
-				throw new RuntimeException("Could not find file corresponding to " + currentDatabaseVersionHeader
+				throw new RuntimeException("Could not find file corresponding to " + databaseVersionHeader
 						+ ", while it is in the winners branch.");
 			}
 
-			boolean lastDatabaseVersionHeader = nextDatabaseVersionHeader == null;
-			boolean nextDatabaseVersionInSameFile = lastDatabaseVersionHeader
-					|| databaseVersionFile.equals(databaseVersionLocations.get(nextDatabaseVersionHeader));
-			boolean rangeEnds = lastDatabaseVersionHeader || !nextDatabaseVersionInSameFile;
+			boolean sameFileAsCurrentRange = currentRange != null && databaseVersionFile.equals(currentRange.databaseFile);
+
+			if (sameFileAsCurrentRange) {
+				currentRange.versionTo = databaseVersionHeader.getVectorClock();
+			}
+			else {
+				currentRange = new DatabaseVersionRange(databaseVersionFile, databaseVersionHeader.getVectorClock());
+				databaseVersionRanges.add(currentRange);
+			}
+		}
+
+		return databaseVersionRanges;
+	}
+
+	/**
+	 * Submits the next ranges to the parser threads, so that up to {@link #PARSE_THREADS}
+	 * ranges are being parsed (or have been parsed) ahead of the range to be merged next,
+	 * as long as these ranges fit into the memory budget along with the given memory database.
+	 * At least one range is always submitted, so that the reader makes progress.
+	 */
+	private void parseAhead(MemoryDatabase winnerBranchDatabase) {
+		if (parseExecutor == null) {
+			parseExecutor = Executors.newFixedThreadPool(PARSE_THREADS);
+		}
 
-			if (rangeEnds) {
+		while (parseRangeIndex < databaseVersionRanges.size() && parsedRanges.size() < PARSE_THREADS
+				&& (parsedRanges.isEmpty() || winnerBranchDatabase.getEstimatedSize() + getParsedRangesSize() < memoryBudget)) {
+
+			final DatabaseVersionRange range = databaseVersionRanges.get(parseRangeIndex++);
+
+			parsedRanges.add(parseExecutor.submit(new Callable<MemoryDatabase>() {
+				@Override
+				public MemoryDatabase call() throws Exception {
+					MemoryDatabase rangeDatabase = new MemoryDatabase();
+					databaseSerializer.load(rangeDatabase, range.databaseFile, range.versionFrom, range.versionTo, DatabaseReadType.FULL);
+
+					return rangeDatabase;
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Returns the estimated size of all ranges that have been submitted, but not yet merged. Ranges
+	 * that are still being parsed are estimated by the largest range parsed so far, or by the
+	 * memory budget if no range has been parsed yet.
+	 */
+	private long getParsedRangesSize() {
+		long parsedRangesSize = 0;
+
+		for (Future<MemoryDatabase> parsedRange : parsedRanges) {
+			if (parsedRange.isDone() && !parsedRange.isCancelled()) {
 				try {
-					databaseSerializer.load(winnerBranchDatabase, databaseVersionFile, rangeVersionFrom, rangeVersionTo, DatabaseReadType.FULL);
+					long rangeSize = parsedRange.get().getEstimatedSize();
+
+					maxRangeSize = Math.max(maxRangeSize, rangeSize);
+					parsedRangesSize += rangeSize;
 				}
-				catch (IOException e) {
-					throw new RuntimeException(e.getMessage(), e);
+				catch (InterruptedException | ExecutionException e) {
+					// Failed ranges do not use memory; the error is reported when the range is merged
 				}
-				rangeClientName = null;
 			}
-			branchIndex++;
+			else {
+				parsedRangesSize += (maxRangeSize >= 0) ? maxRangeSize : memoryBudget;
+			}
 		}
 
-		return winnerBranchDatabase;
+		return parsedRangesSize;
 	}
 
-	@Override
-	public void remove() {
-		throw new UnsupportedOperationException("Removing a databaseversion is not supported");
+	private MemoryDatabase waitForParsedRange(Future<MemoryDatabase> parsedRange) {
+		try {
+			MemoryDatabase rangeDatabase = parsedRange.get();
+			maxRangeSize = Math.max(maxRangeSize, rangeDatabase.getEstimatedSize());
+
+			return rangeDatabase;
+		}
+		catch (InterruptedException e) {
+			close();
+			Thread.currentThread().interrupt();
 
+			throw new RuntimeException("Interrupted while loading database versions.", e);
+		}
+		catch (ExecutionException e) {
+			close();
+			throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+		}
 	}
 
+	/**
+	 * A range of consecutive database versions of the winner's branch,
+	 * all stored in the same database file.
+	 */
+	private static class DatabaseVersionRange {
+		private File databaseFile;
+		private VectorClock versionFrom;
+		private VectorClock versionTo;
+
+		public DatabaseVersionRange(File databaseFile, VectorClock version) {
+			this.databaseFile = databaseFile;
+			this.versionFrom = version;
+			this.versionTo = version;
+		}
+	}
 }
@@ -30,6 +30,7 @@ import org.syncany.database.DatabaseVersion;
 import org.syncany.database.DatabaseVersionHeader;
 import org.syncany.database.MemoryDatabase;
 import org.syncany.database.VectorClock;
+import org.syncany.database.VectorClock.VectorClockComparison;
 
 /**
  * The database reconciliator implements various parts of the sync down algorithm (see also:
@@ -51,6 +52,13 @@ import org.syncany.database.VectorClock;
  *  <li>Walk through the sorted list and construct the winning branch.
  * </ol>
  * 
+ * <p><b>Snapshots:</b> If the local database was populated from a snapshot, the local branch
+ * is a subsequence of the original branch, since a snapshot collapses consecutive database versions
+ * into one (carrying the header of the last of them). Remote database version headers covered by 
+ * the snapshot must therefore not be compared to the local branch (see {@link #isCoveredBySnapshot(DatabaseVersionHeader, DatabaseVersionHeader)
+ * isCoveredBySnapshot()}); all other headers can be compared as usual, since they are newer than
+ * (or in conflict with) the entire snapshot.
+ * 
  * @see DownOperation
  * @see VectorClock
  * @author Philipp C. Heckel (philipp.heckel@gmail.com)
@@ -90,6 +98,24 @@ public class DatabaseReconciliator {
 		}
 	}
 
+	/**
+	 * Determines whether the given database version header is covered by a snapshot, i.e. whether
+	 * it was part of the database branch the snapshot was created from. This is the case if its 
+	 * vector clock is smaller than or equal to the vector clock of the snapshot's last header.
+	 *
+	 * @param databaseVersionHeader Database version header to check
+	 * @param snapshotBoundaryHeader Last database version header of the snapshot (or <code>null</code> if no snapshot was applied)
+	 * @return Returns <code>true</code> if the header is covered by the snapshot, <code>false</code> otherwise
+	 */
+	public boolean isCoveredBySnapshot(DatabaseVersionHeader databaseVersionHeader, DatabaseVersionHeader snapshotBoundaryHeader) {
+		if (snapshotBoundaryHeader == null) {
+			return false;
+		}
+
+		VectorClockComparison comparison = VectorClock.compare(databaseVersionHeader.getVectorClock(), snapshotBoundaryHeader.getVectorClock());
+		return comparison == VectorClockComparison.SMALLER || comparison == VectorClockComparison.EQUAL;
+	}
+
 	public DatabaseBranch findLosersPruneBranch(DatabaseBranch losersBranch, DatabaseBranch winnersBranch) {
 		DatabaseBranch losersPruneBranch = new DatabaseBranch();
 
@@ -21,14 +21,21 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -40,8 +47,10 @@ import org.syncany.database.MultiChunkEntry;
 import org.syncany.database.PartialFileHistory;
 import org.syncany.database.SqlDatabase;
 import org.syncany.database.VectorClock;
-import org.syncany.database.dao.DatabaseXmlSerializer;
-import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
+import org.syncany.database.dao.DatabaseBinarySerializer;
+import org.syncany.database.dao.DatabaseSerializer;
+import org.syncany.database.dao.DatabaseSerializer.DatabaseReadType;
+import org.syncany.database.dao.SnapshotSerializer;
 import org.syncany.operations.AbstractTransferOperation;
 import org.syncany.operations.cleanup.CleanupOperation;
 import org.syncany.operations.daemon.messages.DownChangesDetectedSyncExternalEvent;
@@ -57,6 +66,8 @@ import org.syncany.plugins.transfer.StorageException;
 import org.syncany.plugins.transfer.TransferManager;
 import org.syncany.plugins.transfer.files.CleanupRemoteFile;
 import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
+import org.syncany.plugins.transfer.files.SnapshotRemoteFile;
+import org.syncany.util.HeapUsageUtil;
 
 import com.google.common.collect.Sets;
 import com.google.common.collect.Sets.SetView;
@@ -71,6 +82,8 @@ import com.google.common.collect.Sets.SetView;
  * <ol>
  *  <li>List all database versions on the remote storage using the {@link LsRemoteOperation}
  *      (implemented in {@link #listUnknownRemoteDatabases() listUnknownRemoteDatabases()}</li>
+ *  <li>If the local database is empty (or must be reloaded after a cleanup), download the latest snapshot
+ *      (if any) instead of the database files it covers (see {@link SnapshotRemoteFile})</li>
  *  <li>Download unknown databases using a {@link TransferManager} (if any), skip the rest down otherwise
  *      (implemented in {@link #downloadUnknownRemoteDatabases(List) downloadUnknownRemoteDatabases()}</li>
  *  <li>Load remote database headers (branches) and compare them to the local database to determine a winner
@@ -92,12 +105,14 @@ public class DownOperation extends AbstractTransferOperation {
 
 	public static final String ACTION_ID = "down";
 
+	private static final int HEADER_PARSE_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
 	private DownOperationOptions options;
 	private DownOperationResult result;
 
 	private SqlDatabase localDatabase;
 	private DatabaseReconciliator databaseReconciliator;
-	private DatabaseXmlSerializer databaseSerializer;
+	private DatabaseSerializer databaseSerializer;
 
 	public DownOperation(Config config) {
 		this(config, new DownOperationOptions());
@@ -111,14 +126,15 @@ public class DownOperation extends AbstractTransferOperation {
 
 		this.localDatabase = new SqlDatabase(config);
 		this.databaseReconciliator = new DatabaseReconciliator();
-		this.databaseSerializer = new DatabaseXmlSerializer(config.getTransformer());
+		this.databaseSerializer = config.getDatabaseSerializer();
 	}
 
 	/**
 	 * Executes the down operation, roughly following these steps:
 	 *
 	 * <ul>
-	 *  <li>Download the remote databases to the local cache folder
+	 *  <li>Download the latest snapshot (if applicable) and the remote databases to the local cache folder
+	 *  <li>Apply the snapshot (if any)
 	 *  <li>Read version headers (vector clocks)
 	 *  <li>Determine winner branch
 	 *  <li>Prune local stuff (if local conflicts exist)
@@ -142,6 +158,34 @@ public class DownOperation extends AbstractTransferOperation {
 		fireChangesDetectedEvent();
 		startOperation();
 
+		// Peak heap usage is measured JVM-wide, see HeapUsageUtil
+		HeapUsageUtil.startMeasurement();
+
+		try {
+			syncDown();
+		}
+		finally {
+			result.setPeakHeapUsage(HeapUsageUtil.stopMeasurement());
+		}
+
+		finishOperation();
+		fireEndEvent();
+
+		if (result.getPeakHeapUsage() > 0) {
+			logger.log(Level.INFO, "Sync down done (peak heap usage " + result.getPeakHeapUsage() / 1024 / 1024 + " MB).");
+		}
+		else {
+			logger.log(Level.INFO, "Sync down done (peak heap usage unknown; other operations were running).");
+		}
+
+		return result;
+	}
+
+	/**
+	 * Downloads and applies the snapshot and the unknown remote databases, determines the 
+	 * winner branch and applies it to the local database and the local folder.
+	 */
+	private void syncDown() throws Exception {
 		// If we do down, we are no longer allowed to resume a transaction
 		transferManager.clearResumableTransactions();
 		transferManager.clearPendingTransactions();
@@ -149,13 +193,25 @@ public class DownOperation extends AbstractTransferOperation {
 		DatabaseBranch localBranch = localDatabase.getLocalDatabaseBranch();
 		List<DatabaseRemoteFile> newRemoteDatabases = result.getLsRemoteResult().getUnknownRemoteDatabases();
 
-		SortedMap<File, DatabaseRemoteFile> unknownRemoteDatabasesInCache = downloadUnknownRemoteDatabases(newRemoteDatabases);
-		SortedMap<DatabaseRemoteFile, List<DatabaseVersion>> remoteDatabaseHeaders = readUnknownDatabaseVersionHeaders(unknownRemoteDatabasesInCache);
-		Map<DatabaseVersionHeader, File> databaseVersionLocations = findDatabaseVersionLocations(remoteDatabaseHeaders, unknownRemoteDatabasesInCache);
-
 		Map<String, CleanupRemoteFile> remoteCleanupFiles = getRemoteCleanupFiles();
 		boolean cleanupOccurred = cleanupOccurred(remoteCleanupFiles);
 
+		// If we have to load the entire database, a snapshot saves us from downloading and replaying the files it covers
+		SnapshotRemoteFile snapshotRemoteFile = findApplicableSnapshot(localBranch, cleanupOccurred, remoteCleanupFiles);
+		File snapshotDatabaseFile = null;
+		List<DatabaseRemoteFile> uncoveredRemoteDatabases = newRemoteDatabases;
+
+		if (snapshotRemoteFile != null) {
+			snapshotDatabaseFile = config.getCache().getDatabaseFile(snapshotRemoteFile.getName() + "-database");
+
+			VectorClock coveredDatabaseFiles = downloadSnapshot(snapshotRemoteFile, snapshotDatabaseFile);
+			uncoveredRemoteDatabases = findUncoveredRemoteDatabases(newRemoteDatabases, coveredDatabaseFiles);
+		}
+
+		SortedMap<File, DatabaseRemoteFile> unknownRemoteDatabasesInCache = downloadUnknownRemoteDatabases(uncoveredRemoteDatabases);
+		SortedMap<DatabaseRemoteFile, List<DatabaseVersion>> remoteDatabaseHeaders = readUnknownDatabaseVersionHeaders(unknownRemoteDatabasesInCache);
+		Map<DatabaseVersionHeader, File> databaseVersionLocations = findDatabaseVersionLocations(remoteDatabaseHeaders, unknownRemoteDatabasesInCache);
+
 		List<PartialFileHistory> preDeleteFileHistoriesWithLastVersion = null;
 
 		if (cleanupOccurred) {
@@ -182,14 +238,34 @@ public class DownOperation extends AbstractTransferOperation {
 			localBranch = new DatabaseBranch();
 		}
 
+		// Database versions are persisted and committed in many batches. To avoid syncing the
+		// local database to disk after each of these commits, we group them, and only sync at the
+		// end of the operation (or when remote files are changed).
+		localDatabase.beginGroupCommit();
+
 		try {
-			DatabaseBranches allBranches = populateDatabaseBranches(localBranch, remoteDatabaseHeaders);
+			DatabaseVersionHeader snapshotBoundaryHeader = null;
+
+			if (snapshotDatabaseFile != null) {
+				snapshotBoundaryHeader = applySnapshot(snapshotRemoteFile, snapshotDatabaseFile, cleanupOccurred, preDeleteFileHistoriesWithLastVersion);
+				localBranch = localDatabase.getLocalDatabaseBranch();
+
+				// The snapshot contains the entire database, so the 'cleanup occurred' logic
+				// (file histories missing in the winner's database) has already been applied.
+				cleanupOccurred = false;
+			}
+
+			DatabaseBranches allBranches = populateDatabaseBranches(localBranch, remoteDatabaseHeaders, snapshotBoundaryHeader);
 			Map.Entry<String, DatabaseBranch> winnersBranch = determineWinnerBranch(allBranches);
 
 			purgeConflictingLocalBranch(localBranch, winnersBranch);
 			applyWinnersBranch(localBranch, winnersBranch, databaseVersionLocations, cleanupOccurred,
 					preDeleteFileHistoriesWithLastVersion);
 
+			if (snapshotBoundaryHeader != null) {
+				result.setResultCode(DownResultCode.OK_WITH_REMOTE_CHANGES);
+			}
+
 			persistMuddyMultiChunks(winnersBranch, allBranches, databaseVersionLocations);
 			removeNonMuddyMultiChunks();
 
@@ -200,12 +276,9 @@ public class DownOperation extends AbstractTransferOperation {
 			localDatabase.rollback();
 			throw e;
 		}
-
-		finishOperation();
-		fireEndEvent();
-
-		logger.log(Level.INFO, "Sync down done.");
-		return result;
+		finally {
+			localDatabase.endGroupCommit();
+		}
 	}
 
 	private void fireStartEvent() {
@@ -302,30 +375,173 @@ public class DownOperation extends AbstractTransferOperation {
 		return unknownRemoteDatabasesInCache;
 	}
 
+	/**
+	 * Returns the latest remote snapshot that can be applied instead of the database files it covers, or
+	 * <code>null</code> if there is none. Snapshots are only used if the local database is empty or has to be
+	 * reloaded entirely (after a cleanup), and only if they were created by the last remote cleanup.
+	 */
+	private SnapshotRemoteFile findApplicableSnapshot(DatabaseBranch localBranch, boolean cleanupOccurred,
+			Map<String, CleanupRemoteFile> remoteCleanupFiles) throws StorageException {
+
+		if (localBranch.size() > 0 && !cleanupOccurred) {
+			return null;
+		}
+
+		long lastRemoteCleanupNumber = getLastRemoteCleanupNumber(remoteCleanupFiles);
+		SnapshotRemoteFile latestSnapshotFile = null;
+
+		for (SnapshotRemoteFile snapshotFile : transferManager.list(SnapshotRemoteFile.class).values()) {
+			boolean validSnapshot = snapshotFile.getCleanupNumber() == lastRemoteCleanupNumber;
+
+			if (validSnapshot && (latestSnapshotFile == null || snapshotFile.compareTo(latestSnapshotFile) > 0)) {
+				latestSnapshotFile = snapshotFile;
+			}
+		}
+
+		logger.log(Level.INFO, "Applicable snapshot for cleanup number " + lastRemoteCleanupNumber + ": " + latestSnapshotFile);
+		return latestSnapshotFile;
+	}
+
+	/**
+	 * Downloads the given snapshot to the local cache, extracts the contained database file to
+	 * the given file, and returns the database files covered by the snapshot.
+	 */
+	private VectorClock downloadSnapshot(SnapshotRemoteFile snapshotRemoteFile, File snapshotDatabaseFile) throws StorageException, IOException {
+		File snapshotFileInCache = config.getCache().getDatabaseFile(snapshotRemoteFile.getName());
+
+		logger.log(Level.INFO, "- Downloading snapshot {0} to local cache at {1}", new Object[] { snapshotRemoteFile.getName(), snapshotFileInCache });
+		eventBus.post(new DownDownloadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), "snapshot", 1, 1));
+
+		transferManager.download(snapshotRemoteFile, snapshotFileInCache);
+
+		VectorClock coveredDatabaseFiles = new SnapshotSerializer(databaseSerializer).load(snapshotFileInCache, snapshotDatabaseFile);
+		logger.log(Level.INFO, "- Snapshot covers database files " + coveredDatabaseFiles);
+
+		return coveredDatabaseFiles;
+	}
+
+	/**
+	 * Returns the remote database files that are not covered by a snapshot, i.e. whose
+	 * client version is higher than the highest covered version of the respective client.
+	 */
+	private List<DatabaseRemoteFile> findUncoveredRemoteDatabases(List<DatabaseRemoteFile> remoteDatabases, VectorClock coveredDatabaseFiles) {
+		List<DatabaseRemoteFile> uncoveredRemoteDatabases = new ArrayList<DatabaseRemoteFile>();
+
+		for (DatabaseRemoteFile remoteDatabase : remoteDatabases) {
+			Long coveredClientVersion = coveredDatabaseFiles.getClock(remoteDatabase.getClientName());
+
+			if (coveredClientVersion == null || remoteDatabase.getClientVersion() > coveredClientVersion) {
+				uncoveredRemoteDatabases.add(remoteDatabase);
+			}
+			else {
+				logger.log(Level.INFO, "- Not downloading {0}, covered by snapshot.", remoteDatabase);
+			}
+		}
+
+		return uncoveredRemoteDatabases;
+	}
+
+	/**
+	 * Applies the database contained in a snapshot locally, i.e. applies its changes to the local file
+	 * system and persists its (collapsed) database versions to the local database, just like a regular
+	 * winner's branch. Returns the last database version header of the snapshot.
+	 */
+	private DatabaseVersionHeader applySnapshot(SnapshotRemoteFile snapshotRemoteFile, File snapshotDatabaseFile, boolean cleanupOccurred,
+			List<PartialFileHistory> preDeleteFileHistoriesWithLastVersion) throws Exception {
+
+		logger.log(Level.INFO, "Applying snapshot " + snapshotRemoteFile + " ...");
+
+		MemoryDatabase snapshotHeaders = new MemoryDatabase();
+		DatabaseSerializer snapshotDatabaseSerializer = new SnapshotSerializer(databaseSerializer).getDatabaseSerializer();
+		snapshotDatabaseSerializer.load(snapshotHeaders, snapshotDatabaseFile, null, null, DatabaseReadType.HEADER_ONLY);
+
+		DatabaseBranch snapshotBranch = new DatabaseBranch();
+		Map<DatabaseVersionHeader, File> snapshotDatabaseVersionLocations = new HashMap<DatabaseVersionHeader, File>();
+
+		for (DatabaseVersion snapshotDatabaseVersion : snapshotHeaders.getDatabaseVersions()) {
+			snapshotBranch.add(snapshotDatabaseVersion.getHeader());
+			snapshotDatabaseVersionLocations.put(snapshotDatabaseVersion.getHeader(), snapshotDatabaseFile);
+		}
+
+		DatabaseFileReader databaseFileReader = createDatabaseFileReader(snapshotDatabaseSerializer, snapshotBranch, snapshotDatabaseVersionLocations);
+
+		try {
+			while (databaseFileReader.hasNext()) {
+				applyChangesAndPersistDatabase(databaseFileReader.next(), cleanupOccurred, preDeleteFileHistoriesWithLastVersion);
+			}
+		}
+		finally {
+			databaseFileReader.close();
+		}
+
+		result.setAppliedSnapshot(snapshotRemoteFile.getName());
+		return snapshotBranch.getLast();
+	}
+
 	/**
 	 * Read the given database files into individual per-user {@link DatabaseBranch}es. This method only
-	 * reads the headers from the local database files, and not the entire databases into memory.
+	 * reads the headers from the local database files, and not the entire databases into memory. For
+	 * binary database files, only the header index at the beginning of each file is decoded; XML-based
+	 * files still have to be parsed entirely (see {@link DatabaseBinarySerializer}).
 	 *
 	 * <p>The returned database branches contain only the per-client {@link DatabaseVersionHeader}s, and not
 	 * the entire stitched branches, i.e. A's database branch will only contain database version headers from A.
+	 *
+	 * <p>Since the database files are independent of each other, they are decrypted and parsed concurrently
+	 * by up to {@link #HEADER_PARSE_THREADS} workers. The results are collected in the order of the (sorted)
+	 * database files, so the outcome does not depend on which worker finishes first.
 	 */
 	private SortedMap<DatabaseRemoteFile, List<DatabaseVersion>> readUnknownDatabaseVersionHeaders(SortedMap<File, DatabaseRemoteFile> remoteDatabases)
 			throws IOException,
 			StorageException {
 		logger.log(Level.INFO, "Loading database headers, creating branches ...");
 
-		// Read database files
 		SortedMap<DatabaseRemoteFile, List<DatabaseVersion>> remoteDatabaseHeaders = new TreeMap<DatabaseRemoteFile, List<DatabaseVersion>>();
 
-		for (Map.Entry<File, DatabaseRemoteFile> remoteDatabaseFileEntry : remoteDatabases.entrySet()) {
-			MemoryDatabase remoteDatabase = new MemoryDatabase(); // Database cannot be reused, since these might be different clients
+		if (remoteDatabases.size() == 0) {
+			return remoteDatabaseHeaders;
+		}
 
-			File remoteDatabaseFileInCache = remoteDatabaseFileEntry.getKey();
-			DatabaseRemoteFile remoteDatabaseFile = remoteDatabaseFileEntry.getValue();
+		// Read database files (concurrently)
+		int parseThreads = Math.min(HEADER_PARSE_THREADS, remoteDatabases.size());
+		ExecutorService parseExecutor = Executors.newFixedThreadPool(parseThreads);
 
-			databaseSerializer.load(remoteDatabase, remoteDatabaseFileInCache, null, null, DatabaseReadType.HEADER_ONLY); // only load headers!
+		Map<DatabaseRemoteFile, Future<List<DatabaseVersion>>> remoteDatabaseHeaderFutures = new LinkedHashMap<DatabaseRemoteFile, Future<List<DatabaseVersion>>>();
 
-			remoteDatabaseHeaders.put(remoteDatabaseFile, remoteDatabase.getDatabaseVersions());
+		try {
+			for (Map.Entry<File, DatabaseRemoteFile> remoteDatabaseFileEntry : remoteDatabases.entrySet()) {
+				final File remoteDatabaseFileInCache = remoteDatabaseFileEntry.getKey();
+				DatabaseRemoteFile remoteDatabaseFile = remoteDatabaseFileEntry.getValue();
+
+				remoteDatabaseHeaderFutures.put(remoteDatabaseFile, parseExecutor.submit(new Callable<List<DatabaseVersion>>() {
+					@Override
+					public List<DatabaseVersion> call() throws Exception {
+						MemoryDatabase remoteDatabase = new MemoryDatabase(); // Database cannot be reused, since these might be different clients
+						databaseSerializer.load(remoteDatabase, remoteDatabaseFileInCache, null, null, DatabaseReadType.HEADER_ONLY); // only load headers!
+
+						return remoteDatabase.getDatabaseVersions();
+					}
+				}));
+			}
+
+			for (Map.Entry<DatabaseRemoteFile, Future<List<DatabaseVersion>>> remoteDatabaseHeaderFuture : remoteDatabaseHeaderFutures.entrySet()) {
+				remoteDatabaseHeaders.put(remoteDatabaseHeaderFuture.getKey(), remoteDatabaseHeaderFuture.getValue().get());
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading database headers.", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			else {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		finally {
+			parseExecutor.shutdownNow();
 		}
 
 		return remoteDatabaseHeaders;
@@ -339,11 +555,13 @@ public class DownOperation extends AbstractTransferOperation {
 	 * @param localBranch {@link DatabaseBranch} containing the locally known headers.
 	 * @param remoteDatabaseHeaders Map from {@link DatabaseRemoteFile}s (important for client names) to the {@link DatabaseVersion}s that are
 	 *        contained in these files.
+	 * @param snapshotBoundaryHeader Last database version header of the snapshot applied in this operation (or <code>null</code>); remote headers
+	 *        covered by the snapshot are already part of the local branch and are not added again.
 	 *
 	 * @return DatabaseBranches filled with all the headers that originated from either of the parameters.
 	 */
 	private DatabaseBranches populateDatabaseBranches(DatabaseBranch localBranch,
-			SortedMap<DatabaseRemoteFile, List<DatabaseVersion>> remoteDatabaseHeaders) {
+			SortedMap<DatabaseRemoteFile, List<DatabaseVersion>> remoteDatabaseHeaders, DatabaseVersionHeader snapshotBoundaryHeader) {
 		DatabaseBranches allBranches = new DatabaseBranches();
 
 		allBranches.put(config.getMachineName(), localBranch.clone());
@@ -355,6 +573,12 @@ public class DownOperation extends AbstractTransferOperation {
 
 			for (DatabaseVersion remoteDatabaseVersion : remoteDatabaseHeaders.get(remoteDatabaseFile)) {
 				DatabaseVersionHeader header = remoteDatabaseVersion.getHeader();
+
+				if (databaseReconciliator.isCoveredBySnapshot(header, snapshotBoundaryHeader)) {
+					logger.log(Level.INFO, "- Ignoring " + header + ", covered by snapshot.");
+					continue;
+				}
+
 				remoteClientBranch.add(header);
 			}
 		}
@@ -416,6 +640,11 @@ public class DownOperation extends AbstractTransferOperation {
 				boolean isOwnDatabaseVersionHeader = config.getMachineName().equals(databaseVersionHeader.getClient());
 
 				if (isOwnDatabaseVersionHeader) {
+					// The DIRTY mark must be committed and durable before the remote file is gone;
+					// sync() only syncs committed transactions
+					localDatabase.commit();
+					localDatabase.sync();
+
 					String remoteFileToPruneClientName = config.getMachineName();
 					long remoteFileToPruneVersion = databaseVersionHeader.getVectorClock().getClock(config.getMachineName());
 					DatabaseRemoteFile remoteFileToPrune = new DatabaseRemoteFile(remoteFileToPruneClientName, remoteFileToPruneVersion);
@@ -456,29 +685,49 @@ public class DownOperation extends AbstractTransferOperation {
 		}
 		else {
 			logger.log(Level.INFO, "Loading winners database (DEFAULT) ...");
-			DatabaseFileReader databaseFileReader = new DatabaseFileReader(databaseSerializer, winnersApplyBranch, databaseVersionLocations);
+			DatabaseFileReader databaseFileReader = createDatabaseFileReader(winnersApplyBranch, databaseVersionLocations);
 
-			boolean noDatabaseVersions = !databaseFileReader.hasNext();
-			
-			if (noDatabaseVersions) {
-				applyChangesAndPersistDatabase(new MemoryDatabase(), cleanupOccurred, preDeleteFileHistoriesWithLastVersion);
-			} 
-			else {
-				while (databaseFileReader.hasNext()) {
-					MemoryDatabase winnersDatabase = databaseFileReader.next();
-					applyChangesAndPersistDatabase(winnersDatabase, cleanupOccurred, preDeleteFileHistoriesWithLastVersion);					
+			try {
+				boolean noDatabaseVersions = !databaseFileReader.hasNext();
+
+				if (noDatabaseVersions) {
+					applyChangesAndPersistDatabase(new MemoryDatabase(), cleanupOccurred, preDeleteFileHistoriesWithLastVersion);
+				}
+				else {
+					while (databaseFileReader.hasNext()) {
+						MemoryDatabase winnersDatabase = databaseFileReader.next();
+						applyChangesAndPersistDatabase(winnersDatabase, cleanupOccurred, preDeleteFileHistoriesWithLastVersion);
+					}
 				}
 			}
+			finally {
+				databaseFileReader.close();
+			}
 
 			result.setResultCode(DownResultCode.OK_WITH_REMOTE_CHANGES);
 		}
 	}
 
+	private DatabaseFileReader createDatabaseFileReader(DatabaseBranch winnersApplyBranch, Map<DatabaseVersionHeader, File> databaseVersionLocations) {
+		return createDatabaseFileReader(databaseSerializer, winnersApplyBranch, databaseVersionLocations);
+	}
+
+	private DatabaseFileReader createDatabaseFileReader(DatabaseSerializer databaseSerializer, DatabaseBranch winnersApplyBranch,
+			Map<DatabaseVersionHeader, File> databaseVersionLocations) {
+
+		if (options.getDatabaseMemoryBudget() > 0) {
+			return new DatabaseFileReader(databaseSerializer, winnersApplyBranch, databaseVersionLocations, options.getDatabaseMemoryBudget());
+		}
+		else {
+			return new DatabaseFileReader(databaseSerializer, winnersApplyBranch, databaseVersionLocations);
+		}
+	}
+
 	private void applyChangesAndPersistDatabase(MemoryDatabase winnersDatabase, boolean cleanupOccurred, 
 			List<PartialFileHistory> preDeleteFileHistoriesWithLastVersion) throws Exception {
 		
 		if (options.isApplyChanges()) {
-			new ApplyChangesOperation(config, localDatabase, transferManager, winnersDatabase, result, cleanupOccurred,
+			new ApplyChangesOperation(config, localDatabase, transferManager, winnersDatabase, options, result, cleanupOccurred,
 					preDeleteFileHistoriesWithLastVersion).execute();
 		}
 		else {
@@ -31,6 +31,15 @@ public class DownOperationOptions implements OperationOptions {
 	@Element(required = false)
 	private boolean applyChanges = true;
 
+	@Element(required = false)
+	private long databaseMemoryBudget = 0; // 0 = default, see DatabaseFileReader
+
+	@Element(required = false)
+	private long multiChunkCacheBudget = 0; // 0 = download all multichunks before applying changes
+
+	@Element(required = false)
+	private boolean localChunks = false;
+
 	public DownConflictStrategy getConflictStrategy() {
 		return conflictStrategy;
 	}
@@ -45,5 +54,29 @@ public class DownOperationOptions implements OperationOptions {
 
 	public void setApplyChanges(boolean applyChanges) {
 		this.applyChanges = applyChanges;
-	}		
+	}
+
+	public long getDatabaseMemoryBudget() {
+		return databaseMemoryBudget;
+	}
+
+	public void setDatabaseMemoryBudget(long databaseMemoryBudget) {
+		this.databaseMemoryBudget = databaseMemoryBudget;
+	}
+
+	public long getMultiChunkCacheBudget() {
+		return multiChunkCacheBudget;
+	}
+
+	public void setMultiChunkCacheBudget(long multiChunkCacheBudget) {
+		this.multiChunkCacheBudget = multiChunkCacheBudget;
+	}
+
+	public boolean isLocalChunks() {
+		return localChunks;
+	}
+
+	public void setLocalChunks(boolean localChunks) {
+		this.localChunks = localChunks;
+	}
 }
@@ -39,6 +39,8 @@ public class DownOperationResult implements OperationResult {
 	private Set<String> downloadedUnknownDatabases = new HashSet<String>();
 	private Set<MultiChunkId> downloadedMultiChunks = new HashSet<MultiChunkId>();
 	private LsRemoteOperationResult lsRemoteResult = null;
+	private String appliedSnapshot = null;
+	private long peakHeapUsage = 0;
 
 	public DownResultCode getResultCode() {
 		return resultCode;
@@ -87,4 +89,30 @@ public class DownOperationResult implements OperationResult {
 	public void setLsRemoteResult(LsRemoteOperationResult lsRemoteResult) {
 		this.lsRemoteResult = lsRemoteResult;
 	}
+
+	/**
+	 * Returns the name of the snapshot file that was applied instead of
+	 * the database files it covers, or <code>null</code> if no snapshot was applied.
+	 */
+	public String getAppliedSnapshot() {
+		return appliedSnapshot;
+	}
+
+	public void setAppliedSnapshot(String appliedSnapshot) {
+		this.appliedSnapshot = appliedSnapshot;
+	}
+
+	/**
+	 * Returns the peak heap usage (in bytes) of the JVM while the down operation
+	 * was running, or zero if the operation did not get to apply any changes, or if
+	 * other operations were running in the same JVM at the same time (see 
+	 * {@link org.syncany.util.HeapUsageUtil HeapUsageUtil}).
+	 */
+	public long getPeakHeapUsage() {
+		return peakHeapUsage;
+	}
+
+	public void setPeakHeapUsage(long peakHeapUsage) {
+		this.peakHeapUsage = peakHeapUsage;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,242 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.down;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.syncany.config.Config;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.ChunkPosition;
+import org.syncany.database.SqlDatabase;
+import org.syncany.operations.Assembler;
+
+/**
+ * The local chunk locator finds chunks in the files of the local folder, so that
+ * they do not have to be downloaded as part of a multichunk. This is particularly
+ * useful if a file has been moved or copied on another client: All of its chunks
+ * are already on disk, just at a different path.
+ * 
+ * <p>The locator uses the <i>filecontent_chunk</i> mapping of the local database
+ * and the current file tree to determine where a chunk should be (see {@link ChunkPosition}).
+ * Since the local files might have changed since they were last indexed, the data at
+ * that position is read and its checksum is verified. If it matches, the chunk is
+ * copied to the local cache (see {@link org.syncany.config.Cache#getLocalChunkFile(ChunkChecksum) 
+ * getLocalChunkFile()}), from where it is read by the {@link Assembler}. Copying the
+ * chunk protects it from being changed by the file system actions applied afterwards.
+ * 
+ * <p>Chunks that cannot be located must be downloaded as usual. Chunks copied to the
+ * cache by this locator are deleted by {@link #clear()}. Chunk files that already exist
+ * in the cache (e.g. after a crash) are not trusted; they are deleted and located again.
+ * 
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class LocalChunkLocator {
+	private static final Logger logger = Logger.getLogger(LocalChunkLocator.class.getSimpleName());
+
+	private Config config;
+	private SqlDatabase localDatabase;
+	private MessageDigest chunkDigest;
+
+	private Set<ChunkChecksum> locatedChunks;
+	private Set<ChunkChecksum> unlocatableChunks;
+	private int locatedChunkCount;
+	private long locatedBytes;
+
+	public LocalChunkLocator(Config config, SqlDatabase localDatabase) throws NoSuchAlgorithmException {
+		this.config = config;
+		this.localDatabase = localDatabase;
+		this.chunkDigest = MessageDigest.getInstance(config.getChunker().getChecksumAlgorithm());
+
+		this.locatedChunks = new HashSet<ChunkChecksum>();
+		this.unlocatableChunks = new HashSet<ChunkChecksum>();
+		this.locatedChunkCount = 0;
+		this.locatedBytes = 0;
+	}
+
+	/**
+	 * Tries to locate the given chunks in the local folder, and copies the chunks found
+	 * to the local cache. Chunks that have been located before are not looked up again.
+	 * 
+	 * @param chunkChecksums Checksums of the chunks to locate
+	 * @return Returns the subset of the given chunks that are available in the local cache
+	 */
+	public Set<ChunkChecksum> locateChunks(Collection<ChunkChecksum> chunkChecksums) {
+		Set<ChunkChecksum> availableChunks = new HashSet<ChunkChecksum>();
+		Set<ChunkChecksum> chunksToLocate = new LinkedHashSet<ChunkChecksum>();
+
+		for (ChunkChecksum chunkChecksum : chunkChecksums) {
+			if (locatedChunks.contains(chunkChecksum)) {
+				availableChunks.add(chunkChecksum);
+			}
+			else if (!unlocatableChunks.contains(chunkChecksum)) {
+				chunksToLocate.add(chunkChecksum);
+			}
+		}
+
+		if (chunksToLocate.size() > 0) {
+			Map<ChunkChecksum, List<ChunkPosition>> chunkPositions = localDatabase.getChunkPositions(chunksToLocate);
+
+			for (ChunkChecksum chunkChecksum : chunksToLocate) {
+				if (copyChunkToCache(chunkChecksum, chunkPositions.get(chunkChecksum))) {
+					locatedChunks.add(chunkChecksum);
+					locatedChunkCount++;
+					availableChunks.add(chunkChecksum);
+				}
+				else {
+					unlocatableChunks.add(chunkChecksum);
+				}
+			}
+		}
+
+		return availableChunks;
+	}
+
+	/**
+	 * Returns the number of chunks located (and copied to 
+	 * the cache) by this locator, including released chunks.
+	 */
+	public int getLocatedChunkCount() {
+		return locatedChunkCount;
+	}
+
+	/**
+	 * Returns the total size of the chunks located (and copied 
+	 * to the cache) by this locator, in bytes.
+	 */
+	public long getLocatedBytes() {
+		return locatedBytes;
+	}
+
+	/**
+	 * Deletes the given chunks from the local cache, if they have been copied there by
+	 * this locator. If they are requested again, they are located again.
+	 */
+	public void release(Collection<ChunkChecksum> chunkChecksums) {
+		for (ChunkChecksum chunkChecksum : chunkChecksums) {
+			if (locatedChunks.remove(chunkChecksum)) {
+				config.getCache().getLocalChunkFile(chunkChecksum).delete();
+			}
+		}
+	}
+
+	/**
+	 * Deletes all chunks copied to the local cache by this locator.
+	 * This method must not be called before the files that need these
+	 * chunks have been assembled.
+	 */
+	public void clear() {
+		for (ChunkChecksum chunkChecksum : locatedChunks) {
+			config.getCache().getLocalChunkFile(chunkChecksum).delete();
+		}
+
+		locatedChunks.clear();
+		unlocatableChunks.clear();
+		locatedChunkCount = 0;
+		locatedBytes = 0;
+	}
+
+	private boolean copyChunkToCache(ChunkChecksum chunkChecksum, List<ChunkPosition> positions) {
+		File localChunkFile = config.getCache().getLocalChunkFile(chunkChecksum);
+
+		// Chunks located by this locator are never looked up again, so an existing 
+		// file must be a leftover of an earlier, interrupted operation.
+		if (localChunkFile.exists()) {
+			logger.log(Level.FINE, "  + Deleting leftover chunk " + chunkChecksum + " from cache.");
+			localChunkFile.delete();
+		}
+
+		if (positions != null) {
+			for (ChunkPosition position : positions) {
+				byte[] chunkData = readAndVerifyChunk(position);
+
+				if (chunkData != null) {
+					try {
+						File tempLocalChunkFile = config.getCache().createTempFile("chunk-" + chunkChecksum);
+
+						try (FileOutputStream tempLocalChunkOutputStream = new FileOutputStream(tempLocalChunkFile)) {
+							tempLocalChunkOutputStream.write(chunkData);
+						}
+
+						FileUtils.moveFile(tempLocalChunkFile, localChunkFile);
+					}
+					catch (IOException e) {
+						logger.log(Level.WARNING, "  + Cannot copy chunk " + chunkChecksum + " to cache. Chunk will be downloaded.", e);
+						return false;
+					}
+
+					logger.log(Level.FINE, "  + Located chunk " + chunkChecksum + " at " + position.getPath() + ", offset " + position.getOffset());
+					locatedBytes += chunkData.length;
+
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Reads the chunk at the given position from the local file and verifies its checksum.
+	 * Returns the chunk data if the checksum matches, or <code>null</code> if the file
+	 * does not exist (anymore), has changed or cannot be read.
+	 */
+	private byte[] readAndVerifyChunk(ChunkPosition position) {
+		File localFile = new File(config.getLocalDir(), position.getPath());
+
+		if (!localFile.isFile() || localFile.length() != position.getFileSize()) {
+			logger.log(Level.FINE, "  + Cannot use " + position + "; file does not exist or size does not match.");
+			return null;
+		}
+
+		try (RandomAccessFile localRandomAccessFile = new RandomAccessFile(localFile, "r")) {
+			byte[] chunkData = new byte[position.getSize()];
+
+			localRandomAccessFile.seek(position.getOffset());
+			localRandomAccessFile.readFully(chunkData);
+
+			chunkDigest.reset();
+			byte[] actualChunkChecksum = chunkDigest.digest(chunkData);
+
+			if (!Arrays.equals(actualChunkChecksum, position.getChunkChecksum().getBytes())) {
+				logger.log(Level.FINE, "  + Cannot use " + position + "; checksum does not match.");
+				return null;
+			}
+
+			return chunkData;
+		}
+		catch (IOException e) {
+			logger.log(Level.FINE, "  + Cannot use " + position + "; file cannot be read.", e);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.down;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.config.Config;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.operations.Downloader;
+import org.syncany.operations.down.actions.FileSystemAction;
+import org.syncany.plugins.transfer.StorageException;
+
+/**
+ * The multichunk prefetcher downloads the multichunks required by a list of (sorted)
+ * {@link FileSystemAction}s in the order in which the actions consume them, while keeping
+ * the amount of decrypted multichunks in the local cache below a given budget.
+ *
+ * <p>To do so, the actions are split into consecutive {@link Window}s (see
+ * {@link #planWindows(List, Map, long) planWindows()}). The multichunks of a window are downloaded
+ * in the background (using the {@link Downloader}) while the previous window's actions are applied.
+ * Once a window's actions have been applied, all multichunks that are not needed by any later
+ * action are deleted from the cache. Since at most two windows are in flight, each window may
+ * use at most half of the budget.
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class MultiChunkPrefetcher {
+	private static final Logger logger = Logger.getLogger(MultiChunkPrefetcher.class.getSimpleName());
+
+	private Config config;
+	private Downloader downloader;
+
+	private ExecutorService prefetchExecutor;
+	private Map<Window, Future<Void>> prefetchFutures;
+
+	public MultiChunkPrefetcher(Config config, Downloader downloader) {
+		this.config = config;
+		this.downloader = downloader;
+
+		this.prefetchExecutor = Executors.newSingleThreadExecutor();
+		this.prefetchFutures = new HashMap<Window, Future<Void>>();
+	}
+
+	/**
+	 * Splits a list of actions into windows, given the multichunks required by each action (in the order
+	 * of the actions), the (estimated) sizes of these multichunks, and the cache budget. 
+	 * 
+	 * <p>Actions are added to a window as long as the multichunks that are in the cache while the window is
+	 * applied fit into half of the budget, i.e. its own multichunks and the multichunks of previous windows
+	 * that are still needed. Actions that do not need any new multichunks are always added to the current window.
+	 * A window always contains at least one action, so a single action whose multichunks exceed the budget gets
+	 * a window of its own.
+	 *
+	 * @param actionMultiChunkIds Multichunks required by each action, in the order of the actions
+	 * @param multiChunkSizes Sizes of the multichunks, in bytes
+	 * @param cacheBudget Maximum size of the decrypted multichunks in the cache, in bytes
+	 * @return Returns the windows, covering all actions in order
+	 */
+	public static List<Window> planWindows(List<? extends Collection<MultiChunkId>> actionMultiChunkIds, Map<MultiChunkId, Long> multiChunkSizes,
+			long cacheBudget) {
+
+		long windowBudget = Math.max(1, cacheBudget / 2);
+		Map<MultiChunkId, Integer> lastActionIndexes = new HashMap<MultiChunkId, Integer>();
+
+		for (int actionIndex = 0; actionIndex < actionMultiChunkIds.size(); actionIndex++) {
+			for (MultiChunkId multiChunkId : actionMultiChunkIds.get(actionIndex)) {
+				lastActionIndexes.put(multiChunkId, actionIndex);
+			}
+		}
+
+		List<Window> windows = new ArrayList<Window>();
+		Set<MultiChunkId> cachedMultiChunkIds = new LinkedHashSet<MultiChunkId>();
+		long cachedSize = 0;
+
+		Window window = new Window(0);
+
+		for (int actionIndex = 0; actionIndex < actionMultiChunkIds.size(); actionIndex++) {
+			Set<MultiChunkId> newMultiChunkIds = new LinkedHashSet<MultiChunkId>(actionMultiChunkIds.get(actionIndex));
+			newMultiChunkIds.removeAll(cachedMultiChunkIds);
+
+			long newSize = 0;
+
+			for (MultiChunkId multiChunkId : newMultiChunkIds) {
+				newSize += multiChunkSizes.get(multiChunkId);
+			}
+
+			boolean windowFull = window.getActionCount() > 0 && newMultiChunkIds.size() > 0 && cachedSize + newSize > windowBudget;
+
+			if (windowFull) {
+				cachedSize -= window.release(cachedMultiChunkIds, lastActionIndexes, multiChunkSizes);
+				windows.add(window);
+
+				window = new Window(actionIndex);
+			}
+
+			window.add(newMultiChunkIds);
+			cachedMultiChunkIds.addAll(newMultiChunkIds);
+			cachedSize += newSize;
+		}
+
+		if (window.getActionCount() > 0) {
+			window.release(cachedMultiChunkIds, lastActionIndexes, multiChunkSizes);
+			windows.add(window);
+		}
+
+		return windows;
+	}
+
+	/**
+	 * Starts downloading and decrypting the given multichunks for the given window in the
+	 * background. Only one window is downloaded at a time. 
+	 * 
+	 * <p>The multichunks must be a subset of the multichunks the window was planned with (or of
+	 * the multichunks of previous windows that are still cached), e.g. the window's multichunks 
+	 * minus the ones whose chunks were found in local files (see {@link LocalChunkLocator}).
+	 */
+	public void prefetch(final Window window, final Set<MultiChunkId> multiChunkIds) {
+		logger.log(Level.INFO, "Prefetching " + multiChunkIds.size() + " multichunk(s) for " + window + " ...");
+
+		prefetchFutures.put(window, prefetchExecutor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				downloader.downloadAndDecryptMultiChunks(multiChunkIds);
+				return null;
+			}
+		}));
+	}
+
+	/**
+	 * Waits until the multichunks of the given window have been downloaded and decrypted.
+	 * The window must have been passed to {@link #prefetch(Window, Set)} before.
+	 */
+	public void awaitPrefetched(Window window) throws StorageException, IOException {
+		try {
+			prefetchFutures.remove(window).get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while prefetching multichunks.", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof StorageException) {
+				throw (StorageException) e.getCause();
+			}
+			else if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			else {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Deletes the decrypted multichunks that are not needed anymore after the
+	 * given window's actions have been applied.
+	 */
+	public void release(Window window) {
+		for (MultiChunkId multiChunkId : window.getReleasedMultiChunkIds()) {
+			File decryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(multiChunkId);
+
+			logger.log(Level.FINE, "  + Releasing multichunk " + multiChunkId + " from cache ...");
+			decryptedMultiChunkFile.delete();
+		}
+	}
+
+	/**
+	 * Cancels all pending prefetches and stops the background worker. Multichunks that
+	 * have already been downloaded remain in the cache.
+	 */
+	public void close() {
+		for (Future<Void> prefetchFuture : prefetchFutures.values()) {
+			prefetchFuture.cancel(true);
+		}
+
+		prefetchExecutor.shutdownNow();
+	}
+
+	/**
+	 * A window is a range of consecutive actions whose multichunks are downloaded together,
+	 * before any of its actions is applied. It also knows which multichunks can be removed from
+	 * the cache once its actions have been applied.
+	 */
+	public static class Window {
+		private int fromActionIndex;
+		private int toActionIndex; // exclusive
+		private Set<MultiChunkId> multiChunkIds;
+		private Set<MultiChunkId> releasedMultiChunkIds;
+
+		private Window(int fromActionIndex) {
+			this.fromActionIndex = fromActionIndex;
+			this.toActionIndex = fromActionIndex;
+			this.multiChunkIds = new LinkedHashSet<MultiChunkId>();
+			this.releasedMultiChunkIds = new LinkedHashSet<MultiChunkId>();
+		}
+
+		private void add(Set<MultiChunkId> newMultiChunkIds) {
+			multiChunkIds.addAll(newMultiChunkIds);
+			toActionIndex++;
+		}
+
+		/**
+		 * Moves all multichunks that are not used after this window from the given cached
+		 * multichunks to the released multichunks, and returns their total size.
+		 */
+		private long release(Set<MultiChunkId> cachedMultiChunkIds, Map<MultiChunkId, Integer> lastActionIndexes,
+				Map<MultiChunkId, Long> multiChunkSizes) {
+
+			long releasedSize = 0;
+
+			for (MultiChunkId multiChunkId : cachedMultiChunkIds) {
+				if (lastActionIndexes.get(multiChunkId) < toActionIndex) {
+					releasedMultiChunkIds.add(multiChunkId);
+					releasedSize += multiChunkSizes.get(multiChunkId);
+				}
+			}
+
+			cachedMultiChunkIds.removeAll(releasedMultiChunkIds);
+			return releasedSize;
+		}
+
+		public int getFromActionIndex() {
+			return fromActionIndex;
+		}
+
+		public int getToActionIndex() {
+			return toActionIndex;
+		}
+
+		public int getActionCount() {
+			return toActionIndex - fromActionIndex;
+		}
+
+		public Set<MultiChunkId> getMultiChunkIds() {
+			return Collections.unmodifiableSet(multiChunkIds);
+		}
+
+		public Set<MultiChunkId> getReleasedMultiChunkIds() {
+			return Collections.unmodifiableSet(releasedMultiChunkIds);
+		}
+
+		@Override
+		public String toString() {
+			return "Window[actions " + fromActionIndex + "-" + (toActionIndex - 1) + "]";
+		}
+	}
+}
@@ -212,7 +212,8 @@ public abstract class FileSystemAction {
 			logger.log(Level.INFO, "     - Creating folder at " + targetDir.toFile() + " ...");
 			boolean targetDirCreated = targetDir.toFile().mkdirs();
 
-			if (!targetDirCreated) {
+			// Folder might have been created by another action in the meantime (concurrent apply)
+			if (!targetDirCreated && !FileUtil.isDirectory(targetDir.toFile())) {
 				throw new Exception("Cannot create target dir: " + targetDir);
 			}
 		}
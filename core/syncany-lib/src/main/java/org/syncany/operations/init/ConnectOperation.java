@@ -33,6 +33,7 @@ import org.syncany.config.to.RepoTO;
 import org.syncany.crypto.CipherException;
 import org.syncany.crypto.CipherUtil;
 import org.syncany.crypto.SaltedSecretKey;
+import org.syncany.operations.daemon.MasterKeyAgentClient;
 import org.syncany.operations.daemon.messages.ShowMessageExternalEvent;
 import org.syncany.operations.init.ConnectOperationOptions.ConnectOptionsStrategy;
 import org.syncany.operations.init.ConnectOperationResult.ConnectResultCode;
@@ -352,7 +353,7 @@ public class ConnectOperation extends AbstractInitOperation {
 	private SaltedSecretKey createMasterKeyFromPassword(String masterPassword, byte[] masterKeySalt) throws CipherException {
 		fireNotifyCreateMaster();
 
-		SaltedSecretKey masterKey = CipherUtil.createMasterKey(masterPassword, masterKeySalt);
+		SaltedSecretKey masterKey = MasterKeyAgentClient.createMasterKey(masterPassword, masterKeySalt);
 		return masterKey;
 	}
 
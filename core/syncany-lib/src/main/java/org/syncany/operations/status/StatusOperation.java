@@ -20,13 +20,21 @@ package org.syncany.operations.status;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitResult;
-import java.nio.file.FileVisitor;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -48,11 +56,23 @@ import org.syncany.util.FileUtil;
  * database. It uses the {@link FileVersionComparator} to determine differences and returns
  * new/changed/deleted files in form of a {@link ChangeSet}.
  *
+ * <p>If the {@link StatusOperationOptions} contain a set of paths, only these files and
+ * folders (and their subtrees) are analyzed. This is used by the watch operation to only
+ * look at the parts of the local folder that the file system watcher reported as changed.
+ *
+ * <p>The local folder is walked in parallel: Sub-folders are analyzed by separate
+ * fork/join tasks. Each worker thread collects its results in its own change set, 
+ * and these change sets are merged into the final result once the walk is complete.
+ *
  * @author Philipp C. Heckel (philipp.heckel@gmail.com)
  */
 public class StatusOperation extends Operation {
 	private static final Logger logger = Logger.getLogger(StatusOperation.class.getSimpleName());
 
+	// Walking the file tree is dominated by file metadata latency (not CPU),
+	// so more threads than processors are used to hide this latency.
+	private static final int WALK_THREADS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
 	private FileVersionComparator fileVersionComparator;
 	private SqlDatabase localDatabase;
 	private StatusOperationOptions options;
@@ -112,27 +132,136 @@ public class StatusOperation extends Operation {
 	}
 
 	private ChangeSet findLocalChanges(final Map<String, FileVersion> filesInDatabase) throws FileNotFoundException, IOException {
-		ChangeSet localChanges = findLocalChangedAndNewFiles(config.getLocalDir(), filesInDatabase);
+		Set<String> scopePaths = (options != null && options.getPaths() != null) ? reduceScopePaths(options.getPaths()) : null;
+		ChangeSet localChanges = findLocalChangedAndNewFiles(config.getLocalDir(), scopePaths, filesInDatabase);
 
 		if (options == null || options.isDelete()) {
-			findAndAppendDeletedFiles(localChanges, filesInDatabase);
+			findAndAppendDeletedFiles(localChanges, scopePaths, filesInDatabase);
 		}
 
 		return localChanges;
 	}
 
-	private ChangeSet findLocalChangedAndNewFiles(final File root, Map<String, FileVersion> filesInDatabase)
+	/**
+	 * Reduces the given relative paths to the minimal set of paths that covers all
+	 * of them, i.e. paths whose parent folder is also in the set are dropped. Returns
+	 * <code>null</code> if the root folder itself is in the set, meaning that the
+	 * entire local folder must be analyzed.
+	 */
+	private Set<String> reduceScopePaths(Set<String> paths) {
+		Set<String> normalizedPaths = new HashSet<String>();
+		Set<String> scopePaths = new HashSet<String>();
+
+		for (String path : paths) {
+			normalizedPaths.add(FileUtil.removeTrailingSlash(path));
+		}
+
+		for (String path : normalizedPaths) {
+			if ("".equals(path)) {
+				logger.log(Level.INFO, "Status limited to root folder; analyzing entire local folder.");
+				return null;
+			}
+			else if (!isParentInScope(path, normalizedPaths)) {
+				scopePaths.add(path);
+			}
+		}
+
+		logger.log(Level.INFO, "Status limited to " + scopePaths.size() + " path(s) (of " + paths.size() + " reported path(s)).");
+		return scopePaths;
+	}
+
+	private boolean isInScope(String relativePath, Set<String> scopePaths) {
+		return scopePaths.contains(relativePath) || isParentInScope(relativePath, scopePaths);
+	}
+
+	private boolean isParentInScope(String relativePath, Set<String> scopePaths) {
+		int lastSlashIndex = relativePath.lastIndexOf('/');
+
+		while (lastSlashIndex > 0) {
+			String parentPath = relativePath.substring(0, lastSlashIndex);
+
+			if (scopePaths.contains(parentPath)) {
+				return true;
+			}
+
+			lastSlashIndex = parentPath.lastIndexOf('/');
+		}
+
+		return false;
+	}
+
+	private ChangeSet findLocalChangedAndNewFiles(final File root, Set<String> scopePaths, Map<String, FileVersion> filesInDatabase)
 			throws FileNotFoundException, IOException {
 		Path rootPath = Paths.get(root.getAbsolutePath());
+		List<StatusWalkTask> walkTasks = new ArrayList<StatusWalkTask>();
+
+		if (scopePaths == null) {
+			walkTasks.add(new StatusWalkTask(rootPath, rootPath, filesInDatabase));
+		}
+		else {
+			for (String scopePath : scopePaths) {
+				File scopeFile = new File(root, scopePath);
+
+				if (FileUtil.exists(scopeFile) && !isSkippedByParent(root, scopeFile, filesInDatabase)) {
+					walkTasks.add(new StatusWalkTask(rootPath, Paths.get(scopeFile.getAbsolutePath()), filesInDatabase));
+				}
+			}
+		}
+
+		// Walk the tree(s) in parallel and merge the results
+		ForkJoinPool walkPool = new ForkJoinPool(WALK_THREADS);
+		WorkerChangeSets workerChangeSets = new WorkerChangeSets();
+
+		try {
+			for (StatusWalkTask walkTask : walkTasks) {
+				walkTask.setWorkerChangeSets(workerChangeSets);
+				walkPool.execute(walkTask);
+			}
 
-		StatusFileVisitor fileVisitor = new StatusFileVisitor(rootPath, filesInDatabase);
-		Files.walkFileTree(rootPath, fileVisitor);
+			for (StatusWalkTask walkTask : walkTasks) {
+				walkTask.join();
+			}
+		}
+		finally {
+			walkPool.shutdownNow();
+		}
+
+		return workerChangeSets.merge();
+	}
 
-		return fileVisitor.getChangeSet();
+	/**
+	 * Determines whether a full walk of the local folder would have skipped the given
+	 * file because of one of its parent folders, i.e. because a parent folder is app-related,
+	 * ignored or a symlink. This mirrors the rules in the {@link StatusWalkTask}.
+	 */
+	private boolean isSkippedByParent(File root, File file, Map<String, FileVersion> filesInDatabase) {
+		for (File parentFile = file.getParentFile(); parentFile != null && !parentFile.equals(root); parentFile = parentFile.getParentFile()) {
+			String relativeParentPath = FileUtil.getRelativeDatabasePath(root, parentFile);
+
+			boolean isAppRelatedDir = parentFile.equals(config.getAppDir())
+					|| parentFile.equals(config.getCacheDir())
+					|| parentFile.equals(config.getDatabaseDir())
+					|| parentFile.equals(config.getLogDir());
+
+			boolean isIgnoredDir = !filesInDatabase.containsKey(relativeParentPath)
+					&& config.getIgnoredFiles().isFileIgnored(relativeParentPath, parentFile.getName());
+
+			if (isAppRelatedDir || isIgnoredDir || FileUtil.isSymlink(parentFile)) {
+				logger.log(Level.FINEST, "- Ignoring path (skipped by parent folder): {0}", file);
+				return true;
+			}
+		}
+
+		return false;
 	}
 
-	private void findAndAppendDeletedFiles(ChangeSet localChanges, Map<String, FileVersion> filesInDatabase) {
+	private void findAndAppendDeletedFiles(ChangeSet localChanges, Set<String> scopePaths, Map<String, FileVersion> filesInDatabase) {
 		for (FileVersion lastLocalVersion : filesInDatabase.values()) {
+			// Only check files in the analyzed paths (if limited)
+			if (scopePaths != null && !isInScope(lastLocalVersion.getPath(), scopePaths)) {
+				continue;
+			}
+
 			// Check if file exists, remove if it doesn't
 			File lastLocalVersionOnDisk = new File(config.getLocalDir() + File.separator + lastLocalVersion.getPath());
 
@@ -148,23 +277,126 @@ public class StatusOperation extends Operation {
 		}
 	}
 
-	private class StatusFileVisitor implements FileVisitor<Path> {
+	/**
+	 * Collects the results of the {@link StatusWalkTask}s in one {@link ChangeSet} per worker
+	 * thread, so that each path is only inserted into a change set once while walking, and
+	 * once more when the change sets are merged. A worker thread only runs one task at a time,
+	 * so the change sets do not need to be synchronized.
+	 */
+	private static class WorkerChangeSets {
+		private ThreadLocal<ChangeSet> workerChangeSet;
+		private List<ChangeSet> changeSets;
+
+		public WorkerChangeSets() {
+			this.workerChangeSet = new ThreadLocal<ChangeSet>();
+			this.changeSets = new ArrayList<ChangeSet>();
+		}
+
+		public ChangeSet get() {
+			ChangeSet changeSet = workerChangeSet.get();
+
+			if (changeSet == null) {
+				changeSet = new ChangeSet();
+				workerChangeSet.set(changeSet);
+
+				synchronized (changeSets) {
+					changeSets.add(changeSet);
+				}
+			}
+
+			return changeSet;
+		}
+
+		/**
+		 * Merges the change sets of all workers. Must only be called after all tasks are done.
+		 */
+		public ChangeSet merge() {
+			ChangeSet mergedChangeSet = new ChangeSet();
+
+			synchronized (changeSets) {
+				for (ChangeSet changeSet : changeSets) {
+					mergedChangeSet.addAll(changeSet);
+				}
+			}
+
+			return mergedChangeSet;
+		}
+	}
+
+	/**
+	 * The status walk task analyzes a single file or folder. For folders, it analyzes
+	 * all files inside the folder and forks a new task for each of its sub-folders.
+	 *
+	 * <p>The tasks do not have results of their own; all results are added to the change set
+	 * of the current worker thread (see {@link WorkerChangeSets}). Since most of the time is 
+	 * spent waiting for file metadata (especially on network file systems), walking sub-folders
+	 * in parallel hides most of this latency.
+	 */
+	private class StatusWalkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
 		private Path root;
-		private ChangeSet changeSet;
+		private Path path;
 		private Map<String, FileVersion> currentFileTree;
+		private WorkerChangeSets workerChangeSets;
 
-		public StatusFileVisitor(Path root, Map<String, FileVersion> currentFileTree) {
+		public StatusWalkTask(Path root, Path path, Map<String, FileVersion> currentFileTree) {
 			this.root = root;
-			this.changeSet = new ChangeSet();
+			this.path = path;
 			this.currentFileTree = currentFileTree;
 		}
 
-		public ChangeSet getChangeSet() {
-			return changeSet;
+		public void setWorkerChangeSets(WorkerChangeSets workerChangeSets) {
+			this.workerChangeSets = workerChangeSets;
 		}
 
 		@Override
-		public FileVisitResult visitFile(Path actualLocalFile, BasicFileAttributes attrs) throws IOException {
+		protected void compute() {
+			BasicFileAttributes attrs = readAttributes(path);
+
+			if (attrs != null && visitFile(path, attrs) == FileVisitResult.CONTINUE && attrs.isDirectory()) {
+				List<StatusWalkTask> subFolderTasks = new ArrayList<StatusWalkTask>();
+
+				try (DirectoryStream<Path> folderEntries = Files.newDirectoryStream(path)) {
+					for (Path folderEntry : folderEntries) {
+						BasicFileAttributes folderEntryAttrs = readAttributes(folderEntry);
+
+						if (folderEntryAttrs == null) {
+							continue;
+						}
+						else if (folderEntryAttrs.isDirectory()) {
+							StatusWalkTask subFolderTask = new StatusWalkTask(root, folderEntry, currentFileTree);
+							subFolderTask.setWorkerChangeSets(workerChangeSets);
+							subFolderTask.fork();
+
+							subFolderTasks.add(subFolderTask);
+						}
+						else {
+							visitFile(folderEntry, folderEntryAttrs);
+						}
+					}
+				}
+				catch (IOException | DirectoryIteratorException e) {
+					logger.log(Level.FINE, "- Cannot list folder contents; skipping: " + path, e);
+				}
+
+				for (StatusWalkTask subFolderTask : subFolderTasks) {
+					subFolderTask.join();
+				}
+			}
+		}
+
+		private BasicFileAttributes readAttributes(Path file) {
+			try {
+				return Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			}
+			catch (IOException e) {
+				logger.log(Level.FINEST, "- Cannot read file attributes; skipping: " + file, e);
+				return null;
+			}
+		}
+
+		private FileVisitResult visitFile(Path actualLocalFile, BasicFileAttributes attrs) {
 			String relativeFilePath = FileUtil.getRelativeDatabasePath(root.toFile(), actualLocalFile.toFile()); //root.relativize(actualLocalFile).toString();
 
 			// Skip Syncany root folder
@@ -192,6 +424,7 @@ public class StatusOperation extends Operation {
 			}
 
 			// Check database by file path
+			ChangeSet changeSet = workerChangeSets.get();
 			FileVersion expectedLastFileVersion = currentFileTree.get(relativeFilePath);
 
 			if (expectedLastFileVersion != null) {
@@ -230,19 +463,5 @@ public class StatusOperation extends Operation {
 			}
 		}
 
-		@Override
-		public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-			return visitFile(dir, attrs);
-		}
-
-		@Override
-		public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
-			return FileVisitResult.CONTINUE;
-		}
-
-		@Override
-		public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-			return FileVisitResult.CONTINUE;
-		}
 	}
 }
@@ -17,7 +17,10 @@
  */
 package org.syncany.operations.status;
 
+import java.util.Set;
+
 import org.simpleframework.xml.Element;
+import org.simpleframework.xml.ElementList;
 import org.simpleframework.xml.Root;
 import org.syncany.operations.OperationOptions;
 
@@ -29,6 +32,9 @@ public class StatusOperationOptions implements OperationOptions {
 	@Element(required = false)
 	private boolean delete = true;
 
+	@ElementList(required = false, entry = "path")
+	private Set<String> paths = null;
+
 	public boolean isForceChecksum() {
 		return forceChecksum;
 	}
@@ -44,4 +50,22 @@ public class StatusOperationOptions implements OperationOptions {
 	public void setDelete(boolean delete) {
 		this.delete = delete;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Returns the relative paths (files or folders, in the database path
+	 * format) that the status operation is limited to, or <code>null</code>
+	 * if the entire local folder is to be analyzed.
+	 */
+	public Set<String> getPaths() {
+		return paths;
+	}
+
+	/**
+	 * Limits the status operation to the given relative paths and their
+	 * subtrees. If <code>null</code> is passed, the entire local folder
+	 * is analyzed.
+	 */
+	public void setPaths(Set<String> paths) {
+		this.paths = paths;
+	}
+}
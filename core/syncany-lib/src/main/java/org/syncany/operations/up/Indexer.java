@@ -618,6 +618,7 @@ public class Indexer {
 		public void onMultiChunkClose(MultiChunk multiChunk) {
 			logger.log(Level.FINER, "- /MultiChunk {0}", multiChunk.getId());
 
+			multiChunkEntry.setId(multiChunk.getId()); // Changed for convergent multichunks
 			multiChunkEntry.setSize(multiChunk.getSize());
 
 			newDatabaseVersion.addMultiChunk(multiChunkEntry);
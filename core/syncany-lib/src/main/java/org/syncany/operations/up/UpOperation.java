@@ -29,6 +29,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Level;
@@ -47,8 +48,9 @@ import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.database.PartialFileHistory;
 import org.syncany.database.SqlDatabase;
 import org.syncany.database.VectorClock;
+import org.syncany.database.dao.DatabaseSerializer;
+import org.syncany.database.dao.DatabaseSerializer.DatabaseReadType;
 import org.syncany.database.dao.DatabaseXmlSerializer;
-import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
 import org.syncany.operations.AbstractTransferOperation;
 import org.syncany.operations.ChangeSet;
 import org.syncany.operations.cleanup.CleanupOperation;
@@ -111,6 +113,7 @@ public class UpOperation extends AbstractTransferOperation {
 	private TransactionRemoteFile transactionRemoteFileToResume;
 	private Collection<RemoteTransaction> remoteTransactionsToResume;
 	private BlockingQueue<DatabaseVersion> databaseVersionQueue;
+	private Set<String> remoteMultiChunkNames;
 
 	public UpOperation(Config config) {
 		this(config, new UpOperationOptions());
@@ -127,6 +130,7 @@ public class UpOperation extends AbstractTransferOperation {
 		this.transactionRemoteFileToResume = null;
 		this.remoteTransactionsToResume = null;
 		this.databaseVersionQueue = new LinkedBlockingQueue<>();
+		this.remoteMultiChunkNames = null;
 	}
 
 	@Override
@@ -165,7 +169,18 @@ public class UpOperation extends AbstractTransferOperation {
 		}
 		
 		// Go wild
-		int numberOfPerformedTransactions = executeTransactions();
+		int numberOfPerformedTransactions = 0;
+
+		try {
+			// Group the local commits of each transaction; they are synced
+			// to disk explicitly after each remote transaction.
+			localDatabase.beginGroupCommit();
+			numberOfPerformedTransactions = executeTransactions();
+		}
+		finally {
+			localDatabase.endGroupCommit();
+		}
+
 		updateResult(numberOfPerformedTransactions);		
 
 		// Close database connection
@@ -197,7 +212,7 @@ public class UpOperation extends AbstractTransferOperation {
 		
 		// Iterate over the changes, deduplicate, and feed DatabaseVersions into an iterator
 		Deduper deduper = new Deduper(config.getChunker(), config.getMultiChunker(), config.getTransformer(), options.getTransactionSizeLimit(),
-				options.getTransactionFileLimit());
+				options.getTransactionFileLimit(), config.getConvergenceKey());
 		
 		AsyncIndexer asyncIndexer = new AsyncIndexer(config, deduper, locallyUpdatedFiles, locallyDeletedFiles, databaseVersionQueue);
 		new Thread(asyncIndexer, "AsyncI/" + config.getLocalDir().getName()).start();
@@ -327,6 +342,10 @@ public class UpOperation extends AbstractTransferOperation {
 					logger.log(Level.INFO, "Committing local database.");
 					localDatabase.commit();
 
+					// The remote transaction is committed; the local database must reflect
+					// that before anything else happens (durability barrier).
+					localDatabase.sync();
+
 					committingFailed = false;
 				}
 				catch (Exception e) {
@@ -540,12 +559,12 @@ public class UpOperation extends AbstractTransferOperation {
 	}
 
 	/**
-	 * Serializes a {@link MemoryDatabase} to a file, using the configured transformer.
+	 * Serializes a {@link MemoryDatabase} to a file, using the configured database format and transformer.
 	 */
 	protected void saveDeltaDatabase(MemoryDatabase db, File localDatabaseFile) throws IOException {
 		logger.log(Level.INFO, "- Saving database to " + localDatabaseFile + " ...");
 
-		DatabaseXmlSerializer dao = new DatabaseXmlSerializer(config.getTransformer());
+		DatabaseSerializer dao = config.getDatabaseSerializer();
 		dao.save(db.getDatabaseVersions(), localDatabaseFile);
 	}
 
@@ -647,6 +666,10 @@ public class UpOperation extends AbstractTransferOperation {
 	/**
 	 * This methods adds the multichunks that are not yet present in the remote repo to the {@link RemoteTransaction} for
 	 * uploading. Multichunks are not uploaded if they are dirty.
+	 * 
+	 * <p>If the repository uses convergent multichunks, multichunks are also not uploaded if a multichunk with the
+	 * same identifier already exists remotely: Convergent multichunks with the same identifier have the same contents,
+	 * so the multichunk was uploaded by another client indexing the same data.
 	 *
 	 * @param multiChunkEntries Collection of multiChunkEntries that are included in the new {@link DatabaseVersion}
 	 */
@@ -658,6 +681,9 @@ public class UpOperation extends AbstractTransferOperation {
 			if (dirtyMultiChunkIds.contains(multiChunkEntry.getId())) {
 				logger.log(Level.INFO, "- Ignoring multichunk (from dirty database, already uploaded), " + multiChunkEntry.getId() + " ...");
 			}
+			else if (config.isConvergent() && getRemoteMultiChunkNames().contains(new MultichunkRemoteFile(multiChunkEntry.getId()).getName())) {
+				logger.log(Level.INFO, "- Ignoring multichunk (convergent, already uploaded by another client), " + multiChunkEntry.getId() + " ...");
+			}
 			else {
 				File localMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(multiChunkEntry.getId());
 				MultichunkRemoteFile remoteMultiChunkFile = new MultichunkRemoteFile(multiChunkEntry.getId());
@@ -665,11 +691,24 @@ public class UpOperation extends AbstractTransferOperation {
 				logger.log(Level.INFO, "- Uploading multichunk {0} from {1} to {2} ...", new Object[] { multiChunkEntry.getId(), localMultiChunkFile,
 						remoteMultiChunkFile });
 
-				remoteTransaction.upload(localMultiChunkFile, remoteMultiChunkFile);
+				remoteTransaction.upload(localMultiChunkFile, remoteMultiChunkFile, config.isConvergent());
 			}
 		}
 	}
 
+	/**
+	 * Returns the names of the multichunks in the remote repository. The list is retrieved at most once per
+	 * operation, and only if it is needed (convergent repositories, see {@link #addMultiChunksToTransaction(RemoteTransaction, Collection)}).
+	 * Multichunks uploaded by this operation are not in the list, but their identifiers are new anyway.
+	 */
+	private Set<String> getRemoteMultiChunkNames() throws StorageException {
+		if (remoteMultiChunkNames == null) {
+			remoteMultiChunkNames = transferManager.list(MultichunkRemoteFile.class).keySet();
+		}
+
+		return remoteMultiChunkNames;
+	}
+
 	private void addLocalDatabaseToTransaction(RemoteTransaction remoteTransaction, File localDatabaseFile, DatabaseRemoteFile remoteDatabaseFile)
 			throws InterruptedException,
 			StorageException {
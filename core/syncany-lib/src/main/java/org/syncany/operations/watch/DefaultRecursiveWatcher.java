@@ -29,6 +29,7 @@ import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
@@ -76,10 +77,19 @@ public class DefaultRecursiveWatcher extends RecursiveWatcher {
 
 	@Override
 	protected boolean pollEvents() throws InterruptedException {
-		// Take events, but don't care what they are!
+		// Take events and remember which paths have changed
 		WatchKey watchKey = watchService.take();
+		Path watchedDir = (Path) watchKey.watchable();
+
+		for (WatchEvent<?> watchEvent : watchKey.pollEvents()) {
+			if (watchEvent.kind() == OVERFLOW) {
+				addDirtyPath(root);
+			}
+			else {
+				addDirtyPath(watchedDir.resolve((Path) watchEvent.context()));
+			}
+		}
 
-		watchKey.pollEvents();
 		watchKey.reset();
 
 		// Events are always relevant; ignored paths are not monitored
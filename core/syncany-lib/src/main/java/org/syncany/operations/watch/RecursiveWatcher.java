@@ -20,7 +20,9 @@ package org.syncany.operations.watch;
 import java.io.IOException;
 import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.Path;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -36,6 +38,10 @@ import org.syncany.util.EnvironmentUtil;
  * to settle. It is reset whenever a new event occurs. When the timer times out,
  * an event is thrown through the {@link WatchListener}.
  *
+ * <p>In addition, the watcher collects the paths of the files and folders for which
+ * events occurred. Listeners may take these <em>dirty paths</em> via {@link #takeDirtyPaths()}
+ * to limit their work to the changed parts of the file tree.
+ *
  * <p>This is an abstract class, using several template methods that are called
  * in different lifecycle states: {@link #beforeStart()}, {@link #beforePollEventLoop()},
  * {@link #pollEvents()}, and {@link #afterStop()}.
@@ -51,6 +57,7 @@ public abstract class RecursiveWatcher {
 	private WatchListener listener;
 
 	private AtomicBoolean running;
+	private Set<Path> dirtyPaths;
 
 	private Thread watchThread;
 	private Timer timer;
@@ -62,6 +69,7 @@ public abstract class RecursiveWatcher {
 		this.listener = listener;
 
 		this.running = new AtomicBoolean(false);
+		this.dirtyPaths = new HashSet<Path>();
 	}
 
 	/**
@@ -149,6 +157,40 @@ public abstract class RecursiveWatcher {
 		}
 	}
 
+	/**
+	 * Returns whether the watch thread is running, i.e. whether
+	 * file system events are currently being registered.
+	 */
+	public boolean isRunning() {
+		return running.get();
+	}
+
+	/**
+	 * Returns the (absolute) paths of all files and folders for which events occurred
+	 * since the last call of this method, and resets the set of dirty paths. If the
+	 * returned set contains the root folder, events may have been lost (e.g. due to
+	 * an overflow) and the entire file tree must be considered changed.
+	 */
+	public Set<Path> takeDirtyPaths() {
+		synchronized (dirtyPaths) {
+			Set<Path> takenDirtyPaths = new HashSet<Path>(dirtyPaths);
+			dirtyPaths.clear();
+
+			return takenDirtyPaths;
+		}
+	}
+
+	/**
+	 * Marks the given (absolute) path as changed. This method is to be called
+	 * by subclasses in {@link #pollEvents()} for every relevant event. If events
+	 * have been lost, subclasses must mark the root folder.
+	 */
+	protected void addDirtyPath(Path path) {
+		synchronized (dirtyPaths) {
+			dirtyPaths.add(path.toAbsolutePath().normalize());
+		}
+	}
+
 	private synchronized void restartWaitSettlementTimer() {
 		logger.log(Level.FINE, "File system events registered. Waiting " + settleDelay + "ms for settlement ....");
 
@@ -192,7 +234,8 @@ public abstract class RecursiveWatcher {
 	/**
 	 * Called in the watch service polling thread, inside
 	 * of the {@link #pollEvents()} loop. This method is called
-	 * multiple times.
+	 * multiple times. Implementations must mark the paths of relevant
+	 * events using {@link #addDirtyPath(Path)}.
 	 */
 	protected abstract boolean pollEvents() throws InterruptedException;
 
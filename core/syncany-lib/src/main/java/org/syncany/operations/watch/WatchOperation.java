@@ -20,8 +20,10 @@ package org.syncany.operations.watch;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -41,11 +43,13 @@ import org.syncany.operations.daemon.messages.WatchStartSyncExternalEvent;
 import org.syncany.operations.down.DownOperation;
 import org.syncany.operations.down.DownOperationResult;
 import org.syncany.operations.down.DownOperationResult.DownResultCode;
+import org.syncany.operations.status.StatusOperationOptions;
 import org.syncany.operations.up.UpOperation;
 import org.syncany.operations.up.UpOperationResult;
 import org.syncany.operations.up.UpOperationResult.UpResultCode;
 import org.syncany.operations.watch.NotificationListener.NotificationListenerListener;
 import org.syncany.operations.watch.RecursiveWatcher.WatchListener;
+import org.syncany.util.FileUtil;
 import org.syncany.util.StringUtil;
 
 /**
@@ -66,6 +70,11 @@ import org.syncany.util.StringUtil;
  *      changes are synced eventually.</li>
  * </ul>
  *
+ * <p>If the file system watcher is running, the {@link UpOperation} only analyzes the
+ * paths that the watcher reported as changed (see {@link RecursiveWatcher#takeDirtyPaths()}).
+ * The entire local folder is still analyzed regularly (see {@link WatchOperationOptions#getFullScanInterval()}),
+ * or whenever the watcher might have missed events.
+ *
  * As of now, this operation never returns, because it runs in a loop. The user
  * has to manually abort the operation on the command line.
  *
@@ -87,6 +96,9 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 	private AtomicInteger upCount;
 
 	private RecursiveWatcher recursiveWatcher;
+	private Set<Path> pendingDirtyPaths;
+	private long lastFullScanTime;
+
 	private NotificationListener notificationListener;
 	private LocalEventBus eventBus;
 
@@ -108,6 +120,9 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 		this.upCount = new AtomicInteger(0);
 
 		this.recursiveWatcher = null;
+		this.pendingDirtyPaths = new HashSet<Path>();
+		this.lastFullScanTime = 0;
+
 		this.notificationListener = null;
 		this.eventBus = LocalEventBus.getInstance();
 
@@ -250,8 +265,25 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 					// TODO [low] Do something?
 				}
 
-				// Run up
-				UpOperationResult upOperationResult = new UpOperation(config, options.getUpOptions()).execute();
+				// Run up (only analyze changed paths, if possible)
+				StatusOperationOptions statusOptions = options.getUpOptions().getStatusOptions();
+				Set<String> dirtyStatusPaths = getDirtyStatusPaths();
+				UpOperationResult upOperationResult = null;
+
+				statusOptions.setPaths(dirtyStatusPaths);
+
+				try {
+					upOperationResult = new UpOperation(config, options.getUpOptions()).execute();
+				}
+				finally {
+					statusOptions.setPaths(null);
+				}
+
+				if (upOperationResult.getResultCode() == UpResultCode.OK_CHANGES_UPLOADED
+						|| upOperationResult.getResultCode() == UpResultCode.OK_NO_CHANGES) {
+
+					markDirtyPathsSynced(dirtyStatusPaths == null);
+				}
 
 				if (upOperationResult.getResultCode() == UpResultCode.OK_CHANGES_UPLOADED && upOperationResult.getChangeSet().hasChanges()) {
 					upCount.incrementAndGet();
@@ -284,6 +316,48 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 		}
 	}
 
+	/**
+	 * Returns the relative paths that the status operation has to analyze, or <code>null</code>
+	 * if the entire local folder has to be analyzed. A full scan is required if the watcher is
+	 * not running (or lost events), or if the full scan interval has passed.
+	 *
+	 * <p>Dirty paths are kept until {@link #markDirtyPathsSynced(boolean)} is called, so
+	 * that they are analyzed again if the up operation fails.
+	 */
+	private Set<String> getDirtyStatusPaths() {
+		if (recursiveWatcher == null || !recursiveWatcher.isRunning()) {
+			return null;
+		}
+
+		Path localDir = Paths.get(config.getLocalDir().getAbsolutePath());
+		pendingDirtyPaths.addAll(recursiveWatcher.takeDirtyPaths());
+
+		boolean fullScanDue = options.getFullScanInterval() <= 0 || lastFullScanTime == 0
+				|| System.currentTimeMillis() - lastFullScanTime >= options.getFullScanInterval();
+
+		if (fullScanDue || pendingDirtyPaths.contains(localDir)) {
+			logger.log(Level.INFO, "Full scan of local folder required.");
+			return null;
+		}
+
+		Set<String> dirtyStatusPaths = new HashSet<String>();
+
+		for (Path dirtyPath : pendingDirtyPaths) {
+			dirtyStatusPaths.add(FileUtil.getRelativeDatabasePath(localDir.toFile(), dirtyPath.toFile()));
+		}
+
+		logger.log(Level.INFO, "Scanning " + dirtyStatusPaths.size() + " changed path(s) of local folder.");
+		return dirtyStatusPaths;
+	}
+
+	private void markDirtyPathsSynced(boolean fullScan) {
+		if (fullScan) {
+			lastFullScanTime = System.currentTimeMillis();
+		}
+
+		pendingDirtyPaths.clear();
+	}
+
 	@Override
 	public void pushNotificationReceived(String channel, String message) {
 		if (channel.equals(notificationChannel) && !message.equals(notificationInstanceId)) {
@@ -56,6 +56,9 @@ public class WatchOperationOptions implements OperationOptions {
 	@Element(required = false)
 	private boolean watcher = true;
 	
+	@Element(required = false)
+	private int fullScanInterval = 30*60*1000;
+	
 	@Element(name = "up", required = false) 
 	private UpOperationOptions upOptions = new UpOperationOptions();
 	
@@ -113,6 +116,19 @@ public class WatchOperationOptions implements OperationOptions {
 		this.watcher = watcher;
 	}
 
+	/**
+	 * Returns the interval (in ms) after which the entire local folder is analyzed,
+	 * even if the file system watcher only reported changes in some of its paths.
+	 * A value of zero (or less) disables path-limited analysis.
+	 */
+	public int getFullScanInterval() {
+		return fullScanInterval;
+	}
+
+	public void setFullScanInterval(int fullScanInterval) {
+		this.fullScanInterval = fullScanInterval;
+	}
+
 	public int getCleanupInterval() {
 		return cleanupInterval;
 	}
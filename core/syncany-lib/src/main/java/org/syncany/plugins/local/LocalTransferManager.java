@@ -18,7 +18,9 @@
 package org.syncany.plugins.local;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -33,12 +35,14 @@ import org.syncany.plugins.transfer.AbstractTransferManager;
 import org.syncany.plugins.transfer.StorageException;
 import org.syncany.plugins.transfer.StorageFileNotFoundException;
 import org.syncany.plugins.transfer.StorageMoveException;
+import org.syncany.plugins.transfer.StreamingTransferManager;
 import org.syncany.plugins.transfer.TransferManager;
 import org.syncany.plugins.transfer.files.ActionRemoteFile;
 import org.syncany.plugins.transfer.files.CleanupRemoteFile;
 import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
 import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
 import org.syncany.plugins.transfer.files.RemoteFile;
+import org.syncany.plugins.transfer.files.SnapshotRemoteFile;
 import org.syncany.plugins.transfer.files.SyncanyRemoteFile;
 import org.syncany.plugins.transfer.files.TempRemoteFile;
 import org.syncany.plugins.transfer.files.TransactionRemoteFile;
@@ -65,7 +69,7 @@ import com.google.common.collect.Maps;
  *
  * @author Philipp C. Heckel (philipp.heckel@gmail.com)
  */
-public class LocalTransferManager extends AbstractTransferManager {
+public class LocalTransferManager extends AbstractTransferManager implements StreamingTransferManager {
 	private static final Logger logger = Logger.getLogger(LocalTransferManager.class.getSimpleName());
 
 	private Path repoPath;
@@ -159,6 +163,29 @@ public class LocalTransferManager extends AbstractTransferManager {
 		}
 	}
 
+	@Override
+	public boolean isStreamingSupported() {
+		return true;
+	}
+
+	@Override
+	public InputStream downloadStream(RemoteFile remoteFile) throws StorageException {
+		connect();
+
+		File repoFile = getRemoteFile(remoteFile);
+
+		if (!repoFile.exists()) {
+			throw new StorageFileNotFoundException("No such file in local repository: " + repoFile);
+		}
+
+		try {
+			return new FileInputStream(repoFile);
+		}
+		catch (IOException ex) {
+			throw new StorageException("Unable to open file " + repoFile + " in local repository", ex);
+		}
+	}
+
 	@Override
 	public void move(RemoteFile sourceFile, RemoteFile targetFile) throws StorageException {
 		connect();
@@ -170,6 +197,10 @@ public class LocalTransferManager extends AbstractTransferManager {
 			throw new StorageMoveException("Unable to move file " + sourceFile + " because it does not exist.");
 		}
 
+		if (targetRemoteFile.exists()) {
+			throw new StorageMoveException("Unable to move file " + sourceFile + " because the target " + targetFile + " already exists.");
+		}
+
 		try {
 			FileUtils.moveFile(sourceRemoteFile, targetRemoteFile);
 		}
@@ -245,7 +276,7 @@ public class LocalTransferManager extends AbstractTransferManager {
 		if (remoteFile.equals(MultichunkRemoteFile.class)) {
 			return multichunksPath.toString();
 		}
-		else if (remoteFile.equals(DatabaseRemoteFile.class) || remoteFile.equals(CleanupRemoteFile.class)) {
+		else if (remoteFile.equals(DatabaseRemoteFile.class) || remoteFile.equals(CleanupRemoteFile.class) || remoteFile.equals(SnapshotRemoteFile.class)) {
 			return databasesPath.toString();
 		}
 		else if (remoteFile.equals(ActionRemoteFile.class)) {
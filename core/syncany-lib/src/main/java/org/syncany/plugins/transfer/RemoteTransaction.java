@@ -24,8 +24,10 @@ import java.util.logging.Logger;
 import org.syncany.chunk.Transformer;
 import org.syncany.config.Config;
 import org.syncany.config.LocalEventBus;
+import org.syncany.crypto.CipherUtil;
 import org.syncany.operations.daemon.messages.UpUploadFileInTransactionSyncExternalEvent;
 import org.syncany.operations.daemon.messages.UpUploadFileSyncExternalEvent;
+import org.syncany.plugins.transfer.features.TransactionAwareFeatureTransferManager;
 import org.syncany.plugins.transfer.files.RemoteFile;
 import org.syncany.plugins.transfer.files.TempRemoteFile;
 import org.syncany.plugins.transfer.files.TransactionRemoteFile;
@@ -33,6 +35,7 @@ import org.syncany.plugins.transfer.to.ActionTO;
 import org.syncany.plugins.transfer.to.ActionTO.ActionStatus;
 import org.syncany.plugins.transfer.to.ActionTO.ActionType;
 import org.syncany.plugins.transfer.to.TransactionTO;
+import org.syncany.util.StringUtil;
 
 /**
  * This class represents a transaction in a remote system. It will keep track of
@@ -43,17 +46,17 @@ import org.syncany.plugins.transfer.to.TransactionTO;
 public class RemoteTransaction {
 	private static final Logger logger = Logger.getLogger(RemoteTransaction.class.getSimpleName());
 
-	private TransferManager transferManager;
+	private TransactionAwareFeatureTransferManager transferManager;
 	private Config config;
 	private TransactionTO transactionTO;
 
 	private LocalEventBus eventBus;
 
-	public RemoteTransaction(Config config, TransferManager transferManager) {
+	public RemoteTransaction(Config config, TransactionAwareFeatureTransferManager transferManager) {
 		this(config, transferManager, new TransactionTO(config.getMachineName()));
 	}
 
-	public RemoteTransaction(Config config, TransferManager transferManager, TransactionTO transactionTO) {
+	public RemoteTransaction(Config config, TransactionAwareFeatureTransferManager transferManager, TransactionTO transactionTO) {
 		this.config = config;
 		this.transferManager = transferManager;
 		this.transactionTO = transactionTO;
@@ -71,6 +74,18 @@ public class RemoteTransaction {
 	 * Adds a file to this transaction. Generates a temporary file to store it.
 	 */
 	public void upload(File localFile, RemoteFile remoteFile) throws StorageException {
+		upload(localFile, remoteFile, false);
+	}
+
+	/**
+	 * Adds a file to this transaction. Generates a temporary file to store it.
+	 *
+	 * <p>If the file is <em>convergent</em>, other clients may upload a file with the same
+	 * name and the same contents at the same time (see {@link ActionTO#isConvergent()}). If the
+	 * file already exists when it is moved to its final location, the existing file is kept,
+	 * and the file is not deleted if the transaction is rolled back.
+	 */
+	public void upload(File localFile, RemoteFile remoteFile, boolean convergent) throws StorageException {
 		TempRemoteFile temporaryRemoteFile = new TempRemoteFile(remoteFile);
 
 		logger.log(Level.INFO, "- Adding file to TX for UPLOAD: " + localFile + " -> Temp. remote file: " + temporaryRemoteFile
@@ -81,6 +96,7 @@ public class RemoteTransaction {
 		action.setLocalTempLocation(localFile);
 		action.setRemoteLocation(remoteFile);
 		action.setRemoteTempLocation(temporaryRemoteFile);
+		action.setConvergent(convergent);
 
 		transactionTO.addAction(action);
 	}
@@ -140,7 +156,7 @@ public class RemoteTransaction {
 		logger.log(Level.INFO, "- Starting to upload data in commit.");
 
 		uploadAndMoveToTempLocation();
-		moveToFinalLocation();
+		remoteTransactionFile = moveToFinalLocation(remoteTransactionFile);
 
 		deleteTransactionFile(localTransactionFile, remoteTransactionFile);
 		deleteTempRemoteFiles();
@@ -262,17 +278,100 @@ public class RemoteTransaction {
 	/**
 	 * This method constitutes the second step in the committing process. All files have been uploaded, and they are
 	 * now moved to their final location.
+	 * 
+	 * <p>If moving fails after convergent files have been written by this transaction, the remote transaction file is
+	 * replaced (see {@link #replaceTransactionFile(TransactionRemoteFile)}), so that a later rollback deletes these files.
+	 * Returns the current remote transaction file.
 	 */
-	private void moveToFinalLocation() throws StorageException {
-		for (ActionTO action : transactionTO.getActions()) {
-			if (action.getType().equals(ActionType.UPLOAD)) {
-				RemoteFile tempRemoteFile = action.getTempRemoteFile();
-				RemoteFile finalRemoteFile = action.getRemoteFile();
+	private TransactionRemoteFile moveToFinalLocation(TransactionRemoteFile remoteTransactionFile) throws StorageException {
+		boolean convergentFilesWritten = false;
+
+		try {
+			for (ActionTO action : transactionTO.getActions()) {
+				if (action.getType().equals(ActionType.UPLOAD)) {
+					RemoteFile tempRemoteFile = action.getTempRemoteFile();
+					RemoteFile finalRemoteFile = action.getRemoteFile();
+
+					logger.log(Level.INFO, "- Moving temp. file {0} to final location {1} ...", new Object[] { tempRemoteFile, finalRemoteFile });
+
+					if (action.isConvergent()) {
+						if (moveConvergentToFinalLocation(tempRemoteFile, finalRemoteFile)) {
+							action.setFinalLocationWritten(true);
+							convergentFilesWritten = true;
+						}
+					}
+					else {
+						transferManager.move(tempRemoteFile, finalRemoteFile);
+					}
+
+					action.setStatus(ActionStatus.DONE);
+				}
+			}
+
+			return remoteTransactionFile;
+		}
+		catch (StorageException e) {
+			if (convergentFilesWritten) {
+				try {
+					replaceTransactionFile(remoteTransactionFile);
+				}
+				catch (StorageException replaceException) {
+					logger.log(Level.WARNING, "Cannot replace transaction file. Convergent files of this transaction will not be deleted on rollback.",
+							replaceException);
+				}
+			}
+
+			throw e;
+		}
+	}
 
-				logger.log(Level.INFO, "- Moving temp. file {0} to final location {1} ...", new Object[] { tempRemoteFile, finalRemoteFile });
-				transferManager.move(tempRemoteFile, finalRemoteFile);
-				action.setStatus(ActionStatus.DONE);
+	/**
+	 * Moves a convergent file to its final location. If the move fails because another client
+	 * has already uploaded the same file, the existing file is kept and the temporary file is
+	 * deleted: Convergent files with the same name have the same contents.
+	 * 
+	 * @return Returns <code>true</code> if the file at the final location was written by this 
+	 *         transaction, <code>false</code> if it already existed
+	 */
+	private boolean moveConvergentToFinalLocation(RemoteFile tempRemoteFile, RemoteFile finalRemoteFile) throws StorageException {
+		try {
+			transferManager.move(tempRemoteFile, finalRemoteFile);
+			return true;
+		}
+		catch (StorageException e) {
+			if (!transferManager.exists(finalRemoteFile)) {
+				throw e;
 			}
+
+			logger.log(Level.INFO, "  -> Final location {0} already exists (convergent file, uploaded by another client). Deleting temp. file.",
+					finalRemoteFile);
+
+			transferManager.delete(tempRemoteFile);
+			return false;
+		}
+	}
+
+	/**
+	 * Uploads the current state of this transaction as a new remote transaction file, and then deletes
+	 * the given one. The new file is uploaded under a new name (rather than overwriting the old one), 
+	 * so that there is always at least one transaction file for a rollback.
+	 */
+	private TransactionRemoteFile replaceTransactionFile(TransactionRemoteFile remoteTransactionFile) throws StorageException {
+		File localTransactionFile = writeLocalTransactionFile();
+		TransactionRemoteFile newRemoteTransactionFile = new TransactionRemoteFile(String.format("transaction-%s",
+				StringUtil.toHex(CipherUtil.createRandomArray(4))));
+
+		try {
+			logger.log(Level.INFO, "- Replacing remote transaction file {0} with {1} ...", new Object[] { remoteTransactionFile,
+					newRemoteTransactionFile });
+
+			transferManager.upload(localTransactionFile, newRemoteTransactionFile);
+			transferManager.delete(remoteTransactionFile);
+
+			return newRemoteTransactionFile;
+		}
+		finally {
+			localTransactionFile.delete();
 		}
 	}
 
@@ -0,0 +1,66 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import java.io.File;
+import java.io.InputStream;
+
+import org.syncany.plugins.transfer.features.FeatureTransferManager;
+import org.syncany.plugins.transfer.files.RemoteFile;
+
+/**
+ * A streaming transfer manager is a {@link TransferManager} that can hand out
+ * the contents of a remote file as an {@link InputStream}, instead of downloading
+ * it to a local file first. Implementing this interface is optional for plugins.
+ *
+ * <p>The streaming API allows callers to process a remote file while it is being
+ * downloaded, e.g. to decrypt a multichunk directly into the local cache, without
+ * writing the encrypted file to disk first.
+ *
+ * <p>Since {@link FeatureTransferManager}s wrap the plugin's transfer manager, they
+ * implement this interface regardless of whether the underlying transfer manager
+ * supports streaming. Callers must therefore check {@link #isStreamingSupported()}
+ * before calling {@link #downloadStream(RemoteFile)}.
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public interface StreamingTransferManager extends TransferManager {
+	/**
+	 * Returns whether {@link #downloadStream(RemoteFile)} can be used with this
+	 * transfer manager. Plugin transfer managers implementing this interface
+	 * typically return <code>true</code>.
+	 */
+	public boolean isStreamingSupported();
+
+	/**
+	 * Opens a stream to read the given remote file from the remote storage. The
+	 * caller must close the stream after use. Unlike {@link #download(RemoteFile, File)},
+	 * the data is not stored locally, so the caller is responsible for making sure
+	 * that incomplete or corrupt data is not used.
+	 *
+	 * <p>If remoteFile does not exist, a {@link StorageFileNotFoundException} is thrown.
+	 * Errors while reading from the returned stream are thrown as {@link java.io.IOException}s.
+	 *
+	 * @param remoteFile Existing source file on the remote storage.
+	 *        The only required property of the remote file is the name.
+	 * @return Input stream to read the contents of the remote file
+	 * @throws StorageException If the connection fails due to no Internet connection,
+	 *         authentication errors, etc., or if streaming is not supported
+	 */
+	public InputStream downloadStream(RemoteFile remoteFile) throws StorageException;
+}
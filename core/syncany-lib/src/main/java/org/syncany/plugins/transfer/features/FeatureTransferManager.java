@@ -17,6 +17,7 @@
  */
 package org.syncany.plugins.transfer.features;
 
+import org.syncany.plugins.transfer.StreamingTransferManager;
 import org.syncany.plugins.transfer.TransferManager;
 import org.syncany.plugins.transfer.TransferManagerFactory;
 
@@ -36,10 +37,13 @@ import org.syncany.plugins.transfer.TransferManagerFactory;
  *     ransferManager underlyingTransferManager, Config config, PathAware pathAwareAnnotation);
  * </pre>
  * 
+ * <p>Feature transfer managers are {@link StreamingTransferManager}s, but they only support 
+ * streaming if the underlying transfer manager does.
+ * 
  * @see Feature
  * @see FeatureExtension
  * @author Philipp C. Heckel (philipp.heckel@gmail.com)
  */
-public interface FeatureTransferManager extends TransferManager {
+public interface FeatureTransferManager extends StreamingTransferManager {
 	// Marker interface
 }
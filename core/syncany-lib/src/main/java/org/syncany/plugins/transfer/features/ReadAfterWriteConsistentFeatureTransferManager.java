@@ -18,6 +18,7 @@
 package org.syncany.plugins.transfer.features;
 
 import java.io.File;
+import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Map;
@@ -27,6 +28,7 @@ import java.util.logging.Logger;
 import org.syncany.config.Config;
 import org.syncany.plugins.transfer.StorageException;
 import org.syncany.plugins.transfer.StorageTestResult;
+import org.syncany.plugins.transfer.StreamingTransferManager;
 import org.syncany.plugins.transfer.TransferManager;
 import org.syncany.plugins.transfer.files.RemoteFile;
 import org.syncany.util.ReflectionUtil;
@@ -95,6 +97,21 @@ public class ReadAfterWriteConsistentFeatureTransferManager implements FeatureTr
 		underlyingTransferManager.download(remoteFile, localFile);
 	}
 
+	@Override
+	public boolean isStreamingSupported() {
+		return underlyingTransferManager instanceof StreamingTransferManager
+				&& ((StreamingTransferManager) underlyingTransferManager).isStreamingSupported();
+	}
+
+	@Override
+	public InputStream downloadStream(final RemoteFile remoteFile) throws StorageException {
+		if (!isStreamingSupported()) {
+			throw new StorageException("Streaming not supported by " + underlyingTransferManager.getClass().getSimpleName());
+		}
+
+		return ((StreamingTransferManager) underlyingTransferManager).downloadStream(remoteFile);
+	}
+
 	@Override
 	public void move(final RemoteFile sourceFile, final RemoteFile targetFile) throws StorageException {
 		underlyingTransferManager.move(sourceFile, targetFile);
@@ -18,6 +18,7 @@
 package org.syncany.plugins.transfer.features;
 
 import java.io.File;
+import java.io.InputStream;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -26,6 +27,7 @@ import org.syncany.config.Config;
 import org.syncany.plugins.transfer.StorageException;
 import org.syncany.plugins.transfer.StorageMoveException;
 import org.syncany.plugins.transfer.StorageTestResult;
+import org.syncany.plugins.transfer.StreamingTransferManager;
 import org.syncany.plugins.transfer.TransferManager;
 import org.syncany.plugins.transfer.files.RemoteFile;
 
@@ -105,6 +107,27 @@ public class RetriableFeatureTransferManager implements FeatureTransferManager {
 		});
 	}
 
+	@Override
+	public boolean isStreamingSupported() {
+		return underlyingTransferManager instanceof StreamingTransferManager
+				&& ((StreamingTransferManager) underlyingTransferManager).isStreamingSupported();
+	}
+
+	@Override
+	public InputStream downloadStream(final RemoteFile remoteFile) throws StorageException {
+		if (!isStreamingSupported()) {
+			throw new StorageException("Streaming not supported by " + underlyingTransferManager.getClass().getSimpleName());
+		}
+
+		// Only opening the stream is retried; errors while reading are up to the caller
+		return (InputStream) retryMethod(new RetriableMethod() {
+			@Override
+			public Object execute() throws StorageException {
+				return ((StreamingTransferManager) underlyingTransferManager).downloadStream(remoteFile);
+			}
+		});
+	}
+
 	@Override
 	public void move(final RemoteFile sourceFile, final RemoteFile targetFile) throws StorageException {
 		retryMethod(new RetriableMethod() {
@@ -19,6 +19,7 @@ package org.syncany.plugins.transfer.features;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.util.ArrayList;
@@ -40,6 +41,7 @@ import org.syncany.plugins.transfer.StorageException;
 import org.syncany.plugins.transfer.StorageFileNotFoundException;
 import org.syncany.plugins.transfer.StorageMoveException;
 import org.syncany.plugins.transfer.StorageTestResult;
+import org.syncany.plugins.transfer.StreamingTransferManager;
 import org.syncany.plugins.transfer.TransferManager;
 import org.syncany.plugins.transfer.files.RemoteFile;
 import org.syncany.plugins.transfer.files.TempRemoteFile;
@@ -100,12 +102,22 @@ public class TransactionAwareFeatureTransferManager implements FeatureTransferMa
 	 * if a file does not exist.
 	 */
 	private void downloadDeletedTempFileInTransaction(RemoteFile remoteFile, File localFile) throws StorageException {
+		TempRemoteFile tempRemoteFile = findDeletedTempFileInTransaction(remoteFile);
+		underlyingTransferManager.download(tempRemoteFile, localFile);
+	}
+
+	/**
+	 * Downloads all transaction files and looks for the corresponding temporary file
+	 * for the given remote file. If the file is being deleted in one of the transactions,
+	 * the temporary file is returned. Otherwise, a {@link StorageFileNotFoundException} is thrown.
+	 */
+	private TempRemoteFile findDeletedTempFileInTransaction(RemoteFile remoteFile) throws StorageException {
 		logger.log(Level.INFO, "File {0} not found, checking if it is being deleted ...", remoteFile.getName());
 
 		Set<TransactionTO> transactions = retrieveRemoteTransactions().keySet();
 		TempRemoteFile tempRemoteFile = null;
 
-		// Find file: If the file is being deleted and the name matches, download temporary file instead.
+		// Find file: If the file is being deleted and the name matches, use temporary file instead.
 		for (TransactionTO transaction : transactions) {
 			for (ActionTO action : transaction.getActions()) {
 				if (action.getType().equals(ActionType.DELETE) && action.getRemoteFile().equals(remoteFile)) {
@@ -115,12 +127,12 @@ public class TransactionAwareFeatureTransferManager implements FeatureTransferMa
 			}
 		}
 
-		// Download file, or throw exception
+		// Return temp file, or throw exception
 		if (tempRemoteFile != null) {
-			logger.log(Level.INFO, "-> File {0} in process of being deleted; downloading corresponding temp. file {1} ...",
+			logger.log(Level.INFO, "-> File {0} in process of being deleted; using corresponding temp. file {1} ...",
 					new Object[] { remoteFile.getName(), tempRemoteFile.getName() });
 
-			underlyingTransferManager.download(tempRemoteFile, localFile);
+			return tempRemoteFile;
 		}
 		else {
 			logger.log(Level.WARNING, "-> File {0} does not exist and is not in any transaction. Throwing exception.", remoteFile.getName());
@@ -128,6 +140,29 @@ public class TransactionAwareFeatureTransferManager implements FeatureTransferMa
 		}
 	}
 
+	@Override
+	public boolean isStreamingSupported() {
+		return underlyingTransferManager instanceof StreamingTransferManager
+				&& ((StreamingTransferManager) underlyingTransferManager).isStreamingSupported();
+	}
+
+	@Override
+	public InputStream downloadStream(final RemoteFile remoteFile) throws StorageException {
+		if (!isStreamingSupported()) {
+			throw new StorageException("Streaming not supported by " + underlyingTransferManager.getClass().getSimpleName());
+		}
+
+		try {
+			return ((StreamingTransferManager) underlyingTransferManager).downloadStream(remoteFile);
+		}
+		catch (StorageFileNotFoundException e) {
+			logger.log(Level.FINE, "Could not find the Storage file", e);
+			TempRemoteFile tempRemoteFile = findDeletedTempFileInTransaction(remoteFile);
+
+			return ((StreamingTransferManager) underlyingTransferManager).downloadStream(tempRemoteFile);
+		}
+	}
+
 	@Override
 	public void move(final RemoteFile sourceFile, final RemoteFile targetFile) throws StorageException {
 		underlyingTransferManager.move(sourceFile, targetFile);
@@ -148,6 +183,14 @@ public class TransactionAwareFeatureTransferManager implements FeatureTransferMa
 		return addAndFilterFilesInTransaction(remoteFileClass, underlyingTransferManager.list(remoteFileClass));
 	}
 
+	/**
+	 * Returns whether the given remote file exists. Unlike {@link #list(Class)}, this method
+	 * does not hide files that are part of unfinished transactions.
+	 */
+	public boolean exists(RemoteFile remoteFile) throws StorageException {
+		return underlyingTransferManager.list(remoteFile.getClass()).containsKey(remoteFile.getName());
+	}
+
 	@Override
 	public String getRemoteFilePath(Class<? extends RemoteFile> remoteFileClass) {
 		return underlyingTransferManager.getRemoteFilePath(remoteFileClass);
@@ -162,7 +205,8 @@ public class TransactionAwareFeatureTransferManager implements FeatureTransferMa
 	 * files and then rolls back the local machines's transactions:
 	 *
 	 * <ul>
-	 *  <li>Files in the transaction marked "UPLOAD" are deleted.</li>
+	 *  <li>Files in the transaction marked "UPLOAD" are deleted (unless they are convergent and have
+	 *      not been written by this transaction).</li>
 	 *  <li>Files in the transaction marked "DELETE" are moved back to their original place.</li>
 	 * </ul>
 	 *
@@ -360,7 +404,16 @@ public class TransactionAwareFeatureTransferManager implements FeatureTransferMa
 			
 			switch (action.getType()) {
 			case UPLOAD:
-				delete(action.getRemoteFile());
+				// Convergent files might have been uploaded by other clients as well, and might
+				// be referenced by their database versions. They are only deleted if this
+				// transaction has written them.
+				if (action.isConvergent() && !action.isFinalLocationWritten()) {
+					logger.log(Level.INFO, "- Rollback action: Keeping convergent file " + action.getRemoteFile().getName());
+				}
+				else {
+					delete(action.getRemoteFile());
+				}
+
 				delete(action.getTempRemoteFile());
 
 				break;
@@ -0,0 +1,112 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer.files;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.syncany.plugins.transfer.StorageException;
+
+/**
+ * The snapshot file contains the entire database of a repository at a certain point
+ * in time. It allows new clients (and clients that have to reload their database after
+ * a cleanup) to skip downloading and replaying all database files it covers.
+ *
+ * <p><b>Name pattern:</b> The name pattern of a snapshot file is
+ * <b>snapshot-&lt;cleanupnumber&gt;-&lt;databaseversioncount&gt;</b>. The cleanup
+ * number is the number of the last cleanup before the snapshot was created; a snapshot
+ * is only valid as long as no other cleanup has occurred. The database version count
+ * is the number of database versions the snapshot covers.
+ *
+ * <p><b>Note:</b> The class implements a {@link Comparable} interface and
+ * can be sorted by cleanup number and database version count.
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class SnapshotRemoteFile extends RemoteFile implements Comparable<SnapshotRemoteFile> {
+	private static final Pattern NAME_PATTERN = Pattern.compile("snapshot-(\\d+)-(\\d+)");
+	private static final String NAME_FORMAT = "snapshot-%010d-%010d";
+
+	private long cleanupNumber;
+	private long databaseVersionCount;
+
+	/**
+	 * Initializes a new snapshot file, given a name. This constructor might
+	 * be called by the {@link RemoteFile#createRemoteFile(String, Class) createRemoteFile()}
+	 * method of the {@link RemoteFile}.
+	 *
+	 * @param name Snapshot file name; <b>must</b> always match the {@link #NAME_PATTERN}
+	 * @throws StorageException If the name is not match the name pattern
+	 */
+	public SnapshotRemoteFile(String name) throws StorageException {
+		super(name);
+	}
+
+	/**
+	 * Initializes a new snapshot file, given the cleanup number and the number
+	 * of database versions covered by the snapshot.
+	 *
+	 * @param cleanupNumber Number of the last cleanup before the snapshot was created
+	 * @param databaseVersionCount Number of database versions covered by the snapshot
+	 * @throws StorageException Never throws an exception
+	 */
+	public SnapshotRemoteFile(long cleanupNumber, long databaseVersionCount) throws StorageException {
+		super(String.format(NAME_FORMAT, cleanupNumber, databaseVersionCount));
+	}
+
+	/**
+	 * Returns the cleanup number
+	 */
+	public long getCleanupNumber() {
+		return cleanupNumber;
+	}
+
+	/**
+	 * Returns the number of database versions covered by the snapshot
+	 */
+	public long getDatabaseVersionCount() {
+		return databaseVersionCount;
+	}
+
+	@Override
+	protected String validateName(String name) throws StorageException {
+		Matcher matcher = NAME_PATTERN.matcher(name);
+
+		if (!matcher.matches()) {
+			throw new StorageException(name + ": remote snapshot filename pattern does not match: " + NAME_PATTERN.pattern() + " expected.");
+		}
+
+		cleanupNumber = Long.parseLong(matcher.group(1));
+		databaseVersionCount = Long.parseLong(matcher.group(2));
+
+		return name;
+	}
+
+	@Override
+	public int compareTo(SnapshotRemoteFile r2) {
+		if (cleanupNumber != r2.cleanupNumber) {
+			return (cleanupNumber < r2.cleanupNumber) ? -1 : 1;
+		}
+		else if (databaseVersionCount != r2.databaseVersionCount) {
+			return (databaseVersionCount < r2.databaseVersionCount) ? -1 : 1;
+		}
+		else {
+			return 0;
+		}
+	}
+}
@@ -60,6 +60,12 @@ public class ActionTO {
 	@Element(name = "localTempLocation", required = false)
 	private String localTempLocation;
 
+	@Element(name = "convergent", required = false)
+	private Boolean convergent;
+
+	@Element(name = "finalLocationWritten", required = false)
+	private Boolean finalLocationWritten;
+
 	public ActionType getType() {
 		return type;
 	}
@@ -106,9 +112,38 @@ public class ActionTO {
 		return new File(localTempLocation);
 	}
 
+	/**
+	 * Returns whether the remote file of this action is convergent, i.e. whether other
+	 * clients may upload a file with the same name (and the same contents) concurrently.
+	 * Convergent files that already exist remotely are not overwritten, and they are
+	 * only deleted when the transaction is rolled back if they have been written by
+	 * this transaction (see {@link #isFinalLocationWritten()}).
+	 */
+	public boolean isConvergent() {
+		return convergent != null && convergent;
+	}
+
+	public void setConvergent(boolean convergent) {
+		this.convergent = (convergent) ? true : null;
+	}
+
+	/**
+	 * Returns whether the file at the final location of a convergent upload has been written 
+	 * by this transaction, i.e. whether the move to the final location succeeded (as opposed 
+	 * to the file already existing).
+	 */
+	public boolean isFinalLocationWritten() {
+		return finalLocationWritten != null && finalLocationWritten;
+	}
+
+	public void setFinalLocationWritten(boolean finalLocationWritten) {
+		this.finalLocationWritten = (finalLocationWritten) ? true : null;
+	}
+
 	@Override
 	public String toString() {
 		return "ActionTO [type=" + type + ", remoteLocation=" + remoteLocation + ", remoteTempLocation=" + remoteTempLocation
-				+ ", localTempLocation=" + localTempLocation + "]";
+				+ ", localTempLocation=" + localTempLocation + ", convergent=" + isConvergent()
+				+ ", finalLocationWritten=" + isFinalLocationWritten() + "]";
 	}
 }
@@ -0,0 +1 @@
+delete from chunk where checksum=?
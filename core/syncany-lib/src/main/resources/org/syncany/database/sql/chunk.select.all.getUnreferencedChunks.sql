@@ -0,0 +1,11 @@
+-- Selects all chunks that would be deleted by removeUnreferencesChunks.
+-- This must be kept in sync with 'chunk.delete.all.removeUnreferencesChunks.sql'.
+
+-- The "not exists" sub-queries use the foreign key indices of the
+-- referencing tables, so this query is fast even for large tables.
+
+select checksum
+from chunk c
+where 
+	    not exists (select 1 from multichunk_chunk mcc where mcc.chunk_checksum=c.checksum)
+	and not exists (select 1 from filecontent_chunk fcc where fcc.chunk_checksum=c.checksum)
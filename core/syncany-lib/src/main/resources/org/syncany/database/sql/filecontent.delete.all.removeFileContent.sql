@@ -0,0 +1 @@
+delete from filecontent where checksum=?
@@ -0,0 +1 @@
+delete from filecontent_chunk where filecontent_checksum=?
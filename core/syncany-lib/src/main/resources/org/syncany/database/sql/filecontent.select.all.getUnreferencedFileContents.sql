@@ -0,0 +1,6 @@
+-- Selects all file contents that would be deleted by removeUnreferencedFileContents.
+-- This must be kept in sync with 'filecontent.delete.all.removeUnreferencedFileContents.sql'.
+
+select checksum
+from filecontent fc
+where not exists (select 1 from fileversion fv where fv.filecontent_checksum=fc.checksum)
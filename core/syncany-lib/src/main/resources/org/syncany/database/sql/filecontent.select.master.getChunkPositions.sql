@@ -0,0 +1,12 @@
+-- Determine the positions of the given chunks in the files of the current file tree
+
+select fcc.chunk_checksum, fv.path, fv.size as file_size, c.size as chunk_size,
+  (select coalesce(sum(pc.size), 0) 
+   from filecontent_chunk pfcc 
+   join chunk pc on pc.checksum=pfcc.chunk_checksum 
+   where pfcc.filecontent_checksum=fcc.filecontent_checksum and pfcc.num<fcc.num) as chunk_offset
+from fileversion_master_last fv
+join filecontent_chunk fcc on fv.filecontent_checksum=fcc.filecontent_checksum
+join chunk c on c.checksum=fcc.chunk_checksum
+where fv.type='FILE' and fcc.chunk_checksum in ( unnest(?) )
+order by fcc.chunk_checksum asc, fv.path asc
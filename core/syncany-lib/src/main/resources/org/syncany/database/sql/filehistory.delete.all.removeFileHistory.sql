@@ -0,0 +1 @@
+delete from filehistory where id=? and databaseversion_id=?
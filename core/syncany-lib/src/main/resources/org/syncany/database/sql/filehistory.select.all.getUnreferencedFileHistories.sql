@@ -0,0 +1,10 @@
+-- Selects all file histories that would be deleted by removeUnreferencedFileHistories.
+-- This must be kept in sync with 'filehistory.delete.all.removeUnreferencedFileHistories.sql'.
+
+select id, databaseversion_id
+from filehistory fh
+where not exists (
+	select 1 
+	from fileversion fv 
+	where fv.filehistory_id=fh.id and fv.databaseversion_id=fh.databaseversion_id
+)
@@ -0,0 +1,198 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.crypto.CipherSpecs;
+import org.syncany.crypto.CipherUtil;
+import org.syncany.crypto.SaltedSecretKey;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.tests.util.TestFileUtil;
+
+public class ConvergentDeduperTest {
+	private File tempDir;
+	private List<File> inputFiles;
+	private Transformer transformer;
+
+	@Before
+	public void setUp() throws Exception {
+		SaltedSecretKey masterKey = CipherUtil.createMasterKey("some password");
+
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File inputDir = new File(tempDir, "input");
+		
+		inputDir.mkdirs();
+		inputFiles = TestFileUtil.createRandomFilesInDirectory(inputDir, 100 * 1024, 5);
+		transformer = new GzipTransformer(new CipherTransformer(CipherSpecs.getDefaultCipherSpecs(), masterKey));
+	}
+
+	@After
+	public void tearDown() {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testConvergentMultiChunksAreIdentical() throws Exception {
+		byte[] convergenceKey = CipherUtil.createRandomArray(32);
+
+		List<MultiChunkId> firstMultiChunkIds = deduplicate(convergenceKey, new File(tempDir, "first"));
+		List<MultiChunkId> secondMultiChunkIds = deduplicate(convergenceKey, new File(tempDir, "second"));
+
+		assertTrue(firstMultiChunkIds.size() > 1);
+		assertEquals(firstMultiChunkIds, secondMultiChunkIds);
+
+		for (MultiChunkId multiChunkId : firstMultiChunkIds) {
+			File firstMultiChunkFile = new File(tempDir, "first/multichunk-" + multiChunkId);
+			File secondMultiChunkFile = new File(tempDir, "second/multichunk-" + multiChunkId);
+
+			assertArrayEquals(FileUtils.readFileToByteArray(firstMultiChunkFile), FileUtils.readFileToByteArray(secondMultiChunkFile));
+			assertTrue(CipherUtil.isEncrypted(firstMultiChunkFile));
+		}
+
+		// Only the transformed multichunks are left
+		assertEquals(firstMultiChunkIds.size(), new File(tempDir, "first").list().length);
+	}
+
+	@Test
+	public void testConvergentMultiChunksCanBeRead() throws Exception {
+		List<MultiChunkId> multiChunkIds = deduplicate(CipherUtil.createRandomArray(32), new File(tempDir, "out"));
+		ZipMultiChunker multiChunker = new ZipMultiChunker(64);
+		int chunkCount = 0;
+
+		for (MultiChunkId multiChunkId : multiChunkIds) {
+			File multiChunkFile = new File(tempDir, "out/multichunk-" + multiChunkId);
+			MultiChunk multiChunk = multiChunker.createMultiChunk(transformer.createInputStream(new FileInputStream(multiChunkFile)));
+
+			Chunk chunk;
+
+			while ((chunk = multiChunk.read()) != null) {
+				assertNotNull(chunk.getContent());
+				chunkCount++;
+			}
+
+			multiChunk.close();
+		}
+
+		assertEquals(5 * 7, chunkCount); // 100 KB files, 16 KB chunks
+	}
+
+	@Test
+	public void testDifferentConvergenceKeysYieldDifferentMultiChunks() throws Exception {
+		List<MultiChunkId> firstMultiChunkIds = deduplicate(CipherUtil.createRandomArray(32), new File(tempDir, "first"));
+		List<MultiChunkId> secondMultiChunkIds = deduplicate(CipherUtil.createRandomArray(32), new File(tempDir, "second"));
+
+		assertEquals(firstMultiChunkIds.size(), secondMultiChunkIds.size());
+		assertTrue(Collections.disjoint(firstMultiChunkIds, secondMultiChunkIds));
+	}
+
+	@Test
+	public void testNonConvergentMultiChunksAreRandom() throws Exception {
+		List<MultiChunkId> firstMultiChunkIds = deduplicate(null, new File(tempDir, "first"));
+		List<MultiChunkId> secondMultiChunkIds = deduplicate(null, new File(tempDir, "second"));
+
+		assertEquals(firstMultiChunkIds.size(), secondMultiChunkIds.size());
+		assertFalse(firstMultiChunkIds.equals(secondMultiChunkIds));
+	}
+
+	private List<MultiChunkId> deduplicate(byte[] convergenceKey, final File outputDir) throws Exception {
+		final List<MultiChunkId> multiChunkIds = new ArrayList<MultiChunkId>();
+		outputDir.mkdirs();
+
+		Deduper deduper = new Deduper(new FixedChunker(16 * 1024), new ZipMultiChunker(64), transformer, Long.MAX_VALUE, Long.MAX_VALUE,
+				convergenceKey);
+
+		deduper.deduplicate(new ArrayList<File>(inputFiles), new DeduperListener() {
+			@Override
+			public boolean onChunk(Chunk chunk) {
+				return true;
+			}
+
+			@Override
+			public File getMultiChunkFile(MultiChunkId multiChunkId) {
+				return new File(outputDir, "multichunk-" + multiChunkId);
+			}
+
+			@Override
+			public MultiChunkId createNewMultiChunkId(Chunk firstChunk) {
+				return MultiChunkId.secureRandomMultiChunkId();
+			}
+
+			@Override
+			public void onMultiChunkClose(MultiChunk multiChunk) {
+				multiChunkIds.add(multiChunk.getId());
+			}
+
+			@Override
+			public boolean onFileFilter(File file) {
+				return true;
+			}
+
+			@Override
+			public boolean onFileStart(File file) {
+				return true;
+			}
+
+			@Override
+			public void onFileAddChunk(File file, Chunk chunk) {
+				// Empty
+			}
+
+			@Override
+			public void onFileEnd(File file, byte[] checksum) {
+				// Empty
+			}
+
+			@Override
+			public void onMultiChunkOpen(MultiChunk multiChunk) {
+				// Empty
+			}
+
+			@Override
+			public void onMultiChunkWrite(MultiChunk multiChunk, Chunk chunk) {
+				// Empty
+			}
+
+			@Override
+			public void onStart(int fileCount) {
+				// Empty
+			}
+
+			@Override
+			public void onFinish() {
+				// Empty
+			}
+		});
+
+		return multiChunkIds;
+	}
+}
@@ -138,6 +138,72 @@ public class ConfigTest {
 		}
 	}
 
+	@Test
+	public void testConfigDatabaseBackendDefault() throws Exception {
+		// Setup
+		File localDir = new File("/some/folder");
+		ConfigTO configTO = new ConfigTO();
+		RepoTO repoTO = new RepoTO();
+
+		configTO.setMachineName("somevalidmachinename"); // <<< valid
+		configTO.setDatabaseBackend(null); // <<< valid, default
+
+		repoTO.setChunkerTO(TestConfigUtil.createFixedChunkerTO()); // <<< valid
+		repoTO.setMultiChunker(TestConfigUtil.createZipMultiChunkerTO()); // <<< valid
+		repoTO.setRepoId(new byte[] { 0x01, 0x02 }); // <<< valid
+		repoTO.setTransformers(null); // <<< valid
+
+		// Run!
+		Config config = new Config(localDir, configTO, repoTO);
+
+		// Test
+		assertNotNull(config.getDatabaseBackend());
+		assertEquals("CachedDatabaseBackend", config.getDatabaseBackend().getClass().getSimpleName());
+	}
+
+	@Test
+	public void testConfigDatabaseBackendMapped() throws Exception {
+		// Setup
+		File localDir = new File("/some/folder");
+		ConfigTO configTO = new ConfigTO();
+		RepoTO repoTO = new RepoTO();
+
+		configTO.setMachineName("somevalidmachinename"); // <<< valid
+		configTO.setDatabaseBackend("mapped"); // <<< valid
+
+		repoTO.setChunkerTO(TestConfigUtil.createFixedChunkerTO()); // <<< valid
+		repoTO.setMultiChunker(TestConfigUtil.createZipMultiChunkerTO()); // <<< valid
+		repoTO.setRepoId(new byte[] { 0x01, 0x02 }); // <<< valid
+		repoTO.setTransformers(null); // <<< valid
+
+		// Run!
+		Config config = new Config(localDir, configTO, repoTO);
+
+		// Test
+		assertNotNull(config.getDatabaseBackend());
+		assertEquals("MappedDatabaseBackend", config.getDatabaseBackend().getClass().getSimpleName());
+	}
+
+	@Test
+	public void testConfigDatabaseBackendInvalidType() throws Exception {
+		// Setup
+		File localDir = new File("/some/folder");
+		ConfigTO configTO = new ConfigTO();
+		RepoTO repoTO = new RepoTO();
+
+		configTO.setMachineName("somevalidmachinename"); // <<< valid
+		configTO.setDatabaseBackend("does-not-exist"); // <<< INVALID !!
+
+		// Run!
+		try {
+			new Config(localDir, configTO, repoTO);
+			fail("Database backend should NOT have been found.");
+		}
+		catch (ConfigException e) {
+			TestAssertUtil.assertErrorStackTraceContains("database backend", e);
+		}
+	}
+
 	@Test
 	public void testConfigMultiChunkerNull() throws Exception {
 		// Setup
@@ -0,0 +1,205 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.syncany.crypto.specs.AesGcmCipherSpec;
+import org.syncany.util.StringUtil;
+
+public class AesGcmCipherSpecTest {
+	private static final String TEST_PLAINTEXT = "Syncany encrypts files before uploading them.";
+
+	// Created with the BouncyCastle lightweight engine (key = 00 01 02 .., IV = f0 f1 f2 .. ff)
+	private static final String TEST_CIPHERTEXT_AES_128 = "bcbbd89b862680f3264970eb67caf850a2110356c0c25a9bdc3ce03c29442cc84c5c2769831d416ee15c2e4d7c36ace95c2ed6470f03adf2840817819a";
+	private static final String TEST_CIPHERTEXT_AES_256 = "eb18724cf0ee97e7cd8b30b7745eced9528229d79dd3d1f0ccf2180a3fff2ea8a032e5fa19b12a7b30de07e9952020f804021be364ee0d2cd417c58b32";
+
+	@Test
+	public void testJceEnabled() {
+		assertTrue(getAesGcmCipherSpec(CipherSpecs.AES_128_GCM).isJceEnabled());
+	}
+
+	@Test
+	public void testDecryptionStreamIsLightweight() throws Exception {
+		AesGcmCipherSpec cipherSpec = getAesGcmCipherSpec(CipherSpecs.AES_128_GCM);
+		byte[] ciphertext = StringUtil.fromHex(TEST_CIPHERTEXT_AES_128);
+
+		InputStream cipherInputStream = cipherSpec.newCipherInputStream(new ByteArrayInputStream(ciphertext), createTestKey(cipherSpec), createTestIv(cipherSpec));
+		assertTrue(cipherInputStream instanceof org.bouncycastle.crypto.io.CipherInputStream);
+
+		assertEquals(TEST_PLAINTEXT, new String(decrypt(cipherInputStream), "UTF-8"));
+	}
+
+	@Test
+	public void testDecryptionBufferCipherIsLightweight() throws Exception {
+		AesGcmCipherSpec cipherSpec = getAesGcmCipherSpec(CipherSpecs.AES_128_GCM);
+
+		assertTrue(cipherSpec.newBufferCipher(true, createTestKey(cipherSpec), createTestIv(cipherSpec)) instanceof JceBufferCipher);
+		assertTrue(cipherSpec.newBufferCipher(false, createTestKey(cipherSpec), createTestIv(cipherSpec)) instanceof AeadBufferCipher);
+	}
+
+	@Test
+	public void testKnownCiphertextAes128() throws Exception {
+		doTestKnownCiphertext(getAesGcmCipherSpec(CipherSpecs.AES_128_GCM), TEST_CIPHERTEXT_AES_128);
+	}
+
+	@Test
+	public void testKnownCiphertextAes256() throws Exception {
+		doTestKnownCiphertext(getAesGcmCipherSpec(CipherSpecs.AES_256_GCM), TEST_CIPHERTEXT_AES_256);
+	}
+
+	@Test
+	public void testCrossCheckAes128() throws Exception {
+		doTestCrossCheck(getAesGcmCipherSpec(CipherSpecs.AES_128_GCM));
+	}
+
+	@Test
+	public void testCrossCheckAes256() throws Exception {
+		doTestCrossCheck(getAesGcmCipherSpec(CipherSpecs.AES_256_GCM));
+	}
+
+	@Test
+	public void testTamperedCiphertextFails() throws Exception {
+		AesGcmCipherSpec cipherSpec = getAesGcmCipherSpec(CipherSpecs.AES_128_GCM);
+
+		byte[] tamperedCiphertext = StringUtil.fromHex(TEST_CIPHERTEXT_AES_128);
+		tamperedCiphertext[5] ^= 0x01;
+
+		try {
+			decrypt(cipherSpec.newCipherInputStream(new ByteArrayInputStream(tamperedCiphertext), createTestKey(cipherSpec), createTestIv(cipherSpec)));
+			fail("Decryption of tampered ciphertext should have failed.");
+		}
+		catch (IOException e) {
+			// Expected
+		}
+	}
+
+	private void doTestKnownCiphertext(AesGcmCipherSpec cipherSpec, String expectedCiphertextHex) throws Exception {
+		byte[] key = createTestKey(cipherSpec);
+		byte[] iv = createTestIv(cipherSpec);
+		byte[] plaintext = TEST_PLAINTEXT.getBytes("UTF-8");
+
+		// Encrypt with default implementation (JCE if available)
+		ByteArrayOutputStream ciphertextOutputStream = new ByteArrayOutputStream();
+
+		try (OutputStream cipherOutputStream = cipherSpec.newCipherOutputStream(ciphertextOutputStream, key, iv)) {
+			cipherOutputStream.write(plaintext);
+		}
+
+		assertEquals(expectedCiphertextHex, StringUtil.toHex(ciphertextOutputStream.toByteArray()));
+
+		// Decrypt existing ciphertext
+		byte[] ciphertext = StringUtil.fromHex(expectedCiphertextHex);
+		byte[] decryptedPlaintext = decrypt(cipherSpec.newCipherInputStream(new ByteArrayInputStream(ciphertext), key, iv));
+
+		assertArrayEquals(plaintext, decryptedPlaintext);
+	}
+
+	private void doTestCrossCheck(AesGcmCipherSpec cipherSpec) throws Exception {
+		Random random = new Random(42);
+		int[] plaintextSizes = new int[] { 0, 1, 15, 16, 17, 4096, 1024 * 1024 + 3 };
+
+		for (int plaintextSize : plaintextSizes) {
+			byte[] key = new byte[cipherSpec.getKeySize() / 8];
+			byte[] iv = new byte[cipherSpec.getIvSize() / 8];
+			byte[] plaintext = new byte[plaintextSize];
+
+			random.nextBytes(key);
+			random.nextBytes(iv);
+			random.nextBytes(plaintext);
+
+			// Encrypt with both implementations
+			ByteArrayOutputStream defaultCiphertext = new ByteArrayOutputStream();
+			ByteArrayOutputStream lightweightCiphertext = new ByteArrayOutputStream();
+
+			try (OutputStream defaultOutputStream = cipherSpec.newCipherOutputStream(defaultCiphertext, key, iv);
+					OutputStream lightweightOutputStream = cipherSpec.newLightweightCipherOutputStream(lightweightCiphertext, key, iv)) {
+
+				defaultOutputStream.write(plaintext);
+				lightweightOutputStream.write(plaintext);
+			}
+
+			assertArrayEquals("Ciphertexts differ for size " + plaintextSize, lightweightCiphertext.toByteArray(), defaultCiphertext.toByteArray());
+
+			// Decrypt each ciphertext with the other implementation
+			byte[] decryptedByDefault = decrypt(cipherSpec.newCipherInputStream(new ByteArrayInputStream(lightweightCiphertext.toByteArray()), key, iv));
+			byte[] decryptedByLightweight = decrypt(cipherSpec.newLightweightCipherInputStream(new ByteArrayInputStream(defaultCiphertext.toByteArray()), key, iv));
+
+			assertArrayEquals(plaintext, decryptedByDefault);
+			assertArrayEquals(plaintext, decryptedByLightweight);
+
+			// Decrypt with the default buffer cipher (always lightweight)
+			BufferCipher decryptingBufferCipher = cipherSpec.newBufferCipher(false, key, iv);
+
+			ByteBuffer ciphertextBuffer = ByteBuffer.wrap(defaultCiphertext.toByteArray());
+			ByteBuffer plaintextBuffer = ByteBuffer.allocate(decryptingBufferCipher.getOutputSize(ciphertextBuffer.remaining()));
+
+			decryptingBufferCipher.update(ciphertextBuffer, plaintextBuffer);
+			decryptingBufferCipher.doFinal(plaintextBuffer);
+
+			assertArrayEquals(plaintext, Arrays.copyOf(plaintextBuffer.array(), plaintextBuffer.position()));
+		}
+	}
+
+	private byte[] decrypt(InputStream cipherInputStream) throws IOException {
+		try {
+			return IOUtils.toByteArray(cipherInputStream);
+		}
+		finally {
+			cipherInputStream.close();
+		}
+	}
+
+	private byte[] createTestKey(CipherSpec cipherSpec) {
+		byte[] key = new byte[cipherSpec.getKeySize() / 8];
+
+		for (int i = 0; i < key.length; i++) {
+			key[i] = (byte) i;
+		}
+
+		return key;
+	}
+
+	private byte[] createTestIv(CipherSpec cipherSpec) {
+		byte[] iv = new byte[cipherSpec.getIvSize() / 8];
+
+		for (int i = 0; i < iv.length; i++) {
+			iv[i] = (byte) (0xf0 + i);
+		}
+
+		return iv;
+	}
+
+	private AesGcmCipherSpec getAesGcmCipherSpec(int cipherSpecId) {
+		return (AesGcmCipherSpec) CipherSpecs.getCipherSpec(cipherSpecId);
+	}
+}
@@ -17,8 +17,21 @@
  */
 package org.syncany.crypto;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.spec.SecretKeySpec;
 
@@ -75,9 +88,115 @@ public class CipherSessionTest {
 		assertNotSame(readSecretKey1Aes128, readSecretKey3Aes128);
 		assertNotSame(readSecretKey2Aes128, readSecretKey3Aes128);
 		
-		// TODO [medium] This does NOT TEST the actual read cache. How to test this. The cache is completely hidden/private?!
+		assertEquals(2, cipherSession.getReadCacheSize());
+		assertEquals(3, cipherSession.getReadCacheMissCount());
+		assertEquals(1, cipherSession.getReadCacheEvictionCount());
+	}	
+	
+	@Test
+	public void testCipherSessionReadKeyCacheEvictsLeastRecentlyUsed() throws Exception {
+		SaltedSecretKey masterKey = createDummyMasterKey();		
+		CipherSession cipherSession = new CipherSession(masterKey, 2, 999);
+		
+		CipherSpec cipherSpecAes128 = CipherSpecs.getCipherSpec(CipherSpecs.AES_128_GCM);
+		
+		byte[] readKeySalt1 = CipherUtil.createRandomArray(cipherSpecAes128.getKeySize());
+		byte[] readKeySalt2 = CipherUtil.createRandomArray(cipherSpecAes128.getKeySize());
+		byte[] readKeySalt3 = CipherUtil.createRandomArray(cipherSpecAes128.getKeySize());				
+		
+		SaltedSecretKey readSecretKey1Aes128 = cipherSession.getReadSecretKey(cipherSpecAes128, readKeySalt1); // Miss
+		cipherSession.getReadSecretKey(cipherSpecAes128, readKeySalt2); // Miss
+		
+		assertSame(readSecretKey1Aes128, cipherSession.getReadSecretKey(cipherSpecAes128, readKeySalt1)); // Hit, salt 2 is now LRU
+		cipherSession.getReadSecretKey(cipherSpecAes128, readKeySalt3); // Miss, evicts salt 2
+
+		assertSame(readSecretKey1Aes128, cipherSession.getReadSecretKey(cipherSpecAes128, readKeySalt1)); // Hit
+		assertEquals(2, cipherSession.getReadCacheHitCount());
+		assertEquals(3, cipherSession.getReadCacheMissCount());
+
+		cipherSession.getReadSecretKey(cipherSpecAes128, readKeySalt2); // Miss
+		
+		assertEquals(2, cipherSession.getReadCacheHitCount());
+		assertEquals(4, cipherSession.getReadCacheMissCount());
+		assertEquals(2, cipherSession.getReadCacheEvictionCount());
+		assertEquals(2, cipherSession.getReadCacheSize());
+		assertEquals(2.0 / 6.0, cipherSession.getReadCacheHitRate(), 0.0001);
 	}	
 	
+	@Test
+	public void testCipherSessionConcurrentReadAndWriteKeys() throws Exception {
+		final SaltedSecretKey masterKey = createDummyMasterKey();		
+		final CipherSession cipherSession = new CipherSession(masterKey, 20, 10);
+		final CipherSpec cipherSpecAes128 = CipherSpecs.getCipherSpec(CipherSpecs.AES_128_GCM);
+		
+		final int threadCount = 8;
+		final int iterationCount = 1000;
+		
+		// Derive expected keys sequentially
+		final byte[][] readKeySalts = new byte[64][];
+		final byte[][] expectedReadKeys = new byte[readKeySalts.length][];
+		
+		for (int i = 0; i < readKeySalts.length; i++) {
+			readKeySalts[i] = CipherUtil.createRandomArray(MultiCipherOutputStream.SALT_SIZE);
+			expectedReadKeys[i] = CipherUtil.createDerivedKey(masterKey, readKeySalts[i], cipherSpecAes128).getEncoded();
+		}
+		
+		// Hammer cipher session and key derivation from multiple threads
+		final ConcurrentHashMap<String, AtomicInteger> writeKeyUseCounts = new ConcurrentHashMap<String, AtomicInteger>();
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		
+		for (int t = 0; t < threadCount; t++) {
+			final Random random = new Random(t);
+			
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					for (int i = 0; i < iterationCount; i++) {
+						int saltIndex = random.nextInt(readKeySalts.length);
+						
+						SaltedSecretKey readSecretKey = cipherSession.getReadSecretKey(cipherSpecAes128, readKeySalts[saltIndex]);
+						SaltedSecretKey derivedKey = CipherUtil.createDerivedKey(masterKey, readKeySalts[saltIndex], cipherSpecAes128);
+						
+						assertArrayEquals(expectedReadKeys[saltIndex], readSecretKey.getEncoded());
+						assertArrayEquals(expectedReadKeys[saltIndex], derivedKey.getEncoded());
+						
+						SaltedSecretKey writeSecretKey = cipherSession.getWriteSecretKey(cipherSpecAes128);
+						String writeKeySalt = StringUtil.toHex(writeSecretKey.getSalt());
+						
+						writeKeyUseCounts.putIfAbsent(writeKeySalt, new AtomicInteger(0));
+						writeKeyUseCounts.get(writeKeySalt).incrementAndGet();
+					}
+					
+					return null;
+				}
+			}));
+		}
+		
+		try {
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		
+		// Test
+		int totalCount = threadCount * iterationCount;
+		
+		assertEquals(totalCount, cipherSession.getReadCacheHitCount() + cipherSession.getReadCacheMissCount());
+		assertTrue(cipherSession.getReadCacheSize() <= 20);
+		
+		assertEquals(totalCount, cipherSession.getWriteCacheHitCount() + cipherSession.getWriteCacheMissCount());
+		assertEquals(totalCount / 10, cipherSession.getWriteCacheMissCount());
+		assertEquals(cipherSession.getWriteCacheMissCount(), writeKeyUseCounts.size());
+		
+		for (AtomicInteger writeKeyUseCount : writeKeyUseCounts.values()) {
+			assertEquals(10, writeKeyUseCount.get());
+		}
+	}
+	
 	private SaltedSecretKey createDummyMasterKey() {
 		return new SaltedSecretKey(
 			new SecretKeySpec(
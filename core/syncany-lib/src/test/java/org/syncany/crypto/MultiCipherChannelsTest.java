@@ -0,0 +1,254 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+import org.syncany.chunk.CipherTransformer;
+import org.syncany.chunk.GzipTransformer;
+import org.syncany.chunk.Transformer;
+import org.syncany.config.Logging;
+import org.syncany.crypto.specs.AesGcmCipherSpec;
+import org.syncany.util.ByteBufferPool;
+import org.syncany.util.StringUtil;
+
+public class MultiCipherChannelsTest {
+	private static final int BUFFER_SIZE = 4096;
+	private static final int[] PLAINTEXT_SIZES = new int[] { 0, 1, 15, 16, 17, BUFFER_SIZE - 1, BUFFER_SIZE, BUFFER_SIZE + 1, 20 * BUFFER_SIZE + 13 };
+	
+	private static final List<CipherSpec> CIPHER_SPECS_128 = Arrays.asList(new CipherSpec[] {
+		CipherSpecs.getCipherSpec(CipherSpecs.AES_128_GCM),
+		CipherSpecs.getCipherSpec(CipherSpecs.TWOFISH_128_GCM)
+	});
+	
+	private static final List<CipherSpec> CIPHER_SPECS_256 = Arrays.asList(new CipherSpec[] {
+		CipherSpecs.getCipherSpec(CipherSpecs.AES_256_GCM),
+		CipherSpecs.getCipherSpec(CipherSpecs.TWOFISH_256_GCM)
+	});
+
+	private static SaltedSecretKey masterKey = createDummyMasterKey();
+
+	static {
+		Logging.init();
+	}
+
+	@Test
+	public void testChannelEncryptStreamDecrypt() throws Exception {
+		for (List<CipherSpec> cipherSpecs : Arrays.asList(CIPHER_SPECS_128, CIPHER_SPECS_256)) {
+			CipherSession cipherSession = new CipherSession(masterKey);
+			
+			for (int size : PLAINTEXT_SIZES) {
+				byte[] plaintext = createRandomArray(size);
+				byte[] ciphertext = encryptWithChannel(plaintext, cipherSpecs, cipherSession);
+				
+				assertEquals(MultiCipherOutputStream.STREAM_VERSION, ciphertext[MultiCipherOutputStream.STREAM_MAGIC.length]);
+				assertArrayEquals("Roundtrip failed for size " + size, plaintext, decryptWithStream(ciphertext, cipherSession));
+			}
+		}
+	}
+
+	@Test
+	public void testStreamEncryptChannelDecrypt() throws Exception {
+		for (List<CipherSpec> cipherSpecs : Arrays.asList(CIPHER_SPECS_128, CIPHER_SPECS_256)) {
+			CipherSession cipherSession = new CipherSession(masterKey);
+			
+			for (int size : PLAINTEXT_SIZES) {
+				byte[] plaintext = createRandomArray(size);
+				byte[] ciphertext = encryptWithStream(plaintext, cipherSpecs, cipherSession, 0);
+				
+				assertArrayEquals("Roundtrip failed for size " + size, plaintext, decryptWithChannel(ciphertext, cipherSession, 7));
+				assertArrayEquals("Roundtrip failed for size " + size, plaintext, decryptWithChannel(ciphertext, cipherSession, 3 * BUFFER_SIZE));
+			}
+		}
+	}
+	
+	@Test
+	public void testChannelWithLightweightCiphers() throws Exception {
+		// Force the BouncyCastle implementation for AES, and compare with the regular cipher streams
+		final AesGcmCipherSpec aesCipherSpec = (AesGcmCipherSpec) CipherSpecs.getCipherSpec(CipherSpecs.AES_128_GCM);
+		
+		byte[] secretKey = createRandomArray(16);
+		byte[] iv = createRandomArray(16);
+		byte[] plaintext = createRandomArray(5 * BUFFER_SIZE + 3);
+		
+		ByteArrayOutputStream streamCiphertext = new ByteArrayOutputStream();
+		
+		try (OutputStream cipherOutputStream = aesCipherSpec.newCipherOutputStream(streamCiphertext, secretKey, iv)) {
+			cipherOutputStream.write(plaintext);
+		}
+		
+		BufferCipher bufferCipher = aesCipherSpec.newLightweightBufferCipher(true, secretKey, iv);
+		ByteBuffer bufferCiphertext = ByteBuffer.allocate(bufferCipher.getOutputSize(plaintext.length));
+		
+		bufferCipher.update(ByteBuffer.wrap(plaintext), bufferCiphertext);
+		bufferCipher.doFinal(bufferCiphertext);
+		
+		assertArrayEquals(streamCiphertext.toByteArray(), Arrays.copyOf(bufferCiphertext.array(), bufferCiphertext.position()));
+	}
+
+	@Test
+	public void testSegmentedStreamChannelDecrypt() throws Exception {
+		CipherSession cipherSession = new CipherSession(masterKey);
+
+		byte[] plaintext = createRandomArray(10 * BUFFER_SIZE + 17);
+		byte[] ciphertext = encryptWithStream(plaintext, CIPHER_SPECS_128, cipherSession, 1024);
+
+		assertEquals(MultiCipherOutputStream.STREAM_VERSION_SEGMENTED, ciphertext[MultiCipherOutputStream.STREAM_MAGIC.length]);
+		assertArrayEquals(plaintext, decryptWithChannel(ciphertext, cipherSession, 1000));
+	}
+
+	@Test
+	public void testTamperedCiphertextFailsWithChannel() throws Exception {
+		CipherSession cipherSession = new CipherSession(masterKey);
+		
+		byte[] plaintext = createRandomArray(3 * BUFFER_SIZE);
+		byte[] ciphertext = encryptWithChannel(plaintext, CIPHER_SPECS_128, cipherSession);
+		
+		ciphertext[ciphertext.length - 100] ^= 0x01;
+		
+		try {
+			decryptWithChannel(ciphertext, cipherSession, BUFFER_SIZE);
+			fail("Tampered ciphertext should not decrypt.");
+		}
+		catch (IOException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testTransformerChainChannels() throws Exception {
+		Transformer transformer = new GzipTransformer(new CipherTransformer(CIPHER_SPECS_128, masterKey));		
+		byte[] plaintext = StringUtil.toBytesUTF8(new String(new char[10 * BUFFER_SIZE]).replace('\0', 'x'));
+
+		// Channel to stream
+		ByteArrayOutputStream channelTransformedData = new ByteArrayOutputStream();
+		
+		try (WritableByteChannel channel = transformer.createWritableChannel(Channels.newChannel(channelTransformedData))) {
+			channel.write(ByteBuffer.wrap(plaintext));
+		}
+		
+		assertArrayEquals(plaintext, readFully(transformer.createInputStream(new ByteArrayInputStream(channelTransformedData.toByteArray())), 100));
+
+		// Stream to channel
+		ByteArrayOutputStream streamTransformedData = new ByteArrayOutputStream();
+		
+		try (OutputStream outputStream = transformer.createOutputStream(streamTransformedData)) {
+			outputStream.write(plaintext);
+		}
+		
+		ReadableByteChannel channel = transformer.createReadableChannel(Channels.newChannel(new ByteArrayInputStream(streamTransformedData.toByteArray())));		
+		assertArrayEquals(plaintext, readFully(Channels.newInputStream(channel), 100));
+	}
+
+	private byte[] encryptWithChannel(byte[] plaintext, List<CipherSpec> cipherSpecs, CipherSession cipherSession) throws IOException {
+		ByteArrayOutputStream ciphertext = new ByteArrayOutputStream();
+		ByteBufferPool bufferPool = new ByteBufferPool(BUFFER_SIZE, 4, false);
+		
+		// Write in chunks of varying size, and alternate heap and direct buffers
+		Random random = new Random(plaintext.length);
+		
+		try (WritableByteChannel channel = new MultiCipherWritableChannel(Channels.newChannel(ciphertext), cipherSpecs, cipherSession, bufferPool)) {
+			int offset = 0;
+			boolean direct = false;
+
+			while (offset < plaintext.length) {
+				int length = Math.min(plaintext.length - offset, 1 + random.nextInt(2 * BUFFER_SIZE));
+				ByteBuffer buffer = (direct) ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+
+				buffer.put(plaintext, offset, length);
+				buffer.flip();
+				
+				assertEquals(length, channel.write(buffer));
+				
+				offset += length;
+				direct = !direct;
+			}
+		}
+		
+		return ciphertext.toByteArray();
+	}
+
+	private byte[] decryptWithChannel(byte[] ciphertext, CipherSession cipherSession, int readBufferSize) throws IOException {
+		ByteBufferPool bufferPool = new ByteBufferPool(BUFFER_SIZE, 4, false);
+		ReadableByteChannel channel = new MultiCipherReadableChannel(Channels.newChannel(new ByteArrayInputStream(ciphertext)), cipherSession, bufferPool);
+		
+		return readFully(Channels.newInputStream(channel), readBufferSize);
+	}
+
+	private byte[] encryptWithStream(byte[] plaintext, List<CipherSpec> cipherSpecs, CipherSession cipherSession, int segmentSize) throws IOException {
+		ByteArrayOutputStream ciphertext = new ByteArrayOutputStream();
+
+		try (OutputStream outputStream = new MultiCipherOutputStream(ciphertext, cipherSpecs, cipherSession, segmentSize)) {
+			outputStream.write(plaintext);
+		}
+
+		return ciphertext.toByteArray();
+	}
+
+	private byte[] decryptWithStream(byte[] ciphertext, CipherSession cipherSession) throws IOException {
+		return readFully(new MultiCipherInputStream(new ByteArrayInputStream(ciphertext), cipherSession), 4096);
+	}
+
+	private byte[] readFully(InputStream inputStream, int readBufferSize) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		byte[] buffer = new byte[readBufferSize];
+		int read = -1;
+
+		while (-1 != (read = inputStream.read(buffer))) {
+			outputStream.write(buffer, 0, read);
+		}
+
+		inputStream.close();
+		return outputStream.toByteArray();
+	}
+
+	private byte[] createRandomArray(int size) {
+		byte[] randomArray = new byte[size];
+		new Random(size).nextBytes(randomArray);
+
+		return randomArray;
+	}
+
+	private static SaltedSecretKey createDummyMasterKey() {
+		return new SaltedSecretKey(
+			new SecretKeySpec(
+				StringUtil.fromHex("44fda24d53b29828b62c362529bd9df5c8a92c2736bcae3a28b3d7b44488e36e246106aa5334813028abb2048eeb5e177df1c702d93cf82aeb7b6d59a8534ff0"),
+				"AnyAlgorithm"
+			),
+			StringUtil.fromHex("157599349e0f1bc713afff442db9d4c3201324073d51cb33407600f305500aa3fdb31136cb1f37bd51a48f183844257d42010a36133b32b424dd02bc63b349bc")
+		);
+	}
+}
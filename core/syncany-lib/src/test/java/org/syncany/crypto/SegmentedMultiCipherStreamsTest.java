@@ -0,0 +1,331 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.syncany.chunk.CipherTransformer;
+import org.syncany.config.Logging;
+import org.syncany.util.StringUtil;
+
+public class SegmentedMultiCipherStreamsTest {
+	private static final int SEGMENT_SIZE = 1024;
+	private static final int SEGMENT_OVERHEAD = 4 + 2 * 16; // Segment header and two GCM tags
+	private static final List<CipherSpec> CIPHER_SPECS = Arrays.asList(new CipherSpec[] {
+		CipherSpecs.getCipherSpec(CipherSpecs.AES_128_GCM),
+		CipherSpecs.getCipherSpec(CipherSpecs.TWOFISH_128_GCM)
+	});
+
+	private static SaltedSecretKey masterKey = createDummyMasterKey();
+
+	static {
+		Logging.init();
+	}
+
+	@Test
+	public void testSegmentedEncryptionRoundtrip() throws Exception {
+		CipherSession cipherSession = new CipherSession(masterKey);
+
+		for (int size : new int[] { 0, 1, SEGMENT_SIZE - 1, SEGMENT_SIZE, SEGMENT_SIZE + 1, 3 * SEGMENT_SIZE, 10 * SEGMENT_SIZE + 17 }) {
+			byte[] plaintext = createRandomArray(size);
+			byte[] ciphertext = encrypt(plaintext, cipherSession, SEGMENT_SIZE);
+
+			assertEquals(MultiCipherOutputStream.STREAM_VERSION_SEGMENTED, ciphertext[MultiCipherOutputStream.STREAM_MAGIC.length]);
+			assertArrayEquals("Roundtrip failed for size " + size, plaintext, decrypt(ciphertext, cipherSession));
+		}
+	}
+
+	@Test
+	public void testUnsegmentedEncryptionStillVersion1() throws Exception {
+		CipherSession cipherSession = new CipherSession(masterKey);
+
+		byte[] plaintext = createRandomArray(5 * SEGMENT_SIZE);
+		byte[] ciphertext = encrypt(plaintext, cipherSession, 0);
+
+		assertEquals(MultiCipherOutputStream.STREAM_VERSION, ciphertext[MultiCipherOutputStream.STREAM_MAGIC.length]);
+		assertArrayEquals(plaintext, decrypt(ciphertext, cipherSession));
+	}
+
+	@Test
+	public void testCipherTransformerWithSegmentSize() throws Exception {
+		Map<String, String> settings = new HashMap<String, String>();
+
+		settings.put(CipherTransformer.PROPERTY_CIPHER_SPECS, "1,2");
+		settings.put(CipherTransformer.PROPERTY_MASTER_KEY, StringUtil.toHex(masterKey.getEncoded()));
+		settings.put(CipherTransformer.PROPERTY_MASTER_KEY_SALT, StringUtil.toHex(masterKey.getSalt()));
+		settings.put(CipherTransformer.PROPERTY_SEGMENT_SIZE, Integer.toString(SEGMENT_SIZE));
+
+		CipherTransformer cipherTransformer = new CipherTransformer();
+		cipherTransformer.init(settings);
+
+		byte[] plaintext = createRandomArray(4 * SEGMENT_SIZE + 100);
+
+		ByteArrayOutputStream ciphertextOutputStream = new ByteArrayOutputStream();
+		OutputStream cipherOutputStream = cipherTransformer.createOutputStream(ciphertextOutputStream);
+
+		cipherOutputStream.write(plaintext);
+		cipherOutputStream.close();
+
+		byte[] ciphertext = ciphertextOutputStream.toByteArray();
+		InputStream cipherInputStream = cipherTransformer.createInputStream(new ByteArrayInputStream(ciphertext));
+
+		assertEquals(MultiCipherOutputStream.STREAM_VERSION_SEGMENTED, ciphertext[MultiCipherOutputStream.STREAM_MAGIC.length]);
+		assertArrayEquals(plaintext, readFully(cipherInputStream));
+	}
+
+	@Test
+	public void testConcurrentEncryptionIsByteIdentical() throws Exception {
+		SegmentCipher segmentCipher = new SegmentCipher(CIPHER_SPECS,
+			Arrays.asList(createRandomArray(16), createRandomArray(17)),
+			Arrays.asList(createRandomArray(18), createRandomArray(19)));
+
+		ExecutorService segmentExecutor = Executors.newFixedThreadPool(4);
+
+		try {
+			for (int size : new int[] { 0, SEGMENT_SIZE, SEGMENT_SIZE + 1, 37 * SEGMENT_SIZE + 5 }) {
+				byte[] plaintext = createRandomArray(size);
+				byte[] expectedCiphertext = encryptSegments(plaintext, segmentCipher, null, 0);
+
+				for (int maxPendingSegments : new int[] { 1, 2, 8 }) {
+					byte[] actualCiphertext = encryptSegments(plaintext, segmentCipher, segmentExecutor, maxPendingSegments);
+					assertArrayEquals("Output differs for size " + size + ", " + maxPendingSegments + " pending segment(s)", expectedCiphertext, actualCiphertext);
+				}
+			}
+		}
+		finally {
+			segmentExecutor.shutdown();
+		}
+	}
+
+	@Test
+	public void testCipherTransformerWithSegmentThreads() throws Exception {
+		CipherTransformer cipherTransformer = new CipherTransformer(CIPHER_SPECS, masterKey, SEGMENT_SIZE, 3);
+		byte[] plaintext = createRandomArray(50 * SEGMENT_SIZE + 1);
+
+		ByteArrayOutputStream ciphertextOutputStream = new ByteArrayOutputStream();
+		OutputStream cipherOutputStream = cipherTransformer.createOutputStream(ciphertextOutputStream);
+
+		// Write in odd pieces to cross segment boundaries
+		for (int offset = 0; offset < plaintext.length; offset += 999) {
+			cipherOutputStream.write(plaintext, offset, Math.min(999, plaintext.length - offset));
+		}
+
+		cipherOutputStream.close();
+
+		InputStream cipherInputStream = cipherTransformer.createInputStream(new ByteArrayInputStream(ciphertextOutputStream.toByteArray()));
+		assertArrayEquals(plaintext, readFully(cipherInputStream));
+	}
+
+	@Test
+	public void testSeekableMultiCipherFile() throws Exception {
+		CipherSession cipherSession = new CipherSession(masterKey);
+
+		byte[] plaintext = createRandomArray(20 * SEGMENT_SIZE + 333);
+		File encryptedFile = writeTempFile(encrypt(plaintext, cipherSession, SEGMENT_SIZE));
+
+		try (SeekableMultiCipherFile seekableFile = new SeekableMultiCipherFile(encryptedFile, cipherSession)) {
+			assertEquals(plaintext.length, seekableFile.length());
+			assertEquals(21, seekableFile.getSegmentCount());
+
+			Random random = new Random(42);
+
+			for (int i = 0; i < 100; i++) {
+				int position = random.nextInt(plaintext.length);
+				int length = Math.min(random.nextInt(3 * SEGMENT_SIZE), plaintext.length - position);
+
+				byte[] actual = new byte[length];
+				seekableFile.readFully(position, actual, 0, length);
+
+				assertArrayEquals(Arrays.copyOfRange(plaintext, position, position + length), actual);
+			}
+
+			assertEquals(-1, seekableFile.read(plaintext.length, new byte[10], 0, 10));
+			assertEquals(333, seekableFile.read(20 * SEGMENT_SIZE, new byte[1000], 0, 1000));
+		}
+		finally {
+			encryptedFile.delete();
+		}
+	}
+
+	@Test
+	public void testSeekableMultiCipherFileFailsForVersion1() throws Exception {
+		CipherSession cipherSession = new CipherSession(masterKey);
+		File encryptedFile = writeTempFile(encrypt(createRandomArray(100), cipherSession, 0));
+
+		try {
+			new SeekableMultiCipherFile(encryptedFile, cipherSession).close();
+			fail("Random access to version 1 file should not be possible.");
+		}
+		catch (IOException e) {
+			// Good
+		}
+		finally {
+			encryptedFile.delete();
+		}
+	}
+
+	@Test
+	public void testTamperedSegmentFails() throws Exception {
+		CipherSession cipherSession = new CipherSession(masterKey);
+
+		byte[] plaintext = createRandomArray(5 * SEGMENT_SIZE);
+		byte[] ciphertext = encrypt(plaintext, cipherSession, SEGMENT_SIZE);
+
+		// Flip a bit in the middle of the third segment
+		int headerLength = getHeaderLength(ciphertext, cipherSession);
+		int tamperedPosition = headerLength + 2 * (SEGMENT_SIZE + SEGMENT_OVERHEAD) + 100;
+
+		ciphertext[tamperedPosition] ^= 0x01;
+
+		try {
+			decrypt(ciphertext, cipherSession);
+			fail("Tampered segment should not decrypt.");
+		}
+		catch (IOException e) {
+			// Good
+		}
+
+		File encryptedFile = writeTempFile(ciphertext);
+
+		try (SeekableMultiCipherFile seekableFile = new SeekableMultiCipherFile(encryptedFile, cipherSession)) {
+			byte[] firstSegment = new byte[SEGMENT_SIZE];
+			seekableFile.readFully(0, firstSegment, 0, SEGMENT_SIZE);
+
+			assertArrayEquals("Untampered segment should still be readable", Arrays.copyOfRange(plaintext, 0, SEGMENT_SIZE), firstSegment);
+
+			try {
+				seekableFile.readFully(2 * SEGMENT_SIZE, new byte[10], 0, 10);
+				fail("Tampered segment should not decrypt.");
+			}
+			catch (IOException e) {
+				// Good
+			}
+		}
+		finally {
+			encryptedFile.delete();
+		}
+	}
+
+	@Test
+	public void testTruncatedStreamFails() throws Exception {
+		CipherSession cipherSession = new CipherSession(masterKey);
+
+		byte[] plaintext = createRandomArray(5 * SEGMENT_SIZE);
+		byte[] ciphertext = encrypt(plaintext, cipherSession, SEGMENT_SIZE);
+
+		// Cut off the last segment and the index, i.e. end after a full segment
+		int headerLength = getHeaderLength(ciphertext, cipherSession);
+		byte[] truncatedCiphertext = Arrays.copyOf(ciphertext, headerLength + 4 * (SEGMENT_SIZE + SEGMENT_OVERHEAD));
+
+		try {
+			decrypt(truncatedCiphertext, cipherSession);
+			fail("Truncated stream should not decrypt.");
+		}
+		catch (IOException e) {
+			// Good
+		}
+	}
+
+	private int getHeaderLength(byte[] ciphertext, CipherSession cipherSession) throws IOException {
+		ByteArrayInputStream ciphertextInputStream = new ByteArrayInputStream(ciphertext);
+		new MultiCipherInputStream(ciphertextInputStream, cipherSession).readHeader();
+
+		return ciphertext.length - ciphertextInputStream.available();
+	}
+
+	private byte[] encrypt(byte[] plaintext, CipherSession cipherSession, int segmentSize) throws IOException {
+		ByteArrayOutputStream ciphertextOutputStream = new ByteArrayOutputStream();
+		OutputStream cipherOutputStream = new MultiCipherOutputStream(ciphertextOutputStream, CIPHER_SPECS, cipherSession, segmentSize);
+
+		cipherOutputStream.write(plaintext);
+		cipherOutputStream.close();
+
+		return ciphertextOutputStream.toByteArray();
+	}
+
+	private byte[] encryptSegments(byte[] plaintext, SegmentCipher segmentCipher, ExecutorService segmentExecutor, int maxPendingSegments) throws IOException {
+		ByteArrayOutputStream ciphertextOutputStream = new ByteArrayOutputStream();
+		OutputStream segmentedOutputStream = new SegmentedCipherOutputStream(ciphertextOutputStream, segmentCipher, SEGMENT_SIZE, segmentExecutor, maxPendingSegments);
+
+		segmentedOutputStream.write(plaintext);
+		segmentedOutputStream.close();
+
+		return ciphertextOutputStream.toByteArray();
+	}
+
+	private byte[] decrypt(byte[] ciphertext, CipherSession cipherSession) throws IOException {
+		return readFully(new MultiCipherInputStream(new ByteArrayInputStream(ciphertext), cipherSession));
+	}
+
+	private byte[] readFully(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		byte[] buffer = new byte[777];
+		int read = -1;
+
+		while (-1 != (read = inputStream.read(buffer))) {
+			outputStream.write(buffer, 0, read);
+		}
+
+		inputStream.close();
+		return outputStream.toByteArray();
+	}
+
+	private File writeTempFile(byte[] contents) throws IOException {
+		File tempFile = File.createTempFile("syncany-segmented-", ".enc");
+		FileUtils.writeByteArrayToFile(tempFile, contents);
+
+		return tempFile;
+	}
+
+	private byte[] createRandomArray(int size) {
+		byte[] randomArray = new byte[size];
+		new Random(size).nextBytes(randomArray);
+
+		return randomArray;
+	}
+
+	private static SaltedSecretKey createDummyMasterKey() {
+		return new SaltedSecretKey(
+			new SecretKeySpec(
+				StringUtil.fromHex("44fda24d53b29828b62c362529bd9df5c8a92c2736bcae3a28b3d7b44488e36e246106aa5334813028abb2048eeb5e177df1c702d93cf82aeb7b6d59a8534ff0"),
+				"AnyAlgorithm"
+			),
+			StringUtil.fromHex("157599349e0f1bc713afff442db9d4c3201324073d51cb33407600f305500aa3fdb31136cb1f37bd51a48f183844257d42010a36133b32b424dd02bc63b349bc")
+		);
+	}
+}
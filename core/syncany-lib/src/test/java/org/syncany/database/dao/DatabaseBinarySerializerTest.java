@@ -0,0 +1,165 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.chunk.CipherTransformer;
+import org.syncany.chunk.GzipTransformer;
+import org.syncany.crypto.CipherSpecs;
+import org.syncany.crypto.CipherUtil;
+import org.syncany.crypto.SaltedSecretKey;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.MemoryDatabase;
+import org.syncany.database.dao.DatabaseSerializer.DatabaseReadType;
+import org.syncany.tests.util.TestDatabaseUtil;
+import org.syncany.tests.util.TestFileUtil;
+
+public class DatabaseBinarySerializerTest {
+	private File tempDir;
+	private DatabaseBinarySerializer databaseSerializer;
+
+	@Before
+	public void setUp() throws Exception {
+		SaltedSecretKey masterKey = CipherUtil.createMasterKey("some password");
+
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		databaseSerializer = new DatabaseBinarySerializer(new GzipTransformer(new CipherTransformer(CipherSpecs.getDefaultCipherSpecs(), masterKey)));
+	}
+
+	@After
+	public void tearDown() {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		File databaseFile = new File(tempDir, "db-A-0000000003");
+		databaseSerializer.save(createDatabaseVersions(3).iterator(), databaseFile);
+
+		MemoryDatabase database = new MemoryDatabase();
+		databaseSerializer.load(database, databaseFile, null, null, DatabaseReadType.FULL);
+
+		assertEquals(3, database.getDatabaseVersions().size());
+		assertEquals("(someclient3)", database.getLastDatabaseVersion().getVectorClock().toString());
+	}
+
+	@Test
+	public void testLoadSplicedFileFails() throws Exception {
+		File databaseFile1 = new File(tempDir, "db-A-0000000001");
+		File databaseFile2 = new File(tempDir, "db-A-0000000002");
+		File splicedDatabaseFile = new File(tempDir, "db-A-0000000003");
+
+		List<DatabaseVersion> databaseVersions = createDatabaseVersions(2);
+
+		databaseSerializer.save(databaseVersions.subList(0, 1).iterator(), databaseFile1);
+		databaseSerializer.save(databaseVersions.subList(0, 1).iterator(), databaseFile2);
+
+		// Combine the (valid) index section of the first file with the (valid) payload section of the second
+		byte[] databaseBytes1 = FileUtils.readFileToByteArray(databaseFile1);
+		byte[] databaseBytes2 = FileUtils.readFileToByteArray(databaseFile2);
+
+		ByteArrayOutputStream splicedBytes = new ByteArrayOutputStream();
+		splicedBytes.write(databaseBytes1, 0, getPayloadOffset(databaseBytes1));
+		splicedBytes.write(databaseBytes2, getPayloadOffset(databaseBytes2), databaseBytes2.length - getPayloadOffset(databaseBytes2));
+
+		FileUtils.writeByteArrayToFile(splicedDatabaseFile, splicedBytes.toByteArray());
+
+		// Headers only: payload section is not read
+		MemoryDatabase headerDatabase = new MemoryDatabase();
+		databaseSerializer.load(headerDatabase, splicedDatabaseFile, null, null, DatabaseReadType.HEADER_ONLY);
+
+		assertEquals(1, headerDatabase.getDatabaseVersions().size());
+
+		// Full read must detect the foreign payload section
+		try {
+			databaseSerializer.load(new MemoryDatabase(), splicedDatabaseFile, null, null, DatabaseReadType.FULL);
+			fail("Loading a spliced database file should have failed.");
+		}
+		catch (IOException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testLoadNegativeCountFails() throws Exception {
+		File databaseFile = new File(tempDir, "db-A-0000000001");
+
+		// Index section (untransformed) with a database version count of -1
+		byte[] negativeVarLong = new byte[] { (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff,
+				(byte) 0xff, (byte) 0xff, 0x01 };
+
+		ByteArrayOutputStream databaseBytes = new ByteArrayOutputStream();
+		databaseBytes.write(DatabaseBinarySerializer.MAGIC);
+		databaseBytes.write(DatabaseBinarySerializer.FORMAT_VERSION);
+		databaseBytes.write(negativeVarLong.length);
+		databaseBytes.write(negativeVarLong);
+
+		FileUtils.writeByteArrayToFile(databaseFile, databaseBytes.toByteArray());
+
+		try {
+			new DatabaseBinarySerializer().load(new MemoryDatabase(), databaseFile, null, null, DatabaseReadType.FULL);
+			fail("Loading a database file with a negative count should have failed.");
+		}
+		catch (IOException e) {
+			// Reader fails with an IOException naming the field (wrapped by the serializer)
+			assertTrue(e.getCause() instanceof IOException);
+			assertTrue(e.getCause().getMessage().contains("database version count"));
+		}
+	}
+
+	private int getPayloadOffset(byte[] databaseBytes) {
+		int offset = DatabaseBinarySerializer.MAGIC.length + 1;
+		int indexLength = 0;
+		int shift = 0;
+		int b;
+
+		do {
+			b = databaseBytes[offset++] & 0xff;
+			indexLength |= (b & 0x7f) << shift;
+			shift += 7;
+		}
+		while ((b & 0x80) != 0);
+
+		return offset + indexLength;
+	}
+
+	private List<DatabaseVersion> createDatabaseVersions(int count) {
+		List<DatabaseVersion> databaseVersions = new ArrayList<DatabaseVersion>();
+		DatabaseVersion databaseVersion = null;
+
+		for (int i = 0; i < count; i++) {
+			databaseVersion = TestDatabaseUtil.createDatabaseVersion(databaseVersion);
+			databaseVersions.add(databaseVersion);
+		}
+
+		return databaseVersions;
+	}
+}
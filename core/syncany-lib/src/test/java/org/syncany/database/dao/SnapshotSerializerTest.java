@@ -0,0 +1,127 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.chunk.CipherTransformer;
+import org.syncany.chunk.GzipTransformer;
+import org.syncany.chunk.Transformer;
+import org.syncany.crypto.CipherSpecs;
+import org.syncany.crypto.CipherUtil;
+import org.syncany.crypto.SaltedSecretKey;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.MemoryDatabase;
+import org.syncany.database.VectorClock;
+import org.syncany.database.dao.DatabaseSerializer.DatabaseReadType;
+import org.syncany.tests.util.TestDatabaseUtil;
+import org.syncany.tests.util.TestFileUtil;
+
+public class SnapshotSerializerTest {
+	private File tempDir;
+	private Transformer transformer;
+
+	@Before
+	public void setUp() throws Exception {
+		SaltedSecretKey masterKey = CipherUtil.createMasterKey("some password");
+
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		transformer = new GzipTransformer(new CipherTransformer(CipherSpecs.getDefaultCipherSpecs(), masterKey));
+	}
+
+	@After
+	public void tearDown() {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testSaveAndLoadSnapshot() throws Exception {
+		for (String format : new String[] { DatabaseXmlSerializer.FORMAT, DatabaseBinarySerializer.FORMAT }) {
+			SnapshotSerializer snapshotSerializer = new SnapshotSerializer(DatabaseSerializer.getInstance(format, transformer));
+
+			File snapshotFile = new File(tempDir, "snapshot-" + format);
+			File databaseFile = new File(tempDir, "snapshot-" + format + "-database");
+			VectorClock coveredDatabaseFiles = VectorClock.parseVectorClock("(A17,B5)");
+
+			snapshotSerializer.save(createDatabaseVersions(3).iterator(), coveredDatabaseFiles, snapshotFile);
+
+			// The covered files list must be transformed along with the database
+			assertFalse(FileUtils.readFileToString(snapshotFile, "ISO-8859-1").contains(coveredDatabaseFiles.toString()));
+			assertEquals(coveredDatabaseFiles, snapshotSerializer.load(snapshotFile, databaseFile));
+
+			MemoryDatabase snapshotDatabase = new MemoryDatabase();
+			snapshotSerializer.getDatabaseSerializer().load(snapshotDatabase, databaseFile, null, null, DatabaseReadType.FULL);
+
+			assertEquals(1, snapshotDatabase.getDatabaseVersions().size());
+			assertEquals("(someclient3)", snapshotDatabase.getLastDatabaseVersion().getVectorClock().toString());
+		}
+	}
+
+	@Test
+	public void testLoadTamperedSnapshotFails() throws Exception {
+		SnapshotSerializer snapshotSerializer = new SnapshotSerializer(DatabaseSerializer.getInstance(DatabaseBinarySerializer.FORMAT, transformer));
+
+		File snapshotFile = new File(tempDir, "snapshot");
+		File databaseFile = new File(tempDir, "snapshot-database");
+
+		snapshotSerializer.save(createDatabaseVersions(3).iterator(), VectorClock.parseVectorClock("(A17,B5)"), snapshotFile);
+
+		// Flip a bit in the last byte of the file, i.e. in the transformed section
+		try (RandomAccessFile snapshotRandomAccessFile = new RandomAccessFile(snapshotFile, "rw")) {
+			long tamperOffset = snapshotRandomAccessFile.length() - 1;
+
+			snapshotRandomAccessFile.seek(tamperOffset);
+			int originalByte = snapshotRandomAccessFile.read();
+
+			snapshotRandomAccessFile.seek(tamperOffset);
+			snapshotRandomAccessFile.write(originalByte ^ 0x01);
+		}
+
+		try {
+			snapshotSerializer.load(snapshotFile, databaseFile);
+			fail("Loading a tampered snapshot should have failed.");
+		}
+		catch (IOException e) {
+			// Expected
+		}
+	}
+
+	private List<DatabaseVersion> createDatabaseVersions(int count) {
+		List<DatabaseVersion> databaseVersions = new ArrayList<DatabaseVersion>();
+		DatabaseVersion databaseVersion = null;
+
+		for (int i = 0; i < count; i++) {
+			databaseVersion = TestDatabaseUtil.createDatabaseVersion(databaseVersion);
+			databaseVersions.add(databaseVersion);
+		}
+
+		return databaseVersions;
+	}
+}
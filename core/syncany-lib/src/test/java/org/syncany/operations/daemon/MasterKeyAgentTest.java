@@ -0,0 +1,133 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.daemon;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.syncany.config.LocalEventBus;
+import org.syncany.crypto.CipherUtil;
+import org.syncany.crypto.SaltedSecretKey;
+import org.syncany.operations.daemon.messages.GetMasterKeyManagementRequest;
+import org.syncany.operations.daemon.messages.GetMasterKeyManagementResponse;
+
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Unit tests for the {@link MasterKeyAgent} class.
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class MasterKeyAgentTest {
+	private static final long TTL = 60 * 1000L;
+
+	@Test
+	public void testCachedKeyEqualsDerivedKey() throws Exception {
+		MasterKeyAgent agent = new MasterKeyAgent(TTL);
+		byte[] salt = CipherUtil.createRandomArray(64);
+
+		SaltedSecretKey derivedKey = CipherUtil.createMasterKey("some password", salt);
+		SaltedSecretKey firstAgentKey = agent.getMasterKey("some password", salt);
+		SaltedSecretKey secondAgentKey = agent.getMasterKey("some password", salt);
+
+		assertEquals(1, agent.size());
+		assertArrayEquals(derivedKey.getEncoded(), firstAgentKey.getEncoded());
+		assertArrayEquals(derivedKey.getEncoded(), secondAgentKey.getEncoded());
+		assertArrayEquals(salt, secondAgentKey.getSalt());
+	}
+
+	@Test
+	public void testWrongPasswordDoesNotReturnCachedKey() throws Exception {
+		MasterKeyAgent agent = new MasterKeyAgent(TTL);
+		byte[] salt = CipherUtil.createRandomArray(64);
+
+		SaltedSecretKey correctKey = agent.getMasterKey("correct password", salt);
+		SaltedSecretKey wrongKey = agent.getMasterKey("wrong password", salt);
+
+		assertEquals(1, agent.size());
+		assertFalse(Arrays.equals(correctKey.getEncoded(), wrongKey.getEncoded()));
+		assertArrayEquals(CipherUtil.createMasterKey("wrong password", salt).getEncoded(), wrongKey.getEncoded());
+	}
+
+	@Test
+	public void testExpiredKeysAreRemoved() throws Exception {
+		MasterKeyAgent agent = new MasterKeyAgent(0);
+
+		agent.getMasterKey("some password", CipherUtil.createRandomArray(64));
+		assertEquals(1, agent.size());
+
+		agent.removeExpiredMasterKeys();
+		assertEquals(0, agent.size());
+	}
+
+	@Test
+	public void testClearDoesNotWipeReturnedKeys() throws Exception {
+		MasterKeyAgent agent = new MasterKeyAgent(TTL);
+		byte[] salt = CipherUtil.createRandomArray(64);
+
+		SaltedSecretKey agentKey = agent.getMasterKey("some password", salt);
+		byte[] agentKeyBytes = agentKey.getEncoded().clone();
+
+		agent.clear();
+
+		assertEquals(0, agent.size());
+		assertArrayEquals(agentKeyBytes, agentKey.getEncoded());
+	}
+
+	@Test
+	public void testTooManyRequestsAreRejected() throws Exception {
+		MasterKeyAgent agent = new MasterKeyAgent(TTL);
+		final List<GetMasterKeyManagementResponse> busyResponses = Collections.synchronizedList(new ArrayList<GetMasterKeyManagementResponse>());
+
+		Object responseListener = new Object() {
+			@Subscribe
+			public void onGetMasterKeyResponse(GetMasterKeyManagementResponse response) {
+				if (response.getCode() == GetMasterKeyManagementResponse.NOK_BUSY) {
+					busyResponses.add(response);
+				}
+			}
+		};
+
+		LocalEventBus.getInstance().register(responseListener);
+		agent.start();
+
+		try {
+			// Workers are busy deriving keys, so only a bounded number of requests is accepted
+			for (int i = 0; i < 30; i++) {
+				GetMasterKeyManagementRequest request = new GetMasterKeyManagementRequest("some password", CipherUtil.createRandomArray(64));
+				request.setId(i);
+
+				agent.onGetMasterKeyRequest(request);
+			}
+
+			assertTrue(busyResponses.size() >= 10);
+		}
+		finally {
+			agent.stop();
+			LocalEventBus.getInstance().unregister(responseListener);
+		}
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.down;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.chunk.NoTransformer;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.DatabaseVersionHeader;
+import org.syncany.database.FileVersion;
+import org.syncany.database.MemoryDatabase;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.database.VectorClock;
+import org.syncany.database.dao.DatabaseBinarySerializer;
+import org.syncany.database.dao.DatabaseSerializer;
+import org.syncany.database.dao.DatabaseSerializer.DatabaseReadType;
+import org.syncany.database.dao.DatabaseXmlSerializer;
+import org.syncany.tests.util.TestDatabaseUtil;
+
+public class DatabaseFileReaderTest {
+	private File tempDir;
+	private DatabaseBranch winnersApplyBranch;
+	private Map<DatabaseVersionHeader, File> databaseVersionLocations;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = Files.createTempDirectory("syncany-dbfilereader-").toFile();
+
+		// Winner's branch: (A1) and (A2) in db-A-1, (A2,B1) in db-B-1, (A3,B1) and (A4,B1) in db-A-2
+		DatabaseVersion versionA1 = createDatabaseVersion("A/(A1)/T=1");
+		DatabaseVersion versionA2 = createDatabaseVersion("A/(A2)/T=2");
+		DatabaseVersion versionA2B1 = createDatabaseVersion("B/(A2,B1)/T=3");
+		DatabaseVersion versionA3B1 = createDatabaseVersion("A/(A3,B1)/T=4");
+		DatabaseVersion versionA4B1 = createDatabaseVersion("A/(A4,B1)/T=5");
+
+		winnersApplyBranch = new DatabaseBranch();
+		databaseVersionLocations = new HashMap<DatabaseVersionHeader, File>();
+
+		writeDatabaseFile("database-A-0000000001", new DatabaseXmlSerializer(new NoTransformer()), versionA1, versionA2);
+		writeDatabaseFile("database-B-0000000001", new DatabaseBinarySerializer(new NoTransformer()), versionA2B1);
+		writeDatabaseFile("database-A-0000000002", new DatabaseXmlSerializer(new NoTransformer()), versionA3B1, versionA4B1);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testLoadAllInOneMemoryDatabase() throws Exception {
+		DatabaseFileReader databaseFileReader = new DatabaseFileReader(new DatabaseXmlSerializer(new NoTransformer()), winnersApplyBranch,
+				databaseVersionLocations, Long.MAX_VALUE);
+
+		try {
+			assertTrue(databaseFileReader.hasNext());
+			MemoryDatabase winnersDatabase = databaseFileReader.next();
+
+			assertFalse(databaseFileReader.hasNext());
+			assertEquals(winnersApplyBranch.getAll(), getHeaders(winnersDatabase));
+			assertEquals(5, winnersDatabase.getFileHistories().size());
+		}
+		finally {
+			databaseFileReader.close();
+		}
+	}
+
+	@Test
+	public void testLoadOneRangePerMemoryDatabaseWithTinyBudget() throws Exception {
+		DatabaseFileReader databaseFileReader = new DatabaseFileReader(new DatabaseXmlSerializer(new NoTransformer()), winnersApplyBranch,
+				databaseVersionLocations, 1);
+
+		List<DatabaseVersionHeader> loadedHeaders = new ArrayList<DatabaseVersionHeader>();
+		List<Integer> loadedBatchSizes = new ArrayList<Integer>();
+
+		try {
+			while (databaseFileReader.hasNext()) {
+				MemoryDatabase winnersDatabase = databaseFileReader.next();
+
+				loadedHeaders.addAll(getHeaders(winnersDatabase));
+				loadedBatchSizes.add(winnersDatabase.getDatabaseVersions().size());
+			}
+		}
+		finally {
+			databaseFileReader.close();
+		}
+
+		assertEquals(winnersApplyBranch.getAll(), loadedHeaders);
+		assertEquals(Arrays.asList(2, 1, 2), loadedBatchSizes);
+	}
+
+	@Test
+	public void testNoParseAheadBeyondBudget() throws Exception {
+		final AtomicInteger loadCount = new AtomicInteger(0);
+
+		DatabaseSerializer countingDatabaseSerializer = new DatabaseXmlSerializer(new NoTransformer()) {
+			@Override
+			public void load(MemoryDatabase db, File databaseFile, VectorClock fromVersion, VectorClock toVersion, DatabaseReadType readType)
+					throws IOException {
+
+				loadCount.incrementAndGet();
+
+				try {
+					Thread.sleep(100); // Give other parser threads (if any) the chance to start
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+
+				super.load(db, databaseFile, fromVersion, toVersion, readType);
+			}
+		};
+
+		DatabaseFileReader databaseFileReader = new DatabaseFileReader(countingDatabaseSerializer, winnersApplyBranch, databaseVersionLocations, 1);
+
+		try {
+			// The first range exceeds the budget, so no other range must have been parsed ahead
+			assertEquals(2, databaseFileReader.next().getDatabaseVersions().size());
+			assertEquals(1, loadCount.get());
+		}
+		finally {
+			databaseFileReader.close();
+		}
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testLoadCorruptDatabaseFile() throws Exception {
+		FileUtils.writeStringToFile(new File(tempDir, "database-B-0000000001"), "corrupt");
+
+		DatabaseFileReader databaseFileReader = new DatabaseFileReader(new DatabaseXmlSerializer(new NoTransformer()), winnersApplyBranch,
+				databaseVersionLocations, Long.MAX_VALUE);
+
+		try {
+			databaseFileReader.next();
+		}
+		finally {
+			databaseFileReader.close();
+		}
+	}
+
+	private DatabaseVersion createDatabaseVersion(String databaseVersionHeaderString) throws Exception {
+		DatabaseVersionHeader databaseVersionHeader = TestDatabaseUtil.createFromString(databaseVersionHeaderString);
+
+		DatabaseVersion databaseVersion = new DatabaseVersion();
+		databaseVersion.setHeader(databaseVersionHeader);
+
+		FileVersion fileVersion = TestDatabaseUtil.createFileVersion("file-" + databaseVersionHeader.getVectorClock().toString());
+		fileVersion.setSize(1L);
+
+		PartialFileHistory fileHistory = new PartialFileHistory(FileHistoryId.secureRandomFileId());
+		fileHistory.addFileVersion(fileVersion);
+		databaseVersion.addFileHistory(fileHistory);
+
+		return databaseVersion;
+	}
+
+	private void writeDatabaseFile(String fileName, DatabaseSerializer databaseSerializer, DatabaseVersion... databaseVersions) throws Exception {
+		File databaseFile = new File(tempDir, fileName);
+		databaseSerializer.save(Arrays.asList(databaseVersions), databaseFile);
+
+		for (DatabaseVersion databaseVersion : databaseVersions) {
+			winnersApplyBranch.add(databaseVersion.getHeader());
+			databaseVersionLocations.put(databaseVersion.getHeader(), databaseFile);
+		}
+	}
+
+	private List<DatabaseVersionHeader> getHeaders(MemoryDatabase memoryDatabase) {
+		List<DatabaseVersionHeader> headers = new ArrayList<DatabaseVersionHeader>();
+
+		for (DatabaseVersion databaseVersion : memoryDatabase.getDatabaseVersions()) {
+			headers.add(databaseVersion.getHeader());
+		}
+
+		return headers;
+	}
+}
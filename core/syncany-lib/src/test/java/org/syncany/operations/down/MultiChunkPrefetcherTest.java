@@ -0,0 +1,118 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.down;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.operations.down.MultiChunkPrefetcher.Window;
+
+public class MultiChunkPrefetcherTest {
+	private MultiChunkId multiChunk1;
+	private MultiChunkId multiChunk2;
+	private MultiChunkId multiChunk3;
+	private Map<MultiChunkId, Long> multiChunkSizes;
+
+	@Before
+	public void setUp() {
+		multiChunk1 = MultiChunkId.parseMultiChunkId("1111111111111111111111111111111111111111");
+		multiChunk2 = MultiChunkId.parseMultiChunkId("2222222222222222222222222222222222222222");
+		multiChunk3 = MultiChunkId.parseMultiChunkId("3333333333333333333333333333333333333333");
+
+		multiChunkSizes = new HashMap<MultiChunkId, Long>();
+		multiChunkSizes.put(multiChunk1, 100L);
+		multiChunkSizes.put(multiChunk2, 100L);
+		multiChunkSizes.put(multiChunk3, 100L);
+	}
+
+	@Test
+	public void testPlanWindowsLargeBudget() {
+		List<Collection<MultiChunkId>> actionMultiChunkIds = createActionMultiChunkIds(Arrays.asList(multiChunk1),
+				Collections.<MultiChunkId> emptyList(), Arrays.asList(multiChunk2, multiChunk3));
+
+		List<Window> windows = MultiChunkPrefetcher.planWindows(actionMultiChunkIds, multiChunkSizes, 10000);
+
+		assertEquals(1, windows.size());
+		assertEquals(0, windows.get(0).getFromActionIndex());
+		assertEquals(3, windows.get(0).getToActionIndex());
+		assertEquals(3, windows.get(0).getMultiChunkIds().size());
+		assertEquals(3, windows.get(0).getReleasedMultiChunkIds().size());
+	}
+
+	@Test
+	public void testPlanWindowsSmallBudgetKeepsSharedMultiChunks() {
+		// Budget 400 -> 200 per window; multichunk 1 is used by the first and the last action
+		List<Collection<MultiChunkId>> actionMultiChunkIds = createActionMultiChunkIds(Arrays.asList(multiChunk1),
+				Arrays.asList(multiChunk2), Arrays.asList(multiChunk3), Arrays.asList(multiChunk1));
+
+		List<Window> windows = MultiChunkPrefetcher.planWindows(actionMultiChunkIds, multiChunkSizes, 400);
+
+		assertEquals(2, windows.size());
+
+		assertEquals(0, windows.get(0).getFromActionIndex());
+		assertEquals(2, windows.get(0).getToActionIndex());
+		assertEquals(new LinkedHashSet<MultiChunkId>(Arrays.asList(multiChunk1, multiChunk2)), windows.get(0).getMultiChunkIds());
+		assertEquals(new LinkedHashSet<MultiChunkId>(Arrays.asList(multiChunk2)), windows.get(0).getReleasedMultiChunkIds());
+
+		assertEquals(2, windows.get(1).getFromActionIndex());
+		assertEquals(4, windows.get(1).getToActionIndex());
+		assertEquals(new LinkedHashSet<MultiChunkId>(Arrays.asList(multiChunk3)), windows.get(1).getMultiChunkIds());
+		assertEquals(new LinkedHashSet<MultiChunkId>(Arrays.asList(multiChunk1, multiChunk3)), windows.get(1).getReleasedMultiChunkIds());
+	}
+
+	@Test
+	public void testPlanWindowsTinyBudget() {
+		// Every action gets its own window, even if its multichunks exceed the budget
+		List<Collection<MultiChunkId>> actionMultiChunkIds = createActionMultiChunkIds(Arrays.asList(multiChunk1, multiChunk2),
+				Collections.<MultiChunkId> emptyList(), Arrays.asList(multiChunk3));
+
+		List<Window> windows = MultiChunkPrefetcher.planWindows(actionMultiChunkIds, multiChunkSizes, 1);
+
+		assertEquals(2, windows.size());
+		assertEquals(2, windows.get(0).getActionCount()); // The second action does not need any multichunks
+		assertEquals(1, windows.get(1).getActionCount());
+	}
+
+	@Test
+	public void testPlanWindowsNoActions() {
+		List<Window> windows = MultiChunkPrefetcher.planWindows(new ArrayList<Collection<MultiChunkId>>(), multiChunkSizes, 1);
+		assertEquals(0, windows.size());
+	}
+
+	@SafeVarargs
+	private final List<Collection<MultiChunkId>> createActionMultiChunkIds(List<MultiChunkId>... multiChunkIds) {
+		List<Collection<MultiChunkId>> actionMultiChunkIds = new ArrayList<Collection<MultiChunkId>>();
+
+		for (List<MultiChunkId> actionMultiChunks : multiChunkIds) {
+			actionMultiChunkIds.add(actionMultiChunks);
+		}
+
+		return actionMultiChunkIds;
+	}
+}
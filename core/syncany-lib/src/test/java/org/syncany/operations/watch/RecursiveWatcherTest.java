@@ -19,8 +19,10 @@ package org.syncany.operations.watch;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
@@ -57,4 +59,35 @@ public class RecursiveWatcherTest {
 		TestFileUtil.deleteDirectory(tempDir.toFile());
 	}
 
+	@Test
+	public void testTakeDirtyPaths() throws Exception {
+		final Path tempDir = TestFileUtil.createTempDirectoryInSystemTemp("RecursiveWatcherTest").toPath();
+		final File subFolder = new File(tempDir.toFile(), "folder");
+
+		subFolder.mkdir();
+
+		RecursiveWatcher watcher = RecursiveWatcher.createRecursiveWatcher(tempDir, new ArrayList<Path>(), 300, new WatchListener() {			
+			@Override
+			public void watchEventsOccurred() {
+				// Nothing.
+			}
+		});
+		
+		watcher.start();
+		Thread.sleep(100);
+		
+		File file1 = TestFileUtil.createRandomFileInDirectory(subFolder, 111);
+		File file2 = TestFileUtil.createRandomFileInDirectory(tempDir.toFile(), 222);
+		Thread.sleep(350);
+
+		Set<Path> dirtyPaths = watcher.takeDirtyPaths();
+		
+		assertTrue(dirtyPaths.contains(file1.toPath().toAbsolutePath().normalize()));
+		assertTrue(dirtyPaths.contains(file2.toPath().toAbsolutePath().normalize()));
+		assertFalse(dirtyPaths.contains(tempDir.toAbsolutePath().normalize()));
+		assertEquals(0, watcher.takeDirtyPaths().size());
+		
+		watcher.stop();
+		TestFileUtil.deleteDirectory(tempDir.toFile());
+	}
 }
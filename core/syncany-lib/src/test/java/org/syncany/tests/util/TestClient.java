@@ -29,6 +29,9 @@ import org.syncany.crypto.CipherException;
 import org.syncany.operations.cleanup.CleanupOperation;
 import org.syncany.operations.cleanup.CleanupOperationOptions;
 import org.syncany.operations.cleanup.CleanupOperationResult;
+import org.syncany.operations.compact.CompactOperation;
+import org.syncany.operations.compact.CompactOperationOptions;
+import org.syncany.operations.compact.CompactOperationResult;
 import org.syncany.operations.down.DownOperation;
 import org.syncany.operations.down.DownOperationOptions;
 import org.syncany.operations.down.DownOperationResult;
@@ -125,6 +128,14 @@ public class TestClient extends Client {
 		return new LogOperation(config, options).execute();
 	}
 
+	public CompactOperationResult compact() throws Exception {
+		return compact(new CompactOperationOptions());
+	}
+
+	public CompactOperationResult compact(CompactOperationOptions options) throws Exception {
+		return new CompactOperation(config, options).execute();
+	}
+
 	public void watch(WatchOperationOptions options) throws Exception {
 		new WatchOperation(config, options).execute();
 	}
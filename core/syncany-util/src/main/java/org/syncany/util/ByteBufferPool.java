@@ -0,0 +1,100 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A simple pool of {@link ByteBuffer}s of a fixed size. Buffers are created on demand
+ * by {@link #acquire()} and kept for re-use when they are handed back using {@link #release(ByteBuffer)},
+ * up to a maximum number of pooled buffers. 
+ * 
+ * <p>Pooling buffers avoids allocating (and zeroing) large buffers for every stream or channel
+ * that is opened, which is particularly expensive for direct buffers.
+ * 
+ * <p>This class is thread-safe.
+ * 
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class ByteBufferPool {
+	private final int bufferSize;
+	private final int maxPooledBuffers;
+	private final boolean direct;
+	
+	private final Deque<ByteBuffer> pooledBuffers;
+
+	/**
+	 * Creates a new buffer pool.
+	 * 
+	 * @param bufferSize Capacity of the buffers in this pool
+	 * @param maxPooledBuffers Maximum number of idle buffers kept in the pool
+	 * @param direct Whether to create direct buffers (<code>true</code>) or heap buffers (<code>false</code>)
+	 */
+	public ByteBufferPool(int bufferSize, int maxPooledBuffers, boolean direct) {
+		this.bufferSize = bufferSize;
+		this.maxPooledBuffers = maxPooledBuffers;
+		this.direct = direct;
+		
+		this.pooledBuffers = new ArrayDeque<ByteBuffer>();
+	}
+	
+	/**
+	 * Returns a cleared buffer from the pool, or creates a new 
+	 * one if the pool is empty.
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer buffer;
+		
+		synchronized (pooledBuffers) {
+			buffer = pooledBuffers.pollFirst();
+		}
+		
+		if (buffer == null) {
+			buffer = (direct) ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+		}
+		
+		buffer.clear();
+		return buffer;
+	}
+	
+	/**
+	 * Returns a buffer to the pool. Buffers that were not created by 
+	 * this pool (different capacity or type) are ignored, as are buffers
+	 * exceeding the maximum pool size. The buffer must not be used after
+	 * it was released.
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer != null && buffer.capacity() == bufferSize && buffer.isDirect() == direct) {
+			synchronized (pooledBuffers) {
+				if (pooledBuffers.size() < maxPooledBuffers) {
+					pooledBuffers.offerFirst(buffer);
+				}
+			}
+		}
+	}
+	
+	public int getBufferSize() {
+		return bufferSize;
+	}
+	
+	public boolean isDirect() {
+		return direct;
+	}
+}
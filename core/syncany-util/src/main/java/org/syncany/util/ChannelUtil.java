@@ -0,0 +1,171 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Utility class to adapt streams to channels. 
+ * 
+ * <p>Unlike the adapters returned by {@link Channels#newChannel(OutputStream)} and 
+ * {@link Channels#newChannel(InputStream)}, which always copy the data through an internal 
+ * transfer array, the adapters of this class pass the backing array of heap buffers to the
+ * stream directly. Only direct buffers are copied.
+ * 
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class ChannelUtil {
+	private static final int TRANSFER_SIZE = 8192;
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+	
+	/**
+	 * Returns a channel that writes to the given output stream. Closing 
+	 * the channel closes the stream.
+	 */
+	public static WritableByteChannel newChannel(final OutputStream outputStream) {
+		return new WritableByteChannel() {
+			private byte[] transferArray = null;
+			private boolean open = true;
+			
+			@Override
+			public int write(ByteBuffer src) throws IOException {
+				ensureOpen(open);
+				int length = src.remaining();
+				
+				if (src.hasArray()) {
+					outputStream.write(src.array(), src.arrayOffset() + src.position(), length);
+					src.position(src.limit());
+				}
+				else {
+					if (transferArray == null) {
+						transferArray = new byte[TRANSFER_SIZE];
+					}
+					
+					while (src.hasRemaining()) {
+						int transferLength = Math.min(src.remaining(), transferArray.length);
+						
+						src.get(transferArray, 0, transferLength);
+						outputStream.write(transferArray, 0, transferLength);
+					}
+				}
+				
+				return length;
+			}
+
+			@Override
+			public boolean isOpen() {
+				return open;
+			}
+
+			@Override
+			public void close() throws IOException {
+				if (open) {
+					open = false;
+					outputStream.close();
+				}
+			}			
+		};
+	}
+
+	/**
+	 * Returns a channel that reads from the given input stream. Closing 
+	 * the channel closes the stream.
+	 */
+	public static ReadableByteChannel newChannel(final InputStream inputStream) {
+		return new ReadableByteChannel() {
+			private byte[] transferArray = null;
+			private boolean open = true;
+			
+			@Override
+			public int read(ByteBuffer dst) throws IOException {
+				ensureOpen(open);
+				
+				if (!dst.hasRemaining()) {
+					return 0;
+				}
+				else if (dst.hasArray()) {
+					int read = inputStream.read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+					
+					if (read > 0) {
+						dst.position(dst.position() + read);
+					}
+					
+					return read;
+				}
+				else {
+					if (transferArray == null) {
+						transferArray = new byte[TRANSFER_SIZE];
+					}
+					
+					int read = inputStream.read(transferArray, 0, Math.min(dst.remaining(), transferArray.length));
+					
+					if (read > 0) {
+						dst.put(transferArray, 0, read);
+					}
+					
+					return read;
+				}
+			}
+
+			@Override
+			public boolean isOpen() {
+				return open;
+			}
+
+			@Override
+			public void close() throws IOException {
+				if (open) {
+					open = false;
+					inputStream.close();
+				}
+			}			
+		};
+	}
+	
+	/**
+	 * Copies all remaining bytes from the given readable channel to the given
+	 * writable channel, using a single heap buffer. Neither channel is closed.
+	 * 
+	 * @return Number of bytes copied
+	 */
+	public static long copy(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+		long copied = 0;
+		
+		while (in.read(buffer) >= 0 || buffer.position() > 0) {
+			buffer.flip();
+			copied += out.write(buffer);
+			buffer.compact();
+		}
+		
+		return copied;
+	}
+	
+	private static void ensureOpen(boolean open) throws ClosedChannelException {
+		if (!open) {
+			throw new ClosedChannelException();
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+
+/**
+ * Measures the peak heap usage of the JVM between a call to {@link #startMeasurement()}
+ * and a call to {@link #stopMeasurement()}.
+ *
+ * <p>The peak is determined using the peak usage of the heap memory pools, as
+ * recorded by the JVM itself. Unlike sampling, this does not miss short spikes. Since
+ * the pools do not necessarily peak at the same time, the sum of their peaks is an
+ * upper bound of the actual peak heap usage.
+ *
+ * <p>Note that the peak usage of the memory pools is global to the JVM, i.e. it includes
+ * the heap used by all threads, and resetting it affects all other users of the memory
+ * pool MX beans. The peak is therefore only reset when no other measurement is running,
+ * and measurements that overlap with another measurement (e.g. two operations running
+ * at the same time in the daemon) do not report a peak at all.
+ *
+ * @author Philipp C. Heckel (philipp.heckel@gmail.com)
+ */
+public class HeapUsageUtil {
+	private static int runningMeasurements = 0;
+	private static boolean overlappingMeasurements = false;
+
+	/**
+	 * Starts a measurement. If no other measurement is running, the peak usage of all heap
+	 * memory pools is reset to their current usage. Every call must be followed by exactly one
+	 * call to {@link #stopMeasurement()}.
+	 */
+	public static synchronized void startMeasurement() {
+		if (runningMeasurements == 0) {
+			resetPeakHeapUsage();
+			overlappingMeasurements = false;
+		}
+		else {
+			overlappingMeasurements = true;
+		}
+
+		runningMeasurements++;
+	}
+
+	/**
+	 * Stops a measurement and returns the peak heap usage (in bytes) since the matching call
+	 * to {@link #startMeasurement()}, or zero if another measurement was running at any
+	 * time in between (and the peak can therefore not be attributed to this measurement).
+	 */
+	public static synchronized long stopMeasurement() {
+		if (runningMeasurements == 0) {
+			throw new IllegalStateException("No measurement running.");
+		}
+
+		runningMeasurements--;
+		return (overlappingMeasurements) ? 0 : getPeakHeapUsage();
+	}
+
+	private static void resetPeakHeapUsage() {
+		for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (memoryPool.getType() == MemoryType.HEAP && memoryPool.isValid()) {
+				memoryPool.resetPeakUsage();
+			}
+		}
+	}
+
+	private static long getPeakHeapUsage() {
+		long peakHeapUsage = 0;
+
+		for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (memoryPool.getType() == MemoryType.HEAP && memoryPool.isValid()) {
+				MemoryUsage peakUsage = memoryPool.getPeakUsage();
+
+				if (peakUsage != null) {
+					peakHeapUsage += peakUsage.getUsed();
+				}
+			}
+		}
+
+		return peakHeapUsage;
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2016 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.syncany.util.HeapUsageUtil;
+
+public class HeapUsageUtilTest {
+	@Test
+	public void testSingleMeasurement() {
+		HeapUsageUtil.startMeasurement();
+		assertTrue(HeapUsageUtil.stopMeasurement() > 0);
+	}
+
+	@Test
+	public void testOverlappingMeasurements() {
+		HeapUsageUtil.startMeasurement();
+		HeapUsageUtil.startMeasurement();
+
+		assertEquals(0, HeapUsageUtil.stopMeasurement());
+		assertEquals(0, HeapUsageUtil.stopMeasurement());
+
+		// Next measurement is on its own again
+		HeapUsageUtil.startMeasurement();
+		assertTrue(HeapUsageUtil.stopMeasurement() > 0);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testStopWithoutStart() {
+		HeapUsageUtil.stopMeasurement();
+	}
+}
@@ -38,13 +38,16 @@ import org.syncany.config.UserConfig;
 import org.syncany.plugins.UserInteractionListener;
 import org.syncany.plugins.transfer.AbstractTransferManager;
 import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.StorageFileNotFoundException;
 import org.syncany.plugins.transfer.StorageMoveException;
+import org.syncany.plugins.transfer.StreamingTransferManager;
 import org.syncany.plugins.transfer.TransferManager;
 import org.syncany.plugins.transfer.files.ActionRemoteFile;
 import org.syncany.plugins.transfer.files.CleanupRemoteFile;
 import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
 import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
 import org.syncany.plugins.transfer.files.RemoteFile;
+import org.syncany.plugins.transfer.files.SnapshotRemoteFile;
 import org.syncany.plugins.transfer.files.SyncanyRemoteFile;
 import org.syncany.plugins.transfer.files.TempRemoteFile;
 import org.syncany.plugins.transfer.files.TransactionRemoteFile;
@@ -76,13 +79,14 @@ import com.jcraft.jsch.UserInfo;
  * </ul>
  *
  * <p>All operations are auto-connected, i.e. a connection is automatically
- * established.
+ * established. Remote files can also be streamed (see {@link StreamingTransferManager}),
+ * but only one stream per transfer manager may be open at a time.
  *
  * @author Vincent Wiencek <vwiencek@gmail.com>
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  * @author Christian Roth <christian.roth@port17.de>
  */
-public class SftpTransferManager extends AbstractTransferManager {
+public class SftpTransferManager extends AbstractTransferManager implements StreamingTransferManager {
 	private static final Logger logger = Logger.getLogger(SftpTransferManager.class.getSimpleName());
 	private static final String SUPPORTED_KEX = "diffie-hellman-group1-sha1,diffie-hellman-group14-sha1,diffie-hellman-group-exchange-sha1,diffie-hellman-group-exchange-sha256";
 
@@ -242,6 +246,35 @@ public class SftpTransferManager extends AbstractTransferManager {
 		}
 	}
 
+	@Override
+	public boolean isStreamingSupported() {
+		return true;
+	}
+
+	@Override
+	public InputStream downloadStream(RemoteFile remoteFile) throws StorageException {
+		connect();
+
+		String remotePath = getRemoteFile(remoteFile);
+
+		try {
+			if (logger.isLoggable(Level.INFO)) {
+				logger.log(Level.INFO, "SFTP: Opening stream for {0}", remotePath);
+			}
+
+			return sftpChannel.get(remotePath);
+		}
+		catch (SftpException ex) {
+			if (ex.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+				throw new StorageFileNotFoundException("No such file on SFTP server: " + remotePath, ex);
+			}
+
+			disconnect();
+			logger.log(Level.SEVERE, "Error while opening stream for file " + remoteFile.getName(), ex);
+			throw new StorageException(ex);
+		}
+	}
+
 	@Override
 	public void upload(File localFile, RemoteFile remoteFile) throws StorageException {
 		connect();
@@ -355,7 +388,7 @@ public class SftpTransferManager extends AbstractTransferManager {
 		if (remoteFile.equals(MultichunkRemoteFile.class)) {
 			return multichunksPath;
 		}
-		else if (remoteFile.equals(DatabaseRemoteFile.class) || remoteFile.equals(CleanupRemoteFile.class)) {
+		else if (remoteFile.equals(DatabaseRemoteFile.class) || remoteFile.equals(CleanupRemoteFile.class) || remoteFile.equals(SnapshotRemoteFile.class)) {
 			return databasesPath;
 		}
 		else if (remoteFile.equals(ActionRemoteFile.class)) {
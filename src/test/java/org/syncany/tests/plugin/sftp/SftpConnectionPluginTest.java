@@ -25,11 +25,14 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -41,6 +44,7 @@ import org.syncany.plugins.sftp.SftpTransferManager;
 import org.syncany.plugins.sftp.SftpTransferPlugin;
 import org.syncany.plugins.sftp.SftpTransferSettings;
 import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.StorageFileNotFoundException;
 import org.syncany.plugins.transfer.TransferManager;
 import org.syncany.plugins.transfer.TransferPlugin;
 import org.syncany.plugins.transfer.TransferPluginOption;
@@ -225,6 +229,43 @@ public class SftpConnectionPluginTest {
 		}
 	}	
 	
+	@Test
+	public void testSftpUploadAndDownloadStream() throws Exception {
+		File inputFile = TestFileUtil.createRandomFileInDirectory(tempLocalSourceDir, 50*1024);
+		MultichunkRemoteFile remoteFile = new MultichunkRemoteFile("multichunk-84f7e2b31440aaef9b73de3cadcf4e449aeb55a1");
+
+		validSftpTransferSettings.setPath("/repo-stream");
+		SftpTransferManager transferManager = (SftpTransferManager) loadPluginAndCreateTransferManager();
+		transferManager.init(true);
+		transferManager.upload(inputFile, remoteFile);
+
+		assertTrue("SFTP transfer manager should support streaming.", transferManager.isStreamingSupported());
+
+		try (InputStream remoteFileInputStream = transferManager.downloadStream(remoteFile)) {
+			byte[] originalFileBytes = FileUtils.readFileToByteArray(inputFile);
+			byte[] streamedFileBytes = IOUtils.toByteArray(remoteFileInputStream);
+
+			assertArrayEquals("Streamed file differs from original file.", originalFileBytes, streamedFileBytes);
+		}
+
+		transferManager.delete(remoteFile);
+		transferManager.disconnect();
+	}
+
+	@Test(expected = StorageFileNotFoundException.class)
+	public void testSftpDownloadStreamNonExistingFile() throws Exception {
+		validSftpTransferSettings.setPath("/repo-stream-not-found");
+		SftpTransferManager transferManager = (SftpTransferManager) loadPluginAndCreateTransferManager();
+		transferManager.init(true);
+
+		try {
+			transferManager.downloadStream(new MultichunkRemoteFile("multichunk-0000000000000000000000000000000000000000"));
+		}
+		finally {
+			transferManager.disconnect();
+		}
+	}
+
 	private Map<String, File> generateTestInputFile() throws IOException {
 		Map<String, File> inputFilesMap = new HashMap<String, File>();
 		List<File> inputFiles = TestFileUtil.createRandomFilesInDirectory(tempLocalSourceDir, 50*1024, 10);